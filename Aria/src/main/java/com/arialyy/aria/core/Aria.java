@@ -26,6 +26,8 @@ import android.os.Build;
 import android.support.v4.app.DialogFragment;
 import android.support.v4.app.Fragment;
 import android.widget.PopupWindow;
+import com.arialyy.aria.core.common.IProxyIndex;
+import com.arialyy.aria.core.common.ProxyHelper;
 import com.arialyy.aria.core.download.DownloadReceiver;
 import com.arialyy.aria.core.upload.UploadReceiver;
 import com.arialyy.aria.util.ALog;
@@ -128,6 +130,17 @@ import com.arialyy.aria.util.ALog;
     return AriaManager.getInstance(context);
   }
 
+  /**
+   * 注册AriaCompiler生成的代理索引，需要在注册观察者之前调用，一般在Application中调用。
+   * 在模块的build.gradle中配置{@code annotationProcessorOptions.arguments = ["aria.proxyIndex":
+   * "com.example.app.AppProxyIndex"]}后才会生成索引，每个模块的索引类名不能相同
+   *
+   * @param index 生成的索引，如：{@code new AppProxyIndex()}
+   */
+  public static void addProxyIndex(IProxyIndex index) {
+    ProxyHelper.getInstance().addIndex(index);
+  }
+
   private static Context convertContext(Object obj) {
     if (obj instanceof Application) {
       return (Application) obj;
@@ -15,6 +15,7 @@
  */
 package com.arialyy.aria.core.common;
 
+import android.os.Handler;
 import android.os.Looper;
 import android.util.SparseArray;
 import com.arialyy.aria.core.inf.AbsNormalEntity;
@@ -24,7 +25,6 @@ import com.arialyy.aria.core.manager.ThreadTaskManager;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
 import java.io.File;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -40,7 +40,12 @@ public abstract class AbsFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER ext
   protected File mTempFile;
 
   private SparseArray<AbsThreadTask> mTask = new SparseArray<>();
-  private ScheduledThreadPoolExecutor mTimer;
+  private TimerWheel.Timeout mTimer;
+
+  /**
+   * 任务looper的Handler，定时器的进度回调在任务自己的looper中执行
+   */
+  private Handler mTimerHandler;
 
   /**
    * 进度刷新间隔
@@ -50,12 +55,17 @@ public abstract class AbsFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER ext
   private IThreadState mStateManager;
   private boolean isCancel = false, isStop = false;
   private boolean isRuning = false;
+  private BandwidthLimiter mLimiter;
+  private TaskKey mTaskKey;
 
   protected AbsFileer(IEventListener listener, TASK_WRAPPER wrapper) {
     mListener = listener;
     mTaskWrapper = wrapper;
     mEntity = mTaskWrapper.getEntity();
     TAG = CommonUtil.getClassName(getClass());
+    mTaskKey = TaskKey.of(wrapper.getKey());
+    mLimiter = new BandwidthLimiter(BandwidthLimiter.getGlobalLimiter(),
+        wrapper.getConfig().getMaxSpeed());
   }
 
   protected abstract IThreadState getStateManager(Looper looper);
@@ -73,6 +83,27 @@ public abstract class AbsFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER ext
     return mEntity;
   }
 
+  /**
+   * 任务标识，在{@link ThreadTaskManager}中登记线程任务时使用
+   */
+  protected TaskKey getTaskKey() {
+    return mTaskKey;
+  }
+
+  /**
+   * {@link BandwidthScheduler}分配速度时使用的任务key
+   */
+  protected String getBandwidthKey() {
+    return mTaskWrapper.getKey();
+  }
+
+  /**
+   * 任务的限速器，任务的所有线程共享该限速器
+   */
+  protected BandwidthLimiter getBandwidthLimiter() {
+    return mLimiter;
+  }
+
   public SparseArray<AbsThreadTask> getTaskList() {
     return mTask;
   }
@@ -103,6 +134,7 @@ public abstract class AbsFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER ext
     Looper.prepare();
     Looper looper = Looper.myLooper();
     mStateManager = getStateManager(looper);
+    mTimerHandler = new Handler(looper);
     onPostPre();
     handleTask();
     startTimer();
@@ -131,15 +163,18 @@ public abstract class AbsFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER ext
   }
 
   /**
-   * 启动进度获取定时器
+   * 启动进度获取定时器。
+   * 进度回调会保存任务记录、调整线程数和拆分区间，都需要读写数据库，不能在时间轮的执行线程中处理，
+   * 时间轮只负责把进度回调投递到任务自己的looper
    */
   private synchronized void startTimer() {
     if (isBreak()) {
       return;
     }
     ALog.d(TAG, "启动定时器");
-    mTimer = new ScheduledThreadPoolExecutor(1);
-    mTimer.scheduleWithFixedDelay(new Runnable() {
+    BandwidthScheduler.getInstance().register(getBandwidthKey(), mLimiter);
+    final Handler handler = mTimerHandler;
+    final Runnable tick = new Runnable() {
       @Override public void run() {
         if (mStateManager.isComplete()
             || mStateManager.isFail()
@@ -149,20 +184,46 @@ public abstract class AbsFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER ext
               + "; isFail = " + mStateManager.isFail()
               + "; isRunning = " + isRunning()
               + "; isBreak = " + isBreak());
-          ThreadTaskManager.getInstance().removeTaskThread(mTaskWrapper.getKey());
-          closeTimer();
-          onDestroy();
+          finishTimer();
         } else if (mStateManager.getCurrentProgress() >= 0) {
           mListener.onProgress(mStateManager.getCurrentProgress());
+          onProgress(mStateManager.getCurrentProgress());
+        }
+      }
+    };
+    mTimer = TimerWheel.getInstance().scheduleWithFixedDelay(new Runnable() {
+      @Override public void run() {
+        if (!handler.post(tick)) {
+          // looper已经退出，任务已经结束，只需要释放定时器
+          finishTimer();
         }
       }
     }, delayTimer(), mUpdateInterval, TimeUnit.MILLISECONDS);
   }
 
+  /**
+   * 任务结束后释放线程记录和定时器
+   */
+  private void finishTimer() {
+    ThreadTaskManager.getInstance().removeTaskThread(getTaskKey());
+    closeTimer();
+    onDestroy();
+  }
+
+  /**
+   * 定时器刷新进度
+   *
+   * @param currentProgress 任务当前进度
+   */
+  protected void onProgress(long currentProgress) {
+
+  }
+
   public synchronized void closeTimer() {
-    if (mTimer != null && !mTimer.isShutdown()) {
-      mTimer.shutdown();
+    if (mTimer != null) {
+      mTimer.cancel();
     }
+    BandwidthScheduler.getInstance().unRegister(getBandwidthKey(), mLimiter);
   }
 
   public void onDestroy() {
@@ -194,7 +255,7 @@ public abstract class AbsFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER ext
   }
 
   public synchronized boolean isRunning() {
-    boolean b = ThreadTaskManager.getInstance().taskIsRunning(mTaskWrapper.getKey());
+    boolean b = ThreadTaskManager.getInstance().taskIsRunning(getTaskKey());
     //ALog.d(TAG, "isRunning = " + b);
     return b && isRuning;
   }
@@ -213,7 +274,7 @@ public abstract class AbsFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER ext
         task.cancel();
       }
     }
-    ThreadTaskManager.getInstance().removeTaskThread(mTaskWrapper.getKey());
+    ThreadTaskManager.getInstance().removeTaskThread(getTaskKey());
     onPostCancel();
     onDestroy();
     mListener.onCancel();
@@ -246,7 +307,7 @@ public abstract class AbsFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER ext
         task.stop();
       }
     }
-    ThreadTaskManager.getInstance().removeTaskThread(mTaskWrapper.getKey());
+    ThreadTaskManager.getInstance().removeTaskThread(getTaskKey());
     onPostStop();
     onDestroy();
     mListener.onStop(getCurrentLocation());
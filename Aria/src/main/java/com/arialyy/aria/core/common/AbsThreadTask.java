@@ -32,16 +32,23 @@ import com.arialyy.aria.core.inf.ITaskWrapper;
 import com.arialyy.aria.core.manager.ThreadTaskManager;
 import com.arialyy.aria.core.scheduler.ISchedulers;
 import com.arialyy.aria.exception.BaseException;
+import com.arialyy.aria.exception.TaskException;
 import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.BufferPool;
 import com.arialyy.aria.util.BufferedRandomAccessFile;
 import com.arialyy.aria.util.CommonUtil;
 import com.arialyy.aria.util.ErrorHelp;
 import com.arialyy.aria.util.NetUtils;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.UUID;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Created by lyy on 2017/1/18. 任务线程
@@ -49,20 +56,28 @@ import java.util.concurrent.Executors;
 public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER extends AbsTaskWrapper<ENTITY>>
     implements Callable<AbsThreadTask> {
   /**
-   * 线程重试次数
+   * 线程区间的重试次数，重试通过{@link RetryService}退避调度，区间重试期间不会让整个任务失败
    */
-  private final int RETRY_NUM = 2;
+  private final int RETRY_NUM = 5;
+
+  /**
+   * 线程区间重试的基础间隔，单位为毫秒
+   */
+  private final long RETRY_INTERVAL = 500;
 
   private final String TAG = "AbsThreadTask";
   /**
    * 当前子线程相对于总长度的位置
    */
-  protected long mChildCurrentLocation = 0;
+  protected volatile long mChildCurrentLocation = 0;
   private ENTITY mEntity;
   protected TASK_WRAPPER mTaskWrapper;
   private int mFailTimes = 0;
+  /**
+   * 本次执行是否已经向{@link RetryService}报告主机可用
+   */
+  private boolean isHostReported = false;
   private long mLastSaveTime;
-  private ExecutorService mConfigThreadPool;
   private boolean isNotNetRetry;  //断网情况是否重试
   private boolean taskBreak = false;  //任务跳出
   protected BandwidthLimiter mSpeedBandUtil; //速度限制工具
@@ -71,30 +86,37 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
   protected boolean isCancel = false, isStop = false;
   protected ThreadRecord mRecord;
   private Handler mStateHandler;
+  private ProgressCounter mProgressCounter; // 任务进度计数器，读取数据时直接累加
   private SubThreadConfig<TASK_WRAPPER> mConfig;
-
-  private Thread mConfigThread = new Thread(new Runnable() {
-    @Override public void run() {
-      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
-      final long currentTemp = mChildCurrentLocation;
-      writeConfig(false, currentTemp);
-    }
-  });
+  private DurabilityMod mDurabilityMod;
+  private RandomAccessFile mRangeFile; //当前区间正在写入的文件
+  /**
+   * 已同步到存储设备的位置，非严格模式下，线程记录的开始位置不能超过该位置
+   */
+  private volatile long mDurableLocation;
+  /**
+   * 当前连续写入的开始位置，用于标记免合并分块任务已完成的区块
+   */
+  private long mSegmentStart;
 
   protected AbsThreadTask(SubThreadConfig<TASK_WRAPPER> config) {
     mConfig = config;
     mTaskWrapper = config.taskWrapper;
     mRecord = config.record;
     mStateHandler = config.stateHandler;
+    mProgressCounter = config.progressCounter;
     mEntity = mTaskWrapper.getEntity();
     mLastSaveTime = System.currentTimeMillis();
-    mConfigThreadPool = Executors.newCachedThreadPool();
     mAridManager = AriaManager.getInstance(AriaManager.APP);
-    if (getMaxSpeed() > 0) {
-      mSpeedBandUtil = new BandwidthLimiter(getMaxSpeed(), config.startThreadNum);
-    }
+    mSpeedBandUtil = new BandwidthLimiter(config.bandwidthLimiter == null
+        ? BandwidthLimiter.getGlobalLimiter() : config.bandwidthLimiter, 0);
     isNotNetRetry = mAridManager.getAppConfig().isNotNetRetry();
     mChildCurrentLocation = mRecord.startLocation;
+    mDurableLocation = mRecord.startLocation;
+    mSegmentStart = mRecord.startLocation;
+    BaseTaskConfig taskConfig = getTaskConfig();
+    mDurabilityMod = taskConfig instanceof DownloadConfig ? DurabilityMod.getMod(
+        ((DownloadConfig) taskConfig).getDurabilityMod()) : DurabilityMod.STRICT;
   }
 
   /**
@@ -138,6 +160,195 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
     return mRecord.isComplete;
   }
 
+  /**
+   * 当前线程的下载位置
+   */
+  long getCurrentLocation() {
+    return mChildCurrentLocation;
+  }
+
+  /**
+   * 获取当前区间的结束位置，区间可能被{@link RangeScheduler}拆分，读写时需要以该值为准。
+   * {@link ThreadRecord#endLocation}是volatile字段，每次读取数据时不需要加锁
+   */
+  protected long getRangeEnd() {
+    return mRecord.endLocation;
+  }
+
+  /**
+   * 使用{@link FileChannel}按位置写入当前区间，每个线程直接写入自己的偏移，不需要共享文件指针；
+   * 读取到区间结束位置（区间可能被拆分）后停止
+   *
+   * @param is 服务器返回的数据流
+   */
+  protected void readByChannel(InputStream is) throws IOException {
+    RandomAccessFile raf = null;
+    FileChannel file = null;
+    ReadableByteChannel channel = Channels.newChannel(is);
+    ByteBuffer buffer = BufferPool.obtain(getTaskConfig().getBuffSize());
+    try {
+      raf = new RandomAccessFile(mConfig.tempFile, getFileMode());
+      file = raf.getChannel();
+      setRangeFile(raf);
+      int len;
+      while (isLive() && (len = channel.read(buffer)) != -1) {
+        if (isBreak()) {
+          break;
+        }
+        if (mSpeedBandUtil != null) {
+          mSpeedBandUtil.limitNextBytes(len);
+        }
+        long rangeEnd = getRangeEnd();
+        boolean isRangeEnd = false;
+        if (mChildCurrentLocation + len >= rangeEnd) {
+          len = (int) (rangeEnd - mChildCurrentLocation);
+          isRangeEnd = true;
+        }
+        buffer.flip();
+        buffer.limit(len);
+        long position = mChildCurrentLocation;
+        while (buffer.hasRemaining()) {
+          position += file.write(buffer, position);
+        }
+        buffer.clear();
+        progress(len);
+        if (isRangeEnd) {
+          syncRangeFile();
+          break;
+        }
+      }
+    } finally {
+      setRangeFile(null);
+      BufferPool.recycle(buffer);
+      if (file != null) {
+        file.close();
+      }
+      if (raf != null) {
+        raf.close();
+      }
+    }
+  }
+
+  /**
+   * 获取文件的写入持久化模式
+   */
+  protected DurabilityMod getDurabilityMod() {
+    return mDurabilityMod;
+  }
+
+  /**
+   * 修改文件的写入持久化模式，需要在打开文件之前调用
+   */
+  protected void setDurabilityMod(DurabilityMod mod) {
+    mDurabilityMod = mod;
+  }
+
+  /**
+   * 打开下载文件时使用的模式，由{@link DurabilityMod}决定
+   */
+  protected String getFileMode() {
+    return mDurabilityMod.getFileMode();
+  }
+
+  /**
+   * 设置当前区间正在写入的文件，保存线程记录前需要先同步该文件；
+   * 区间结束后需要设置为null
+   */
+  protected void setRangeFile(RandomAccessFile file) {
+    mRangeFile = file;
+  }
+
+  /**
+   * 区间下载完成，将数据同步到存储设备，需要在保存完成记录之前调用
+   */
+  protected void syncRangeFile() throws IOException {
+    sync(mDurabilityMod != DurabilityMod.STRICT);
+    mDurableLocation = mChildCurrentLocation;
+    BlockBitmap bitmap = mConfig.blockBitmap;
+    if (bitmap != null) {
+      // 区间已全部写入，整个区间的区块都可以标记为完成
+      bitmap.mark(mRecord.endLocation - mRecord.blockLen, mDurableLocation);
+    }
+  }
+
+  /**
+   * 将缓冲中的数据写入文件
+   *
+   * @param force {@code true} 将文件数据同步到存储设备
+   */
+  private void sync(boolean force) throws IOException {
+    RandomAccessFile file = mRangeFile;
+    if (file == null) {
+      return;
+    }
+    if (file instanceof BufferedRandomAccessFile) {
+      ((BufferedRandomAccessFile) file).flush();
+    }
+    if (force) {
+      file.getChannel().force(false);
+    }
+  }
+
+  /**
+   * 保存线程记录前，按持久化模式同步文件
+   *
+   * @return 可以保存到线程记录中的位置
+   */
+  private long checkpoint() {
+    if (mRangeFile == null) {
+      return mChildCurrentLocation;
+    }
+    long location = mChildCurrentLocation;
+    try {
+      sync(mDurabilityMod == DurabilityMod.CHECKPOINT);
+      if (mDurabilityMod != DurabilityMod.RELAXED) {
+        mDurableLocation = location;
+        if (mConfig.blockBitmap != null) {
+          mConfig.blockBitmap.mark(mSegmentStart, location);
+        }
+      }
+    } catch (IOException e) {
+      ALog.e(TAG, String.format("任务【%s】线程__%s__同步文件失败", getFileName(), mRecord.threadId));
+      e.printStackTrace();
+    }
+    return mDurabilityMod == DurabilityMod.STRICT ? location : mDurableLocation;
+  }
+
+  /**
+   * 服务器繁忙（http 429/503，ftp 421），自适应线程数模式下会减少任务的线程数
+   *
+   * @param code 服务器返回码
+   */
+  protected void onServerBusy(int code) {
+    RangeScheduler scheduler = mConfig.rangeScheduler;
+    if (scheduler != null) {
+      scheduler.onServerBusy(code);
+    }
+  }
+
+  /**
+   * 当前区间完成后，从{@link RangeScheduler}中获取新的区间
+   *
+   * @return {@code true} 已切换到新的区间，线程需要继续下载新区间
+   */
+  protected boolean nextRange() {
+    RangeScheduler scheduler = mConfig.rangeScheduler;
+    if (scheduler == null || isBreak() || !isLive()) {
+      return false;
+    }
+    ThreadRecord record = scheduler.steal(this);
+    if (record == null) {
+      return false;
+    }
+    mRecord = record;
+    mConfig.record = record;
+    mChildCurrentLocation = record.startLocation;
+    mDurableLocation = record.startLocation;
+    mSegmentStart = record.startLocation;
+    mFailTimes = 0;
+    return true;
+  }
+
   /**
    * 获取实体
    */
@@ -167,15 +378,11 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
   protected abstract BaseTaskConfig getTaskConfig();
 
   /**
-   * 设置当前线程最大下载速度
+   * 设置当前线程最大下载速度，线程的速度同时受任务和全局速度限制
    *
-   * @param speed 单位为：kb
+   * @param speed 单位为：kb，为0时线程不单独限速
    */
-
   public void setMaxSpeed(int speed) {
-    if (mSpeedBandUtil == null) {
-      mSpeedBandUtil = new BandwidthLimiter(getMaxSpeed(), getConfig().startThreadNum);
-    }
     mSpeedBandUtil.setMaxRate(speed);
   }
 
@@ -232,13 +439,6 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
     return Thread.currentThread().isInterrupted();
   }
 
-  @Override protected void finalize() throws Throwable {
-    super.finalize();
-    if (mConfigThreadPool != null) {
-      mConfigThreadPool.shutdown();
-    }
-  }
-
   /**
    * 任务是否中断，中断条件：
    * 1、任务取消
@@ -313,20 +513,26 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
     //  return;
     //}
     mChildCurrentLocation += len;
-    Thread loopThread = mStateHandler.getLooper().getThread();
-    if (!loopThread.isAlive() || loopThread.isInterrupted()) {
-      return;
+    mProgressCounter.add(len);
+    if (!isHostReported) {
+      isHostReported = true;
+      RetryService.getInstance().onSuccess(mConfig.url);
     }
-    mStateHandler.obtainMessage(IThreadState.STATE_RUNNING, len).sendToTarget();
     if (System.currentTimeMillis() - mLastSaveTime > 5000
         && mChildCurrentLocation < mRecord.endLocation) {
       mLastSaveTime = System.currentTimeMillis();
-      if (!mConfigThreadPool.isShutdown()) {
-        mConfigThreadPool.execute(mConfigThread);
-      }
+      saveCheckpoint();
     }
   }
 
+  /**
+   * 定时保存检查点，按持久化模式同步文件后提交线程记录。
+   * 读取数据的线程不能执行阻塞操作时，子类可以重写该方法，在其它线程中调用
+   */
+  protected void saveCheckpoint() {
+    writeConfig(false, checkpoint(), false);
+  }
+
   /**
    * 取消任务
    */
@@ -356,6 +562,9 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
     if (ex != null) {
       ALog.e(TAG, ALog.getExceptionString(ex));
     }
+    if (needRetry && !isBreak()) {
+      RetryService.getInstance().onFailure(mConfig.url);
+    }
     if (mTaskWrapper.getRequestType() == ITaskWrapper.M3U8_VOD) {
       writeConfig(false, 0);
       retryM3U8Peer(needRetry);
@@ -371,6 +580,15 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
     }
   }
 
+  /**
+   * 线程池已满，线程任务无法启动，直接失败，不再重试
+   */
+  public void onRejected(Exception e) {
+    fail(mChildCurrentLocation, new TaskException(TAG,
+        String.format("任务【%s】线程__%s__启动失败，线程池已满", getFileName(), mRecord.threadId), e),
+        false);
+  }
+
   /**
    * 重试ts分片
    */
@@ -387,7 +605,7 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
       mFailTimes++;
       mConfig.tempFile.delete();
       CommonUtil.createFile(mConfig.tempFile.getPath());
-      ThreadTaskManager.getInstance().retryThread(this);
+      retryLater();
     } else {
       sendFailMsg(null);
     }
@@ -409,12 +627,43 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
       ALog.w(TAG, String.format("分块【%s】正在重试", getFileName()));
       mFailTimes++;
       handleBlockRecord();
-      ThreadTaskManager.getInstance().retryThread(this);
+      rewindToRecord();
+      retryLater();
     } else {
       sendFailMsg(null);
     }
   }
 
+  /**
+   * 按失败次数退避后重新提交线程，主机熔断时会挂起到主机恢复
+   */
+  private void retryLater() {
+    isHostReported = false;
+    RetryService.getInstance().retry(mConfig.url, mFailTimes - 1, RETRY_INTERVAL, new Runnable() {
+      @Override public void run() {
+        if (isBreak()) {
+          return;
+        }
+        ThreadTaskManager.getInstance().retryThread(AbsThreadTask.this);
+      }
+    });
+  }
+
+  /**
+   * 非严格模式下，线程记录可能落后于当前位置，重试前需要回退到记录的开始位置，并修正任务进度
+   */
+  private void rewindToRecord() {
+    if (mConfig.isBlock || mConfig.isOpenDynamicFile || mRecord.isComplete) {
+      return;
+    }
+    long rewind = mChildCurrentLocation - mRecord.startLocation;
+    mSegmentStart = mRecord.startLocation;
+    if (rewind > 0) {
+      mChildCurrentLocation = mRecord.startLocation;
+      mProgressCounter.add(-rewind);
+    }
+  }
+
   /**
    * 处理线程重试的分块记录，只有多线程任务才会执行
    * 如果是以前版本{@link BufferedRandomAccessFile}创建的下载，那么 record.startLocation不用修改
@@ -426,6 +675,7 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
 
       long blockFileLen = temp.length(); // 磁盘中的分块文件长度
       long threadRect = mRecord.blockLen;     // 当前线程的区间
+      long oldLocation = mChildCurrentLocation;
 
       if (!temp.exists()) {
         ALog.i(TAG, String.format("分块文件【%s】不存在，该分块将重新开始", temp.getName()));
@@ -443,7 +693,6 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
         } else if (blockFileLen < mRecord.blockLen) {
           mRecord.startLocation = mRecord.endLocation - mRecord.blockLen + blockFileLen;
           mRecord.isComplete = false;
-          sendState(IThreadState.STATE_UPDATE_PROGRESS, null);
           ALog.i(TAG,
               String.format("修正分块【%s】记录，开始位置：%s，结束位置：%s", temp.getName(), mRecord.startLocation,
                   mRecord.endLocation));
@@ -452,6 +701,9 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
           mRecord.isComplete = true;
         }
       }
+      // 以分块文件的长度为准，修正该线程累加的进度
+      mChildCurrentLocation = mRecord.isComplete ? mRecord.endLocation : mRecord.startLocation;
+      mProgressCounter.add(mChildCurrentLocation - oldLocation);
       mRecord.update();
     }
   }
@@ -484,6 +736,15 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
    * @param record 当前下载进度
    */
   protected void writeConfig(boolean isComplete, final long record) {
+    writeConfig(isComplete, record, true);
+  }
+
+  /**
+   * 更新线程记录的位置并保存
+   *
+   * @param immediately {@code true} 在当前线程中立即保存；{@code false} 提交给{@link CheckpointWriter}批量保存
+   */
+  private void writeConfig(boolean isComplete, final long record, boolean immediately) {
     if (mRecord != null) {
       mRecord.isComplete = isComplete;
       if (mConfig.isBlock) {
@@ -491,11 +752,23 @@ public abstract class AbsThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAPPER
       } else if (mConfig.isOpenDynamicFile) {
         mRecord.startLocation = mConfig.tempFile.length();
       } else {
-        if (0 < record && record < mRecord.endLocation) {
-          mRecord.startLocation = record;
+        long location = record;
+        if (!isComplete && mDurabilityMod != DurabilityMod.STRICT) {
+          location = Math.min(location, mDurableLocation);
+        }
+        if (0 < location && location < mRecord.endLocation) {
+          mRecord.startLocation = location;
         }
       }
-      mRecord.update();
+      TaskRecord taskRecord = null;
+      if (mConfig.blockBitmap != null && mConfig.blockBitmap.apply()) {
+        taskRecord = mConfig.blockBitmap.getRecord();
+      }
+      if (immediately) {
+        CheckpointWriter.getInstance().write(mRecord, taskRecord);
+      } else {
+        CheckpointWriter.getInstance().submit(mRecord, taskRecord);
+      }
     }
   }
 
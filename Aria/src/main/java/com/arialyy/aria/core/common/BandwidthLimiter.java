@@ -1,13 +1,11 @@
 /*
- * Licensed to the Apache Software Foundation (ASF) under one
- * or more contributor license agreements.  See the NOTICE file
- * distributed with this work for additional information
- * regarding copyright ownership.  The ASF licenses this file
- * to you under the Apache License, Version 2.0 (the
- * "License"); you may not use this file except in compliance
- * with the License.  You may obtain a copy of the License at
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
  *
- * http://www.apache.org/licenses/LICENSE-2.0
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
  *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
@@ -17,88 +15,210 @@
  */
 package com.arialyy.aria.core.common;
 
+import com.arialyy.aria.core.config.AppConfig;
+import com.arialyy.aria.core.config.Configuration;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- * 速度限制
+ * 分级令牌桶限速器，http、ftp、m3u8下载和上传都使用同一套限速器。
+ * 1、限速器分为三级：全局 -> 任务 -> 线程，线程读取的数据需要同时满足自身和所有上级限速器的速度；
+ * 2、任务的所有线程共享任务的限速器，某个线程完成或空闲时，其它线程会自动用掉它未使用的速度；
+ * 3、令牌不需要定时补充，每次读取数据时按时间计算可用的令牌，通过CAS预约令牌，不需要加锁；
+ * 4、限速器最多累积{@link #BURST_NANOS}时间的空闲令牌，保证较长时间内的平均速度不超过限制；
+ * 5、任务的限速器还会受{@link BandwidthScheduler}按优先级权重分配的速度限制。
  */
 public class BandwidthLimiter {
-  public static int maxBandWith = 2 * 1024; //KB
-
-  /* KB */
-  private static Long KB = 1024L;
-  /* The smallest count chunk length in bytes */
-  private static Long CHUNK_LENGTH = 1024L;
-  /* How many bytes will be sent or receive */
-  private int bytesWillBeSentOrReceive = 0;
-  /* When the last piece was sent or receive */
-  private long lastPieceSentOrReceiveTick = System.nanoTime();
-  /* Default rate is 1024KB/s */
-  private int maxRate = 1024;
-  /* Time cost for sending CHUNK_LENGTH bytes in nanoseconds */
-  private long timeCostPerChunk = (1000000000L * CHUNK_LENGTH)
-      / (this.maxRate * KB);
-
-  /**
-   * Initialize a BandwidthLimiter object with a certain rate.
-   *
-   * @param maxRate the download or upload speed in KBytes
+  /**
+   * 允许累积的空闲令牌时长，单位为纳秒
+   */
+  private static final long BURST_NANOS = 100 * 1000 * 1000L;
+
+  private static volatile BandwidthLimiter GLOBAL = null;
+
+  /**
+   * 默认时钟，使用{@link System#nanoTime()}
    */
-  public BandwidthLimiter(int maxRate, int threadNum) {
-    if (threadNum > 1) {
-      maxRate = maxRate / threadNum;
+  static final Clock SYSTEM_CLOCK = new Clock() {
+    @Override public long nanoTime() {
+      return System.nanoTime();
     }
-    this.setMaxRate(maxRate);
+  };
+
+  private final BandwidthLimiter mParent;
+  private final Clock mClock;
+
+  /**
+   * 最大速度，单位为byte/s，为0时不限速
+   */
+  private volatile long mRate;
+
+  /**
+   * {@link BandwidthScheduler}分配的速度，单位为byte/s，为0时不限速
+   */
+  private volatile long mShareRate;
+
+  /**
+   * 经过该限速器的数据总长度
+   */
+  private final AtomicLong mTransferred = new AtomicLong();
+
+  /**
+   * 已预约令牌用完的时间点，{@link Clock#nanoTime()}
+   */
+  private final AtomicLong mNextFreeTime;
+
+  /**
+   * 获取全局限速器，速度由{@link AppConfig#setMaxGlobalSpeed(int)}设置
+   */
+  public static BandwidthLimiter getGlobalLimiter() {
+    if (GLOBAL == null) {
+      synchronized (BandwidthLimiter.class) {
+        if (GLOBAL == null) {
+          GLOBAL = new BandwidthLimiter(null,
+              Configuration.getInstance().appCfg.getMaxGlobalSpeed());
+        }
+      }
+    }
+    return GLOBAL;
+  }
+
+  /**
+   * @param parent 上级限速器，为null时没有上级限速器
+   * @param maxRate 最大速度，单位为kb，为0时不限速
+   */
+  public BandwidthLimiter(BandwidthLimiter parent, int maxRate) {
+    this(parent, maxRate, parent == null ? SYSTEM_CLOCK : parent.mClock);
   }
 
   /**
-   * Set the max upload or download rate in KB/s. maxRate must be grater than
-   * 0. If maxRate is zero, it means there is no bandwidth limit.
+   * @param clock 计算令牌使用的时钟，同一棵限速器树需要使用同一个时钟
+   */
+  BandwidthLimiter(BandwidthLimiter parent, int maxRate, Clock clock) {
+    mParent = parent;
+    mClock = clock;
+    mNextFreeTime = new AtomicLong(clock.nanoTime());
+    setMaxRate(maxRate);
+  }
+
+  /**
+   * 设置最大速度
    *
-   * @param maxRate If maxRate is zero, it means there is no bandwidth limit.
-   * @throws IllegalArgumentException
+   * @param maxRate 单位为kb，为0时不限速
    */
-  public synchronized void setMaxRate(int maxRate)
-      throws IllegalArgumentException {
+  public void setMaxRate(int maxRate) {
     if (maxRate < 0) {
-      throw new IllegalArgumentException("maxRate can not less than 0");
+      throw new IllegalArgumentException("maxRate不能小于0");
     }
-    this.maxRate = maxRate;
-    if (maxRate == 0) {
-      this.timeCostPerChunk = 0;
-    } else {
-      this.timeCostPerChunk = (1000000000L * CHUNK_LENGTH)
-          / (this.maxRate * KB);
+    mRate = maxRate * 1024L;
+    clampNextFreeTime();
+  }
+
+  /**
+   * 最大速度，单位为kb，为0时不限速
+   */
+  public int getMaxRate() {
+    return (int) (mRate / 1024);
+  }
+
+  public BandwidthLimiter getParent() {
+    return mParent;
+  }
+
+  /**
+   * 设置分配的速度，实际速度取最大速度和分配速度中较小的一个
+   *
+   * @param shareRate 单位为byte/s，为0时不限速
+   */
+  void setShareRate(long shareRate) {
+    mShareRate = shareRate;
+    clampNextFreeTime();
+  }
+
+  /**
+   * 速度修改后，按旧速度预约的令牌最多只保留{@link #BURST_NANOS}，
+   * 避免速度从很低调高后，线程还要等待按旧速度计算的很长时间
+   */
+  private void clampNextFreeTime() {
+    long limit = mClock.nanoTime() + BURST_NANOS;
+    while (true) {
+      long next = mNextFreeTime.get();
+      if (next <= limit || mNextFreeTime.compareAndSet(next, limit)) {
+        return;
+      }
     }
   }
 
+  long getShareRate() {
+    return mShareRate;
+  }
+
+  /**
+   * 经过该限速器的数据总长度，单位为byte
+   */
+  long getTransferred() {
+    return mTransferred.get();
+  }
+
   /**
-   * Next 1 byte should do bandwidth limit.
+   * 读取或写入{@code len}长度的数据后调用，速度超出限制时，当前线程会等待到令牌足够为止
    */
-  public synchronized void limitNextBytes() {
-    this.limitNextBytes(1);
+  public void limitNextBytes(int len) {
+    long wait = acquire(len);
+    if (wait <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   /**
-   * Next len bytes should do bandwidth limit
+   * 预约{@code len}长度的令牌，不会阻塞当前线程，用于不能等待的非阻塞读写
+   *
+   * @return 令牌可用前需要等待的时间，单位为纳秒，调用者需要等待该时间后再继续读写
    */
-  public synchronized void limitNextBytes(int len) {
-    this.bytesWillBeSentOrReceive += len;
+  public long acquire(int len) {
+    if (len <= 0) {
+      return 0;
+    }
+    long now = mClock.nanoTime();
+    long wait = 0;
+    for (BandwidthLimiter limiter = this; limiter != null; limiter = limiter.mParent) {
+      limiter.mTransferred.addAndGet(len);
+      wait = Math.max(wait, limiter.reserve(len, now));
+    }
+    return wait;
+  }
 
-    /* We have sent CHUNK_LENGTH bytes */
-    while (!Thread.currentThread().isInterrupted() && this.bytesWillBeSentOrReceive > CHUNK_LENGTH) {
-      long nowTick = System.nanoTime();
-      long missedTime = this.timeCostPerChunk
-          - (nowTick - this.lastPieceSentOrReceiveTick);
-      if (missedTime > 0) {
-        try {
-          Thread.currentThread().sleep(missedTime / 1000000,
-              (int) (missedTime % 1000000));
-        } catch (InterruptedException e) {
-          e.printStackTrace();
-        }
+  /**
+   * 预约{@code len}长度的令牌
+   *
+   * @return 令牌可用前需要等待的时间，单位为纳秒
+   */
+  private long reserve(int len, long now) {
+    long rate = mRate, shareRate = mShareRate;
+    if (rate == 0 || (shareRate > 0 && shareRate < rate)) {
+      rate = shareRate;
+    }
+    if (rate == 0) {
+      return 0;
+    }
+    long cost = len * 1000000000L / rate;
+    while (true) {
+      long next = mNextFreeTime.get();
+      long end = Math.max(next, now - BURST_NANOS) + cost;
+      if (mNextFreeTime.compareAndSet(next, end)) {
+        return end - now;
       }
-      this.bytesWillBeSentOrReceive -= CHUNK_LENGTH;
-      this.lastPieceSentOrReceiveTick = nowTick
-          + (missedTime > 0 ? missedTime : 0);
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * 限速器使用的时钟，单位为纳秒，只用于计算时间间隔
+   */
+  interface Clock {
+    long nanoTime();
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import android.text.TextUtils;
+import com.arialyy.aria.util.ALog;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按优先级权重分配正在执行的任务的速度。
+ * 1、每个任务有一个优先级权重，默认为{@link #DEFAULT_WEIGHT}，所有任务权重相同时不做分配；
+ * 2、每隔{@link #INTERVAL}统计各任务的速度，按加权最大最小公平算法分配总速度：
+ * 用不完分配速度的任务只分到它需要的速度，剩余速度继续按权重分给其它任务；
+ * 3、总速度为全局限速，没有全局限速时按当前总速度估算，并预留{@link #PROBE_RATIO}的余量，让总速度可以继续增长；
+ * 4、组合任务的子任务共用组合任务的权重，组合任务分到的速度由正在执行的子任务平分；
+ * 5、修改权重后立即重新分配，不需要停止和重新启动任务。
+ */
+public class BandwidthScheduler {
+  private static final String TAG = "BandwidthScheduler";
+
+  /**
+   * 默认的优先级权重
+   */
+  public static final int DEFAULT_WEIGHT = 10;
+
+  /**
+   * 重新分配速度的时间间隔，单位为毫秒
+   */
+  private static final long INTERVAL = 500;
+
+  /**
+   * 没有全局限速时，估算总速度的余量
+   */
+  private static final float PROBE_RATIO = 0.2f;
+
+  /**
+   * 任务速度达到分配速度的该比例时，认为任务还需要更多速度。
+   * 估算的总速度包含余量，所有任务都达不到分配的速度，因此比例不能太高
+   */
+  private static final float SATURATE_RATIO = 0.7f;
+
+  /**
+   * 估算的总速度最小值，单位为byte/s
+   */
+  private static final long MIN_CAPACITY = 64 * 1024;
+
+  /**
+   * 每个限速器分到的最小速度，单位为byte/s，保证每个分配周期至少能读取一个默认大小的缓存。
+   * 任务刚启动或等待服务器响应时速度为0，如果只按速度分配，任务会分到极小的速度而无法恢复
+   */
+  private static final long MIN_SHARE = 8192 * 1000 / INTERVAL;
+
+  private static volatile BandwidthScheduler INSTANCE = null;
+
+  private final Map<String, Integer> mWeights = new ConcurrentHashMap<>();
+  private final Map<String, Flow> mFlows = new HashMap<>();
+  private TimerWheel.Timeout mFuture;
+  private long mLastTime;
+
+  public static BandwidthScheduler getInstance() {
+    if (INSTANCE == null) {
+      synchronized (BandwidthScheduler.class) {
+        if (INSTANCE == null) {
+          INSTANCE = new BandwidthScheduler();
+        }
+      }
+    }
+    return INSTANCE;
+  }
+
+  private BandwidthScheduler() {
+  }
+
+  /**
+   * 设置任务的优先级权重，任务正在执行时立即生效
+   *
+   * @param key 任务的key，组合任务为组合任务的key
+   * @param weight 优先级权重，必须大于0，权重越大分到的速度越多
+   */
+  public void setWeight(String key, int weight) {
+    if (TextUtils.isEmpty(key)) {
+      ALog.e(TAG, "设置权重失败，任务key为空");
+      return;
+    }
+    if (weight <= 0) {
+      ALog.e(TAG, String.format("设置权重失败，权重【%s】必须大于0", weight));
+      return;
+    }
+    mWeights.put(key, weight);
+    synchronized (this) {
+      if (!mFlows.containsKey(key)) {
+        return;
+      }
+    }
+    TimerWheel.getInstance().schedule(new Runnable() {
+      @Override public void run() {
+        schedule();
+      }
+    }, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 任务删除后移除任务的优先级权重，任务停止、完成或失败时保留权重，重新启动后继续生效
+   *
+   * @param key 任务的key，组合任务为组合任务的key
+   */
+  public void removeWeight(String key) {
+    if (key != null) {
+      mWeights.remove(key);
+    }
+  }
+
+  /**
+   * 获取任务的优先级权重
+   */
+  public int getWeight(String key) {
+    Integer weight = key == null ? null : mWeights.get(key);
+    return weight == null ? DEFAULT_WEIGHT : weight;
+  }
+
+  /**
+   * 添加需要分配速度的任务限速器
+   *
+   * @param key 任务的key，组合任务的子任务为组合任务的key
+   */
+  synchronized void register(String key, BandwidthLimiter limiter) {
+    Flow flow = mFlows.get(key);
+    if (flow == null) {
+      flow = new Flow();
+      mFlows.put(key, flow);
+    }
+    if (!flow.limiters.contains(limiter)) {
+      flow.limiters.add(limiter);
+      flow.lastTransferred += limiter.getTransferred();
+    }
+    if (mFuture == null) {
+      mLastTime = System.nanoTime();
+      mFuture = TimerWheel.getInstance().scheduleWithFixedDelay(new Runnable() {
+        @Override public void run() {
+          schedule();
+        }
+      }, INTERVAL, INTERVAL, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * 任务停止后移除任务限速器
+   */
+  synchronized void unRegister(String key, BandwidthLimiter limiter) {
+    limiter.setShareRate(0);
+    Flow flow = mFlows.get(key);
+    if (flow == null || !flow.limiters.remove(limiter)) {
+      return;
+    }
+    flow.lastTransferred -= limiter.getTransferred();
+    if (flow.limiters.isEmpty()) {
+      mFlows.remove(key);
+    }
+    if (mFlows.isEmpty() && mFuture != null) {
+      mFuture.cancel();
+      mFuture = null;
+    }
+  }
+
+  /**
+   * 统计各任务的速度并重新分配
+   */
+  private synchronized void schedule() {
+    long now = System.nanoTime();
+    long time = now - mLastTime;
+    if (mFlows.isEmpty() || time <= 0) {
+      return;
+    }
+    mLastTime = now;
+    List<Flow> flows = new ArrayList<>(mFlows.size());
+    long totalRate = 0;
+    boolean sameWeight = true;
+    int firstWeight = -1;
+    for (Map.Entry<String, Flow> entry : mFlows.entrySet()) {
+      Flow flow = entry.getValue();
+      long transferred = 0;
+      for (BandwidthLimiter limiter : flow.limiters) {
+        transferred += limiter.getTransferred();
+      }
+      flow.rate = (transferred - flow.lastTransferred) * 1000000000L / time;
+      flow.lastTransferred = transferred;
+      flow.weight = getWeight(entry.getKey());
+      if (firstWeight == -1) {
+        firstWeight = flow.weight;
+      } else if (firstWeight != flow.weight) {
+        sameWeight = false;
+      }
+      totalRate += flow.rate;
+      flows.add(flow);
+    }
+    if (sameWeight) {
+      for (Flow flow : flows) {
+        flow.apply(0);
+      }
+      return;
+    }
+    long capacity = BandwidthLimiter.getGlobalLimiter().getMaxRate() * 1024L;
+    if (capacity == 0) {
+      capacity = Math.max((long) (totalRate * (1 + PROBE_RATIO)), MIN_CAPACITY);
+    }
+    allocate(flows, capacity);
+    for (Flow flow : flows) {
+      flow.apply(flow.share);
+    }
+  }
+
+  /**
+   * 加权最大最小公平分配：每轮按权重分配剩余速度，需求小于分配速度的任务只分到需求速度，
+   * 剩余速度在下一轮分给其它任务，直到没有任务的需求小于分配速度
+   */
+  private void allocate(List<Flow> flows, long capacity) {
+    List<Flow> pending = new ArrayList<>(flows);
+    for (Flow flow : pending) {
+      // 速度为0或很低的任务可能刚启动或正在等待响应，不能按速度估算需求，按需要更多速度处理
+      flow.demand = flow.share == 0 || flow.rate < MIN_SHARE
+          || flow.rate >= flow.share * SATURATE_RATIO ? Long.MAX_VALUE
+          : (long) (flow.rate * (1 + PROBE_RATIO));
+    }
+    long remain = capacity;
+    boolean changed = true;
+    while (changed && !pending.isEmpty()) {
+      changed = false;
+      long totalWeight = 0;
+      for (Flow flow : pending) {
+        totalWeight += flow.weight;
+      }
+      long base = remain;
+      for (int i = pending.size() - 1; i >= 0; i--) {
+        Flow flow = pending.get(i);
+        long share = base * flow.weight / totalWeight;
+        if (flow.demand <= share) {
+          flow.share = Math.max(flow.demand, MIN_SHARE);
+          remain -= flow.share;
+          pending.remove(i);
+          changed = true;
+        }
+      }
+    }
+    if (pending.isEmpty()) {
+      return;
+    }
+    long totalWeight = 0;
+    for (Flow flow : pending) {
+      totalWeight += flow.weight;
+    }
+    for (Flow flow : pending) {
+      flow.share = Math.max(remain * flow.weight / totalWeight, MIN_SHARE);
+    }
+  }
+
+  /**
+   * 同一个任务（组合任务）的所有限速器
+   */
+  private static class Flow {
+    List<BandwidthLimiter> limiters = new ArrayList<>();
+    long lastTransferred;
+    long rate, demand, share;
+    int weight;
+
+    /**
+     * 分配的速度由任务的限速器平分，每个限速器不少于{@link #MIN_SHARE}
+     */
+    void apply(long share) {
+      if (share == 0) {
+        this.share = 0;
+      }
+      long each = share == 0 ? 0 : Math.max(share / limiters.size(), MIN_SHARE);
+      for (BandwidthLimiter limiter : limiters) {
+        limiter.setShareRate(each);
+      }
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+/**
+ * 免合并分块模式的完成位图。
+ * 文件按{@link #EXTENT_SIZE}划分为若干区块，区块的数据同步到存储设备后才会标记为完成，
+ * 位图保存在{@link TaskRecord#blockBitmap}中，恢复任务时以位图为准计算线程的开始位置。
+ */
+public class BlockBitmap {
+  /**
+   * 区块大小，免合并分块模式下线程区间的开始位置都按该值对齐
+   */
+  public static final long EXTENT_SIZE = 1024 * 1024;
+
+  private TaskRecord mRecord;
+  private long mFileLength;
+  private byte[] mBits;
+  private boolean isChanged = false;
+
+  BlockBitmap(TaskRecord record, long fileLength) {
+    mRecord = record;
+    mFileLength = fileLength;
+    int extentNum = (int) ((fileLength + EXTENT_SIZE - 1) / EXTENT_SIZE);
+    mBits = new byte[(extentNum + 7) / 8];
+    decode(record.blockBitmap);
+  }
+
+  /**
+   * 将位置向下对齐到区块的开始位置
+   */
+  static long alignDown(long location) {
+    return location / EXTENT_SIZE * EXTENT_SIZE;
+  }
+
+  /**
+   * 将位置向上对齐到区块的开始位置
+   */
+  static long alignUp(long location) {
+    return (location + EXTENT_SIZE - 1) / EXTENT_SIZE * EXTENT_SIZE;
+  }
+
+  /**
+   * 标记区间内完整的区块为已完成，只有部分数据在区间内的区块不会被标记
+   *
+   * @param start 已同步数据的开始位置
+   * @param end 已同步数据的结束位置
+   */
+  synchronized void mark(long start, long end) {
+    for (long i = alignUp(start) / EXTENT_SIZE; i * EXTENT_SIZE < end; i++) {
+      long extentEnd = Math.min((i + 1) * EXTENT_SIZE, mFileLength);
+      if (extentEnd > end) {
+        break;
+      }
+      if (!isSet(i)) {
+        mBits[(int) (i / 8)] |= 1 << (i % 8);
+        isChanged = true;
+      }
+    }
+  }
+
+  /**
+   * 获取区间内第一个未完成区块的开始位置
+   *
+   * @param start 区间开始位置
+   * @param end 区间结束位置
+   * @return 区间内的区块都已完成时返回-1
+   */
+  synchronized long getFirstIncomplete(long start, long end) {
+    for (long i = start / EXTENT_SIZE; i * EXTENT_SIZE < end; i++) {
+      if (!isSet(i)) {
+        return Math.max(i * EXTENT_SIZE, start);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * 将位图写入任务记录的字段，由调用者保存任务记录
+   *
+   * @return {@code true} 位图有变化，需要保存任务记录
+   */
+  synchronized boolean apply() {
+    if (!isChanged) {
+      return false;
+    }
+    isChanged = false;
+    mRecord.blockBitmap = encode();
+    return true;
+  }
+
+  /**
+   * 位图所属的任务记录
+   */
+  TaskRecord getRecord() {
+    return mRecord;
+  }
+
+  private boolean isSet(long index) {
+    return (mBits[(int) (index / 8)] & (1 << (index % 8))) != 0;
+  }
+
+  private String encode() {
+    StringBuilder sb = new StringBuilder(mBits.length * 2);
+    for (byte b : mBits) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * 解析保存的位图，长度和文件不匹配的位图视为无效
+   */
+  private void decode(String str) {
+    if (str == null || str.length() != mBits.length * 2) {
+      return;
+    }
+    for (int i = 0; i < mBits.length; i++) {
+      int high = Character.digit(str.charAt(i * 2), 16);
+      int low = Character.digit(str.charAt(i * 2 + 1), 16);
+      if (high < 0 || low < 0) {
+        mBits = new byte[mBits.length];
+        return;
+      }
+      mBits[i] = (byte) ((high << 4) | low);
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+/**
+ * 任务事件的回调线程
+ */
+public enum CallbackMod {
+  /**
+   * 在主线程回调，可以直接操作界面
+   */
+  MAIN("main"),
+
+  /**
+   * 在Aria的回调线程中回调，所有观察者共用一个线程，同一观察者的回调顺序和任务事件的顺序一致
+   */
+  BACKGROUND("background"),
+
+  /**
+   * 直接在调度线程中回调，延迟最低，回调中不能执行耗时操作，否则会阻塞所有任务的调度
+   */
+  DIRECT("direct");
+
+  public String tag;
+
+  public String getTag() {
+    return tag;
+  }
+
+  CallbackMod(String tag) {
+    this.tag = tag;
+  }
+
+  /**
+   * 根据配置的标识获取回调线程，无法识别的标识返回{@link #MAIN}
+   */
+  public static CallbackMod getMod(String tag) {
+    for (CallbackMod mod : values()) {
+      if (mod.tag.equalsIgnoreCase(tag)) {
+        return mod;
+      }
+    }
+    return MAIN;
+  }
+}
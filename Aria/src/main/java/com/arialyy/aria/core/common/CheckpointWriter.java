@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import android.os.Process;
+import com.arialyy.aria.orm.DbEntity;
+import com.arialyy.aria.util.ALog;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程共享的检查点写入器，所有任务的{@link ThreadRecord}、{@link TaskRecord}都通过这里保存。
+ * 1、线程定时保存的检查点只标记记录为待写入，由写入线程每隔{@link #FLUSH_INTERVAL}在同一个事务中批量写入；
+ * 2、同一条记录在两次写入之间多次提交只会写入一次，写入的是记录最新的位置；
+ * 3、停止、失败、完成时调用{@link #write(DbEntity...)}立即写入，并移除这些记录未写入的检查点。
+ */
+public class CheckpointWriter {
+  private static final String TAG = "CheckpointWriter";
+
+  /**
+   * 批量写入的时间间隔，单位为毫秒
+   */
+  private static final long FLUSH_INTERVAL = 1000;
+
+  private static volatile CheckpointWriter INSTANCE = null;
+
+  /**
+   * 待写入的记录，key和value都是记录本身，使用IdentityHashMap保证同一个对象只保存一次
+   */
+  private final Map<DbEntity, DbEntity> mDirty = new IdentityHashMap<>();
+  private final ScheduledExecutorService mExecutor;
+  private boolean isScheduled = false;
+
+  public static CheckpointWriter getInstance() {
+    if (INSTANCE == null) {
+      synchronized (CheckpointWriter.class) {
+        if (INSTANCE == null) {
+          INSTANCE = new CheckpointWriter();
+        }
+      }
+    }
+    return INSTANCE;
+  }
+
+  private CheckpointWriter() {
+    mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override public Thread newThread(final Runnable r) {
+        Thread thread = new Thread(new Runnable() {
+          @Override public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+          }
+        }, "Aria-Checkpoint");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * 提交检查点，记录会在下一次批量写入时保存
+   */
+  public void submit(DbEntity... records) {
+    synchronized (mDirty) {
+      for (DbEntity record : records) {
+        if (record != null) {
+          mDirty.put(record, record);
+        }
+      }
+      if (isScheduled || mDirty.isEmpty()) {
+        return;
+      }
+      isScheduled = true;
+    }
+    mExecutor.schedule(new Runnable() {
+      @Override public void run() {
+        flush();
+      }
+    }, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 在当前线程中立即写入记录，多条记录在同一个事务中写入
+   */
+  public void write(DbEntity... records) {
+    List<DbEntity> list = new ArrayList<>(records.length);
+    synchronized (mDirty) {
+      for (DbEntity record : records) {
+        if (record != null) {
+          mDirty.remove(record);
+          list.add(record);
+        }
+      }
+    }
+    update(list);
+  }
+
+  /**
+   * 立即写入所有待写入的记录
+   */
+  public void flush() {
+    List<DbEntity> list;
+    synchronized (mDirty) {
+      isScheduled = false;
+      if (mDirty.isEmpty()) {
+        return;
+      }
+      list = new ArrayList<>(mDirty.keySet());
+      mDirty.clear();
+    }
+    update(list);
+  }
+
+  private void update(List<DbEntity> list) {
+    if (list.isEmpty()) {
+      return;
+    }
+    try {
+      if (list.size() == 1) {
+        list.get(0).update();
+      } else {
+        DbEntity.updateManyData(list);
+      }
+    } catch (Exception e) {
+      ALog.e(TAG, String.format("保存记录失败，记录数：%s", list.size()));
+      e.printStackTrace();
+    }
+  }
+}
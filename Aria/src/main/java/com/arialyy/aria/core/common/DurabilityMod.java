@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+/**
+ * 下载文件的写入持久化模式
+ */
+public enum DurabilityMod {
+  /**
+   * 严格模式，使用"rwd"打开文件，每次写入都同步到存储设备，和旧版本的行为一致
+   */
+  STRICT("strict"),
+
+  /**
+   * 检查点模式，使用"rw"打开文件，只有保存线程记录时才将数据同步到存储设备
+   */
+  CHECKPOINT("checkpoint"),
+
+  /**
+   * 宽松模式，使用"rw"打开文件，只有线程区间完成时才将数据同步到存储设备，
+   * 中途停止或异常退出时，需要从上一次同步的位置重新下载
+   */
+  RELAXED("relaxed");
+
+  public String tag;
+
+  public String getTag() {
+    return tag;
+  }
+
+  DurabilityMod(String tag) {
+    this.tag = tag;
+  }
+
+  /**
+   * 打开下载文件时使用的模式
+   */
+  public String getFileMode() {
+    return this == STRICT ? "rwd" : "rw";
+  }
+
+  /**
+   * 根据配置的标识获取持久化模式，无法识别的标识返回{@link #STRICT}
+   */
+  public static DurabilityMod getMod(String tag) {
+    for (DurabilityMod mod : values()) {
+      if (mod.tag.equalsIgnoreCase(tag)) {
+        return mod;
+      }
+    }
+    return STRICT;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+/**
+ * 传输线程池类型
+ */
+public enum ExecutorMod {
+  /**
+   * 弹性线程池，线程数按需增长，空闲线程超时后回收；
+   * 线程数达到上限后，启动线程会直接失败，不会排队等待
+   */
+  ELASTIC("elastic"),
+
+  /**
+   * 虚拟线程，每个线程任务使用一个虚拟线程，只在支持虚拟线程的JVM（21及以上）中有效，
+   * 不支持虚拟线程时使用{@link #ELASTIC}
+   */
+  VIRTUAL("virtual");
+
+  public String tag;
+
+  public String getTag() {
+    return tag;
+  }
+
+  ExecutorMod(String tag) {
+    this.tag = tag;
+  }
+
+  /**
+   * 根据配置的标识获取线程池类型，无法识别的标识返回{@link #ELASTIC}
+   */
+  public static ExecutorMod getMod(String tag) {
+    for (ExecutorMod mod : values()) {
+      if (mod.tag.equalsIgnoreCase(tag)) {
+        return mod;
+      }
+    }
+    return ELASTIC;
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import com.arialyy.annotations.TaskEnum;
+import com.arialyy.aria.core.scheduler.ISchedulerListener;
+import java.util.Set;
+
+/**
+ * 代理索引，配置了{@code aria.proxyIndex}参数的模块由AriaCompiler在编译期生成实现类，
+ * 通过{@link com.arialyy.aria.core.Aria#addProxyIndex(IProxyIndex)}注册后，
+ * 注册观察者时通过索引直接获取代理类型和创建代理，不需要类加载器查找和反射。
+ */
+public interface IProxyIndex {
+
+  /**
+   * 获取观察者类拥有的代理类型
+   *
+   * @param className 观察者的全类名
+   * @return 观察者不在索引中时返回null
+   */
+  Set<TaskEnum> getProxyTypes(String className);
+
+  /**
+   * 创建观察者对应类型的代理
+   *
+   * @param className 观察者的全类名
+   * @return 观察者不在索引中时返回null
+   */
+  ISchedulerListener newProxy(String className, TaskEnum taskEnum);
+}
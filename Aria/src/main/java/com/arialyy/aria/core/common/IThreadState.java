@@ -25,8 +25,12 @@ public interface IThreadState extends Handler.Callback {
   int STATE_FAIL = 0x02;
   int STATE_CANCEL = 0x03;
   int STATE_COMPLETE = 0x04;
+  /**
+   * 子线程的进度通过{@link ProgressCounter}直接累加，不再发送该消息
+   */
   int STATE_RUNNING = 0x05;
   int STATE_UPDATE_PROGRESS = 0x06;
+  int STATE_ADD_THREAD = 0x07;
   String KEY_RETRY = "KEY_RETRY";
   String KEY_ERROR_INFO = "KEY_ERROR_INFO";
 
@@ -32,6 +32,9 @@ public abstract class NormalFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER
   private Handler mStateHandler;
   protected int mTotalThreadNum; //总线程数
   private int mStartThreadNum; //启动的线程数
+  private RangeScheduler mRangeScheduler; //线程区间调度器
+  private ThreadNumController mThreadNumController; //自适应线程数控制器
+  private BlockBitmap mBlockBitmap; //免合并分块任务的区块完成位图
 
   protected NormalFileer(IEventListener listener, TASK_WRAPPER wrapper) {
     super(listener, wrapper);
@@ -56,17 +59,14 @@ public abstract class NormalFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER
    * @param maxSpeed 单位为：kb
    */
   protected void setMaxSpeed(int maxSpeed) {
-    for (int i = 0; i < getTaskList().size(); i++) {
-      AbsThreadTask task = getTaskList().valueAt(i);
-      if (task != null && mStartThreadNum > 0) {
-        task.setMaxSpeed(maxSpeed / mStartThreadNum);
-      }
-    }
+    getBandwidthLimiter().setMaxRate(maxSpeed);
   }
 
   @Override public void onDestroy() {
     super.onDestroy();
     EventMsgUtil.getDefault().unRegister(this);
+    // 任务停止或删除后不再调整线程数，重新启动任务时会创建新的控制器
+    mThreadNumController = null;
   }
 
   @Override protected void onPostPre() {
@@ -107,12 +107,15 @@ public abstract class NormalFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER
     config.taskWrapper = mTaskWrapper;
     config.record = record;
     config.stateHandler = mStateHandler;
+    config.rangeScheduler = mRangeScheduler;
+    config.blockBitmap = mBlockBitmap;
+    config.progressCounter = mStateManager.getProgressCounter();
+    config.bandwidthLimiter = getBandwidthLimiter();
     return selectThreadTask(config);
   }
 
   private void handleBreakpoint() {
     long fileLength = mEntity.getFileSize();
-    long blockSize = fileLength / mTotalThreadNum;
     long currentProgress = 0;
 
     mRecord.fileLength = fileLength;
@@ -126,12 +129,19 @@ public abstract class NormalFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER
       }
     }
 
+    // 不分块的多线程任务，线程完成自己的区间后可以继续拆分其它线程的区间
+    mRangeScheduler =
+        !mRecord.isBlock && !mRecord.isOpenDynamicFile && mStartThreadNum > 1 ? new RangeScheduler(
+            mRecord) : null;
+    mBlockBitmap = mRecord.isMergeFreeBlock ? new BlockBitmap(mRecord, fileLength) : null;
+
     for (int i = 0; i < mTotalThreadNum; i++) {
-      long startL = i * blockSize, endL = (i + 1) * blockSize;
       ThreadRecord tr = mRecord.threadRecords.get(i);
+      // 区间可能被拆分过，区间的开始位置需要通过结束位置和区间长度计算
+      long startL = tr.endLocation - tr.blockLen;
 
       if (tr.isComplete) {//该线程已经完成
-        currentProgress += endL - startL;
+        currentProgress += tr.blockLen;
         ALog.d(TAG, String.format("任务【%s】线程__%s__已完成", mTaskWrapper.getEntity().getFileName(), i));
         mStateHandler.obtainMessage(IThreadState.STATE_COMPLETE).sendToTarget();
         if (mStateManager.isComplete()) {
@@ -145,7 +155,7 @@ public abstract class NormalFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER
       //如果有记录，则恢复任务
       long r = tr.startLocation;
       //记录的位置需要在线程区间中
-      if (startL < r && r <= (i == (mTotalThreadNum - 1) ? fileLength : endL)) {
+      if (startL < r && r <= tr.endLocation) {
         currentProgress += r - startL;
       }
       ALog.d(TAG, String.format("任务【%s】线程__%s__恢复任务", mEntity.getFileName(), i));
@@ -153,6 +163,9 @@ public abstract class NormalFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER
       AbsThreadTask task = createSingThreadTask(tr, mStartThreadNum);
       if (task == null) return;
       getTaskList().put(tr.threadId, task);
+      if (mRangeScheduler != null) {
+        mRangeScheduler.addTask(task);
+      }
     }
     if (currentProgress != 0 && currentProgress != mEntity.getCurrentProgress()) {
       ALog.d(TAG, String.format("进度修正，当前进度：%s", currentProgress));
@@ -160,9 +173,61 @@ public abstract class NormalFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER
     }
     mStateHandler.obtainMessage(IThreadState.STATE_UPDATE_PROGRESS, currentProgress)
         .sendToTarget();
+    if (mRangeScheduler != null && isAdaptiveThread()) {
+      mThreadNumController = new ThreadNumController(this, mRangeScheduler, mTaskWrapper,
+          getMaxThreadNum());
+    }
     startThreadTask();
   }
 
+  /**
+   * 是否使用自适应线程数
+   */
+  protected boolean isAdaptiveThread() {
+    return false;
+  }
+
+  /**
+   * 自适应线程数模式下的最大线程数
+   */
+  protected int getMaxThreadNum() {
+    return mTotalThreadNum;
+  }
+
+  @Override protected void onProgress(long currentProgress) {
+    super.onProgress(currentProgress);
+    ThreadNumController controller = mThreadNumController;
+    if (controller != null) {
+      controller.sample(currentProgress);
+    }
+  }
+
+  /**
+   * 自适应线程数模式下增加一个线程，新线程从剩余下载时间最长的线程中拆分区间
+   *
+   * @return {@code true} 增加线程成功
+   */
+  synchronized boolean addThreadTask() {
+    if (isBreak() || mRangeScheduler == null || ThreadTaskManager.getInstance().isFull()) {
+      return false;
+    }
+    ThreadRecord tr = mRangeScheduler.split(null);
+    if (tr == null) {
+      return false;
+    }
+    mStartThreadNum++;
+    AbsThreadTask task = createSingThreadTask(tr, mStartThreadNum);
+    if (task == null) {
+      return false;
+    }
+    getTaskList().put(tr.threadId, task);
+    mRangeScheduler.addTask(task);
+    // 需要先增加状态管理器中的线程数，再启动线程
+    mStateHandler.obtainMessage(IThreadState.STATE_ADD_THREAD).sendToTarget();
+    ThreadTaskManager.getInstance().startThread(getTaskKey(), task);
+    return true;
+  }
+
   /**
    * 启动单线程任务
    */
@@ -177,7 +242,7 @@ public abstract class NormalFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER
     }
 
     for (int i = 0; i < getTaskList().size(); i++) {
-      ThreadTaskManager.getInstance().startThread(mTaskWrapper.getKey(), getTaskList().valueAt(i));
+      ThreadTaskManager.getInstance().startThread(getTaskKey(), getTaskList().valueAt(i));
     }
   }
 
@@ -193,7 +258,7 @@ public abstract class NormalFileer<ENTITY extends AbsNormalEntity, TASK_WRAPPER
     AbsThreadTask task = createSingThreadTask(mRecord.threadRecords.get(0), 1);
     if (task == null) return;
     getTaskList().put(0, task);
-    ThreadTaskManager.getInstance().startThread(mTaskWrapper.getKey(), task);
+    ThreadTaskManager.getInstance().startThread(getTaskKey(), task);
     mListener.onStart(0);
   }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 任务进度计数器，子线程读取数据时直接累加进度，不再给状态处理器发送消息，定时器获取进度时再汇总。
+ * 计数按线程分散到多个计数单元中，多个线程同时累加时基本不会竞争同一个计数单元。
+ */
+public class ProgressCounter {
+  /**
+   * 每个计数单元占用64字节，避免不同计数单元位于同一个缓存行
+   */
+  private static final int PAD = 8;
+
+  private final AtomicLongArray mCells;
+  private final int mMask;
+  private volatile long mBase;
+
+  public ProgressCounter() {
+    int num = 1;
+    while (num < Runtime.getRuntime().availableProcessors() * 2) {
+      num <<= 1;
+    }
+    mMask = num - 1;
+    mCells = new AtomicLongArray(num * PAD);
+  }
+
+  /**
+   * 累加进度，可以在任意线程调用
+   *
+   * @param len 增加的长度，回退进度时为负数
+   */
+  public void add(long len) {
+    mCells.getAndAdd((int) (Thread.currentThread().getId() & mMask) * PAD, len);
+  }
+
+  /**
+   * 获取当前进度
+   */
+  public long get() {
+    return mBase + sumCells();
+  }
+
+  /**
+   * 设置当前进度，用于恢复任务时设置已下载的长度
+   */
+  public synchronized void set(long progress) {
+    mBase = progress - sumCells();
+  }
+
+  private long sumCells() {
+    long sum = 0;
+    for (int i = 0, len = mCells.length(); i < len; i += PAD) {
+      sum += mCells.get(i);
+    }
+    return sum;
+  }
+}
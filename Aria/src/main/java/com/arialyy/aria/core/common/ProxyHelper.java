@@ -16,16 +16,21 @@
 package com.arialyy.aria.core.common;
 
 import com.arialyy.annotations.TaskEnum;
+import com.arialyy.aria.core.scheduler.ISchedulerListener;
+import com.arialyy.aria.util.ALog;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Created by Aria.Lao on 2017/7/10.
  * 代理参数获取
  */
 public class ProxyHelper {
+  private static final String TAG = "ProxyHelper";
   /**
    * 普通下载任务类型
    */
@@ -50,9 +55,75 @@ public class ProxyHelper {
 
   public static volatile ProxyHelper INSTANCE = null;
 
+  /**
+   * 各模块编译期生成并注册的代理索引
+   */
+  private final List<IProxyIndex> mIndexes = new CopyOnWriteArrayList<>();
+
   private ProxyHelper() {
   }
 
+  /**
+   * 注册代理索引，同一个索引只注册一次
+   */
+  public void addIndex(IProxyIndex index) {
+    if (index == null) {
+      ALog.e(TAG, "代理索引为null");
+      return;
+    }
+    for (IProxyIndex temp : mIndexes) {
+      if (temp.getClass() == index.getClass()) {
+        return;
+      }
+    }
+    mIndexes.add(index);
+    // 清除注册索引前通过类加载器查找到的代理类型
+    mProxyCache.clear();
+  }
+
+  /**
+   * 从已注册的索引中获取观察者的代理类型
+   *
+   * @return 观察者不在任何索引中时返回null
+   */
+  private Set<TaskEnum> getIndexProxyTypes(String className) {
+    for (IProxyIndex index : mIndexes) {
+      Set<TaskEnum> types = index.getProxyTypes(className);
+      if (types != null) {
+        return types;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 创建观察者的代理，优先使用代理索引，观察者不在索引中时通过反射创建
+   *
+   * @param clazz 观察者的类
+   * @param taskEnum 代理类型
+   * @return 没有对应的代理时返回null
+   */
+  public ISchedulerListener newProxy(Class clazz, TaskEnum taskEnum) {
+    String className = clazz.getName();
+    for (IProxyIndex index : mIndexes) {
+      ISchedulerListener listener = index.newProxy(className, taskEnum);
+      if (listener != null) {
+        return listener;
+      }
+    }
+    String proxyClassName = className + taskEnum.proxySuffix;
+    try {
+      return (ISchedulerListener) Class.forName(proxyClassName).newInstance();
+    } catch (ClassNotFoundException e) {
+      ALog.e(TAG, e.getMessage());
+    } catch (InstantiationException e) {
+      ALog.e(TAG, e.getMessage());
+    } catch (IllegalAccessException e) {
+      ALog.e(TAG, e.getMessage());
+    }
+    return null;
+  }
+
   public static ProxyHelper getInstance() {
     if (INSTANCE == null) {
       synchronized (ProxyHelper.class) {
@@ -75,6 +146,14 @@ public class ProxyHelper {
       return result;
     }
     result = new HashSet<>();
+    Set<TaskEnum> types = getIndexProxyTypes(className);
+    if (types != null) {
+      for (TaskEnum type : types) {
+        result.add(getProxyType(type));
+      }
+      mProxyCache.put(className, result);
+      return result;
+    }
     try {
       if (getClass().getClassLoader()
           .loadClass(className.concat(TaskEnum.DOWNLOAD_GROUP.proxySuffix))
@@ -126,4 +205,20 @@ public class ProxyHelper {
     }
     return result;
   }
+
+  private int getProxyType(TaskEnum taskEnum) {
+    switch (taskEnum) {
+      case DOWNLOAD_GROUP:
+        return PROXY_TYPE_DOWNLOAD_GROUP;
+      case UPLOAD:
+        return PROXY_TYPE_UPLOAD;
+      case M3U8_PEER:
+        return PROXY_TYPE_M3U8_PEER;
+      case DOWNLOAD_GROUP_SUB:
+        return PROXY_TYPE_DOWNLOAD_GROUP_SUB;
+      case DOWNLOAD:
+      default:
+        return PROXY_TYPE_DOWNLOAD;
+    }
+  }
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import com.arialyy.aria.util.ALog;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 线程区间调度器，只用于不分块的多线程任务。
+ * 线程完成自己的区间后，会从剩余下载时间最长的线程中拆分出后半段区间继续下载，
+ * 拆分后的区间会保存为新的{@link ThreadRecord}，保证断点续传依然有效。
+ */
+public class RangeScheduler {
+  private final String TAG = "RangeScheduler";
+
+  /**
+   * 剩余区间小于该值时不再拆分
+   */
+  private static final long MIN_STEAL_LEN = 512 * 1024;
+
+  private TaskRecord mTaskRecord;
+  private final List<RangeState> mStates = new ArrayList<>();
+  private volatile ThreadNumController mController;
+
+  RangeScheduler(TaskRecord record) {
+    mTaskRecord = record;
+  }
+
+  /**
+   * 添加需要调度的线程
+   */
+  synchronized void addTask(AbsThreadTask task) {
+    mStates.add(new RangeState(task));
+  }
+
+  /**
+   * 正在执行的线程数
+   */
+  synchronized int getThreadNum() {
+    return mStates.size();
+  }
+
+  void setThreadNumController(ThreadNumController controller) {
+    mController = controller;
+  }
+
+  /**
+   * 服务器繁忙，自适应线程数模式下减少线程数
+   *
+   * @param code 服务器返回码
+   */
+  void onServerBusy(int code) {
+    ThreadNumController controller = mController;
+    if (controller != null) {
+      controller.onServerBusy(code);
+    }
+  }
+
+  /**
+   * 从剩余下载时间最长的线程中拆分出后半段区间，交给已完成区间的线程。
+   * 没有可拆分的区间或线程数超出自适应线程数时，该线程结束
+   *
+   * @param idleTask 已完成区间的线程
+   * @return 拆分出的新区间，没有新区间时返回null
+   */
+  ThreadRecord steal(AbsThreadTask idleTask) {
+    RangeState idle = null;
+    synchronized (this) {
+      for (RangeState state : mStates) {
+        if (state.task == idleTask) {
+          idle = state;
+          break;
+        }
+      }
+      if (idle == null) {
+        return null;
+      }
+      // 线程数超出自适应线程数，该线程结束，判断和移除需要在同一个锁中完成
+      if (mController != null && !mController.allowNextRange(mStates.size())) {
+        mStates.remove(idle);
+        return null;
+      }
+    }
+    ThreadRecord record = split(idleTask);
+    synchronized (this) {
+      if (record == null) {
+        mStates.remove(idle);
+      } else {
+        idle.reset(record.startLocation);
+      }
+    }
+    return record;
+  }
+
+  /**
+   * 从剩余下载时间最长的线程中拆分出后半段区间
+   *
+   * @param exclude 不参与拆分的线程
+   * @return 拆分出的新区间，没有可拆分的区间时返回null
+   */
+  synchronized ThreadRecord split(AbsThreadTask exclude) {
+    RangeState victim = null;
+    double maxRemainTime = -1;
+    long now = System.currentTimeMillis();
+    for (RangeState state : mStates) {
+      if (state.task == exclude) {
+        continue;
+      }
+      ThreadRecord record = state.task.getConfig().record;
+      if (record.isComplete || state.task.isBreak()) {
+        continue;
+      }
+      long remain = record.endLocation - state.task.getCurrentLocation();
+      if (remain < MIN_STEAL_LEN * 2) {
+        continue;
+      }
+      double remainTime = state.getRemainTime(remain, now);
+      if (remainTime > maxRemainTime) {
+        maxRemainTime = remainTime;
+        victim = state;
+      }
+    }
+    if (victim == null) {
+      return null;
+    }
+
+    ThreadRecord victimRecord = victim.task.getConfig().record;
+    long current = victim.task.getCurrentLocation();
+    long end = victimRecord.endLocation;
+    long mid = current + (end - current) / 2;
+    if (mTaskRecord.isMergeFreeBlock) {
+      // 免合并分块任务的区间需要按区块对齐
+      mid = BlockBitmap.alignUp(mid);
+      if (mid >= end) {
+        return null;
+      }
+    }
+
+    ThreadRecord newRecord = new ThreadRecord();
+    newRecord.taskKey = victimRecord.taskKey;
+    newRecord.threadId = nextThreadId();
+    newRecord.threadType = victimRecord.threadType;
+    newRecord.startLocation = mid;
+    newRecord.endLocation = end;
+    newRecord.blockLen = end - mid;
+    newRecord.isComplete = false;
+
+    victimRecord.endLocation = mid;
+    victimRecord.blockLen -= end - mid;
+    mTaskRecord.threadRecords.add(newRecord);
+    ALog.d(TAG, String.format("拆分线程__%s__的区间，新区间【%s - %s】", victimRecord.threadId, mid, end));
+    // 先保存新区间，再缩短旧区间；中途异常退出时只会出现重复下载，不会丢失区间。
+    // 保存需要和修改在同一个锁中完成，否则同时拆分同一个区间时，后拆分的旧区间可能先于先拆分的新区间保存
+    newRecord.save();
+    victimRecord.update();
+    return newRecord;
+  }
+
+  /**
+   * 新区间的线程id
+   */
+  private int nextThreadId() {
+    int id = 0;
+    for (ThreadRecord tr : mTaskRecord.threadRecords) {
+      if (tr.threadId >= id) {
+        id = tr.threadId + 1;
+      }
+    }
+    return id;
+  }
+
+  private static class RangeState {
+    AbsThreadTask task;
+    long startTime;
+    long startLocation;
+
+    RangeState(AbsThreadTask task) {
+      this.task = task;
+      reset(task.getConfig().record.startLocation);
+    }
+
+    void reset(long location) {
+      startTime = System.currentTimeMillis();
+      startLocation = location;
+    }
+
+    /**
+     * 按区间开始以来的平均速度估算剩余时间，没有速度的线程认为剩余时间无穷大
+     */
+    double getRemainTime(long remain, long now) {
+      long len = task.getCurrentLocation() - startLocation;
+      long time = now - startTime;
+      if (len <= 0 || time <= 0) {
+        return Double.MAX_VALUE;
+      }
+      return remain / (len / (double) time);
+    }
+  }
+}
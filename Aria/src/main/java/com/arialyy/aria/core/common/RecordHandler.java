@@ -16,6 +16,7 @@
 package com.arialyy.aria.core.common;
 
 import com.arialyy.aria.core.config.Configuration;
+import com.arialyy.aria.core.config.DownloadConfig;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.download.m3u8.BaseM3U8Loader;
@@ -94,7 +95,9 @@ public class RecordHandler {
         } else if (mTaskWrapper.getRequestType() == ITaskWrapper.M3U8_LIVE) {
           ALog.i(TAG, "直播下载不处理历史记录");
         } else {
-          if (mTaskRecord.isBlock) {
+          if (mTaskRecord.isMergeFreeBlock) {
+            handleMergeFreeBlockRecord();
+          } else if (mTaskRecord.isBlock) {
             handleBlockRecord();
           } else if (!mTaskWrapper.isSupportBP()) {
             handleNoSupportBPRecord();
@@ -169,6 +172,32 @@ public class RecordHandler {
     }
   }
 
+  /**
+   * 处理免合并的分块任务，以区块完成位图为准修正线程的开始位置
+   */
+  private void handleMergeFreeBlockRecord() {
+    File file = new File(mTaskRecord.filePath);
+    if (!file.exists()) {
+      ALog.w(TAG, String.format("文件【%s】不存在，重新分配线程区间", mTaskRecord.filePath));
+      DbEntity.deleteData(ThreadRecord.class, "taskKey=?", mTaskRecord.filePath);
+      mTaskRecord.threadRecords.clear();
+      initRecord(false);
+      return;
+    }
+    BlockBitmap bitmap = new BlockBitmap(mTaskRecord, mEntity.getFileSize());
+    for (ThreadRecord tr : mTaskRecord.threadRecords) {
+      long start = bitmap.getFirstIncomplete(tr.endLocation - tr.blockLen, tr.endLocation);
+      if (start == -1) {
+        tr.isComplete = true;
+      } else if (tr.isComplete || tr.startLocation != start) {
+        ALog.i(TAG, String.format("修正线程__%s__的进度记录为：%s", tr.threadId, start));
+        tr.isComplete = false;
+        tr.startLocation = start;
+      }
+    }
+    mTaskWrapper.setNewTask(false);
+  }
+
   /**
    * 处理单线程的任务的记录
    */
@@ -324,6 +353,14 @@ public class RecordHandler {
       return;
     }
     long blockSize = mEntity.getFileSize() / mTaskRecord.threadNum;
+    if (mTaskRecord.isMergeFreeBlock) {
+      // 免合并分块任务的线程区间按区块对齐
+      long extentNum = (mEntity.getFileSize() + BlockBitmap.EXTENT_SIZE - 1) / BlockBitmap.EXTENT_SIZE;
+      mTaskRecord.threadNum = (int) Math.min(mTaskRecord.threadNum, extentNum);
+      blockSize = Math.max(BlockBitmap.alignDown(mEntity.getFileSize() / mTaskRecord.threadNum),
+          BlockBitmap.EXTENT_SIZE);
+      mTaskRecord.blockBitmap = null;
+    }
     // 处理线程区间记录
     for (int i = 0; i < mTaskRecord.threadNum; i++) {
       long startL = i * blockSize, endL = (i + 1) * blockSize;
@@ -344,7 +381,8 @@ public class RecordHandler {
           endL = mEntity.getFileSize();
         }
         tr.endLocation = endL;
-        tr.blockLen = RecordUtil.getBlockLen(mEntity.getFileSize(), i, mTaskRecord.threadNum);
+        tr.blockLen = mTaskRecord.isMergeFreeBlock ? endL - startL
+            : RecordUtil.getBlockLen(mEntity.getFileSize(), i, mTaskRecord.threadNum);
       }
       mTaskRecord.threadRecords.add(tr);
     }
@@ -372,7 +410,13 @@ public class RecordHandler {
       record.bandWidth = ((DTaskWrapper)mTaskWrapper).asM3U8().getBandWidth();
     } else {
       if (getRecordType() == TYPE_DOWNLOAD) {
-        record.isBlock = threadNum > 1 && Configuration.getInstance().downloadCfg.isUseBlock();
+        DownloadConfig config = Configuration.getInstance().downloadCfg;
+        record.isBlock = threadNum > 1 && config.isUseBlock();
+        // 免合并的分块任务直接写入目标文件，按不分块的多线程任务处理
+        if (record.isBlock && config.isUseMergeFreeBlock()) {
+          record.isBlock = false;
+          record.isMergeFreeBlock = true;
+        }
         // 线程数为1，或者使用了分块，则认为是使用动态长度文件
         record.isOpenDynamicFile = threadNum == 1 || record.isBlock;
       } else {
@@ -443,11 +487,14 @@ public class RecordHandler {
       if (!mTaskWrapper.isSupportBP() || mTaskWrapper.asHttp().isChunked()) {
         return 1;
       }
-      int threadNum = Configuration.getInstance().downloadCfg.getThreadNum();
-      return mEntity.getFileSize() <= SUB_LEN
-          || mEntity.isGroupChild()
-          || threadNum == 1
-          ? 1
+      DownloadConfig config = Configuration.getInstance().downloadCfg;
+      int threadNum = config.getThreadNum();
+      if (mEntity.getFileSize() <= SUB_LEN || mEntity.isGroupChild() || threadNum == 1) {
+        return 1;
+      }
+      // 自适应线程数以少量线程启动，之后根据速度增加线程
+      return config.isUseAdaptiveThread() && !config.isUseBlock()
+          ? Math.min(ThreadNumController.START_THREAD_NUM, threadNum)
           : threadNum;
     } else {
       return 1;
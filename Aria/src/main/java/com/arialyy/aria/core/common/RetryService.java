@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import com.arialyy.aria.util.ALog;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程共享的重试服务，任务和线程区间的失败重试都通过这里调度。
+ * 1、重试间隔按失败次数指数增长，并加入随机抖动，避免大量任务在同一时刻一起重试；
+ * 2、每个主机一个熔断器，主机连续失败{@link #FAIL_THRESHOLD}次后熔断，熔断期间该主机的重试会被挂起，
+ * 冷却结束后放行一个重试作为探测，探测成功后挂起的重试分批放行，每批的数量逐步增加；
+ * 探测失败则重新熔断，冷却时间加倍。
+ */
+public class RetryService {
+  private static final String TAG = "RetryService";
+
+  /**
+   * 重试间隔的上限，单位为毫秒
+   */
+  private static final long MAX_DELAY = 60 * 1000;
+
+  /**
+   * 主机连续失败多少次后熔断
+   */
+  private static final int FAIL_THRESHOLD = 5;
+
+  /**
+   * 首次熔断的冷却时间，单位为毫秒
+   */
+  private static final long BASE_COOLDOWN = 5 * 1000;
+
+  /**
+   * 冷却时间的上限，单位为毫秒
+   */
+  private static final long MAX_COOLDOWN = 2 * 60 * 1000;
+
+  /**
+   * 探测成功后，挂起的重试每批放行的间隔，单位为毫秒
+   */
+  private static final long RELEASE_INTERVAL = 500;
+
+  private static volatile RetryService INSTANCE = null;
+
+  private final ConcurrentHashMap<String, HostBreaker> mBreakers = new ConcurrentHashMap<>();
+  private final Random mRandom = new Random();
+
+  public static RetryService getInstance() {
+    if (INSTANCE == null) {
+      synchronized (RetryService.class) {
+        if (INSTANCE == null) {
+          INSTANCE = new RetryService();
+        }
+      }
+    }
+    return INSTANCE;
+  }
+
+  private RetryService() {
+  }
+
+  /**
+   * 计算重试间隔，间隔的上限为{@code interval * 2^failNum}，实际间隔在上限的一半到上限之间随机
+   *
+   * @param failNum 已经失败的次数，从0开始
+   * @param interval 基础重试间隔，单位为毫秒
+   */
+  public long getDelay(int failNum, long interval) {
+    long cap = interval;
+    for (int i = 0; i < failNum && cap < MAX_DELAY; i++) {
+      cap <<= 1;
+    }
+    cap = Math.min(Math.max(cap, 1), MAX_DELAY);
+    long half = cap >> 1;
+    synchronized (mRandom) {
+      return half + (long) (mRandom.nextDouble() * (cap - half));
+    }
+  }
+
+  /**
+   * 调度一次重试，主机熔断时重试会被挂起，直到主机恢复
+   *
+   * @param url 重试的地址，用于区分主机，无法解析出主机时不使用熔断器
+   * @param failNum 已经失败的次数，从0开始
+   * @param interval 基础重试间隔，单位为毫秒
+   * @param retry 重试操作，会在{@link TimerWheel}的执行线程中运行，不能执行耗时操作
+   */
+  public void retry(String url, int failNum, long interval, Runnable retry) {
+    long delay = getDelay(failNum, interval);
+    HostBreaker breaker = getBreaker(url);
+    if (breaker == null || breaker.admit(retry)) {
+      TimerWheel.getInstance().schedule(retry, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * 主机请求成功，连接建立并读到数据后调用
+   */
+  public void onSuccess(String url) {
+    HostBreaker breaker = getBreaker(url);
+    if (breaker != null) {
+      breaker.onSuccess();
+    }
+  }
+
+  /**
+   * 主机请求失败，只有可以重试的失败才需要调用，文件错误等和主机无关的失败不计入
+   */
+  public void onFailure(String url) {
+    HostBreaker breaker = getBreaker(url);
+    if (breaker != null) {
+      breaker.onFailure();
+    }
+  }
+
+  /**
+   * 主机是否处于熔断状态
+   */
+  public boolean isOpen(String url) {
+    HostBreaker breaker = getBreaker(url);
+    return breaker != null && breaker.isOpen();
+  }
+
+  private HostBreaker getBreaker(String url) {
+    String host = getHost(url);
+    if (host == null) {
+      return null;
+    }
+    HostBreaker breaker = mBreakers.get(host);
+    if (breaker == null) {
+      breaker = new HostBreaker(host);
+      HostBreaker old = mBreakers.putIfAbsent(host, breaker);
+      if (old != null) {
+        breaker = old;
+      }
+    }
+    return breaker;
+  }
+
+  /**
+   * 从地址中取出主机和端口，不是"scheme://host"格式的地址返回null
+   */
+  static String getHost(String url) {
+    if (url == null) {
+      return null;
+    }
+    int start = url.indexOf("://");
+    if (start < 0) {
+      return null;
+    }
+    start += 3;
+    int end = url.length();
+    for (int i = start; i < url.length(); i++) {
+      char c = url.charAt(i);
+      if (c == '/' || c == '?' || c == '#') {
+        end = i;
+        break;
+      }
+    }
+    int at = url.lastIndexOf('@', end - 1);
+    if (at >= start) {
+      start = at + 1;
+    }
+    return end > start ? url.substring(start, end).toLowerCase() : null;
+  }
+
+  /**
+   * 主机熔断器
+   */
+  private static final class HostBreaker {
+    private static final int CLOSED = 0, OPEN = 1, HALF_OPEN = 2;
+
+    private final String mHost;
+    private final Queue<Runnable> mParked = new ArrayDeque<>();
+    private int mState = CLOSED;
+    private int mFailNum = 0;
+    private long mCooldown = BASE_COOLDOWN;
+    /**
+     * 半开状态下是否已经放行了探测重试
+     */
+    private boolean isProbing = false;
+    /**
+     * 探测的序号，用于判断探测是否超时
+     */
+    private int mProbeId = 0;
+    /**
+     * 下一批放行的数量
+     */
+    private int mReleaseNum = 1;
+    private boolean isReleasing = false;
+
+    HostBreaker(String host) {
+      mHost = host;
+    }
+
+    synchronized boolean isOpen() {
+      return mState != CLOSED;
+    }
+
+    /**
+     * 是否立即调度该重试，不能调度时重试会被挂起
+     */
+    synchronized boolean admit(Runnable retry) {
+      if (mState == CLOSED && !isReleasing) {
+        return true;
+      }
+      if (mState == HALF_OPEN && !isProbing) {
+        isProbing = true;
+        return true;
+      }
+      mParked.offer(retry);
+      return false;
+    }
+
+    synchronized void onSuccess() {
+      mFailNum = 0;
+      if (mState == CLOSED) {
+        return;
+      }
+      ALog.i(TAG, String.format("主机【%s】已恢复，挂起的%s个重试将分批放行", mHost, mParked.size()));
+      mState = CLOSED;
+      isProbing = false;
+      mCooldown = BASE_COOLDOWN;
+      mReleaseNum = 1;
+      scheduleRelease(0);
+    }
+
+    synchronized void onFailure() {
+      mFailNum++;
+      if (mState == HALF_OPEN) {
+        mCooldown = Math.min(mCooldown << 1, MAX_COOLDOWN);
+        trip();
+      } else if (mState == CLOSED && mFailNum >= FAIL_THRESHOLD) {
+        trip();
+      }
+    }
+
+    /**
+     * 熔断，冷却结束后进入半开状态并放行一个探测重试
+     */
+    private void trip() {
+      mState = OPEN;
+      isProbing = false;
+      isReleasing = false;
+      ALog.w(TAG, String.format("主机【%s】连续失败%s次，熔断%sms", mHost, mFailNum, mCooldown));
+      TimerWheel.getInstance().schedule(new Runnable() {
+        @Override public void run() {
+          halfOpen();
+        }
+      }, mCooldown, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void halfOpen() {
+      if (mState != OPEN) {
+        return;
+      }
+      mState = HALF_OPEN;
+      probe();
+    }
+
+    /**
+     * 放行一个挂起的重试作为探测，探测的任务可能已经被停止，超过冷却时间没有结果时换下一个重试探测
+     */
+    private void probe() {
+      Runnable probe = mParked.poll();
+      if (probe == null) {
+        isProbing = false;
+        return;
+      }
+      isProbing = true;
+      final int probeId = ++mProbeId;
+      TimerWheel.getInstance().schedule(probe, 0, TimeUnit.MILLISECONDS);
+      TimerWheel.getInstance().schedule(new Runnable() {
+        @Override public void run() {
+          synchronized (HostBreaker.this) {
+            if (mState == HALF_OPEN && mProbeId == probeId) {
+              probe();
+            }
+          }
+        }
+      }, mCooldown, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduleRelease(long delay) {
+      if (mParked.isEmpty()) {
+        isReleasing = false;
+        return;
+      }
+      isReleasing = true;
+      TimerWheel.getInstance().schedule(new Runnable() {
+        @Override public void run() {
+          release();
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 放行一批挂起的重试，每批的数量翻倍
+     */
+    private synchronized void release() {
+      if (mState != CLOSED) {
+        return;
+      }
+      for (int i = 0; i < mReleaseNum; i++) {
+        Runnable retry = mParked.poll();
+        if (retry == null) {
+          break;
+        }
+        TimerWheel.getInstance().schedule(retry, 0, TimeUnit.MILLISECONDS);
+      }
+      mReleaseNum <<= 1;
+      scheduleRelease(RELEASE_INTERVAL);
+    }
+  }
+}
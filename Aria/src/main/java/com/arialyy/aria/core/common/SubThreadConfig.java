@@ -38,4 +38,11 @@ public class SubThreadConfig<TASK_WRAPPER extends AbsTaskWrapper> {
   public boolean isOpenDynamicFile;
   // m3u8切片索引
   public int peerIndex;
+  // 线程区间调度器，只有不分块的多线程任务才有
+  public RangeScheduler rangeScheduler;
+  public BlockBitmap blockBitmap;
+  // 任务进度计数器
+  public ProgressCounter progressCounter;
+  // 任务的限速器，线程的限速器以它为上级
+  public BandwidthLimiter bandwidthLimiter;
 }
\ No newline at end of file
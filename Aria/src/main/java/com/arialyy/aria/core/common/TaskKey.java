@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+/**
+ * 任务标识，任务的key{@link com.arialyy.aria.core.inf.AbsTaskWrapper#getKey()}只在创建时计算一次哈希值，
+ * 作为map的key和选择分段锁时不需要再计算md5
+ */
+public final class TaskKey {
+  private final String mKey;
+  private final int mHash;
+
+  private TaskKey(String key) {
+    mKey = key;
+    int h = key.hashCode();
+    // 打散哈希值的高位，避免相近的key落到同一个分段锁
+    mHash = h ^ (h >>> 16);
+  }
+
+  /**
+   * 根据任务的key创建任务标识
+   */
+  public static TaskKey of(String key) {
+    if (key == null) {
+      throw new IllegalArgumentException("key为空");
+    }
+    return new TaskKey(key);
+  }
+
+  /**
+   * 任务的原始key
+   */
+  public String getKey() {
+    return mKey;
+  }
+
+  /**
+   * 获取任务对应的分段锁下标
+   *
+   * @param stripes 分段数，必须是2的幂
+   */
+  public int getStripe(int stripes) {
+    return mHash & (stripes - 1);
+  }
+
+  @Override public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof TaskKey)) {
+      return false;
+    }
+    TaskKey other = (TaskKey) o;
+    return mHash == other.mHash && mKey.equals(other.mKey);
+  }
+
+  @Override public int hashCode() {
+    return mHash;
+  }
+
+  @Override public String toString() {
+    return mKey;
+  }
+}
@@ -78,6 +78,19 @@ public class TaskRecord extends DbEntity {
    */
   public boolean isBlock = false;
 
+  /**
+   * 是否是免合并的分块任务，{@code true}是
+   * 免合并分块任务的线程直接写入目标文件，已完成的区块记录在{@link #blockBitmap}中
+   */
+  public boolean isMergeFreeBlock = false;
+
+  /**
+   * 免合并分块任务的区块完成位图
+   *
+   * @see BlockBitmap
+   */
+  public String blockBitmap;
+
   /**
    * 是否是使用虚拟文件下载的
    * {@code true}是，{@code false}不是
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import com.arialyy.aria.core.inf.AbsTaskWrapper;
+import com.arialyy.aria.util.ALog;
+
+/**
+ * 自适应线程数控制器，加性增、乘性减（AIMD）：
+ * 1、任务以少量线程启动，只要总速度还在上升，每个采样周期增加一个线程，新线程通过{@link RangeScheduler}拆分区间；
+ * 2、增加线程后总速度没有明显提升（单连接速度下降），减少一个线程并停止增加；
+ * 3、服务器返回429/503（ftp为421）时，线程数减半并停止增加。
+ * 减少线程时不会中断正在下载的线程，超出的线程在完成当前区间后不再获取新区间。
+ */
+public class ThreadNumController {
+  private final String TAG = "ThreadNumController";
+
+  /**
+   * 自适应模式下，新任务启动的线程数
+   */
+  static final int START_THREAD_NUM = 2;
+
+  /**
+   * 采样周期，单位毫秒
+   */
+  private static final long SAMPLE_INTERVAL = 2000;
+
+  /**
+   * 增加线程后，总速度至少需要提升的比例
+   */
+  private static final float MIN_GAIN = 0.1f;
+
+  private NormalFileer mFileer;
+  private RangeScheduler mScheduler;
+  private AbsTaskWrapper mTaskWrapper;
+  private int mMaxNum;
+  private volatile int mTargetNum;
+  private long mLastSampleTime = -1;
+  private long mLastProgress;
+  /**
+   * 增加线程前的总速度，-1表示上一个周期没有增加线程
+   */
+  private long mSpeedBeforeAdd = -1;
+  /**
+   * 增加线程后需要跳过一个周期，等待新连接建立
+   */
+  private boolean isWaitNewThread = false;
+  /**
+   * {@code true} 不再增加线程
+   */
+  private boolean isLimited = false;
+
+  ThreadNumController(NormalFileer fileer, RangeScheduler scheduler, AbsTaskWrapper wrapper,
+      int maxNum) {
+    mFileer = fileer;
+    mScheduler = scheduler;
+    mTaskWrapper = wrapper;
+    mMaxNum = maxNum;
+    mTargetNum = scheduler.getThreadNum();
+    scheduler.setThreadNumController(this);
+    report(mTargetNum, "自适应线程数启动");
+  }
+
+  /**
+   * 采样任务进度，由进度定时器调用
+   *
+   * @param progress 任务当前进度
+   */
+  synchronized void sample(long progress) {
+    long now = System.currentTimeMillis();
+    if (mLastSampleTime == -1) {
+      mLastSampleTime = now;
+      mLastProgress = progress;
+      return;
+    }
+    if (now - mLastSampleTime < SAMPLE_INTERVAL) {
+      return;
+    }
+    long speed = (progress - mLastProgress) * 1000 / (now - mLastSampleTime);
+    mLastSampleTime = now;
+    mLastProgress = progress;
+    if (isLimited) {
+      return;
+    }
+    if (isWaitNewThread) {
+      isWaitNewThread = false;
+      return;
+    }
+    int threadNum = mScheduler.getThreadNum();
+    if (mSpeedBeforeAdd >= 0) {
+      if (speed < mSpeedBeforeAdd * (1 + MIN_GAIN)) {
+        isLimited = true;
+        report(Math.max(1, threadNum - 1),
+            String.format("增加线程后总速度没有提升（%s -> %s b/s），单连接速度下降", mSpeedBeforeAdd, speed));
+        return;
+      }
+      mSpeedBeforeAdd = -1;
+    }
+    if (threadNum >= mMaxNum) {
+      isLimited = true;
+      report(threadNum, "已达到最大线程数");
+      return;
+    }
+    if (mFileer.addThreadTask()) {
+      mSpeedBeforeAdd = speed;
+      isWaitNewThread = true;
+      report(threadNum + 1, String.format("总速度持续上升（%s b/s）", speed));
+    }
+  }
+
+  /**
+   * 服务器繁忙，线程数减半，并且不再增加线程
+   *
+   * @param code 服务器返回码
+   */
+  synchronized void onServerBusy(int code) {
+    int threadNum = mScheduler.getThreadNum();
+    isLimited = true;
+    mSpeedBeforeAdd = -1;
+    report(Math.max(1, Math.min(mTargetNum, threadNum) / 2),
+        String.format("服务器繁忙，返回码：%s", code));
+  }
+
+  /**
+   * 线程完成当前区间后，是否可以继续获取新区间
+   *
+   * @param threadNum 当前正在执行的线程数
+   * @return {@code false} 线程数超出目标线程数，该线程结束
+   */
+  boolean allowNextRange(int threadNum) {
+    return threadNum <= mTargetNum;
+  }
+
+  /**
+   * 记录线程数和调整原因
+   */
+  private void report(int threadNum, String reason) {
+    mTargetNum = threadNum;
+    mTaskWrapper.setThreadNum(threadNum);
+    mTaskWrapper.setThreadNumReason(reason);
+    ALog.i(TAG, String.format("任务【%s】线程数：%s，原因：%s", mTaskWrapper.getKey(), threadNum,
+        reason));
+  }
+}
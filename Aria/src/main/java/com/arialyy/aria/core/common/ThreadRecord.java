@@ -34,9 +34,9 @@ public class ThreadRecord extends DbEntity {
   public long startLocation;
 
   /**
-   * 结束位置
+   * 结束位置，区间可能被{@link RangeScheduler}拆分，下载线程每次读取数据时都会不加锁读取该值
    */
-  public long endLocation;
+  public volatile long endLocation;
 
   /**
    * 线程是否完成
@@ -50,9 +50,9 @@ public class ThreadRecord extends DbEntity {
   public int threadId = 0;
 
   /**
-   * 分块长度
+   * 分块长度，和{@link #endLocation}一起被{@link RangeScheduler}修改
    */
-  public long blockLen = 0;
+  public volatile long blockLen = 0;
 
   /**
    * 线程类型
@@ -41,7 +41,7 @@ public class ThreadStateManager implements IThreadState {
   private int mStopNum = 0;  // 已经停止的线程数
   private int mFailNum = 0;  // 失败的线程数
   private int mCompleteNum = 0;  // 完成的线程数
-  private long mProgress; //当前总进度
+  private ProgressCounter mProgress = new ProgressCounter(); //当前总进度，子线程直接累加
   private TaskRecord mTaskRecord; // 任务记录
   private Looper mLooper;
 
@@ -95,16 +95,12 @@ public class ThreadStateManager implements IThreadState {
           quitLooper();
         }
         break;
-      case STATE_RUNNING:
-        if (msg.obj instanceof Long) {
-          mProgress += (long) msg.obj;
-        }
+      case STATE_ADD_THREAD:
+        mThreadNum++;
         break;
       case STATE_UPDATE_PROGRESS:
-        if (msg.obj == null) {
-          mProgress = updateBlockProgress();
-        } else if (msg.obj instanceof Long) {
-          mProgress = (long) msg.obj;
+        if (msg.obj instanceof Long) {
+          mProgress.set((long) msg.obj);
         }
         break;
     }
@@ -125,6 +121,13 @@ public class ThreadStateManager implements IThreadState {
    */
   @Override
   public long getCurrentProgress() {
+    return mProgress.get();
+  }
+
+  /**
+   * 获取任务进度计数器，子线程通过计数器累加进度
+   */
+  ProgressCounter getProgressCounter() {
     return mProgress;
   }
 
@@ -172,20 +175,6 @@ public class ThreadStateManager implements IThreadState {
     return mCancelNum == mThreadNum;
   }
 
-  /**
-   * 更新分块任务s的真实进度
-   */
-  private long updateBlockProgress() {
-    long size = 0;
-    for (int i = 0, len = mTaskRecord.threadRecords.size(); i < len; i++) {
-      File temp = new File(String.format(RecordHandler.SUB_PATH, mTaskRecord.filePath, i));
-      if (temp.exists()) {
-        size += temp.length();
-      }
-    }
-    return size;
-  }
-
   /**
    * 合并文件
    *
@@ -196,14 +185,8 @@ public class ThreadStateManager implements IThreadState {
     for (int i = 0, len = mTaskRecord.threadNum; i < len; i++) {
       partPath.add(String.format(RecordHandler.SUB_PATH, mTaskRecord.filePath, i));
     }
-    boolean isSuccess = FileUtil.mergeFile(mTaskRecord.filePath, partPath);
+    boolean isSuccess = FileUtil.mergeFile(mTaskRecord.filePath, partPath, true);
     if (isSuccess) {
-      for (String pp : partPath) {
-        File f = new File(pp);
-        if (f.exists()) {
-          f.delete();
-        }
-      }
       File targetFile = new File(mTaskRecord.filePath);
       if (targetFile.exists() && targetFile.length() > mTaskRecord.fileLength) {
         ALog.e(TAG, String.format("任务【%s】分块文件合并失败，下载长度超出文件真实长度，downloadLen: %s，fileSize: %s",
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import com.arialyy.aria.util.ALog;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 进程共享的哈希时间轮，任务进度刷新、失败重试、m3u8直播文件刷新等定时操作都通过这里调度，
+ * 任务数量增加时线程数不变。
+ * 1、时间轮由一个时钟线程驱动，每{@link #TICK}毫秒前进一格，定时器的精度为一格；
+ * 2、到期的定时器交给{@link #WORKER_NUM}个执行线程运行，定时器中不能执行耗时操作；
+ * 3、没有定时器时时钟线程挂起，不会空转。
+ */
+public class TimerWheel {
+  private static final String TAG = "TimerWheel";
+
+  /**
+   * 每一格的时长，单位为毫秒
+   */
+  private static final long TICK = 100;
+
+  /**
+   * 时间轮的格数，必须是2的幂
+   */
+  private static final int WHEEL_SIZE = 512;
+
+  /**
+   * 执行定时器的线程数
+   */
+  private static final int WORKER_NUM = 2;
+
+  private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK);
+  private static volatile TimerWheel INSTANCE = null;
+
+  /**
+   * 每一格的定时器链表，只在时钟线程中访问
+   */
+  private final Timeout[] mWheel = new Timeout[WHEEL_SIZE];
+  private final Queue<Timeout> mPending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger mTimeoutNum = new AtomicInteger();
+  private final ExecutorService mWorkers;
+  private final Thread mTickThread;
+  private long mStartTime;
+  private long mTick;
+
+  public static TimerWheel getInstance() {
+    if (INSTANCE == null) {
+      synchronized (TimerWheel.class) {
+        if (INSTANCE == null) {
+          INSTANCE = new TimerWheel();
+        }
+      }
+    }
+    return INSTANCE;
+  }
+
+  private TimerWheel() {
+    final AtomicInteger index = new AtomicInteger();
+    mWorkers = Executors.newFixedThreadPool(WORKER_NUM, new ThreadFactory() {
+      @Override public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Aria-Timer-" + index.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    mTickThread = new Thread(new Runnable() {
+      @Override public void run() {
+        loop();
+      }
+    }, "Aria-TimerWheel");
+    mTickThread.setDaemon(true);
+    mTickThread.start();
+  }
+
+  /**
+   * 延迟执行一次
+   *
+   * @param task 需要执行的操作
+   * @param delay 延迟时间
+   */
+  public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    return add(new Timeout(task, 0), unit.toNanos(Math.max(delay, 0)));
+  }
+
+  /**
+   * 按固定间隔重复执行，上一次执行结束后才开始计算下一次的延迟
+   *
+   * @param task 需要执行的操作
+   * @param initialDelay 第一次执行的延迟时间
+   * @param delay 两次执行的间隔，小于{@link #TICK}时按{@link #TICK}处理
+   */
+  public Timeout scheduleWithFixedDelay(Runnable task, long initialDelay, long delay,
+      TimeUnit unit) {
+    long period = Math.max(unit.toNanos(delay), TICK_NANOS);
+    return add(new Timeout(task, period), unit.toNanos(Math.max(initialDelay, 0)));
+  }
+
+  /**
+   * 等待执行的定时器数量
+   */
+  public int getTimeoutNum() {
+    return mTimeoutNum.get();
+  }
+
+  /**
+   * 打印时间轮状态
+   */
+  public void printStatus() {
+    ALog.d(TAG, String.format("定时器：%s，时钟：%s", mTimeoutNum.get(), mTick));
+  }
+
+  private Timeout add(Timeout timeout, long delayNanos) {
+    timeout.deadline = System.nanoTime() + delayNanos;
+    mTimeoutNum.incrementAndGet();
+    mPending.offer(timeout);
+    LockSupport.unpark(mTickThread);
+    return timeout;
+  }
+
+  private void loop() {
+    mStartTime = System.nanoTime();
+    mTick = 0;
+    while (true) {
+      if (mTimeoutNum.get() == 0) {
+        // 时间轮中没有定时器，挂起时钟线程，添加定时器时唤醒并重新开始计时
+        LockSupport.park(this);
+        if (mTimeoutNum.get() == 0) {
+          continue;
+        }
+        mStartTime = System.nanoTime();
+        mTick = 0;
+      }
+      long deadline = mStartTime + (mTick + 1) * TICK_NANOS;
+      long wait;
+      while ((wait = deadline - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(this, wait);
+      }
+      transferPending();
+      expire((int) (mTick & (WHEEL_SIZE - 1)));
+      mTick++;
+    }
+  }
+
+  /**
+   * 将新添加的定时器放到时间轮对应的格子中
+   */
+  private void transferPending() {
+    Timeout timeout;
+    while ((timeout = mPending.poll()) != null) {
+      if (timeout.isCancelled) {
+        mTimeoutNum.decrementAndGet();
+        continue;
+      }
+      // 第n格在(n + 1) * TICK时到期，向上取整保证定时器不会提前执行
+      long calculated = (timeout.deadline - mStartTime + TICK_NANOS - 1) / TICK_NANOS - 1;
+      long ticks = Math.max(calculated, mTick);
+      timeout.rounds = (ticks - mTick) / WHEEL_SIZE;
+      int index = (int) (ticks & (WHEEL_SIZE - 1));
+      timeout.next = mWheel[index];
+      mWheel[index] = timeout;
+    }
+  }
+
+  /**
+   * 执行格子中到期的定时器，未到期的定时器轮数减一
+   */
+  private void expire(int index) {
+    Timeout prev = null, timeout = mWheel[index];
+    while (timeout != null) {
+      Timeout next = timeout.next;
+      boolean remove = timeout.isCancelled || timeout.rounds <= 0;
+      if (remove) {
+        if (prev == null) {
+          mWheel[index] = next;
+        } else {
+          prev.next = next;
+        }
+        timeout.next = null;
+        mTimeoutNum.decrementAndGet();
+        if (!timeout.isCancelled) {
+          mWorkers.execute(timeout);
+        }
+      } else {
+        timeout.rounds--;
+        prev = timeout;
+      }
+      timeout = next;
+    }
+  }
+
+  /**
+   * 时间轮中的定时器
+   */
+  public final class Timeout implements Runnable {
+    private final Runnable mTask;
+    private final long mPeriod;
+    private volatile boolean isCancelled = false;
+    private long deadline;
+    private long rounds;
+    private Timeout next;
+
+    private Timeout(Runnable task, long period) {
+      mTask = task;
+      mPeriod = period;
+    }
+
+    /**
+     * 取消定时器，正在执行的操作不会被中断，重复执行的定时器不再执行
+     */
+    public void cancel() {
+      isCancelled = true;
+    }
+
+    public boolean isCancelled() {
+      return isCancelled;
+    }
+
+    @Override public void run() {
+      if (isCancelled) {
+        return;
+      }
+      try {
+        mTask.run();
+      } catch (Throwable e) {
+        ALog.e(TAG, e);
+      }
+      if (mPeriod > 0 && !isCancelled) {
+        add(this, mPeriod);
+      }
+    }
+  }
+}
@@ -91,6 +91,9 @@ public abstract class AbsFtpThreadTask<ENTITY extends AbsNormalEntity, TASK_WRAP
       }
       int reply = client.getReplyCode();
       if (!FTPReply.isPositiveCompletion(reply)) {
+        if (reply == FTPReply.SERVICE_NOT_AVAILABLE) {
+          onServerBusy(reply);
+        }
         client.disconnect();
         fail(mChildCurrentLocation, new AriaIOException(TAG,
             String.format("无法连接到ftp服务器，错误码为：%s，msg:%s", reply, client.getReplyString())), false);
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common.http;
+
+import com.arialyy.aria.core.config.AppConfig;
+import com.arialyy.aria.core.config.Configuration;
+import com.arialyy.aria.util.ALog;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * http长连接管理。
+ * {@link HttpURLConnection}内部已经按主机维护了空闲长连接池，但调用{@link HttpURLConnection#disconnect()}会直接关闭socket，
+ * 连接无法复用。使用完连接后调用{@link #release(IHttpConnection, InputStream)}，
+ * 数据流读取完毕的连接会归还到连接池，下一个区间或ts分片请求可以跳过TCP和TLS握手。
+ * 1、不会修改http.keepAlive系统属性，宿主应用的其它连接不受影响；关闭长连接时，
+ * Aria的请求会带上"Connection: close"，只有Aria自己的连接不会被复用；
+ * 2、HttpURLConnection的连接池只能通过"http.maxConnections"、"http.keepAliveDuration"系统属性配置，
+ * 宿主没有设置这两个属性时，使用{@link AppConfig}中的连接池配置，配置需要在第一次建立连接前设置；
+ * 3、https连接只有使用同一个{@link SSLSocketFactory}时才能复用，因此需要缓存SSLSocketFactory；
+ * 4、所有连接都通过{@link #getTransport(HttpTaskConfig)}获取的传输层创建；
+ * 5、只有数据正常读取完毕的连接才会归还到连接池，停止、取消或失败的连接会直接断开。
+ */
+public class ConnectionManager {
+  private static final String TAG = "ConnectionManager";
+
+  /**
+   * 归还连接前，最多读取剩余数据的长度，剩余数据超过该值时直接断开连接
+   */
+  private static final int DRAIN_LEN = 64 * 1024;
+
+  private static final String PROP_MAX_CONNECTIONS = "http.maxConnections";
+  private static final String PROP_KEEP_ALIVE_DURATION = "http.keepAliveDuration";
+
+  private static final Map<SSLContext, SSLSocketFactory> mFactories = new WeakHashMap<>();
+  private static final AtomicLong mReleaseCount = new AtomicLong();
+  private static final AtomicLong mDiscardCount = new AtomicLong();
+  private static final AtomicLong mAbortCount = new AtomicLong();
+  private static volatile boolean isPoolConfigured = false;
+  private static volatile IHttpTransport mTransport = new UrlConnectionTransport();
+
+  private ConnectionManager() {
+  }
+
+  /**
+   * 设置全局的http传输层，默认为{@link UrlConnectionTransport}
+   */
+  public static void setTransport(IHttpTransport transport) {
+    if (transport == null) {
+      throw new IllegalArgumentException("transport为空");
+    }
+    mTransport = transport;
+  }
+
+  /**
+   * 获取任务使用的传输层，任务没有单独设置传输层时使用全局的传输层
+   */
+  public static IHttpTransport getTransport(HttpTaskConfig taskConfig) {
+    IHttpTransport transport = taskConfig == null ? null : taskConfig.getTransport();
+    return transport == null ? mTransport : transport;
+  }
+
+  /**
+   * 获取SSLContext对应的SSLSocketFactory，同一个SSLContext始终返回同一个SSLSocketFactory
+   */
+  public static SSLSocketFactory getSocketFactory(SSLContext context) {
+    synchronized (mFactories) {
+      SSLSocketFactory factory = mFactories.get(context);
+      if (factory == null) {
+        factory = context.getSocketFactory();
+        mFactories.put(context, factory);
+      }
+      return factory;
+    }
+  }
+
+  /**
+   * 将{@link AppConfig}中的连接池配置应用到HttpURLConnection的默认连接池，宿主已经设置了系统属性时不做修改。
+   * HttpURLConnection的连接池在第一次建立连接时创建，之后修改配置不会生效
+   */
+  static void configDefaultPool() {
+    if (isPoolConfigured) {
+      return;
+    }
+    synchronized (ConnectionManager.class) {
+      if (isPoolConfigured) {
+        return;
+      }
+      AppConfig config = Configuration.getInstance().appCfg;
+      if (System.getProperty(PROP_MAX_CONNECTIONS) == null) {
+        System.setProperty(PROP_MAX_CONNECTIONS, String.valueOf(config.getMaxIdleConnections()));
+      }
+      if (System.getProperty(PROP_KEEP_ALIVE_DURATION) == null) {
+        System.setProperty(PROP_KEEP_ALIVE_DURATION,
+            String.valueOf(config.getKeepAliveDuration()));
+      }
+      isPoolConfigured = true;
+    }
+  }
+
+  /**
+   * HttpURLConnection默认连接池每个主机最多保留的空闲长连接数
+   */
+  public static int getMaxIdleConnections() {
+    String value = System.getProperty(PROP_MAX_CONNECTIONS);
+    return value == null ? Configuration.getInstance().appCfg.getMaxIdleConnections()
+        : Integer.parseInt(value);
+  }
+
+  /**
+   * HttpURLConnection默认连接池空闲长连接的保留时间，单位为毫秒
+   */
+  public static long getKeepAliveDuration() {
+    String value = System.getProperty(PROP_KEEP_ALIVE_DURATION);
+    return value == null ? Configuration.getInstance().appCfg.getKeepAliveDuration()
+        : Long.parseLong(value);
+  }
+
+  /**
+   * 释放数据已正常读取完毕的连接，见{@link #release(IHttpConnection, InputStream, boolean)}
+   */
+  public static void release(IHttpConnection conn, InputStream is) {
+    release(conn, is, true);
+  }
+
+  /**
+   * 释放连接，数据流已读取完毕（或剩余数据很少）的连接会归还到连接池，否则断开连接
+   *
+   * @param conn 需要释放的连接
+   * @param is 连接的数据流，为null时直接断开连接
+   * @param finished {@code true} 数据正常读取完毕（读取到流末尾或区间结束位置）；
+   * {@code false} 任务停止、取消或读取失败，连接的状态未知，不读取剩余数据，直接断开连接
+   */
+  public static void release(IHttpConnection conn, InputStream is, boolean finished) {
+    if (conn == null) {
+      return;
+    }
+    if (!finished) {
+      mAbortCount.incrementAndGet();
+      discard(conn, is);
+      return;
+    }
+    if (is == null || !Configuration.getInstance().appCfg.isUseKeepAlive()) {
+      discard(conn, is);
+      return;
+    }
+    try {
+      byte[] buffer = new byte[4096];
+      int len, total = 0;
+      while ((len = is.read(buffer)) != -1) {
+        total += len;
+        if (total > DRAIN_LEN) {
+          discard(conn, is);
+          return;
+        }
+      }
+      is.close();
+      mReleaseCount.incrementAndGet();
+    } catch (IOException e) {
+      discard(conn, is);
+    }
+  }
+
+  /**
+   * 归还到连接池的连接数
+   */
+  public static long getReleaseCount() {
+    return mReleaseCount.get();
+  }
+
+  /**
+   * 任务停止、取消或失败后直接断开的连接数，包含在{@link #getDiscardCount()}中
+   */
+  public static long getAbortCount() {
+    return mAbortCount.get();
+  }
+
+  /**
+   * 直接断开的连接数
+   */
+  public static long getDiscardCount() {
+    return mDiscardCount.get();
+  }
+
+  /**
+   * 连接归还率，归还到连接池的连接数 / 释放的连接总数。
+   * 只表示释放时有多少连接可以被复用，连接池是否真正复用了连接由传输层决定
+   */
+  public static float getReleaseRate() {
+    long release = mReleaseCount.get();
+    long total = release + mDiscardCount.get();
+    return total == 0 ? 0 : release / (float) total;
+  }
+
+  /**
+   * 打印连接池状态
+   */
+  public static void printStatus() {
+    ALog.d(TAG, String.format(
+        "归还连接：%s，断开连接：%s（中断：%s），归还率：%s，最大空闲连接数：%s，空闲保留时间：%sms",
+        mReleaseCount.get(), mDiscardCount.get(), mAbortCount.get(), getReleaseRate(),
+        getMaxIdleConnections(), getKeepAliveDuration()));
+  }
+
+  private static void discard(IHttpConnection conn, InputStream is) {
+    mDiscardCount.incrementAndGet();
+    try {
+      if (is != null) {
+        is.close();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    conn.disconnect();
+  }
+}
@@ -119,6 +119,14 @@ public class HttpDelegate<TARGET extends AbsTarget> extends BaseDelegate<TARGET>
     return mTarget;
   }
 
+  public TARGET setHttpTransport(IHttpTransport transport) {
+    if (transport == null) {
+      throw new IllegalArgumentException("transport为空");
+    }
+    mTarget.getTaskWrapper().asHttp().setTransport(transport);
+    return mTarget;
+  }
+
   private void addHeader(AbsTaskWrapper taskWrapper, String key, String value) {
     HttpTaskConfig taskDelegate = taskWrapper.asHttp();
     if (taskDelegate.getHeaders().get(key) == null) {
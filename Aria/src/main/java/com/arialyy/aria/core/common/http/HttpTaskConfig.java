@@ -85,6 +85,52 @@ public class HttpTaskConfig implements ITaskConfig {
 
   private WeakReference<IHttpFileLenAdapter> fileLenAdapter;
 
+  /**
+   * 任务使用的传输层，为null时使用{@link ConnectionManager#setTransport(IHttpTransport)}设置的全局传输层
+   */
+  private IHttpTransport transport;
+
+  /**
+   * 获取文件信息时建立的连接，请求的区间为"bytes=0-"，下载线程可以从0开始继续读取该连接的数据
+   */
+  private IHttpConnection probeConnection;
+
+  /**
+   * 非阻塞下载引擎无法处理服务器的响应（如分块传输、重定向到https），任务重试时使用阻塞的下载线程
+   */
+  private boolean isNioDisabled = false;
+
+  public boolean isNioDisabled() {
+    return isNioDisabled;
+  }
+
+  public void setNioDisabled(boolean nioDisabled) {
+    isNioDisabled = nioDisabled;
+  }
+
+  public IHttpTransport getTransport() {
+    return transport;
+  }
+
+  public void setTransport(IHttpTransport transport) {
+    this.transport = transport;
+  }
+
+  public synchronized void setProbeConnection(IHttpConnection probeConnection) {
+    this.probeConnection = probeConnection;
+  }
+
+  /**
+   * 取出获取文件信息时建立的连接，取出后由调用者负责释放连接
+   *
+   * @return 没有可用的连接时返回null
+   */
+  public synchronized IHttpConnection takeProbeConnection() {
+    IHttpConnection conn = probeConnection;
+    probeConnection = null;
+    return conn;
+  }
+
   public IHttpFileLenAdapter getFileLenAdapter() {
     return fileLenAdapter == null ? null : fileLenAdapter.get();
   }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * http请求体，请求体在发起请求的线程中写入，可以在写入过程中处理进度和限速
+ */
+public interface IHttpBody {
+
+  /**
+   * 请求体类型，为null时不设置Content-Type
+   */
+  String getContentType();
+
+  /**
+   * 请求体长度，小于0时使用chunked方式发送
+   */
+  long getContentLength();
+
+  /**
+   * 写入请求体
+   */
+  void writeTo(OutputStream os) throws IOException;
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 传输层的一次http请求，请求参数需要在{@link #connect()}前设置。
+ * 获取响应码、响应头或数据流时，如果还没有发起请求，会先调用{@link #connect()}。
+ * 连接使用完后调用{@link ConnectionManager#release(IHttpConnection, InputStream)}释放
+ */
+public interface IHttpConnection {
+
+  /**
+   * 设置请求方法，默认为GET
+   */
+  void setRequestMethod(String method);
+
+  /**
+   * 设置请求头，相同的key会覆盖旧的值
+   */
+  void setRequestProperty(String key, String value);
+
+  /**
+   * 获取已设置的请求头，key不区分大小写
+   *
+   * @return 没有设置时返回null
+   */
+  String getRequestProperty(String key);
+
+  /**
+   * 设置请求区间
+   *
+   * @param start 开始位置
+   * @param end 结束位置（不包含），小于0时表示读取到文件末尾
+   */
+  void setRange(long start, long end);
+
+  /**
+   * 设置请求体，设置后请求会在{@link #connect()}时写入请求体
+   */
+  void setBody(IHttpBody body);
+
+  void setConnectTimeout(int timeout);
+
+  void setReadTimeout(int timeout);
+
+  /**
+   * 发起请求，写入请求体并读取响应头
+   */
+  void connect() throws IOException;
+
+  /**
+   * 获取响应码，还没有发起请求时会先调用{@link #connect()}写入请求体，
+   * 实现类不能在写入请求体前读取响应
+   */
+  int getResponseCode() throws IOException;
+
+  String getResponseMessage() throws IOException;
+
+  /**
+   * 获取响应头，key不区分大小写
+   */
+  String getHeaderField(String key);
+
+  /**
+   * 获取所有响应头，key不区分大小写
+   */
+  Map<String, List<String>> getHeaderFields();
+
+  /**
+   * 获取响应体的原始数据流，不会处理Content-Encoding
+   */
+  InputStream getInputStream() throws IOException;
+
+  /**
+   * 实际使用的协议，如"http/1.1"、"h2"
+   */
+  String getProtocol();
+
+  /**
+   * 断开连接，该连接不会再被复用
+   */
+  void disconnect();
+}
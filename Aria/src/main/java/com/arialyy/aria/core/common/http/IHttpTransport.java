@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common.http;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * http传输层，所有http请求（文件信息获取、区间下载、m3u8切片下载、文件上传）都通过传输层建立连接。
+ * 默认使用{@link UrlConnectionTransport}，可以通过{@link ConnectionManager#setTransport(IHttpTransport)}
+ * 或{@link HttpTaskConfig#setTransport(IHttpTransport)}替换为其它实现，如支持http/2多路复用的{@link OkHttpTransport}
+ */
+public interface IHttpTransport {
+
+  /**
+   * 创建连接，调用{@link IHttpConnection#connect()}前不会发起请求
+   *
+   * @param url 请求地址
+   * @param taskConfig 任务的http配置，用于获取代理等参数
+   */
+  IHttpConnection open(URL url, HttpTaskConfig taskConfig) throws IOException;
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common.http;
+
+import com.arialyy.aria.core.config.AppConfig;
+import com.arialyy.aria.core.config.Configuration;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+
+/**
+ * 基于OkHttp的传输层，支持http/2，同一主机的区间请求、m3u8切片请求会在同一个http/2连接上多路复用。
+ * 1、https连接通过ALPN协商协议，服务器不支持http/2时使用http/1.1；
+ * 2、明文http连接默认使用http/1.1，服务器支持h2c时，通过{@link #OkHttpTransport(boolean)}直接发起h2c连接（prior knowledge）；
+ * 3、Aria没有打包OkHttp，使用该传输层需要自行添加OkHttp 3.12及以上版本的依赖；
+ * 4、https证书使用OkHttpClient的配置，需要自定义证书时，通过{@link #OkHttpTransport(OkHttpClient, boolean)}传入配置好的OkHttpClient。
+ * 同一个进程建议只创建一个实例，不同实例之间不会共享连接。
+ */
+public class OkHttpTransport implements IHttpTransport {
+  private OkHttpClient mClient;
+  private OkHttpClient mH2cClient;
+
+  public OkHttpTransport() {
+    this(false);
+  }
+
+  /**
+   * @param h2c {@code true} 明文http连接直接使用h2c，服务器必须支持h2c
+   */
+  public OkHttpTransport(boolean h2c) {
+    this(null, h2c);
+  }
+
+  /**
+   * @param client 自定义的OkHttpClient，为null时使用默认配置，连接池参数使用{@link AppConfig}中的配置
+   * @param h2c {@code true} 明文http连接直接使用h2c，服务器必须支持h2c
+   */
+  public OkHttpTransport(OkHttpClient client, boolean h2c) {
+    OkHttpClient.Builder builder;
+    if (client == null) {
+      AppConfig config = Configuration.getInstance().appCfg;
+      builder = new OkHttpClient.Builder().connectionPool(
+          new ConnectionPool(config.getMaxIdleConnections(), config.getKeepAliveDuration(),
+              TimeUnit.MILLISECONDS));
+    } else {
+      builder = client.newBuilder();
+    }
+    // 30x跳转由Aria处理
+    builder.followRedirects(false).followSslRedirects(false);
+    mClient = builder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)).build();
+    if (h2c) {
+      // 和mClient共享连接池
+      mH2cClient = mClient.newBuilder()
+          .protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE))
+          .build();
+    }
+  }
+
+  @Override public IHttpConnection open(URL url, HttpTaskConfig taskConfig) throws IOException {
+    boolean isHttps = "https".equalsIgnoreCase(url.getProtocol());
+    OkHttpClient client = !isHttps && mH2cClient != null ? mH2cClient : mClient;
+    return new Connection(client, url, taskConfig == null ? null : taskConfig.getProxy());
+  }
+
+  private static class Connection implements IHttpConnection {
+    private OkHttpClient mClient;
+    private URL mUrl;
+    private Proxy mProxy;
+    private String mMethod = "GET";
+    private Map<String, String> mHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private IHttpBody mBody;
+    private int mConnectTimeout = -1, mReadTimeout = -1;
+    private Call mCall;
+    private Response mResponse;
+    private Map<String, List<String>> mHeaderFields;
+
+    private Connection(OkHttpClient client, URL url, Proxy proxy) {
+      mClient = client;
+      mUrl = url;
+      mProxy = proxy;
+    }
+
+    @Override public void setRequestMethod(String method) {
+      mMethod = method;
+    }
+
+    @Override public void setRequestProperty(String key, String value) {
+      if (value == null) {
+        mHeaders.remove(key);
+      } else {
+        mHeaders.put(key, value);
+      }
+    }
+
+    @Override public String getRequestProperty(String key) {
+      return mHeaders.get(key);
+    }
+
+    @Override public void setRange(long start, long end) {
+      mHeaders.put("Range",
+          end < 0 ? String.format("bytes=%s-", start) : String.format("bytes=%s-%s", start, end - 1));
+    }
+
+    @Override public void setBody(IHttpBody body) {
+      mBody = body;
+    }
+
+    @Override public void setConnectTimeout(int timeout) {
+      mConnectTimeout = timeout;
+    }
+
+    @Override public void setReadTimeout(int timeout) {
+      mReadTimeout = timeout;
+    }
+
+    @Override public void connect() throws IOException {
+      if (mResponse != null) {
+        return;
+      }
+      OkHttpClient client = mClient;
+      if (mProxy != null || mConnectTimeout >= 0 || mReadTimeout >= 0) {
+        // 派生的client和原client共享连接池
+        OkHttpClient.Builder builder = client.newBuilder();
+        if (mProxy != null) {
+          builder.proxy(mProxy);
+        }
+        if (mConnectTimeout >= 0) {
+          builder.connectTimeout(mConnectTimeout, TimeUnit.MILLISECONDS);
+        }
+        if (mReadTimeout >= 0) {
+          builder.readTimeout(mReadTimeout, TimeUnit.MILLISECONDS)
+              .writeTimeout(mReadTimeout, TimeUnit.MILLISECONDS);
+        }
+        client = builder.build();
+      }
+      Request.Builder builder = new Request.Builder().url(mUrl);
+      for (Map.Entry<String, String> entry : mHeaders.entrySet()) {
+        builder.header(entry.getKey(), entry.getValue());
+      }
+      RequestBody body = mBody == null ? null : new BodyAdapter(mBody);
+      if (body == null && (mMethod.equals("POST") || mMethod.equals("PUT"))) {
+        body = RequestBody.create(null, new byte[0]);
+      }
+      builder.method(mMethod, body);
+      mCall = client.newCall(builder.build());
+      mResponse = mCall.execute();
+    }
+
+    @Override public int getResponseCode() throws IOException {
+      connect();
+      return mResponse.code();
+    }
+
+    @Override public String getResponseMessage() throws IOException {
+      connect();
+      return mResponse.message();
+    }
+
+    @Override public String getHeaderField(String key) {
+      return connectQuietly() ? mResponse.header(key) : null;
+    }
+
+    @Override public Map<String, List<String>> getHeaderFields() {
+      if (!connectQuietly()) {
+        return Collections.emptyMap();
+      }
+      if (mHeaderFields == null) {
+        // http/2的响应头都是小写，转换为不区分大小写的map，和HttpURLConnection保持一致
+        Map<String, List<String>> fields = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        fields.putAll(mResponse.headers().toMultimap());
+        mHeaderFields = Collections.unmodifiableMap(fields);
+      }
+      return mHeaderFields;
+    }
+
+    @Override public InputStream getInputStream() throws IOException {
+      connect();
+      // 和HttpURLConnection保持一致，错误响应不返回数据流，避免将错误页面写入文件
+      if (mResponse.code() >= 400) {
+        throw new IOException(
+            String.format("服务器返回错误，code: %s, url: %s", mResponse.code(), mUrl));
+      }
+      return mResponse.body().byteStream();
+    }
+
+    @Override public String getProtocol() {
+      return mResponse == null ? null : mResponse.protocol().toString();
+    }
+
+    @Override public void disconnect() {
+      if (mCall != null) {
+        // http/2连接只会取消当前的流，不会关闭连接
+        mCall.cancel();
+      }
+      if (mResponse != null) {
+        mResponse.close();
+      }
+    }
+
+    private boolean connectQuietly() {
+      try {
+        connect();
+        return true;
+      } catch (IOException e) {
+        return false;
+      }
+    }
+  }
+
+  private static class BodyAdapter extends RequestBody {
+    private IHttpBody mBody;
+
+    private BodyAdapter(IHttpBody body) {
+      mBody = body;
+    }
+
+    @Override public MediaType contentType() {
+      return mBody.getContentType() == null ? null : MediaType.parse(mBody.getContentType());
+    }
+
+    @Override public long contentLength() {
+      return mBody.getContentLength();
+    }
+
+    @Override public void writeTo(BufferedSink sink) throws IOException {
+      mBody.writeTo(sink.outputStream());
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common.http;
+
+import com.arialyy.aria.core.AriaManager;
+import com.arialyy.aria.core.common.ProtocolType;
+import com.arialyy.aria.core.config.DownloadConfig;
+import com.arialyy.aria.util.SSLContextUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.List;
+import java.util.Map;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 默认的传输层，使用{@link HttpURLConnection}，只支持http/1.1，长连接和连接池配置由{@link ConnectionManager}管理
+ */
+public class UrlConnectionTransport implements IHttpTransport {
+
+  @Override public IHttpConnection open(URL url, HttpTaskConfig taskConfig) throws IOException {
+    ConnectionManager.configDefaultPool();
+    HttpURLConnection conn;
+    URLConnection urlConn;
+    if (taskConfig.getProxy() != null) {
+      urlConn = url.openConnection(taskConfig.getProxy());
+    } else {
+      urlConn = url.openConnection();
+    }
+    if (urlConn instanceof HttpsURLConnection) {
+      DownloadConfig config = AriaManager.getInstance(AriaManager.APP).getDownloadConfig();
+      conn = (HttpsURLConnection) urlConn;
+      SSLContext sslContext =
+          SSLContextUtil.getSSLContextFromAssets(config.getCaName(), config.getCaPath(),
+              ProtocolType.Default);
+      if (sslContext == null) {
+        sslContext = SSLContextUtil.getDefaultSLLContext(ProtocolType.Default);
+      }
+      // 同一个SSLSocketFactory的https连接才能复用
+      SSLSocketFactory ssf = ConnectionManager.getSocketFactory(sslContext);
+      ((HttpsURLConnection) conn).setSSLSocketFactory(ssf);
+      ((HttpsURLConnection) conn).setHostnameVerifier(SSLContextUtil.HOSTNAME_VERIFIER);
+    } else {
+      conn = (HttpURLConnection) urlConn;
+    }
+    //302获取重定向地址
+    conn.setInstanceFollowRedirects(false);
+    return new Connection(conn);
+  }
+
+  private static class Connection implements IHttpConnection {
+    private HttpURLConnection mConn;
+    private IHttpBody mBody;
+    private boolean isConnected = false;
+
+    private Connection(HttpURLConnection conn) {
+      mConn = conn;
+    }
+
+    @Override public void setRequestMethod(String method) {
+      try {
+        mConn.setRequestMethod(method);
+      } catch (ProtocolException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    @Override public void setRequestProperty(String key, String value) {
+      mConn.setRequestProperty(key, value);
+    }
+
+    @Override public String getRequestProperty(String key) {
+      return mConn.getRequestProperty(key);
+    }
+
+    @Override public void setRange(long start, long end) {
+      mConn.setRequestProperty("Range",
+          end < 0 ? String.format("bytes=%s-", start) : String.format("bytes=%s-%s", start, end - 1));
+    }
+
+    @Override public void setBody(IHttpBody body) {
+      mBody = body;
+    }
+
+    @Override public void setConnectTimeout(int timeout) {
+      mConn.setConnectTimeout(timeout);
+    }
+
+    @Override public void setReadTimeout(int timeout) {
+      mConn.setReadTimeout(timeout);
+    }
+
+    @Override public void connect() throws IOException {
+      if (isConnected) {
+        return;
+      }
+      isConnected = true;
+      if (mBody == null) {
+        mConn.connect();
+        return;
+      }
+      mConn.setDoInput(true);
+      mConn.setDoOutput(true);
+      mConn.setUseCaches(false);
+      if (mBody.getContentType() != null) {
+        mConn.setRequestProperty("Content-Type", mBody.getContentType());
+      }
+      long len = mBody.getContentLength();
+      if (len < 0) {
+        mConn.setChunkedStreamingMode(0);
+      } else {
+        mConn.setFixedLengthStreamingMode((int) len);
+      }
+      OutputStream os = mConn.getOutputStream();
+      try {
+        mBody.writeTo(os);
+        os.flush();
+      } finally {
+        os.close();
+      }
+    }
+
+    @Override public int getResponseCode() throws IOException {
+      connect();
+      return mConn.getResponseCode();
+    }
+
+    @Override public String getResponseMessage() throws IOException {
+      connect();
+      return mConn.getResponseMessage();
+    }
+
+    @Override public String getHeaderField(String key) {
+      return mConn.getHeaderField(key);
+    }
+
+    @Override public Map<String, List<String>> getHeaderFields() {
+      return mConn.getHeaderFields();
+    }
+
+    @Override public InputStream getInputStream() throws IOException {
+      connect();
+      return mConn.getInputStream();
+    }
+
+    @Override public String getProtocol() {
+      return "http/1.1";
+    }
+
+    @Override public void disconnect() {
+      mConn.disconnect();
+    }
+  }
+}
@@ -15,6 +15,9 @@
  */
 package com.arialyy.aria.core.config;
 
+import com.arialyy.aria.core.common.BandwidthLimiter;
+import com.arialyy.aria.core.common.CallbackMod;
+import com.arialyy.aria.core.common.ExecutorMod;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.AriaCrashHandler;
 import java.io.Serializable;
@@ -45,11 +48,138 @@ public class AppConfig extends BaseConfig implements Serializable {
    */
   boolean useBroadcast = false;
 
+  /**
+   * 执行中状态广播的发送间隔，单位为毫秒，间隔内每个任务的执行中状态只会发送最新的一条广播
+   */
+  long broadcastInterval = 1000;
+
+  /**
+   * 注解方法的回调线程，main：主线程；background：Aria的回调线程；direct：直接在调度线程中回调
+   *
+   * @see CallbackMod
+   */
+  String callbackMod = "main";
+
   /**
    * 断网的时候是否重试，{@code true}断网也重试；{@code false}断网不重试，直接走失败的回调
    */
   boolean notNetRetry = false;
 
+  /**
+   * 是否复用http长连接，{@code true}复用，{@code false}每次请求完成后都断开连接；
+   * 只对Aria的连接生效，不会修改系统属性
+   */
+  boolean useKeepAlive = true;
+
+  /**
+   * 每个主机最多保留的空闲长连接数，对{@link com.arialyy.aria.core.common.http.OkHttpTransport}的连接池
+   * 和HttpURLConnection的默认连接池生效，宿主已经设置了"http.maxConnections"、"http.keepAliveDuration"系统属性时，
+   * HttpURLConnection使用宿主的设置
+   */
+  int maxIdleConnections = 5;
+
+  /**
+   * 空闲长连接的保留时间，单位为毫秒，对{@link com.arialyy.aria.core.common.http.OkHttpTransport}的连接池
+   * 和HttpURLConnection的默认连接池生效，宿主已经设置了"http.maxConnections"、"http.keepAliveDuration"系统属性时，
+   * HttpURLConnection使用宿主的设置
+   */
+  long keepAliveDuration = 5 * 60 * 1000;
+
+  /**
+   * 所有任务的总速度限制，单位为kb，为0时不限速
+   */
+  int maxGlobalSpeed = 0;
+
+  /**
+   * 传输线程池类型，elastic：弹性线程池；virtual：虚拟线程，只在JVM 21及以上有效
+   *
+   * @see ExecutorMod
+   */
+  String executorMod = "elastic";
+
+  /**
+   * 弹性线程池的最大线程数，所有任务的线程数超出该值时，启动线程会直接失败
+   */
+  int maxIOThreadNum = 64;
+
+  public String getExecutorMod() {
+    return executorMod;
+  }
+
+  /**
+   * 线程池参数只在第一次启动线程前生效
+   */
+  public AppConfig setExecutorMod(String executorMod) {
+    this.executorMod = executorMod;
+    save();
+    return this;
+  }
+
+  public int getMaxIOThreadNum() {
+    return maxIOThreadNum;
+  }
+
+  /**
+   * 线程池参数只在第一次启动线程前生效
+   */
+  public AppConfig setMaxIOThreadNum(int maxIOThreadNum) {
+    this.maxIOThreadNum = maxIOThreadNum;
+    save();
+    return this;
+  }
+
+  public int getMaxGlobalSpeed() {
+    return maxGlobalSpeed;
+  }
+
+  /**
+   * 设置所有下载、上传任务的总速度限制，立即对正在执行的任务生效
+   *
+   * @param maxGlobalSpeed 单位为kb，为0时不限速
+   */
+  public AppConfig setMaxGlobalSpeed(int maxGlobalSpeed) {
+    this.maxGlobalSpeed = maxGlobalSpeed;
+    BandwidthLimiter.getGlobalLimiter().setMaxRate(maxGlobalSpeed);
+    save();
+    return this;
+  }
+
+  public boolean isUseKeepAlive() {
+    return useKeepAlive;
+  }
+
+  public AppConfig setUseKeepAlive(boolean useKeepAlive) {
+    this.useKeepAlive = useKeepAlive;
+    save();
+    return this;
+  }
+
+  public int getMaxIdleConnections() {
+    return maxIdleConnections;
+  }
+
+  /**
+   * 只在创建OkHttpTransport、第一次建立HttpURLConnection连接前生效
+   */
+  public AppConfig setMaxIdleConnections(int maxIdleConnections) {
+    this.maxIdleConnections = maxIdleConnections;
+    save();
+    return this;
+  }
+
+  public long getKeepAliveDuration() {
+    return keepAliveDuration;
+  }
+
+  /**
+   * 只在创建OkHttpTransport、第一次建立HttpURLConnection连接前生效
+   */
+  public AppConfig setKeepAliveDuration(long keepAliveDuration) {
+    this.keepAliveDuration = keepAliveDuration;
+    save();
+    return this;
+  }
+
   public boolean isNotNetRetry() {
     return notNetRetry;
   }
@@ -70,6 +200,29 @@ public class AppConfig extends BaseConfig implements Serializable {
     return this;
   }
 
+  public String getCallbackMod() {
+    return callbackMod;
+  }
+
+  /**
+   * 只对之后注册的观察者生效
+   */
+  public AppConfig setCallbackMod(String callbackMod) {
+    this.callbackMod = callbackMod;
+    save();
+    return this;
+  }
+
+  public long getBroadcastInterval() {
+    return broadcastInterval;
+  }
+
+  public AppConfig setBroadcastInterval(long broadcastInterval) {
+    this.broadcastInterval = broadcastInterval;
+    save();
+    return this;
+  }
+
   public boolean isNetCheck() {
     return netCheck;
   }
@@ -43,6 +43,101 @@ public class DownloadConfig extends BaseTaskConfig implements Serializable {
    */
   boolean useBlock = true;
 
+  /**
+   * 分块模式是否免合并，{@code true}免合并，{@code false}使用分块文件
+   * 注意：
+   * 1、只有{@link #useBlock}为{@code true}时有效，只对新的多线程下载任务有效；
+   * 2、免合并时，目标文件会预先占用对应长度的空间，各线程直接将数据写入目标文件的对应位置，
+   * 不再生成分块文件，下载完成后也不需要合并文件；
+   * 3、已完成的区块记录在位图中，异常退出后以位图为准恢复
+   */
+  boolean useMergeFreeBlock = false;
+
+  /**
+   * 是否使用自适应线程数，{@code true}使用，{@code false}不使用
+   * 注意：
+   * 1、只对不使用块下载模式的多线程任务有效；
+   * 2、任务以2个线程启动，总速度持续上升时逐个增加线程，单连接速度下降或服务器繁忙时减少线程；
+   * 3、{@link #threadNum}为自适应线程数的上限
+   */
+  boolean useAdaptiveThread = false;
+
+  /**
+   * 多线程下载是否使用按位置写入的{@link java.nio.channels.FileChannel}写文件，{@code true}使用，{@code false}不使用
+   * 注意：
+   * 1、只对不使用块下载模式的多线程任务有效；
+   * 2、每个线程直接写入自己区间的偏移，减少一次内存拷贝，并且不会每次写入都同步文件元数据
+   */
+  boolean usePositionalWrite = false;
+
+  /**
+   * 下载文件的写入持久化模式，默认为"strict"
+   * 1、strict：每次写入都同步到存储设备，和旧版本的行为一致；
+   * 2、checkpoint：只有保存线程记录时才同步到存储设备，在eMMC、SD卡上写入速度更快；
+   * 3、relaxed：只有线程区间完成时才同步到存储设备，中途停止后需要从上一次同步的位置重新下载
+   *
+   * @see DurabilityMod
+   */
+  String durabilityMod = "strict";
+
+  /**
+   * 是否使用非阻塞下载引擎，{@code true}使用，{@code false}不使用
+   * 注意：
+   * 1、少量选择器线程驱动所有区间的下载，适合大量小文件同时下载；
+   * 2、只对支持断点、不使用代理和自定义传输层的http get任务有效，https任务和分块任务仍使用线程下载
+   */
+  boolean useNioEngine = false;
+
+  public boolean isUseAdaptiveThread() {
+    return useAdaptiveThread;
+  }
+
+  public boolean isUsePositionalWrite() {
+    return usePositionalWrite;
+  }
+
+  public DownloadConfig setUsePositionalWrite(boolean usePositionalWrite) {
+    this.usePositionalWrite = usePositionalWrite;
+    save();
+    return this;
+  }
+
+  public boolean isUseNioEngine() {
+    return useNioEngine;
+  }
+
+  public DownloadConfig setUseNioEngine(boolean useNioEngine) {
+    this.useNioEngine = useNioEngine;
+    save();
+    return this;
+  }
+
+  public String getDurabilityMod() {
+    return durabilityMod;
+  }
+
+  public DownloadConfig setDurabilityMod(String durabilityMod) {
+    this.durabilityMod = durabilityMod;
+    save();
+    return this;
+  }
+
+  public boolean isUseMergeFreeBlock() {
+    return useMergeFreeBlock;
+  }
+
+  public DownloadConfig setUseMergeFreeBlock(boolean useMergeFreeBlock) {
+    this.useMergeFreeBlock = useMergeFreeBlock;
+    save();
+    return this;
+  }
+
+  public DownloadConfig setUseAdaptiveThread(boolean useAdaptiveThread) {
+    this.useAdaptiveThread = useAdaptiveThread;
+    save();
+    return this;
+  }
+
   public boolean isUseBlock() {
     return useBlock;
   }
@@ -16,6 +16,7 @@
 package com.arialyy.aria.core.config;
 
 import android.text.TextUtils;
+import com.arialyy.aria.core.common.CallbackMod;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
 import java.lang.reflect.Field;
@@ -140,6 +141,30 @@ public class XMLReader extends DefaultHandler {
           setField("useBlock", checkBoolean(value) ? Boolean.valueOf(value) : false,
               ConfigType.DOWNLOAD);
           break;
+        case "useAdaptiveThread": // 是否使用自适应线程数
+          setField("useAdaptiveThread", checkBoolean(value) ? Boolean.valueOf(value) : false,
+              ConfigType.DOWNLOAD);
+          break;
+        case "usePositionalWrite": // 是否使用按位置写入的FileChannel写文件
+          setField("usePositionalWrite", checkBoolean(value) ? Boolean.valueOf(value) : false,
+              ConfigType.DOWNLOAD);
+          break;
+        case "useNioEngine": // 是否使用非阻塞下载引擎
+          setField("useNioEngine", checkBoolean(value) ? Boolean.valueOf(value) : false,
+              ConfigType.DOWNLOAD);
+          break;
+        case "durabilityMod": // 写入持久化模式
+          String durabilityMod = "strict";
+          if (!TextUtils.isEmpty(value) && (value.equalsIgnoreCase("checkpoint")
+              || value.equalsIgnoreCase("relaxed"))) {
+            durabilityMod = value;
+          }
+          setField("durabilityMod", durabilityMod, ConfigType.DOWNLOAD);
+          break;
+        case "useMergeFreeBlock": // 分块模式是否免合并
+          setField("useMergeFreeBlock", checkBoolean(value) ? Boolean.valueOf(value) : false,
+              ConfigType.DOWNLOAD);
+          break;
         case "subMaxTaskNum": // 子任务最大任务数
           int subMaxTaskNum = checkInt(value) ? Integer.parseInt(value) : 3;
           setField("subMaxTaskNum", subMaxTaskNum, ConfigType.D_GROUP);
@@ -176,10 +201,45 @@ public class XMLReader extends DefaultHandler {
           setField("useBroadcast", checkBoolean(value) ? Boolean.valueOf(value) : false,
               ConfigType.APP);
           break;
+        case "broadcastInterval":  // 执行中状态广播的发送间隔
+          long broadcastInterval = checkLong(value) ? Long.parseLong(value) : 1000;
+          setField("broadcastInterval", broadcastInterval <= 0 ? 1000 : broadcastInterval,
+              ConfigType.APP);
+          break;
+        case "callbackMod":  // 注解方法的回调线程
+          setField("callbackMod", CallbackMod.getMod(value).getTag(), ConfigType.APP);
+          break;
         case "notNetRetry":   // 没有网络也重试
           setField("notNetRetry", checkBoolean(value) ? Boolean.valueOf(value) : false,
               ConfigType.APP);
           break;
+        case "useKeepAlive":  // 是否复用http长连接
+          setField("useKeepAlive", checkBoolean(value) ? Boolean.valueOf(value) : true,
+              ConfigType.APP);
+          break;
+        case "maxIdleConnections":  // 每个主机最多保留的空闲长连接数
+          int maxIdleConnections = checkInt(value) ? Integer.parseInt(value) : 5;
+          setField("maxIdleConnections", maxIdleConnections, ConfigType.APP);
+          break;
+        case "keepAliveDuration": // 空闲长连接的保留时间
+          setField("keepAliveDuration", checkLong(value) ? Long.parseLong(value) : 5 * 60 * 1000,
+              ConfigType.APP);
+          break;
+        case "maxGlobalSpeed":  // 所有任务的总速度限制
+          int maxGlobalSpeed = checkInt(value) ? Integer.parseInt(value) : 0;
+          setField("maxGlobalSpeed", maxGlobalSpeed, ConfigType.APP);
+          break;
+        case "executorMod": // 传输线程池类型
+          String executorMod = "elastic";
+          if (!TextUtils.isEmpty(value) && value.equalsIgnoreCase("virtual")) {
+            executorMod = value;
+          }
+          setField("executorMod", executorMod, ConfigType.APP);
+          break;
+        case "maxIOThreadNum":  // 弹性线程池的最大线程数
+          int maxIOThreadNum = checkInt(value) ? Integer.parseInt(value) : 64;
+          setField("maxIOThreadNum", maxIOThreadNum <= 0 ? 64 : maxIOThreadNum, ConfigType.APP);
+          break;
       }
     }
   }
@@ -19,6 +19,7 @@ import android.support.annotation.CheckResult;
 import android.support.annotation.NonNull;
 import com.arialyy.aria.core.common.http.GetDelegate;
 import com.arialyy.aria.core.common.http.HttpDelegate;
+import com.arialyy.aria.core.common.http.IHttpTransport;
 import com.arialyy.aria.core.common.http.PostDelegate;
 import com.arialyy.aria.core.inf.IHttpFileLenAdapter;
 import com.arialyy.aria.core.manager.TaskWrapperManager;
@@ -174,6 +175,14 @@ public class DownloadGroupTarget extends AbsDGTarget<DownloadGroupTarget> {
     return mHttpDelegate.setFileLenAdapter(adapter);
   }
 
+  /**
+   * 设置任务使用的http传输层，子任务使用同一个传输层
+   */
+  @CheckResult
+  public DownloadGroupTarget setHttpTransport(IHttpTransport transport) {
+    return mHttpDelegate.setHttpTransport(transport);
+  }
+
   @Override public int getTargetType() {
     return GROUP_HTTP;
   }
@@ -16,7 +16,6 @@
 package com.arialyy.aria.core.download;
 
 import android.os.Handler;
-import android.os.Looper;
 import android.text.TextUtils;
 import com.arialyy.aria.core.AriaManager;
 import com.arialyy.aria.core.common.IUtil;
@@ -26,6 +25,7 @@ import com.arialyy.aria.core.download.group.IDGroupListener;
 import com.arialyy.aria.core.inf.AbsGroupTask;
 import com.arialyy.aria.core.inf.AbsTaskWrapper;
 import com.arialyy.aria.core.scheduler.ISchedulers;
+import com.arialyy.aria.core.scheduler.SchedulerThread;
 import com.arialyy.aria.util.CheckUtil;
 
 /**
@@ -79,7 +79,7 @@ public class DownloadGroupTask extends AbsGroupTask<DGTaskWrapper> {
      * @param schedulers {@link ISchedulers}
      */
     public DownloadGroupTask.Builder setOutHandler(ISchedulers schedulers) {
-      outHandler = new Handler(Looper.getMainLooper(), schedulers);
+      outHandler = new Handler(SchedulerThread.getLooper(), schedulers);
       return this;
     }
 
@@ -22,6 +22,7 @@ import com.arialyy.annotations.TaskEnum;
 import com.arialyy.aria.core.AriaManager;
 import com.arialyy.aria.core.command.CancelAllCmd;
 import com.arialyy.aria.core.command.NormalCmdFactory;
+import com.arialyy.aria.core.common.CallbackMod;
 import com.arialyy.aria.core.common.ProxyHelper;
 import com.arialyy.aria.core.event.EventMsgUtil;
 import com.arialyy.aria.core.inf.AbsEntity;
@@ -157,9 +158,19 @@ public class DownloadReceiver extends AbsReceiver {
   }
 
   /**
-   * 将当前类注册到Aria
+   * 将当前类注册到Aria，注解方法的回调线程使用配置文件中的callbackMod
    */
   public void register() {
+    register(CallbackMod.getMod(
+        AriaManager.getInstance(AriaManager.APP).getAppConfig().getCallbackMod()));
+  }
+
+  /**
+   * 将当前类注册到Aria
+   *
+   * @param callbackMod 注解方法的回调线程，{@link CallbackMod#MAIN}可以直接操作界面
+   */
+  public void register(CallbackMod callbackMod) {
     if (TextUtils.isEmpty(targetName)) {
       ALog.e(TAG, "download register target null");
       return;
@@ -173,13 +184,14 @@ public class DownloadReceiver extends AbsReceiver {
     if (set != null && !set.isEmpty()) {
       for (Integer type : set) {
         if (type == ProxyHelper.PROXY_TYPE_DOWNLOAD) {
-          DownloadSchedulers.getInstance().register(obj, TaskEnum.DOWNLOAD);
+          DownloadSchedulers.getInstance().register(obj, TaskEnum.DOWNLOAD, callbackMod);
         } else if (type == ProxyHelper.PROXY_TYPE_DOWNLOAD_GROUP) {
-          DownloadGroupSchedulers.getInstance().register(obj, TaskEnum.DOWNLOAD_GROUP);
+          DownloadGroupSchedulers.getInstance().register(obj, TaskEnum.DOWNLOAD_GROUP, callbackMod);
         } else if (type == ProxyHelper.PROXY_TYPE_M3U8_PEER) {
-          DownloadSchedulers.getInstance().register(obj, TaskEnum.M3U8_PEER);
+          DownloadSchedulers.getInstance().register(obj, TaskEnum.M3U8_PEER, callbackMod);
         } else if (type == ProxyHelper.PROXY_TYPE_DOWNLOAD_GROUP_SUB) {
-          DownloadGroupSchedulers.getInstance().register(obj, TaskEnum.DOWNLOAD_GROUP_SUB);
+          DownloadGroupSchedulers.getInstance()
+              .register(obj, TaskEnum.DOWNLOAD_GROUP_SUB, callbackMod);
         }
       }
     } else {
@@ -17,8 +17,11 @@ package com.arialyy.aria.core.download;
 
 import android.support.annotation.CheckResult;
 import android.support.annotation.NonNull;
+import com.arialyy.aria.core.common.http.ConnectionManager;
 import com.arialyy.aria.core.common.http.GetDelegate;
 import com.arialyy.aria.core.common.http.HttpDelegate;
+import com.arialyy.aria.core.common.http.IHttpTransport;
+import com.arialyy.aria.core.common.http.OkHttpTransport;
 import com.arialyy.aria.core.common.http.PostDelegate;
 import com.arialyy.aria.core.download.m3u8.M3U8Delegate;
 import com.arialyy.aria.core.inf.IHttpFileLenAdapter;
@@ -112,6 +115,15 @@ public class DownloadTarget extends AbsDTarget<DownloadTarget> {
     return mHttpDelegate.setFileLenAdapter(adapter);
   }
 
+  /**
+   * 设置任务使用的http传输层，如需要http/2多路复用时可以设置为{@link OkHttpTransport}，
+   * 不设置时使用{@link ConnectionManager#setTransport(IHttpTransport)}设置的全局传输层
+   */
+  @CheckResult
+  public DownloadTarget setHttpTransport(IHttpTransport transport) {
+    return mHttpDelegate.setHttpTransport(transport);
+  }
+
   /**
    * 从header中获取文件描述信息
    */
@@ -17,7 +17,6 @@
 package com.arialyy.aria.core.download;
 
 import android.os.Handler;
-import android.os.Looper;
 import com.arialyy.aria.core.AriaManager;
 import com.arialyy.aria.core.common.IUtil;
 import com.arialyy.aria.core.download.downloader.SimpleDownloadUtil;
@@ -28,6 +27,7 @@ import com.arialyy.aria.core.inf.AbsTaskWrapper;
 import com.arialyy.aria.core.inf.IDownloadListener;
 import com.arialyy.aria.core.inf.ITaskWrapper;
 import com.arialyy.aria.core.scheduler.ISchedulers;
+import com.arialyy.aria.core.scheduler.SchedulerThread;
 
 /**
  * Created by lyy on 2016/8/11.
@@ -118,7 +118,7 @@ public class DownloadTask extends AbsNormalTask<DTaskWrapper> {
      * @param schedulers {@link ISchedulers}
      */
     public Builder setOutHandler(ISchedulers schedulers) {
-      outHandler = new Handler(Looper.getMainLooper(), schedulers);
+      outHandler = new Handler(SchedulerThread.getLooper(), schedulers);
       return this;
     }
 
@@ -64,6 +64,7 @@ public class M3U8Listener extends BaseDListener implements IDownloadListener {
   private void sendPeerStateToTarget(int state, String m3u8Url, String peerPath, int peerIndex) {
     Bundle bundle = new Bundle();
     bundle.putString(ISchedulers.DATA_M3U8_URL, m3u8Url);
+    bundle.putString(ISchedulers.DATA_M3U8_TASK_KEY, mTaskWrapper.getKey());
     bundle.putString(ISchedulers.DATA_M3U8_PEER_PATH, peerPath);
     bundle.putInt(ISchedulers.DATA_M3U8_PEER_INDEX, peerIndex);
     Message msg = outHandler.get().obtainMessage();
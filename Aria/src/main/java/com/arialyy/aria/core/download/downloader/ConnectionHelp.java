@@ -16,30 +16,28 @@
 package com.arialyy.aria.core.download.downloader;
 
 import android.text.TextUtils;
-import com.arialyy.aria.core.AriaManager;
-import com.arialyy.aria.core.common.ProtocolType;
 import com.arialyy.aria.core.common.RequestEnum;
+import com.arialyy.aria.core.common.http.ConnectionManager;
 import com.arialyy.aria.core.common.http.HttpTaskConfig;
+import com.arialyy.aria.core.common.http.IHttpBody;
+import com.arialyy.aria.core.common.http.IHttpConnection;
+import com.arialyy.aria.core.config.Configuration;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.CommonUtil;
-import com.arialyy.aria.util.SSLContextUtil;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.CookieManager;
 import java.net.CookieStore;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
 
 /**
  * Created by lyy on 2017/1/18. 链接帮助类
@@ -80,7 +78,7 @@ public class ConnectionHelp {
    * @return {@link GZIPInputStream}、{@link InflaterInputStream}
    * @throws IOException
    */
-  public static InputStream convertInputStream(HttpURLConnection connection) throws IOException {
+  public static InputStream convertInputStream(IHttpConnection connection) throws IOException {
     String encoding = connection.getHeaderField("Content-Encoding");
     if (TextUtils.isEmpty(encoding)) {
       return connection.getInputStream();
@@ -95,35 +93,13 @@ public class ConnectionHelp {
   }
 
   /**
-   * 处理链接
+   * 通过任务的传输层创建连接
    *
    * @throws IOException
    */
-  public static HttpURLConnection handleConnection(URL url, HttpTaskConfig taskDelegate)
+  public static IHttpConnection handleConnection(URL url, HttpTaskConfig taskDelegate)
       throws IOException {
-    HttpURLConnection conn;
-    URLConnection urlConn;
-    if (taskDelegate.getProxy() != null) {
-      urlConn = url.openConnection(taskDelegate.getProxy());
-    } else {
-      urlConn = url.openConnection();
-    }
-    if (urlConn instanceof HttpsURLConnection) {
-      AriaManager manager = AriaManager.getInstance(AriaManager.APP);
-      conn = (HttpsURLConnection) urlConn;
-      SSLContext sslContext =
-          SSLContextUtil.getSSLContextFromAssets(manager.getDownloadConfig().getCaName(),
-              manager.getDownloadConfig().getCaPath(), ProtocolType.Default);
-      if (sslContext == null) {
-        sslContext = SSLContextUtil.getDefaultSLLContext(ProtocolType.Default);
-      }
-      SSLSocketFactory ssf = sslContext.getSocketFactory();
-      ((HttpsURLConnection) conn).setSSLSocketFactory(ssf);
-      ((HttpsURLConnection) conn).setHostnameVerifier(SSLContextUtil.HOSTNAME_VERIFIER);
-    } else {
-      conn = (HttpURLConnection) urlConn;
-    }
-    return conn;
+    return ConnectionManager.getTransport(taskDelegate).open(url, taskDelegate);
   }
 
   /**
@@ -131,39 +107,53 @@ public class ConnectionHelp {
    *
    * @throws ProtocolException
    */
-  public static HttpURLConnection setConnectParam(HttpTaskConfig delegate, HttpURLConnection conn) {
+  public static IHttpConnection setConnectParam(HttpTaskConfig delegate, IHttpConnection conn) {
+    // 传递参数
     if (delegate.getRequestEnum() == RequestEnum.POST) {
-      conn.setDoInput(true);
-      conn.setDoOutput(true);
-      conn.setUseCaches(false);
+      conn.setRequestMethod(RequestEnum.POST.name);
+      if (delegate.getParams() != null) {
+        conn.setBody(new ParamBody(delegate.getParams()));
+      }
+    }
+    Map<String, String> headers = getRequestHeaders(delegate);
+    for (Map.Entry<String, String> entry : headers.entrySet()) {
+      conn.setRequestProperty(entry.getKey(), entry.getValue());
     }
-    Set<String> keys = null;
+    return conn;
+  }
+
+  /**
+   * 获取请求头部，包括任务设置的头部、默认头部和cookie
+   *
+   * @return key不区分大小写的头部
+   */
+  public static Map<String, String> getRequestHeaders(HttpTaskConfig delegate) {
+    Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
     if (delegate.getHeaders() != null && delegate.getHeaders().size() > 0) {
-      keys = delegate.getHeaders().keySet();
-      for (String key : keys) {
-        conn.setRequestProperty(key, delegate.getHeaders().get(key));
-      }
+      headers.putAll(delegate.getHeaders());
     }
-    if (conn.getRequestProperty("Accept-Language") == null) {
-      conn.setRequestProperty("Accept-Language", "zh-CN,zh;q=0.9,en;q=0.8,ja;q=0.7");
+    if (headers.get("Accept-Language") == null) {
+      headers.put("Accept-Language", "zh-CN,zh;q=0.9,en;q=0.8,ja;q=0.7");
     }
-    if (conn.getRequestProperty("Accept-Encoding") == null) {
-      conn.setRequestProperty("Accept-Encoding", "identity");
+    if (headers.get("Accept-Encoding") == null) {
+      headers.put("Accept-Encoding", "identity");
     }
-    if (conn.getRequestProperty("Accept-Charset") == null) {
-      conn.setRequestProperty("Accept-Charset", "UTF-8");
+    if (headers.get("Accept-Charset") == null) {
+      headers.put("Accept-Charset", "UTF-8");
     }
-    if (conn.getRequestProperty("Connection") == null) {
-      conn.setRequestProperty("Connection", "Keep-Alive");
+    if (headers.get("Connection") == null) {
+      // 只影响Aria自己的连接，不修改系统的长连接配置
+      headers.put("Connection",
+          Configuration.getInstance().appCfg.isUseKeepAlive() ? "Keep-Alive" : "close");
     }
-    if (conn.getRequestProperty("Charset") == null) {
-      conn.setRequestProperty("Charset", "UTF-8");
+    if (headers.get("Charset") == null) {
+      headers.put("Charset", "UTF-8");
     }
-    if (conn.getRequestProperty("User-Agent") == null) {
-      conn.setRequestProperty("User-Agent",
+    if (headers.get("User-Agent") == null) {
+      headers.put("User-Agent",
           "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/58.0.3029.110 Safari/537.36");
     }
-    if (conn.getRequestProperty("Accept") == null) {
+    if (headers.get("Accept") == null) {
       StringBuilder accept = new StringBuilder();
       accept.append("image/gif, ")
           .append("image/jpeg, ")
@@ -184,20 +174,46 @@ public class ConnectionHelp {
           .append("text/plain, ")
           .append("text/html, ")
           .append("*/*");
-      conn.setRequestProperty("Accept", accept.toString());
+      headers.put("Accept", accept.toString());
     }
-    //302获取重定向地址
-    conn.setInstanceFollowRedirects(false);
-
     CookieManager manager = delegate.getCookieManager();
     if (manager != null) {
       CookieStore store = manager.getCookieStore();
       if (store != null && store.getCookies().size() > 0) {
-        conn.setRequestProperty("Cookie",
-            TextUtils.join(";", store.getCookies()));
+        headers.put("Cookie", TextUtils.join(";", store.getCookies()));
+      }
+    }
+    return headers;
+  }
+
+  /**
+   * post请求参数
+   */
+  private static class ParamBody implements IHttpBody {
+    private byte[] mData;
+
+    private ParamBody(Map<String, String> params) {
+      StringBuilder sb = new StringBuilder();
+      Set<String> keys = params.keySet();
+      for (String key : keys) {
+        sb.append(key).append("=").append(URLEncoder.encode(params.get(key))).append("&");
+      }
+      if (sb.length() > 0) {
+        sb.deleteCharAt(sb.length() - 1);
       }
+      mData = sb.toString().getBytes();
     }
 
-    return conn;
+    @Override public String getContentType() {
+      return "application/x-www-form-urlencoded";
+    }
+
+    @Override public long getContentLength() {
+      return mData.length;
+    }
+
+    @Override public void writeTo(OutputStream os) throws IOException {
+      os.write(mData);
+    }
   }
 }
@@ -16,9 +16,12 @@
 package com.arialyy.aria.core.download.downloader;
 
 import com.arialyy.aria.core.common.AbsThreadTask;
+import com.arialyy.aria.core.common.DurabilityMod;
 import com.arialyy.aria.core.common.NormalFileer;
 import com.arialyy.aria.core.common.RecordHandler;
 import com.arialyy.aria.core.common.SubThreadConfig;
+import com.arialyy.aria.core.common.http.IHttpConnection;
+import com.arialyy.aria.core.config.Configuration;
 import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.event.Event;
@@ -62,7 +65,9 @@ public class Downloader extends NormalFileer<DownloadEntity, DTaskWrapper> {
     BufferedRandomAccessFile file = null;
     try {
       if (mTotalThreadNum > 1 && !mRecord.isBlock) {
-        file = new BufferedRandomAccessFile(new File(mTempFile.getPath()), "rwd", 8192);
+        DurabilityMod mod = DurabilityMod.getMod(mTaskWrapper.getConfig().getDurabilityMod());
+        file = new BufferedRandomAccessFile(new File(mTempFile.getPath()), mod.getFileMode(),
+            8192);
         //设置文件长度
         file.setLength(mEntity.getFileSize());
       }
@@ -97,6 +102,21 @@ public class Downloader extends NormalFileer<DownloadEntity, DTaskWrapper> {
     }
   }
 
+  @Override protected boolean isAdaptiveThread() {
+    return Configuration.getInstance().downloadCfg.isUseAdaptiveThread();
+  }
+
+  @Override protected int getMaxThreadNum() {
+    return Math.max(mTotalThreadNum, Configuration.getInstance().downloadCfg.getThreadNum());
+  }
+
+  /**
+   * 组合任务的子任务使用组合任务的权重
+   */
+  @Override protected String getBandwidthKey() {
+    return mTaskWrapper.isGroupTask() ? mEntity.getGroupHash() : super.getBandwidthKey();
+  }
+
   @Event
   public void setMaxSpeed(SpeedEvent event) {
     setMaxSpeed(event.speed);
@@ -117,11 +137,47 @@ public class Downloader extends NormalFileer<DownloadEntity, DTaskWrapper> {
       case AbsTaskWrapper.D_FTP_DIR:
         return new FtpThreadTask(config);
       case AbsTaskWrapper.D_HTTP:
-        return new HttpThreadTask(config);
+        if (mTaskWrapper.getConfig().isUseNioEngine() && NioHttpThreadTask.isSupport(config)) {
+          return new NioHttpThreadTask(config);
+        }
+        HttpThreadTask task = new HttpThreadTask(config);
+        if (config.record.startLocation == 0) {
+          task.setProbeConnection(mTaskWrapper.asHttp().takeProbeConnection());
+        }
+        return task;
     }
     return null;
   }
 
+  @Override protected void handleTask() {
+    super.handleTask();
+    // 没有从0开始下载的线程（如恢复任务），获取文件信息时建立的连接不再使用
+    closeProbeConnection();
+  }
+
+  @Override protected void onStop() {
+    super.onStop();
+    // 任务在下载线程取走连接前停止，连接不会再被使用
+    closeProbeConnection();
+  }
+
+  @Override protected void onCancel() {
+    super.onCancel();
+    closeProbeConnection();
+  }
+
+  @Override public void onDestroy() {
+    super.onDestroy();
+    closeProbeConnection();
+  }
+
+  private void closeProbeConnection() {
+    IHttpConnection conn = mTaskWrapper.asHttp().takeProbeConnection();
+    if (conn != null) {
+      conn.disconnect();
+    }
+  }
+
   private void failDownload(BaseException e) {
     closeTimer();
     mListener.onFail(false, e);
@@ -18,6 +18,7 @@ package com.arialyy.aria.core.download.downloader;
 import aria.apache.commons.net.ftp.FTPClient;
 import aria.apache.commons.net.ftp.FTPReply;
 import com.arialyy.aria.core.common.SubThreadConfig;
+import com.arialyy.aria.core.common.ThreadRecord;
 import com.arialyy.aria.core.common.ftp.AbsFtpThreadTask;
 import com.arialyy.aria.core.config.DownloadConfig;
 import com.arialyy.aria.core.download.DTaskWrapper;
@@ -25,6 +26,7 @@ import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.exception.AriaIOException;
 import com.arialyy.aria.exception.TaskException;
 import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.BufferPool;
 import com.arialyy.aria.util.BufferedRandomAccessFile;
 import com.arialyy.aria.util.CommonUtil;
 import java.io.FileOutputStream;
@@ -47,10 +49,23 @@ class FtpThreadTask extends AbsFtpThreadTask<DownloadEntity, DTaskWrapper> {
 
   @Override public FtpThreadTask call() throws Exception {
     super.call();
-    if (mRecord.isComplete) {
-      handleComplete();
-      return this;
-    }
+    ThreadRecord record;
+    do {
+      record = mRecord;
+      if (record.isComplete) {
+        handleComplete();
+      } else {
+        loadRange();
+      }
+      // 区间完成后，如果从其它线程拆分到了新区间，继续下载新区间
+    } while (record != mRecord);
+    return this;
+  }
+
+  /**
+   * 下载当前线程区间
+   */
+  private void loadRange() {
     FTPClient client = null;
     InputStream is = null;
 
@@ -61,7 +76,7 @@ class FtpThreadTask extends AbsFtpThreadTask<DownloadEntity, DTaskWrapper> {
       client = createClient();
       if (client == null) {
         fail(mChildCurrentLocation, new TaskException(TAG, "ftp client 创建失败"));
-        return this;
+        return;
       }
       if (mRecord.startLocation > 0) {
         client.setRestartOffset(mRecord.startLocation);
@@ -73,7 +88,7 @@ class FtpThreadTask extends AbsFtpThreadTask<DownloadEntity, DTaskWrapper> {
             new AriaIOException(TAG,
                 String.format("获取文件信息错误，错误码为：%s，msg：%s", reply, client.getReplyString())));
         client.disconnect();
-        return this;
+        return;
       }
       String remotePath =
           CommonUtil.convertFtpChar(charSet, getTaskWrapper().asFtp().getUrlEntity().remotePath);
@@ -85,7 +100,7 @@ class FtpThreadTask extends AbsFtpThreadTask<DownloadEntity, DTaskWrapper> {
             new AriaIOException(TAG,
                 String.format("获取流失败，错误码为：%s，msg：%s", reply, client.getReplyString())));
         client.disconnect();
-        return this;
+        return;
       }
 
       if (getConfig().isOpenDynamicFile) {
@@ -114,7 +129,6 @@ class FtpThreadTask extends AbsFtpThreadTask<DownloadEntity, DTaskWrapper> {
 
       onThreadComplete();
     }
-    return this;
   }
 
   /**
@@ -129,6 +143,9 @@ class FtpThreadTask extends AbsFtpThreadTask<DownloadEntity, DTaskWrapper> {
     }
     ALog.i(TAG, String.format("任务【%s】线程__%s__下载完毕", getFileName(), mRecord.threadId));
     writeConfig(true, mRecord.endLocation);
+    if (nextRange()) {
+      return;
+    }
     sendCompleteMsg();
   }
 
@@ -139,12 +156,13 @@ class FtpThreadTask extends AbsFtpThreadTask<DownloadEntity, DTaskWrapper> {
     FileOutputStream fos = null;
     FileChannel foc = null;
     ReadableByteChannel fic = null;
+    byte[] buffer = BufferPool.obtainBytes(getTaskConfig().getBuffSize());
     try {
       int len;
       fos = new FileOutputStream(getConfig().tempFile, true);
       foc = fos.getChannel();
       fic = Channels.newChannel(is);
-      ByteBuffer bf = ByteBuffer.allocate(getTaskConfig().getBuffSize());
+      ByteBuffer bf = ByteBuffer.wrap(buffer);
       while (isLive() && (len = fic.read(bf)) != -1) {
         if (isBreak()) {
           break;
@@ -171,6 +189,7 @@ class FtpThreadTask extends AbsFtpThreadTask<DownloadEntity, DTaskWrapper> {
       fail(mChildCurrentLocation,
           new AriaIOException(TAG, String.format("下载失败【%s】", getConfig().url), e));
     } finally {
+      BufferPool.recycle(buffer);
       try {
         if (fos != null) {
           fos.close();
@@ -191,12 +210,23 @@ class FtpThreadTask extends AbsFtpThreadTask<DownloadEntity, DTaskWrapper> {
    * 多线程写文件方式
    */
   private void readNormal(InputStream is) {
+    if (getTaskConfig().isUsePositionalWrite()) {
+      try {
+        readByChannel(is);
+      } catch (IOException e) {
+        fail(mChildCurrentLocation,
+            new AriaIOException(TAG, String.format("下载失败【%s】", getConfig().url), e));
+      }
+      return;
+    }
     BufferedRandomAccessFile file = null;
+    byte[] buffer = BufferPool.obtainBytes(getTaskConfig().getBuffSize());
     try {
       file =
-          new BufferedRandomAccessFile(getConfig().tempFile, "rwd", getTaskConfig().getBuffSize());
+          new BufferedRandomAccessFile(getConfig().tempFile, getFileMode(),
+              getTaskConfig().getBuffSize());
       file.seek(mRecord.startLocation);
-      byte[] buffer = new byte[getTaskConfig().getBuffSize()];
+      setRangeFile(file);
       int len;
       while (isLive() && (len = is.read(buffer)) != -1) {
         if (isBreak()) {
@@ -205,10 +235,12 @@ class FtpThreadTask extends AbsFtpThreadTask<DownloadEntity, DTaskWrapper> {
         if (mSpeedBandUtil != null) {
           mSpeedBandUtil.limitNextBytes(len);
         }
-        if (mChildCurrentLocation + len >= mRecord.endLocation) {
-          len = (int) (mRecord.endLocation - mChildCurrentLocation);
+        long rangeEnd = getRangeEnd();
+        if (mChildCurrentLocation + len >= rangeEnd) {
+          len = (int) (rangeEnd - mChildCurrentLocation);
           file.write(buffer, 0, len);
           progress(len);
+          syncRangeFile();
           break;
         } else {
           file.write(buffer, 0, len);
@@ -219,6 +251,8 @@ class FtpThreadTask extends AbsFtpThreadTask<DownloadEntity, DTaskWrapper> {
       fail(mChildCurrentLocation,
           new AriaIOException(TAG, String.format("下载失败【%s】", getConfig().url), e));
     } finally {
+      setRangeFile(null);
+      BufferPool.recycle(buffer);
       try {
         if (file != null) {
           file.close();
@@ -22,8 +22,8 @@ import android.text.TextUtils;
 import com.arialyy.aria.core.AriaManager;
 import com.arialyy.aria.core.common.CompleteInfo;
 import com.arialyy.aria.core.common.OnFileInfoCallback;
-import com.arialyy.aria.core.common.RequestEnum;
 import com.arialyy.aria.core.common.http.HttpTaskConfig;
+import com.arialyy.aria.core.common.http.IHttpConnection;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.inf.IHttpFileLenAdapter;
@@ -38,17 +38,14 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.CookieManager;
 import java.net.HttpCookie;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLDecoder;
-import java.net.URLEncoder;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -59,28 +56,46 @@ public class HttpFileInfoThread implements Runnable {
   private DownloadEntity mEntity;
   private DTaskWrapper mTaskWrapper;
   private int mConnectTimeOut;
+  private int mReadTimeOut;
   private OnFileInfoCallback onFileInfoCallback;
   private HttpTaskConfig mTaskDelegate;
+  /**
+   * 是否将连接交给下载线程继续读取数据
+   */
+  private boolean isHandOver;
+  private IHttpConnection mProbeConn;
 
   public HttpFileInfoThread(DTaskWrapper taskWrapper, OnFileInfoCallback callback) {
+    this(taskWrapper, callback, false);
+  }
+
+  /**
+   * @param handOver {@code true} 获取文件信息成功后，连接不断开，交给从0开始下载的线程继续读取数据，
+   * 只有获取信息后立即开始下载的任务才能使用
+   */
+  public HttpFileInfoThread(DTaskWrapper taskWrapper, OnFileInfoCallback callback,
+      boolean handOver) {
     this.mTaskWrapper = taskWrapper;
     mEntity = taskWrapper.getEntity();
     mConnectTimeOut =
         AriaManager.getInstance(AriaManager.APP).getDownloadConfig().getConnectTimeOut();
+    mReadTimeOut = AriaManager.getInstance(AriaManager.APP).getDownloadConfig().getIOTimeOut();
     onFileInfoCallback = callback;
     mTaskDelegate = taskWrapper.asHttp();
+    isHandOver = handOver;
   }
 
   @Override public void run() {
     Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
     TrafficStats.setThreadStatsTag(UUID.randomUUID().toString().hashCode());
-    HttpURLConnection conn = null;
+    IHttpConnection conn = null;
     try {
       URL url = ConnectionHelp.handleUrl(mEntity.getUrl(), mTaskDelegate);
       conn = ConnectionHelp.handleConnection(url, mTaskDelegate);
       ConnectionHelp.setConnectParam(mTaskDelegate, conn);
-      conn.setRequestProperty("Range", "bytes=" + 0 + "-");
+      conn.setRange(0, -1);
       conn.setConnectTimeout(mConnectTimeOut);
+      conn.setReadTimeout(mReadTimeOut);
       conn.connect();
       handleConnect(conn);
     } catch (IOException e) {
@@ -88,30 +103,21 @@ public class HttpFileInfoThread implements Runnable {
               String.format("下载失败，filePath: %s, url: %s", mEntity.getDownloadPath(), mEntity.getUrl())),
           true);
     } finally {
-      if (conn != null) {
-        conn.disconnect();
-      }
+      disconnect(conn);
     }
   }
 
-  private void handleConnect(HttpURLConnection conn) throws IOException {
-    if (mTaskDelegate.getRequestEnum() == RequestEnum.POST) {
-      Map<String, String> params = mTaskDelegate.getParams();
-      if (params != null) {
-        OutputStreamWriter dos = new OutputStreamWriter(conn.getOutputStream());
-        Set<String> keys = params.keySet();
-        StringBuilder sb = new StringBuilder();
-        for (String key : keys) {
-          sb.append(key).append("=").append(URLEncoder.encode(params.get(key))).append("&");
-        }
-        String url = sb.toString();
-        url = url.substring(0, url.length() - 1);
-        dos.write(url);
-        dos.flush();
-        dos.close();
-      }
+  /**
+   * 断开连接，已经交给下载线程的连接不断开
+   */
+  private void disconnect(IHttpConnection conn) {
+    if (conn != null && conn != mProbeConn) {
+      conn.disconnect();
     }
+  }
 
+  private void handleConnect(IHttpConnection conn) throws IOException {
+    ALog.d(TAG, String.format("任务【%s】使用的协议：%s", mEntity.getFileName(), conn.getProtocol()));
     IHttpFileLenAdapter lenAdapter = mTaskWrapper.asHttp().getFileLenAdapter();
     if (lenAdapter == null) {
       lenAdapter = new FileLenAdapter();
@@ -218,6 +224,11 @@ public class HttpFileInfoThread implements Runnable {
     }
     if (end) {
       mTaskDelegate.setChunked(isChunked);
+      if (isHandOver) {
+        // 响应的数据从0开始，交给下载线程继续读取，减少一次连接
+        mProbeConn = conn;
+        mTaskDelegate.setProbeConnection(conn);
+      }
       if (onFileInfoCallback != null) {
         CompleteInfo info = new CompleteInfo(code, mTaskWrapper);
         onFileInfoCallback.onComplete(mEntity.getUrl(), info);
@@ -283,7 +294,7 @@ public class HttpFileInfoThread implements Runnable {
   /**
    * 处理30x跳转
    */
-  private void handleUrlReTurn(HttpURLConnection conn, String newUrl) throws IOException {
+  private void handleUrlReTurn(IHttpConnection conn, String newUrl) throws IOException {
     ALog.d(TAG, "30x跳转，新url为【" + newUrl + "】");
     if (TextUtils.isEmpty(newUrl) || newUrl.equalsIgnoreCase("null")) {
       if (onFileInfoCallback != null) {
@@ -304,16 +315,17 @@ public class HttpFileInfoThread implements Runnable {
     mEntity.setRedirect(true);
     mEntity.setRedirectUrl(newUrl);
     String cookies = conn.getHeaderField("Set-Cookie");
-    conn.disconnect();
+    disconnect(conn);
     URL url = ConnectionHelp.handleUrl(newUrl, mTaskDelegate);
     conn = ConnectionHelp.handleConnection(url, mTaskDelegate);
     ConnectionHelp.setConnectParam(mTaskDelegate, conn);
     conn.setRequestProperty("Cookie", cookies);
-    conn.setRequestProperty("Range", "bytes=" + 0 + "-");
+    conn.setRange(0, -1);
     conn.setConnectTimeout(mConnectTimeOut);
+    conn.setReadTimeout(mReadTimeOut);
     conn.connect();
     handleConnect(conn);
-    conn.disconnect();
+    disconnect(conn);
   }
 
   /**
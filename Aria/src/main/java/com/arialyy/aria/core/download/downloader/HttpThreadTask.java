@@ -16,103 +16,121 @@
 package com.arialyy.aria.core.download.downloader;
 
 import com.arialyy.aria.core.common.AbsThreadTask;
-import com.arialyy.aria.core.common.RequestEnum;
 import com.arialyy.aria.core.common.SubThreadConfig;
+import com.arialyy.aria.core.common.ThreadRecord;
 import com.arialyy.aria.core.config.DownloadConfig;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.download.DownloadEntity;
+import com.arialyy.aria.core.common.http.ConnectionManager;
 import com.arialyy.aria.core.common.http.HttpTaskConfig;
+import com.arialyy.aria.core.common.http.IHttpConnection;
 import com.arialyy.aria.exception.AriaIOException;
 import com.arialyy.aria.exception.TaskException;
 import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.BufferPool;
 import com.arialyy.aria.util.BufferedRandomAccessFile;
 import java.io.BufferedInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * Created by lyy on 2017/1/18. 下载线程
  */
 final class HttpThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
   private final String TAG = "HttpThreadTask";
+  private IHttpConnection mProbeConn;
 
   HttpThreadTask(SubThreadConfig<DTaskWrapper> config) {
     super(config);
   }
 
+  /**
+   * 设置获取文件信息时建立的连接，连接请求的区间为"bytes=0-"，只有从0开始下载的线程才能使用。
+   * 线程读取到区间结束位置后停止读取，剩余的数据由{@link ConnectionManager#release}处理
+   */
+  void setProbeConnection(IHttpConnection conn) {
+    mProbeConn = conn;
+  }
+
   @Override public HttpThreadTask call() throws Exception {
     super.call();
-    if (mRecord.isComplete) {
-      handleComplete();
-      return this;
-    }
-    HttpURLConnection conn = null;
+    ThreadRecord record;
+    do {
+      record = mRecord;
+      if (record.isComplete) {
+        handleComplete();
+      } else {
+        loadRange();
+      }
+      // 区间完成后，如果从其它线程拆分到了新区间，继续下载新区间
+    } while (record != mRecord);
+    return this;
+  }
+
+  /**
+   * 下载当前线程区间
+   */
+  private void loadRange() {
+    IHttpConnection conn = null;
     BufferedInputStream is = null;
     BufferedRandomAccessFile file = null;
+    // 只有区间正常读取完毕的连接才能归还到连接池，停止、取消或失败时直接断开
+    boolean finished = false;
     try {
       HttpTaskConfig taskDelegate = getTaskWrapper().asHttp();
-      URL url = ConnectionHelp.handleUrl(getConfig().url, taskDelegate);
-      conn = ConnectionHelp.handleConnection(url, taskDelegate);
-      if (mTaskWrapper.isSupportBP()) {
-        ALog.d(TAG,
-            String.format("任务【%s】线程__%s__开始下载【开始位置 : %s，结束位置：%s】", getFileName(),
-                mRecord.threadId, mRecord.startLocation, mRecord.endLocation));
-        conn.setRequestProperty("Range", String.format("bytes=%s-%s", mRecord.startLocation,
-            (mRecord.endLocation - 1)));
+      conn = takeProbeConnection();
+      if (conn != null) {
+        ALog.d(TAG, String.format("任务【%s】线程__%s__使用获取文件信息的连接开始下载", getFileName(),
+            mRecord.threadId));
       } else {
-        ALog.w(TAG, "该下载不支持断点");
-      }
-      ConnectionHelp.setConnectParam(taskDelegate, conn);
-      conn.setConnectTimeout(getTaskConfig().getConnectTimeOut());
-      conn.setReadTimeout(getTaskConfig().getIOTimeOut());  //设置读取流的等待时间,必须设置该参数
-      if (taskDelegate.isChunked()) {
-        conn.setDoInput(true);
-        conn.setChunkedStreamingMode(0);
-      }
-      conn.connect();
-      // 传递参数
-      if (taskDelegate.getRequestEnum() == RequestEnum.POST) {
-        Map<String, String> params = taskDelegate.getParams();
-        if (params != null) {
-          OutputStreamWriter dos = new OutputStreamWriter(conn.getOutputStream());
-          Set<String> keys = params.keySet();
-          StringBuilder sb = new StringBuilder();
-          for (String key : keys) {
-            sb.append(key).append("=").append(URLEncoder.encode(params.get(key))).append("&");
-          }
-          String paramStr = sb.toString();
-          paramStr = paramStr.substring(0, paramStr.length() - 1);
-          dos.write(paramStr);
-          dos.flush();
-          dos.close();
+        URL url = ConnectionHelp.handleUrl(getConfig().url, taskDelegate);
+        conn = ConnectionHelp.handleConnection(url, taskDelegate);
+        if (mTaskWrapper.isSupportBP()) {
+          ALog.d(TAG,
+              String.format("任务【%s】线程__%s__开始下载【开始位置 : %s，结束位置：%s】", getFileName(),
+                  mRecord.threadId, mRecord.startLocation, mRecord.endLocation));
+          conn.setRange(mRecord.startLocation, mRecord.endLocation);
+        } else {
+          ALog.w(TAG, "该下载不支持断点");
         }
+        ConnectionHelp.setConnectParam(taskDelegate, conn);
+        conn.setConnectTimeout(getTaskConfig().getConnectTimeOut());
+        conn.setReadTimeout(getTaskConfig().getIOTimeOut());  //设置读取流的等待时间,必须设置该参数
+        conn.connect();
+      }
+      // POST参数在connect时写入，读取响应码需要放在写入参数之后
+      int code = conn.getResponseCode();
+      if (code == 429 || code == HttpURLConnection.HTTP_UNAVAILABLE) {
+        onServerBusy(code);
       }
 
       is = new BufferedInputStream(ConnectionHelp.convertInputStream(conn));
       if (taskDelegate.isChunked()) {
-        readChunked(is);
+        finished = readChunked(is);
       } else if (getConfig().isOpenDynamicFile) {
-        readDynamicFile(is);
+        finished = readDynamicFile(is);
+      } else if (getTaskConfig().isUsePositionalWrite()) {
+        readByChannel(is);
+        finished = isLive() && !isBreak();
+        handleComplete();
       } else {
         //创建可设置位置的文件
         file =
-            new BufferedRandomAccessFile(getConfig().tempFile, "rwd",
+            new BufferedRandomAccessFile(getConfig().tempFile, getFileMode(),
                 getTaskConfig().getBuffSize());
         //设置每条线程写入文件的位置
         file.seek(mRecord.startLocation);
+        setRangeFile(file);
         readNormal(is, file);
+        finished = isLive() && !isBreak();
         handleComplete();
       }
     } catch (MalformedURLException e) {
@@ -128,33 +146,46 @@ final class HttpThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
           String.format("任务【%s】下载失败，filePath: %s, url: %s", getFileName(),
               getEntity().getDownloadPath(), getEntity().getUrl()), e));
     } finally {
+      setRangeFile(null);
       try {
         if (file != null) {
           file.close();
         }
-        if (is != null) {
-          is.close();
-        }
-        if (conn != null) {
-          conn.disconnect();
-        }
       } catch (IOException e) {
         e.printStackTrace();
       }
+      // 数据流读取完毕的连接归还到连接池，供下一个区间使用
+      ConnectionManager.release(conn, is, finished);
 
       onThreadComplete();
     }
-    return this;
+  }
+
+  /**
+   * 取出获取文件信息时建立的连接，连接只能使用一次
+   *
+   * @return 没有可用的连接时返回null
+   */
+  private IHttpConnection takeProbeConnection() {
+    IHttpConnection conn = mProbeConn;
+    mProbeConn = null;
+    if (conn != null && mChildCurrentLocation != 0) {
+      conn.disconnect();
+      return null;
+    }
+    return conn;
   }
 
   /**
    * 读取chunked数据
+   *
+   * @return {@code true} 数据正常读取完毕，连接可以归还到连接池
    */
-  private void readChunked(InputStream is) {
+  private boolean readChunked(InputStream is) {
     FileOutputStream fos = null;
+    byte[] buffer = BufferPool.obtainBytes(getTaskConfig().getBuffSize());
     try {
       fos = new FileOutputStream(getConfig().tempFile, true);
-      byte[] buffer = new byte[getTaskConfig().getBuffSize()];
       int len;
       while (isLive() && (len = is.read(buffer)) != -1) {
         if (isBreak()) {
@@ -166,13 +197,17 @@ final class HttpThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
         fos.write(buffer, 0, len);
         progress(len);
       }
+      boolean finished = isLive() && !isBreak();
       handleComplete();
+      return finished;
     } catch (IOException e) {
       fail(mChildCurrentLocation, new AriaIOException(TAG,
           String.format("文件下载失败，savePath: %s, url: %s", getEntity().getDownloadPath(),
               getConfig().url),
           e));
+      return false;
     } finally {
+      BufferPool.recycle(buffer);
       if (fos != null) {
         try {
           fos.close();
@@ -185,17 +220,20 @@ final class HttpThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
 
   /**
    * 动态长度文件读取方式
+   *
+   * @return {@code true} 数据正常读取完毕，连接可以归还到连接池
    */
-  private void readDynamicFile(InputStream is) {
+  private boolean readDynamicFile(InputStream is) {
     FileOutputStream fos = null;
     FileChannel foc = null;
     ReadableByteChannel fic = null;
+    byte[] buffer = BufferPool.obtainBytes(getTaskConfig().getBuffSize());
     try {
       int len;
       fos = new FileOutputStream(getConfig().tempFile, true);
       foc = fos.getChannel();
       fic = Channels.newChannel(is);
-      ByteBuffer bf = ByteBuffer.allocate(getTaskConfig().getBuffSize());
+      ByteBuffer bf = ByteBuffer.wrap(buffer);
       //如果要通过 Future 的 cancel 方法取消正在运行的任务，那么该任务必定是可以 对线程中断做出响应 的任务。
 
       while (isLive() && (len = fic.read(bf)) != -1) {
@@ -219,13 +257,17 @@ final class HttpThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
           progress(len);
         }
       }
+      boolean finished = isLive() && !isBreak();
       handleComplete();
+      return finished;
     } catch (IOException e) {
       fail(mChildCurrentLocation, new AriaIOException(TAG,
           String.format("文件下载失败，savePath: %s, url: %s", getEntity().getDownloadPath(),
               getConfig().url),
           e));
+      return false;
     } finally {
+      BufferPool.recycle(buffer);
       try {
         if (fos != null) {
           fos.flush();
@@ -234,9 +276,7 @@ final class HttpThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
         if (foc != null) {
           foc.close();
         }
-        if (fic != null) {
-          fic.close();
-        }
+        // fic关闭时会关闭数据流，数据流由ConnectionManager释放
       } catch (IOException e) {
         e.printStackTrace();
       }
@@ -244,21 +284,33 @@ final class HttpThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
   }
 
   /**
-   * 读取普通的文件流
+   * 读取普通的文件流，区间被拆分后，读取到新的结束位置就停止
    */
   private void readNormal(InputStream is, BufferedRandomAccessFile file)
       throws IOException {
-    byte[] buffer = new byte[getTaskConfig().getBuffSize()];
-    int len;
-    while (isLive() && (len = is.read(buffer)) != -1) {
-      if (isBreak()) {
-        break;
-      }
-      if (mSpeedBandUtil != null) {
-        mSpeedBandUtil.limitNextBytes(len);
+    byte[] buffer = BufferPool.obtainBytes(getTaskConfig().getBuffSize());
+    try {
+      int len;
+      while (isLive() && (len = is.read(buffer)) != -1) {
+        if (isBreak()) {
+          break;
+        }
+        if (mSpeedBandUtil != null) {
+          mSpeedBandUtil.limitNextBytes(len);
+        }
+        long rangeEnd = getRangeEnd();
+        if (mChildCurrentLocation + len >= rangeEnd) {
+          len = (int) (rangeEnd - mChildCurrentLocation);
+          file.write(buffer, 0, len);
+          progress(len);
+          syncRangeFile();
+          break;
+        }
+        file.write(buffer, 0, len);
+        progress(len);
       }
-      file.write(buffer, 0, len);
-      progress(len);
+    } finally {
+      BufferPool.recycle(buffer);
     }
   }
 
@@ -280,6 +332,9 @@ final class HttpThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
     //支持断点的处理
     if (mTaskWrapper.isSupportBP()) {
       writeConfig(true, mRecord.endLocation);
+      if (nextRange()) {
+        return;
+      }
       sendCompleteMsg();
     } else {
       sendCompleteMsg();
@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.download.downloader;
+
+import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.BufferPool;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于{@link Selector}的非阻塞http下载引擎。
+ * 1、少量选择器线程驱动所有任务的http/1.1区间请求，线程数不随任务数和区间数增长；
+ * 2、连接、发送请求、读取响应都是非阻塞的，限速时暂停读取该连接，不会阻塞选择器线程；
+ * 3、区间结束后的保存记录、拆分新区间等阻塞操作在工作线程中执行。
+ */
+final class NioHttpEngine {
+  private static final String TAG = "NioHttpEngine";
+
+  /**
+   * 选择器的最长等待时间，也是检查超时和任务停止的间隔，单位为毫秒
+   */
+  private static final long SELECT_TIMEOUT = 200;
+
+  /**
+   * 连接的读取缓冲大小，响应头部不能超过该值
+   */
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  private static final int STATE_CONNECTING = 1;
+  private static final int STATE_WRITING = 2;
+  private static final int STATE_HEADER = 3;
+  private static final int STATE_BODY = 4;
+
+  private static volatile NioHttpEngine INSTANCE = null;
+
+  private final SelectorThread[] mSelectors;
+  private final AtomicInteger mNext = new AtomicInteger();
+  private final ExecutorService mWorker;
+
+  static NioHttpEngine getInstance() throws IOException {
+    if (INSTANCE == null) {
+      synchronized (NioHttpEngine.class) {
+        if (INSTANCE == null) {
+          INSTANCE = new NioHttpEngine();
+        }
+      }
+    }
+    return INSTANCE;
+  }
+
+  private NioHttpEngine() throws IOException {
+    int num = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors()));
+    mSelectors = new SelectorThread[num];
+    for (int i = 0; i < num; i++) {
+      mSelectors[i] = new SelectorThread("Aria-NIO-" + i);
+      mSelectors[i].start();
+    }
+    final AtomicInteger index = new AtomicInteger();
+    mWorker = Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Aria-NIO-Worker-" + index.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * 提交传输，传输结束后会在工作线程中回调{@link Transfer#onFinish(IOException)}
+   */
+  void submit(Transfer transfer) {
+    mSelectors[(mNext.getAndIncrement() & Integer.MAX_VALUE) % mSelectors.length].add(transfer);
+  }
+
+  /**
+   * 在工作线程中执行阻塞操作，如同步文件、保存记录，选择器线程中不能执行这些操作
+   */
+  void execute(Runnable runnable) {
+    mWorker.execute(runnable);
+  }
+
+  /**
+   * 一个http区间请求
+   */
+  interface Transfer {
+    /**
+     * 服务器地址，需要已经解析域名
+     */
+    InetSocketAddress getAddress();
+
+    /**
+     * 完整的请求数据
+     */
+    ByteBuffer getRequest();
+
+    /**
+     * 连接超时时间，单位为毫秒
+     */
+    int getConnectTimeout();
+
+    /**
+     * 读取超时时间，单位为毫秒
+     */
+    int getReadTimeout();
+
+    /**
+     * 任务是否已经停止或取消
+     */
+    boolean isCancelled();
+
+    /**
+     * 读取到响应头部，响应不可用时抛出异常
+     *
+     * @param headers key不区分大小写的头部
+     */
+    void onResponse(int code, Map<String, String> headers) throws IOException;
+
+    /**
+     * 读取到响应数据，在选择器线程中回调，不能阻塞
+     *
+     * @return 限速需要暂停读取的时间，单位为纳秒
+     */
+    long onBody(ByteBuffer buffer) throws IOException;
+
+    /**
+     * 区间是否已经读取完毕
+     */
+    boolean isFinished();
+
+    /**
+     * 传输结束，在工作线程中回调
+     *
+     * @param e 传输失败的异常，正常结束或任务停止时为null
+     */
+    void onFinish(IOException e);
+  }
+
+  /**
+   * 连接状态，只在选择器线程中访问
+   */
+  private static class Connection {
+    Transfer transfer;
+    SocketChannel channel;
+    SelectionKey key;
+    ByteBuffer buffer;
+    int state;
+    long deadline;
+    long resumeTime;
+  }
+
+  private class SelectorThread extends Thread {
+    private final Selector mSelector;
+    private final Queue<Transfer> mPending = new ConcurrentLinkedQueue<>();
+    private final Set<Connection> mConnections = new HashSet<>();
+
+    SelectorThread(String name) throws IOException {
+      super(name);
+      setDaemon(true);
+      mSelector = Selector.open();
+    }
+
+    void add(Transfer transfer) {
+      mPending.offer(transfer);
+      mSelector.wakeup();
+    }
+
+    @Override public void run() {
+      while (true) {
+        try {
+          registerPending();
+          mSelector.select(getSelectTimeout());
+          Iterator<SelectionKey> it = mSelector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            handleKey((Connection) key.attachment());
+          }
+          checkConnections();
+        } catch (Exception e) {
+          // 连接的异常已经在各连接中处理，这里只有选择器本身的异常
+          ALog.e(TAG, ALog.getExceptionString(e));
+        }
+      }
+    }
+
+    private void registerPending() {
+      Transfer transfer;
+      while ((transfer = mPending.poll()) != null) {
+        Connection conn = new Connection();
+        conn.transfer = transfer;
+        mConnections.add(conn);
+        if (transfer.isCancelled()) {
+          finish(conn, null);
+          continue;
+        }
+        try {
+          conn.buffer = BufferPool.obtain(BUFFER_SIZE);
+          conn.channel = SocketChannel.open();
+          conn.channel.configureBlocking(false);
+          if (conn.channel.connect(transfer.getAddress())) {
+            conn.state = STATE_WRITING;
+            conn.key = conn.channel.register(mSelector, SelectionKey.OP_WRITE, conn);
+            conn.deadline = System.currentTimeMillis() + transfer.getReadTimeout();
+          } else {
+            conn.state = STATE_CONNECTING;
+            conn.key = conn.channel.register(mSelector, SelectionKey.OP_CONNECT, conn);
+            conn.deadline = System.currentTimeMillis() + transfer.getConnectTimeout();
+          }
+        } catch (IOException e) {
+          finish(conn, e);
+        } catch (RuntimeException e) {
+          finish(conn, new IOException(e));
+        }
+      }
+    }
+
+    /**
+     * 选择器的等待时间，有暂停读取的连接时，等待到最早恢复读取的时间
+     */
+    private long getSelectTimeout() {
+      long timeout = SELECT_TIMEOUT;
+      long now = System.currentTimeMillis();
+      for (Connection conn : mConnections) {
+        if (conn.resumeTime > 0) {
+          timeout = Math.min(timeout, conn.resumeTime - now);
+        }
+      }
+      return Math.max(timeout, 1);
+    }
+
+    private void handleKey(Connection conn) {
+      try {
+        if (conn.transfer.isCancelled()) {
+          finish(conn, null);
+          return;
+        }
+        SelectionKey key = conn.key;
+        if (key.isConnectable() && conn.channel.finishConnect()) {
+          conn.state = STATE_WRITING;
+          conn.deadline = System.currentTimeMillis() + conn.transfer.getReadTimeout();
+          key.interestOps(SelectionKey.OP_WRITE);
+        } else if (key.isWritable()) {
+          ByteBuffer request = conn.transfer.getRequest();
+          conn.channel.write(request);
+          if (!request.hasRemaining()) {
+            conn.state = STATE_HEADER;
+            key.interestOps(SelectionKey.OP_READ);
+          }
+          conn.deadline = System.currentTimeMillis() + conn.transfer.getReadTimeout();
+        } else if (key.isReadable()) {
+          read(conn);
+        }
+      } catch (IOException e) {
+        finish(conn, e);
+      } catch (CancelledKeyException e) {
+        finish(conn, null);
+      } catch (RuntimeException e) {
+        // 回调中的异常只结束当前连接，不能影响同一个选择器上的其它连接
+        finish(conn, new IOException(e));
+      }
+    }
+
+    private void read(Connection conn) throws IOException {
+      ByteBuffer buffer = conn.buffer;
+      int len = conn.channel.read(buffer);
+      if (len == -1) {
+        finish(conn, conn.transfer.isFinished() ? null : new IOException("连接已关闭，区间数据没有读取完毕"));
+        return;
+      }
+      conn.deadline = System.currentTimeMillis() + conn.transfer.getReadTimeout();
+      buffer.flip();
+      if (conn.state == STATE_HEADER) {
+        int headerEnd = findHeaderEnd(buffer);
+        if (headerEnd == -1) {
+          if (buffer.limit() == buffer.capacity()) {
+            throw new IOException("响应头部过长");
+          }
+          buffer.position(buffer.limit());
+          buffer.limit(buffer.capacity());
+          return;
+        }
+        parseHeader(conn, buffer, headerEnd);
+        buffer.position(headerEnd);
+        conn.state = STATE_BODY;
+      }
+      long wait = buffer.hasRemaining() ? conn.transfer.onBody(buffer) : 0;
+      buffer.clear();
+      if (conn.transfer.isFinished()) {
+        finish(conn, null);
+      } else if (wait > 1000000) {
+        // 限速，暂停读取该连接
+        conn.key.interestOps(0);
+        conn.resumeTime = System.currentTimeMillis() + wait / 1000000;
+      }
+    }
+
+    /**
+     * 查找响应头部的结束位置
+     *
+     * @return 响应数据的开始位置，没有读取到完整的头部时返回-1
+     */
+    private int findHeaderEnd(ByteBuffer buffer) {
+      for (int i = 3; i < buffer.limit(); i++) {
+        if (buffer.get(i) == '\n' && buffer.get(i - 1) == '\r' && buffer.get(i - 2) == '\n'
+            && buffer.get(i - 3) == '\r') {
+          return i + 1;
+        }
+      }
+      return -1;
+    }
+
+    private void parseHeader(Connection conn, ByteBuffer buffer, int headerEnd)
+        throws IOException {
+      byte[] bytes = new byte[headerEnd];
+      buffer.get(bytes);
+      String[] lines = new String(bytes, "ISO-8859-1").split("\r\n");
+      String[] status = lines[0].split(" ");
+      if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+        throw new IOException(String.format("无法解析的响应：%s", lines[0]));
+      }
+      int code;
+      try {
+        code = Integer.parseInt(status[1]);
+      } catch (NumberFormatException e) {
+        throw new IOException(String.format("无法解析的响应：%s", lines[0]));
+      }
+      Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+      for (int i = 1; i < lines.length; i++) {
+        int index = lines[i].indexOf(':');
+        if (index > 0) {
+          headers.put(lines[i].substring(0, index).trim(), lines[i].substring(index + 1).trim());
+        }
+      }
+      conn.transfer.onResponse(code, headers);
+    }
+
+    /**
+     * 恢复限速结束的连接，关闭超时和已停止的连接
+     */
+    private void checkConnections() {
+      long now = System.currentTimeMillis();
+      List<Connection> temp = new ArrayList<>(mConnections);
+      for (Connection conn : temp) {
+        try {
+          if (conn.transfer.isCancelled()) {
+            finish(conn, null);
+          } else if (conn.resumeTime > 0) {
+            if (now >= conn.resumeTime) {
+              conn.resumeTime = 0;
+              conn.deadline = now + conn.transfer.getReadTimeout();
+              conn.key.interestOps(SelectionKey.OP_READ);
+            }
+          } else if (now > conn.deadline) {
+            finish(conn, new SocketTimeoutException(
+                conn.state == STATE_CONNECTING ? "连接超时" : "读取超时"));
+          }
+        } catch (CancelledKeyException e) {
+          finish(conn, null);
+        } catch (RuntimeException e) {
+          finish(conn, new IOException(e));
+        }
+      }
+    }
+
+    private void finish(final Connection conn, final IOException e) {
+      if (!mConnections.remove(conn)) {
+        return;
+      }
+      if (conn.key != null) {
+        conn.key.cancel();
+      }
+      if (conn.channel != null) {
+        try {
+          conn.channel.close();
+        } catch (IOException ex) {
+          ex.printStackTrace();
+        }
+      }
+      BufferPool.recycle(conn.buffer);
+      conn.buffer = null;
+      mWorker.execute(new Runnable() {
+        @Override public void run() {
+          conn.transfer.onFinish(e);
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.download.downloader;
+
+import android.text.TextUtils;
+import com.arialyy.aria.core.common.AbsThreadTask;
+import com.arialyy.aria.core.common.DurabilityMod;
+import com.arialyy.aria.core.common.RequestEnum;
+import com.arialyy.aria.core.common.SubThreadConfig;
+import com.arialyy.aria.core.common.http.HttpTaskConfig;
+import com.arialyy.aria.core.config.DownloadConfig;
+import com.arialyy.aria.core.download.DTaskWrapper;
+import com.arialyy.aria.core.download.DownloadEntity;
+import com.arialyy.aria.exception.TaskException;
+import com.arialyy.aria.util.ALog;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+/**
+ * 使用{@link NioHttpEngine}下载的线程任务，只在线程池中完成解析地址、打开文件等准备工作，
+ * 数据由选择器线程读取并通过{@link FileChannel}按位置写入文件，线程记录、区间拆分的处理和{@link HttpThreadTask}一致。
+ * 选择器线程只写入数据，同步文件、保存检查点在引擎的工作线程中执行
+ */
+final class NioHttpThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper>
+    implements NioHttpEngine.Transfer {
+  private final String TAG = "NioHttpThreadTask";
+
+  /**
+   * 最大重定向次数
+   */
+  private static final int MAX_REDIRECT = 5;
+
+  private final Object mLock = new Object();
+  /**
+   * 以下状态在任务线程或引擎的工作线程中设置，在选择器线程中读取，需要保证可见性
+   */
+  private volatile RandomAccessFile mFile;
+  private volatile FileChannel mChannel;
+  private volatile InetSocketAddress mAddress;
+  private volatile ByteBuffer mRequest;
+  private volatile URL mUrl;
+  private volatile String mRedirectUrl;
+  private volatile int mRedirectNum = 0;
+  private volatile long mRequestStart;
+  private volatile NioHttpEngine mEngine;
+  private volatile boolean isRangeEnd = false;
+  private volatile boolean isCheckpointing = false;
+
+  NioHttpThreadTask(SubThreadConfig<DTaskWrapper> config) {
+    super(config);
+    // 选择器线程中不能逐次同步写入，严格模式改为使用"rw"打开文件，在每个检查点同步文件
+    if (getDurabilityMod() == DurabilityMod.STRICT) {
+      setDurabilityMod(DurabilityMod.CHECKPOINT);
+    }
+  }
+
+  /**
+   * 任务是否可以使用非阻塞下载引擎，只支持不使用代理和自定义传输层、支持断点的http get请求，
+   * 并且不能是分块任务和动态文件
+   */
+  static boolean isSupport(SubThreadConfig<DTaskWrapper> config) {
+    DTaskWrapper wrapper = config.taskWrapper;
+    HttpTaskConfig taskConfig = wrapper.asHttp();
+    return config.url != null
+        && config.url.toLowerCase().startsWith("http://")
+        && !config.isBlock
+        && !config.isOpenDynamicFile
+        && wrapper.isSupportBP()
+        && !taskConfig.isChunked()
+        && !taskConfig.isNioDisabled()
+        && taskConfig.getProxy() == null
+        && taskConfig.getTransport() == null
+        && taskConfig.getRequestEnum() == RequestEnum.GET;
+  }
+
+  @Override public NioHttpThreadTask call() throws Exception {
+    super.call();
+    startRange();
+    return this;
+  }
+
+  /**
+   * 打开文件并将当前区间提交给下载引擎
+   */
+  private void startRange() {
+    if (mRecord.isComplete) {
+      handleComplete();
+      return;
+    }
+    try {
+      HttpTaskConfig taskDelegate = getTaskWrapper().asHttp();
+      URL url = mRedirectUrl == null ? ConnectionHelp.handleUrl(getConfig().url, taskDelegate)
+          : new URL(mRedirectUrl);
+      int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+      mAddress = new InetSocketAddress(url.getHost(), port);
+      if (mAddress.isUnresolved()) {
+        throw new UnknownHostException(url.getHost());
+      }
+      mUrl = url;
+      mRequestStart = mChildCurrentLocation;
+      mRequest = createRequest(url, port, taskDelegate);
+      synchronized (mLock) {
+        mFile = new RandomAccessFile(getConfig().tempFile, getFileMode());
+        mChannel = mFile.getChannel();
+        setRangeFile(mFile);
+      }
+      isRangeEnd = false;
+      ALog.d(TAG, String.format("任务【%s】线程__%s__开始下载【开始位置 : %s，结束位置：%s】", getFileName(),
+          mRecord.threadId, mChildCurrentLocation, mRecord.endLocation));
+      mEngine = NioHttpEngine.getInstance();
+      mEngine.submit(this);
+    } catch (IOException e) {
+      closeFile();
+      fail(mChildCurrentLocation, new TaskException(TAG,
+          String.format("任务【%s】下载失败，filePath: %s, url: %s", getFileName(),
+              getEntity().getDownloadPath(), getEntity().getUrl()), e));
+    }
+  }
+
+  /**
+   * 创建区间请求，区间从当前位置开始
+   */
+  private ByteBuffer createRequest(URL url, int port, HttpTaskConfig taskDelegate)
+      throws IOException {
+    StringBuilder sb = new StringBuilder();
+    String file = url.getFile();
+    sb.append("GET ").append(TextUtils.isEmpty(file) ? "/" : file).append(" HTTP/1.1\r\n");
+    sb.append("Host: ").append(url.getHost());
+    if (port != url.getDefaultPort()) {
+      sb.append(":").append(port);
+    }
+    sb.append("\r\n");
+    for (Map.Entry<String, String> entry : ConnectionHelp.getRequestHeaders(taskDelegate)
+        .entrySet()) {
+      if (entry.getKey().equalsIgnoreCase("Host") || entry.getKey().equalsIgnoreCase("Range")) {
+        continue;
+      }
+      sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\r\n");
+    }
+    sb.append("Range: bytes=")
+        .append(mRequestStart)
+        .append("-")
+        .append(mRecord.endLocation - 1)
+        .append("\r\n\r\n");
+    return ByteBuffer.wrap(sb.toString().getBytes("UTF-8"));
+  }
+
+  @Override public InetSocketAddress getAddress() {
+    return mAddress;
+  }
+
+  @Override public ByteBuffer getRequest() {
+    return mRequest;
+  }
+
+  @Override public int getConnectTimeout() {
+    return getTaskConfig().getConnectTimeOut();
+  }
+
+  @Override public int getReadTimeout() {
+    return getTaskConfig().getIOTimeOut();
+  }
+
+  @Override public boolean isCancelled() {
+    return isBreak() || !isLive();
+  }
+
+  @Override public void onResponse(int code, Map<String, String> headers) throws IOException {
+    if (code == 429 || code == 503) {
+      onServerBusy(code);
+    }
+    if (code == 301 || code == 302 || code == 303 || code == 307 || code == 308) {
+      String location = headers.get("Location");
+      if (TextUtils.isEmpty(location)) {
+        throw new IOException(String.format("获取重定向链接失败，code: %s", code));
+      }
+      throw new RedirectException(new URL(mUrl, location).toString());
+    }
+    if (code != 206 && !(code == 200 && mRequestStart == 0)) {
+      throw new IOException(String.format("服务器返回码错误，code: %s", code));
+    }
+    String transferEncoding = headers.get("Transfer-Encoding");
+    if (!TextUtils.isEmpty(transferEncoding) && !transferEncoding.equalsIgnoreCase("identity")) {
+      throw new UnsupportedResponseException(
+          String.format("不支持分块传输的区间数据，Transfer-Encoding: %s", transferEncoding));
+    }
+    String encoding = headers.get("Content-Encoding");
+    if (!TextUtils.isEmpty(encoding) && !encoding.equalsIgnoreCase("identity")) {
+      throw new IOException(String.format("不支持压缩的区间数据，Content-Encoding: %s", encoding));
+    }
+    if (code == 206) {
+      String range = headers.get("Content-Range");
+      if (getRangeStart(range) != mRequestStart) {
+        throw new IOException(
+            String.format("服务器返回的区间和请求的区间不一致，请求的开始位置：%s，Content-Range: %s",
+                mRequestStart, range));
+      }
+    }
+    mRedirectNum = 0;
+  }
+
+  /**
+   * 解析"Content-Range: bytes start-end/total"的开始位置
+   *
+   * @return 无法解析时返回-1
+   */
+  private long getRangeStart(String range) {
+    if (TextUtils.isEmpty(range)) {
+      return -1;
+    }
+    range = range.trim();
+    if (range.regionMatches(true, 0, "bytes", 0, 5)) {
+      range = range.substring(5).trim();
+    }
+    int index = range.indexOf('-');
+    if (index <= 0) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(range.substring(0, index).trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  @Override public long onBody(ByteBuffer buffer) throws IOException {
+    long rangeEnd = getRangeEnd();
+    int len = buffer.remaining();
+    if (mChildCurrentLocation + len >= rangeEnd) {
+      len = (int) (rangeEnd - mChildCurrentLocation);
+      isRangeEnd = true;
+    }
+    buffer.limit(buffer.position() + len);
+    long position = mChildCurrentLocation;
+    while (buffer.hasRemaining()) {
+      position += mChannel.write(buffer, position);
+    }
+    progress(len);
+    return mSpeedBandUtil.acquire(len);
+  }
+
+  /**
+   * 选择器线程中不能同步文件和保存记录，检查点交给引擎的工作线程保存，
+   * 上一个检查点还没有保存完成时跳过本次检查点
+   */
+  @Override protected void saveCheckpoint() {
+    if (isCheckpointing) {
+      return;
+    }
+    isCheckpointing = true;
+    mEngine.execute(new Runnable() {
+      @Override public void run() {
+        try {
+          synchronized (mLock) {
+            // 区间已经结束，文件已关闭，区间的记录由onFinish保存
+            if (mChannel != null && !isRangeEnd) {
+              NioHttpThreadTask.super.saveCheckpoint();
+            }
+          }
+        } finally {
+          isCheckpointing = false;
+        }
+      }
+    });
+  }
+
+  @Override public boolean isFinished() {
+    return isRangeEnd;
+  }
+
+  @Override public void onFinish(IOException e) {
+    synchronized (mLock) {
+      if (e == null && isRangeEnd) {
+        try {
+          syncRangeFile();
+        } catch (IOException ex) {
+          e = ex;
+        }
+      }
+      closeFile();
+    }
+    if (e instanceof RedirectException && !isBreak()) {
+      String url = ((RedirectException) e).url;
+      if (mRedirectNum < MAX_REDIRECT && url.toLowerCase().startsWith("http://")) {
+        mRedirectNum++;
+        mRedirectUrl = url;
+        ALog.d(TAG, String.format("任务【%s】线程__%s__30x跳转，新url为【%s】", getFileName(),
+            mRecord.threadId, url));
+        startRange();
+        return;
+      }
+      e = new UnsupportedResponseException(
+          String.format("非阻塞下载引擎无法处理的重定向，url: %s", url));
+    }
+    onThreadComplete();
+    if (isBreak()) {
+      return;
+    }
+    if (e instanceof UnsupportedResponseException) {
+      // 任务重试时使用阻塞的下载线程处理
+      getTaskWrapper().asHttp().setNioDisabled(true);
+      fail(mChildCurrentLocation, new TaskException(TAG,
+          String.format("任务【%s】下载失败，filePath: %s, url: %s", getFileName(),
+              getEntity().getDownloadPath(), getEntity().getUrl()), e), false);
+    } else if (e != null) {
+      fail(mChildCurrentLocation, new TaskException(TAG,
+          String.format("任务【%s】下载失败，filePath: %s, url: %s", getFileName(),
+              getEntity().getDownloadPath(), getEntity().getUrl()), e));
+    } else if (isRangeEnd) {
+      handleComplete();
+    }
+  }
+
+  /**
+   * 区间完成，保存记录，如果从其它线程拆分到了新区间，继续下载新区间
+   */
+  private void handleComplete() {
+    if (isBreak()) {
+      return;
+    }
+    writeConfig(true, mRecord.endLocation);
+    if (nextRange()) {
+      startRange();
+      return;
+    }
+    sendCompleteMsg();
+  }
+
+  private void closeFile() {
+    setRangeFile(null);
+    try {
+      if (mChannel != null) {
+        mChannel.close();
+      }
+      if (mFile != null) {
+        mFile.close();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    mChannel = null;
+    mFile = null;
+  }
+
+  @Override public int getMaxSpeed() {
+    return mAridManager.getDownloadConfig().getMaxSpeed();
+  }
+
+  @Override protected DownloadConfig getTaskConfig() {
+    return getTaskWrapper().getConfig();
+  }
+
+  /**
+   * 服务器返回30x跳转
+   */
+  private static final class RedirectException extends IOException {
+    private final String url;
+
+    RedirectException(String url) {
+      super(String.format("30x跳转，新url为【%s】", url));
+      this.url = url;
+    }
+  }
+
+  /**
+   * 非阻塞下载引擎无法处理的响应
+   */
+  private static final class UnsupportedResponseException extends IOException {
+    UnsupportedResponseException(String message) {
+      super(message);
+    }
+  }
+}
@@ -34,7 +34,7 @@ public class SimpleDownloadUtil implements IUtil {
   private IDownloadListener mListener;
   private Downloader mDownloader;
   private DTaskWrapper mTaskWrapper;
-  private boolean isStop = false, isCancel = false;
+  private volatile boolean isStop = false, isCancel = false;
 
   public SimpleDownloadUtil(DTaskWrapper wrapper, IDownloadListener downloadListener) {
     mTaskWrapper = wrapper;
@@ -125,6 +125,11 @@ public class SimpleDownloadUtil implements IUtil {
       case AbsTaskWrapper.D_HTTP:
         return new HttpFileInfoThread(mTaskWrapper, new OnFileInfoCallback() {
           @Override public void onComplete(String url, CompleteInfo info) {
+            if (isStop || isCancel) {
+              // 交接的连接在停止之后才保存，需要在这里释放
+              mDownloader.onDestroy();
+              return;
+            }
             mDownloader.updateTempFile();
             mDownloader.start();
           }
@@ -133,7 +138,7 @@ public class SimpleDownloadUtil implements IUtil {
             failDownload(e, needRetry);
             mDownloader.closeTimer();
           }
-        });
+        }, true);
     }
     return null;
   }
@@ -16,16 +16,16 @@
 package com.arialyy.aria.core.download.group;
 
 import android.os.Handler;
-import android.os.Looper;
 import com.arialyy.aria.core.common.IUtil;
+import com.arialyy.aria.core.common.TimerWheel;
 import com.arialyy.aria.core.config.Configuration;
 import com.arialyy.aria.core.download.DGTaskWrapper;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.inf.IEntity;
+import com.arialyy.aria.core.scheduler.SchedulerThread;
 import com.arialyy.aria.util.ALog;
 import java.util.Map;
 import java.util.WeakHashMap;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -45,7 +45,7 @@ public abstract class AbsGroupUtil implements IUtil, Runnable {
 
   private long mCurrentLocation = 0;
   protected IDGroupListener mListener;
-  private ScheduledThreadPoolExecutor mTimer;
+  private TimerWheel.Timeout mTimer;
   private long mUpdateInterval;
   private boolean isStop = false, isCancel = false;
   private Handler mScheduler;
@@ -61,7 +61,7 @@ public abstract class AbsGroupUtil implements IUtil, Runnable {
     mUpdateInterval = Configuration.getInstance().downloadCfg.getUpdateInterval();
     mState = new GroupRunState(groupWrapper.getKey(), mListener,
         groupWrapper.getSubTaskWrapper().size(), mSubQueue);
-    mScheduler = new Handler(Looper.getMainLooper(), SimpleSchedulers.newInstance(mState));
+    mScheduler = new Handler(SchedulerThread.getLooper(), SimpleSchedulers.newInstance(mState));
     initState();
   }
 
@@ -227,8 +227,8 @@ public abstract class AbsGroupUtil implements IUtil, Runnable {
   }
 
   synchronized void closeTimer() {
-    if (mTimer != null && !mTimer.isShutdown()) {
-      mTimer.shutdown();
+    if (mTimer != null) {
+      mTimer.cancel();
     }
   }
 
@@ -248,8 +248,7 @@ public abstract class AbsGroupUtil implements IUtil, Runnable {
 
   private synchronized void startTimer() {
     mState.isRunning = true;
-    mTimer = new ScheduledThreadPoolExecutor(1);
-    mTimer.scheduleWithFixedDelay(new Runnable() {
+    mTimer = TimerWheel.getInstance().scheduleWithFixedDelay(new Runnable() {
       @Override public void run() {
         if (!mState.isRunning) {
           closeTimer();
@@ -181,6 +181,7 @@ public class DGroupUtil extends AbsGroupUtil implements IUtil {
     subDelegate.setRequestEnum(groupDelegate.getRequestEnum());
     subDelegate.setHeaders(groupDelegate.getHeaders());
     subDelegate.setProxy(groupDelegate.getProxy());
+    subDelegate.setTransport(groupDelegate.getTransport());
     subDelegate.setParams(groupDelegate.getParams());
   }
 }
\ No newline at end of file
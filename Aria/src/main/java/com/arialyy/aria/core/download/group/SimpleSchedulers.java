@@ -18,6 +18,7 @@ package com.arialyy.aria.core.download.group;
 
 import android.os.Message;
 import com.arialyy.aria.core.AriaManager;
+import com.arialyy.aria.core.common.TimerWheel;
 import com.arialyy.aria.core.config.Configuration;
 import com.arialyy.aria.core.inf.AbsEntity;
 import com.arialyy.aria.core.manager.ThreadTaskManager;
@@ -25,7 +26,6 @@ import com.arialyy.aria.core.scheduler.ISchedulers;
 import com.arialyy.aria.exception.TaskException;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.NetUtils;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -109,8 +109,7 @@ class SimpleSchedulers implements ISchedulers {
     }
 
     // 如果获取不到文件信息，loader为空
-    final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
-    timer.schedule(new Runnable() {
+    TimerWheel.getInstance().schedule(new Runnable() {
       @Override public void run() {
         AbsEntity entity = loaderUtil.getEntity();
         if (entity.getFailNum() <= reTryNum) {
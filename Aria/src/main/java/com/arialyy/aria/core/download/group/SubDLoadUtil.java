@@ -118,7 +118,7 @@ class SubDLoadUtil implements IUtil {
           @Override public void onFail(AbsEntity entity, BaseException e, boolean needRetry) {
             mSchedulers.obtainMessage(ISchedulers.FAIL, SubDLoadUtil.this).sendToTarget();
           }
-        })).start();
+        }, true)).start();
       } else {
         mDownloader = new Downloader(mListener, mWrapper);
         mDownloader.start();
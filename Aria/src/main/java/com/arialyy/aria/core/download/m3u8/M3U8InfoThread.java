@@ -22,6 +22,7 @@ import com.arialyy.aria.core.AriaManager;
 import com.arialyy.aria.core.common.CompleteInfo;
 import com.arialyy.aria.core.common.OnFileInfoCallback;
 import com.arialyy.aria.core.common.http.HttpTaskConfig;
+import com.arialyy.aria.core.common.http.IHttpConnection;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.download.DownloadEntity;
 import com.arialyy.aria.core.download.downloader.ConnectionHelp;
@@ -82,7 +83,7 @@ final class M3U8InfoThread implements Runnable {
   @Override public void run() {
     Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
     TrafficStats.setThreadStatsTag(UUID.randomUUID().toString().hashCode());
-    HttpURLConnection conn = null;
+    IHttpConnection conn = null;
     try {
       URL url = ConnectionHelp.handleUrl(mEntity.getUrl(), mTaskDelegate);
       conn = ConnectionHelp.handleConnection(url, mTaskDelegate);
@@ -99,7 +100,7 @@ final class M3U8InfoThread implements Runnable {
     }
   }
 
-  private void handleConnect(HttpURLConnection conn) throws IOException {
+  private void handleConnect(IHttpConnection conn) throws IOException {
     int code = conn.getResponseCode();
     if (code == HttpURLConnection.HTTP_OK) {
       BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
@@ -218,7 +219,7 @@ final class M3U8InfoThread implements Runnable {
   /**
    * 处理30x跳转
    */
-  private void handleUrlReTurn(HttpURLConnection conn, String newUrl) throws IOException {
+  private void handleUrlReTurn(IHttpConnection conn, String newUrl) throws IOException {
     ALog.d(TAG, "30x跳转，新url为【" + newUrl + "】");
     if (TextUtils.isEmpty(newUrl) || newUrl.equalsIgnoreCase("null") || !newUrl.startsWith(
         "http")) {
@@ -249,7 +250,7 @@ final class M3U8InfoThread implements Runnable {
   /**
    * 处理码率
    */
-  private void handleBandWidth(HttpURLConnection conn, String bandWidthM3u8Url) throws IOException {
+  private void handleBandWidth(IHttpConnection conn, String bandWidthM3u8Url) throws IOException {
     IBandWidthUrlConverter converter = mTaskWrapper.asM3U8().getBandWidthUrlConverter();
     if (converter != null) {
       bandWidthM3u8Url = converter.convert(bandWidthM3u8Url);
@@ -282,7 +283,7 @@ final class M3U8InfoThread implements Runnable {
    * 密钥不存在，下载密钥
    */
   private void DownloadKey(M3U8KeyInfo info) {
-    HttpURLConnection conn = null;
+    IHttpConnection conn = null;
     FileOutputStream fos = null;
     try {
       File keyF = new File(info.keyPath);
@@ -19,6 +19,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import com.arialyy.aria.core.common.IThreadState;
+import com.arialyy.aria.core.common.ProgressCounter;
 import com.arialyy.aria.core.common.SubThreadConfig;
 import com.arialyy.aria.core.common.TaskRecord;
 import com.arialyy.aria.core.common.ThreadRecord;
@@ -118,7 +119,7 @@ public class M3U8LiveLoader extends BaseM3U8Loader {
    * @return 线程唯一id标志
    */
   private long startThreadTask(M3U8ThreadTask task) {
-    ThreadTaskManager.getInstance().startThread(mTaskWrapper.getKey(), task);
+    ThreadTaskManager.getInstance().startThread(getTaskKey(), task);
     return IdGenerator.getInstance().nextId();
   }
 
@@ -141,6 +142,8 @@ public class M3U8LiveLoader extends BaseM3U8Loader {
     config.taskWrapper = mTaskWrapper;
     config.record = record;
     config.stateHandler = mStateHandler;
+    config.progressCounter = mManager.mProgress;
+    config.bandwidthLimiter = getBandwidthLimiter();
 
     if (!config.tempFile.exists()) {
       CommonUtil.createFile(config.tempFile.getPath());
@@ -170,7 +173,7 @@ public class M3U8LiveLoader extends BaseM3U8Loader {
     if (mergeHandler != null) {
       isSuccess = mergeHandler.merge(mTaskWrapper.asM3U8().getKeyInfo(), partPath);
     } else {
-      isSuccess = FileUtil.mergeFile(mEntity.getFilePath(), partPath);
+      isSuccess = FileUtil.mergeFile(mEntity.getFilePath(), partPath, true);
     }
     if (isSuccess) {
       // 合并成功，删除缓存文件
@@ -201,7 +204,7 @@ public class M3U8LiveLoader extends BaseM3U8Loader {
      * 任务状态回调
      */
     private IEventListener mListener;
-    private long mProgress; //当前总进度
+    private ProgressCounter mProgress = new ProgressCounter(); //当前总进度，子线程直接累加
     private Looper mLooper;
 
     /**
@@ -237,9 +240,6 @@ public class M3U8LiveLoader extends BaseM3U8Loader {
         case STATE_COMPLETE:
           notifyLock();
           break;
-        case STATE_RUNNING:
-          mProgress += (long) msg.obj;
-          break;
       }
       return false;
     }
@@ -253,7 +253,7 @@ public class M3U8LiveLoader extends BaseM3U8Loader {
     }
 
     @Override public long getCurrentProgress() {
-      return mProgress;
+      return mProgress.get();
     }
   }
 }
@@ -19,6 +19,7 @@ import android.text.TextUtils;
 import com.arialyy.aria.core.common.CompleteInfo;
 import com.arialyy.aria.core.common.IUtil;
 import com.arialyy.aria.core.common.OnFileInfoCallback;
+import com.arialyy.aria.core.common.TimerWheel;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.inf.AbsEntity;
 import com.arialyy.aria.core.inf.IDownloadListener;
@@ -29,7 +30,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -48,7 +48,7 @@ public class M3U8LiveUtil implements IUtil {
   private boolean isStop = false, isCancel = false;
   private M3U8LiveLoader mLoader;
   private M3U8InfoThread mInfoThread;
-  private ScheduledThreadPoolExecutor mTimer;
+  private TimerWheel.Timeout mTimer;
   private ExecutorService mInfoPool = Executors.newCachedThreadPool();
   private List<String> mPeerUrls = new ArrayList<>();
 
@@ -118,8 +118,7 @@ public class M3U8LiveUtil implements IUtil {
   }
 
   private void startTimer() {
-    mTimer = new ScheduledThreadPoolExecutor(1);
-    mTimer.scheduleWithFixedDelay(new Runnable() {
+    mTimer = TimerWheel.getInstance().scheduleWithFixedDelay(new Runnable() {
       @Override public void run() {
         mInfoThread = (M3U8InfoThread) getLiveInfo();
         mInfoPool.execute(mInfoThread);
@@ -128,8 +127,8 @@ public class M3U8LiveUtil implements IUtil {
   }
 
   private void closeTimer() {
-    if (mTimer != null && !mTimer.isShutdown()) {
-      mTimer.shutdown();
+    if (mTimer != null) {
+      mTimer.cancel();
     }
   }
 
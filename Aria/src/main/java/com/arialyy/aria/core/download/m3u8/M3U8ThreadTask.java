@@ -16,9 +16,10 @@
 package com.arialyy.aria.core.download.m3u8;
 
 import com.arialyy.aria.core.common.AbsThreadTask;
-import com.arialyy.aria.core.common.RequestEnum;
 import com.arialyy.aria.core.common.SubThreadConfig;
+import com.arialyy.aria.core.common.http.ConnectionManager;
 import com.arialyy.aria.core.common.http.HttpTaskConfig;
+import com.arialyy.aria.core.common.http.IHttpConnection;
 import com.arialyy.aria.core.config.DownloadConfig;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.download.DownloadEntity;
@@ -26,21 +27,17 @@ import com.arialyy.aria.core.download.downloader.ConnectionHelp;
 import com.arialyy.aria.exception.AriaIOException;
 import com.arialyy.aria.exception.TaskException;
 import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.BufferPool;
 import java.io.BufferedInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * Created by lyy on 2017/1/18. 下载线程
@@ -58,8 +55,10 @@ final class M3U8ThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
       handleComplete();
       return this;
     }
-    HttpURLConnection conn = null;
+    IHttpConnection conn = null;
     BufferedInputStream is = null;
+    // 只有分片正常读取完毕的连接才能归还到连接池，停止、取消或失败时直接断开
+    boolean finished = false;
     try {
       HttpTaskConfig taskDelegate = getTaskWrapper().asHttp();
       URL url = ConnectionHelp.handleUrl(getConfig().url, taskDelegate);
@@ -68,34 +67,13 @@ final class M3U8ThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
       ConnectionHelp.setConnectParam(taskDelegate, conn);
       conn.setConnectTimeout(getTaskConfig().getConnectTimeOut());
       conn.setReadTimeout(getTaskConfig().getIOTimeOut());  //设置读取流的等待时间,必须设置该参数
-      if (taskDelegate.isChunked()) {
-        conn.setDoInput(true);
-        conn.setChunkedStreamingMode(0);
-      }
       conn.connect();
-      // 传递参数
-      if (taskDelegate.getRequestEnum() == RequestEnum.POST) {
-        Map<String, String> params = taskDelegate.getParams();
-        if (params != null) {
-          OutputStreamWriter dos = new OutputStreamWriter(conn.getOutputStream());
-          Set<String> keys = params.keySet();
-          StringBuilder sb = new StringBuilder();
-          for (String key : keys) {
-            sb.append(key).append("=").append(URLEncoder.encode(params.get(key))).append("&");
-          }
-          String paramStr = sb.toString();
-          paramStr = paramStr.substring(0, paramStr.length() - 1);
-          dos.write(paramStr);
-          dos.flush();
-          dos.close();
-        }
-      }
 
       is = new BufferedInputStream(ConnectionHelp.convertInputStream(conn));
       if (taskDelegate.isChunked()) {
-        readChunked(is);
+        finished = readChunked(is);
       } else if (getConfig().isOpenDynamicFile) {
-        readDynamicFile(is);
+        finished = readDynamicFile(is);
       }
     } catch (MalformedURLException e) {
       fail(mChildCurrentLocation, new TaskException(TAG,
@@ -110,16 +88,8 @@ final class M3U8ThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
           String.format("分片【%s】下载失败，filePath: %s, url: %s", mRecord.threadId,
               getConfig().tempFile.getPath(), getEntity().getUrl()), e));
     } finally {
-      try {
-        if (is != null) {
-          is.close();
-        }
-        if (conn != null) {
-          conn.disconnect();
-        }
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
+      // 数据流读取完毕的连接归还到连接池，供下一个ts分片使用
+      ConnectionManager.release(conn, is, finished);
       onThreadComplete();
     }
     return this;
@@ -127,12 +97,14 @@ final class M3U8ThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
 
   /**
    * 读取chunked数据
+   *
+   * @return {@code true} 数据正常读取完毕，连接可以归还到连接池
    */
-  private void readChunked(InputStream is) {
+  private boolean readChunked(InputStream is) {
     FileOutputStream fos = null;
+    byte[] buffer = BufferPool.obtainBytes(getTaskConfig().getBuffSize());
     try {
       fos = new FileOutputStream(getConfig().tempFile, true);
-      byte[] buffer = new byte[getTaskConfig().getBuffSize()];
       int len;
       while (isLive() && (len = is.read(buffer)) != -1) {
         if (isBreak()) {
@@ -144,13 +116,17 @@ final class M3U8ThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
         fos.write(buffer, 0, len);
         progress(len);
       }
+      boolean finished = isLive() && !isBreak();
       handleComplete();
+      return finished;
     } catch (IOException e) {
       fail(mChildCurrentLocation, new AriaIOException(TAG,
           String.format("文件下载失败，savePath: %s, url: %s", getConfig().tempFile.getPath(),
               getConfig().url),
           e));
+      return false;
     } finally {
+      BufferPool.recycle(buffer);
       if (fos != null) {
         try {
           fos.close();
@@ -163,17 +139,20 @@ final class M3U8ThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
 
   /**
    * 动态长度文件读取方式
+   *
+   * @return {@code true} 数据正常读取完毕，连接可以归还到连接池
    */
-  private void readDynamicFile(InputStream is) {
+  private boolean readDynamicFile(InputStream is) {
     FileOutputStream fos = null;
     FileChannel foc = null;
     ReadableByteChannel fic = null;
+    byte[] buffer = BufferPool.obtainBytes(getTaskConfig().getBuffSize());
     try {
       int len;
       fos = new FileOutputStream(getConfig().tempFile, true);
       foc = fos.getChannel();
       fic = Channels.newChannel(is);
-      ByteBuffer bf = ByteBuffer.allocate(getTaskConfig().getBuffSize());
+      ByteBuffer bf = ByteBuffer.wrap(buffer);
       //如果要通过 Future 的 cancel 方法取消正在运行的任务，那么该任务必定是可以 对线程中断做出响应 的任务。
 
       while (isLive() && (len = fic.read(bf)) != -1) {
@@ -188,13 +167,17 @@ final class M3U8ThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
         bf.compact();
         progress(len);
       }
+      boolean finished = isLive() && !isBreak();
       handleComplete();
+      return finished;
     } catch (IOException e) {
       fail(mChildCurrentLocation, new AriaIOException(TAG,
           String.format("文件下载失败，savePath: %s, url: %s", getConfig().tempFile.getPath(),
               getConfig().url),
           e));
+      return false;
     } finally {
+      BufferPool.recycle(buffer);
       try {
         if (fos != null) {
           fos.flush();
@@ -203,9 +186,7 @@ final class M3U8ThreadTask extends AbsThreadTask<DownloadEntity, DTaskWrapper> {
         if (foc != null) {
           foc.close();
         }
-        if (fic != null) {
-          fic.close();
-        }
+        // fic关闭时会关闭数据流，数据流由ConnectionManager释放
       } catch (IOException e) {
         e.printStackTrace();
       }
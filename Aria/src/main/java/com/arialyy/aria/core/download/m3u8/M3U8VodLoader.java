@@ -22,6 +22,7 @@ import android.os.Message;
 import android.util.SparseArray;
 import com.arialyy.aria.core.common.AbsThreadTask;
 import com.arialyy.aria.core.common.IThreadState;
+import com.arialyy.aria.core.common.ProgressCounter;
 import com.arialyy.aria.core.common.SubThreadConfig;
 import com.arialyy.aria.core.common.TaskRecord;
 import com.arialyy.aria.core.common.ThreadRecord;
@@ -399,7 +400,7 @@ public class M3U8VodLoader extends BaseM3U8Loader {
       ALog.w(TAG, "任务已停止，启动线程任务失败");
       return null;
     }
-    ThreadTaskManager.getInstance().startThread(mTaskWrapper.getKey(), task);
+    ThreadTaskManager.getInstance().startThread(getTaskKey(), task);
     getListener().onPeerStart(mTaskWrapper.getKey(), task.getConfig().tempFile.getPath(),
         peerIndex);
     TempFlag flag = new TempFlag();
@@ -420,6 +421,8 @@ public class M3U8VodLoader extends BaseM3U8Loader {
     config.taskWrapper = mTaskWrapper;
     config.record = record;
     config.stateHandler = mStateHandler;
+    config.progressCounter = mManager.progress;
+    config.bandwidthLimiter = getBandwidthLimiter();
     config.peerIndex = index;
     if (!config.tempFile.exists()) {
       CommonUtil.createFile(config.tempFile.getPath());
@@ -441,7 +444,7 @@ public class M3U8VodLoader extends BaseM3U8Loader {
     private int cancelNum = 0; // 已经取消的线程的数
     private int stopNum = 0;  // 已经停止的线程数
     private int failNum = 0;  // 失败的线程数
-    private long progress; //当前总进度
+    private ProgressCounter progress = new ProgressCounter(); //当前总进度，子线程直接累加
     private TaskRecord taskRecord; // 任务记录
     private Looper looper;
 
@@ -556,9 +559,6 @@ public class M3U8VodLoader extends BaseM3U8Loader {
             quitLooper();
           }
           break;
-        case STATE_RUNNING:
-          progress += (long) msg.obj;
-          break;
       }
       return true;
     }
@@ -568,7 +568,7 @@ public class M3U8VodLoader extends BaseM3U8Loader {
       if (index != -1) {
         getTaskList().removeAt(index);
       }
-      ThreadTaskManager.getInstance().removeSingleTaskThread(mTaskWrapper.getKey(), threadTask);
+      ThreadTaskManager.getInstance().removeSingleTaskThread(getTaskKey(), threadTask);
     }
 
     /**
@@ -593,7 +593,7 @@ public class M3U8VodLoader extends BaseM3U8Loader {
     }
 
     @Override public long getCurrentProgress() {
-      return progress;
+      return progress.get();
     }
 
     private void printInfo(String tag) {
@@ -620,7 +620,7 @@ public class M3U8VodLoader extends BaseM3U8Loader {
       if (mergeHandler != null) {
         isSuccess = mergeHandler.merge(mTaskWrapper.asM3U8().getKeyInfo(), partPath);
       } else {
-        isSuccess = FileUtil.mergeFile(taskRecord.filePath, partPath);
+        isSuccess = FileUtil.mergeFile(taskRecord.filePath, partPath, true);
       }
       if (isSuccess) {
         // 合并成功，删除缓存文件
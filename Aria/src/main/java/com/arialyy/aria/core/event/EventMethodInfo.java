@@ -15,15 +15,17 @@
  */
 package com.arialyy.aria.core.event;
 
+import java.lang.reflect.Method;
+
 /**
  * 事件消息信息
  */
 class EventMethodInfo {
 
   /**
-   * 被{@link Event}注解的事件方法
+   * 被{@link Event}注解的事件方法，已经设置为可访问
    */
-  String methodName;
+  Method method;
 
   /**
    * 该方法对应的参数类型
@@ -16,66 +16,60 @@
 package com.arialyy.aria.core.event;
 
 import com.arialyy.aria.util.ALog;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 消息发送工具
+ *
+ * 1、每个类的{@link Event}方法只在第一次注册时反射查找一次，之后直接使用缓存的{@link Method}；
+ * 2、订阅按事件类型索引，发送事件时只会取到该事件类型的订阅者；
+ * 3、每个订阅者有自己的无锁消息队列，同一订阅者的事件按发送顺序串行执行，不同订阅者之间并行执行，
+ * 发送事件不会阻塞发送线程。
  */
 public class EventMsgUtil {
   private static final String TAG = "EventUtil";
-  private static EventMsgUtil defaultInstance;
-  private Map<Object, List<EventMethodInfo>> mEventMethods =
+  private static volatile EventMsgUtil defaultInstance;
+
+  /**
+   * 类的事件方法缓存，key为订阅者的类
+   */
+  private final Map<Class<?>, List<EventMethodInfo>> mMethodCache = new ConcurrentHashMap<>();
+
+  /**
+   * 事件类型对应的订阅，key为事件参数的类型
+   */
+  private final Map<Class<?>, CopyOnWriteArrayList<Subscription>> mSubscriptions =
       new ConcurrentHashMap<>();
-  private ArrayBlockingQueue<Object> mEventQueue = new ArrayBlockingQueue<>(10);
-  private ExecutorService mPool = Executors.newFixedThreadPool(10);
 
-  private EventMsgUtil() {
-    ExecutorService pool = Executors.newSingleThreadExecutor();
-    pool.execute(new Runnable() {
-      @Override public void run() {
-        while (true) {
-          try {
-            Object info = mEventQueue.take();
-            sendEvent(info);
-          } catch (Exception e) {
-            e.printStackTrace();
-          }
-        }
-      }
-    });
-  }
+  /**
+   * 已注册的订阅者，key为订阅者对象
+   */
+  private final Map<Object, Subscriber> mSubscribers = new ConcurrentHashMap<>();
 
-  private void sendEvent(final Object param) {
-    mPool.submit(new Runnable() {
-      @Override public void run() {
-        Set<Object> keys = mEventMethods.keySet();
-        for (Object key : keys) {
-          List<EventMethodInfo> list = mEventMethods.get(key);
-          if (list != null && !list.isEmpty()) {
-            for (EventMethodInfo info : list) {
-              try {
-                if (info.param == param.getClass()) {
-                  Method method = key.getClass().getDeclaredMethod(info.methodName, info.param);
-                  method.setAccessible(true);
-                  method.invoke(key, param);
-                }
-              } catch (Exception e) {
-                e.printStackTrace();
-              }
-            }
-          }
-        }
+  private final ExecutorService mPool;
+
+  private EventMsgUtil() {
+    final AtomicInteger index = new AtomicInteger();
+    mPool = Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Aria-Event-" + index.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
       }
     });
   }
@@ -95,16 +89,75 @@ public class EventMsgUtil {
    * 注册事件
    */
   public void register(Object obj) {
-    Method[] methods = obj.getClass().getDeclaredMethods();
-    for (Method method : methods) {
-      method.setAccessible(true);
+    List<EventMethodInfo> methods = getEventMethods(obj.getClass());
+    if (methods.isEmpty()) {
+      return;
+    }
+    Subscriber subscriber;
+    synchronized (this) {
+      if (mSubscribers.containsKey(obj)) {
+        return;
+      }
+      subscriber = new Subscriber(obj);
+      mSubscribers.put(obj, subscriber);
+      for (EventMethodInfo info : methods) {
+        CopyOnWriteArrayList<Subscription> list = mSubscriptions.get(info.param);
+        if (list == null) {
+          list = new CopyOnWriteArrayList<>();
+          mSubscriptions.put(info.param, list);
+        }
+        list.add(new Subscription(subscriber, info.method));
+      }
+    }
+  }
+
+  public void unRegister(Object obj) {
+    synchronized (this) {
+      Subscriber subscriber = mSubscribers.remove(obj);
+      if (subscriber == null) {
+        return;
+      }
+      subscriber.isActive = false;
+      for (CopyOnWriteArrayList<Subscription> list : mSubscriptions.values()) {
+        for (Subscription subscription : list) {
+          if (subscription.subscriber == subscriber) {
+            list.remove(subscription);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * 发送事件，接收消息的方法需要使用{@link Event}注解
+   */
+  public void post(Object param) {
+    List<Subscription> list = mSubscriptions.get(param.getClass());
+    if (list == null) {
+      return;
+    }
+    for (Subscription subscription : list) {
+      subscription.subscriber.enqueue(subscription.method, param);
+    }
+  }
+
+  /**
+   * 获取类中被{@link Event}注解的方法，每个类只查找一次
+   */
+  private List<EventMethodInfo> getEventMethods(Class<?> clazz) {
+    List<EventMethodInfo> cache = mMethodCache.get(clazz);
+    if (cache != null) {
+      return cache;
+    }
+    List<EventMethodInfo> list = new ArrayList<>();
+    for (Method method : clazz.getDeclaredMethods()) {
       if (method.getAnnotation(Event.class) == null) {
         continue;
       }
-      Class<?>[] clazz = method.getParameterTypes();
-      if (clazz.length == 0 || clazz.length > 1) {
+      Class<?>[] params = method.getParameterTypes();
+      if (params.length == 0 || params.length > 1) {
         ALog.e(TAG,
-            String.format("%s.%s参数数量为0或参数数量大于1", obj.getClass().getName(), method.getName()));
+            String.format("%s.%s参数数量为0或参数数量大于1", clazz.getName(), method.getName()));
         continue;
       }
       int modifier = method.getModifiers();
@@ -113,40 +166,75 @@ public class EventMsgUtil {
         ALog.e(TAG, "注册的方法不能使用final、static、abstract修饰");
         continue;
       }
-
+      method.setAccessible(true);
       EventMethodInfo methodInfo = new EventMethodInfo();
-      methodInfo.methodName = method.getName();
-      methodInfo.param = clazz[0];
-      List<EventMethodInfo> list = mEventMethods.get(obj);
-      if (list == null) {
-        list = new ArrayList<>();
-        mEventMethods.put(obj, list);
-      }
+      methodInfo.method = method;
+      methodInfo.param = params[0];
       list.add(methodInfo);
     }
+    cache = Collections.unmodifiableList(list);
+    mMethodCache.put(clazz, cache);
+    return cache;
   }
 
-  public void unRegister(Object obj) {
-    for (Iterator<Map.Entry<Object, List<EventMethodInfo>>> iter =
-        mEventMethods.entrySet().iterator(); iter.hasNext(); ) {
-      Map.Entry<Object, List<EventMethodInfo>> entry = iter.next();
-      if (entry.getKey().equals(obj)) {
-        entry.getValue().clear();
-        iter.remove();
-      }
+  /**
+   * 事件方法和它的订阅者
+   */
+  private static final class Subscription {
+    final Subscriber subscriber;
+    final Method method;
+
+    Subscription(Subscriber subscriber, Method method) {
+      this.subscriber = subscriber;
+      this.method = method;
     }
   }
 
   /**
-   * 发送事件，接收消息的方法需要使用{@link Event}注解
+   * 订阅者，持有自己的消息队列，队列中的事件在线程池中串行执行
    */
-  public void post(Object param) {
+  private final class Subscriber implements Runnable {
+    final Object target;
+    final Queue<Object[]> mailbox = new ConcurrentLinkedQueue<>();
+    final AtomicBoolean isScheduled = new AtomicBoolean(false);
+    volatile boolean isActive = true;
+
+    Subscriber(Object target) {
+      this.target = target;
+    }
+
+    void enqueue(Method method, Object param) {
+      mailbox.offer(new Object[] { method, param });
+      if (isScheduled.compareAndSet(false, true)) {
+        mPool.execute(this);
+      }
+    }
+
+    @Override public void run() {
+      while (true) {
+        Object[] event;
+        while ((event = mailbox.poll()) != null) {
+          if (!isActive) {
+            mailbox.clear();
+            break;
+          }
+          invoke((Method) event[0], event[1]);
+        }
+        isScheduled.set(false);
+        // 释放标记后如果又有新事件，并且没有其它线程接手，继续处理，避免事件滞留在队列中
+        if (mailbox.isEmpty() || !isScheduled.compareAndSet(false, true)) {
+          return;
+        }
+      }
+    }
 
-    synchronized (EventMsgUtil.class) {
+    private void invoke(Method method, Object param) {
       try {
-        mEventQueue.offer(param, 2, TimeUnit.SECONDS);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
+        method.invoke(target, param);
+      } catch (InvocationTargetException e) {
+        ALog.e(TAG, ALog.getExceptionString(e.getCause() == null ? e : e.getCause()));
+      } catch (Exception e) {
+        ALog.e(TAG, ALog.getExceptionString(e));
       }
     }
   }
@@ -16,11 +16,11 @@
 package com.arialyy.aria.core.inf;
 
 import android.os.Handler;
-import android.os.Looper;
 import android.support.annotation.CheckResult;
 import android.text.TextUtils;
 import com.arialyy.aria.core.command.CancelCmd;
 import com.arialyy.aria.core.command.NormalCmdFactory;
+import com.arialyy.aria.core.common.BandwidthScheduler;
 import com.arialyy.aria.core.download.DGTaskWrapper;
 import com.arialyy.aria.core.download.DTaskWrapper;
 import com.arialyy.aria.core.download.DownloadGroupEntity;
@@ -29,6 +29,7 @@ import com.arialyy.aria.core.manager.TaskWrapperManager;
 import com.arialyy.aria.core.scheduler.DownloadGroupSchedulers;
 import com.arialyy.aria.core.scheduler.DownloadSchedulers;
 import com.arialyy.aria.core.scheduler.ISchedulers;
+import com.arialyy.aria.core.scheduler.SchedulerThread;
 import com.arialyy.aria.core.scheduler.UploadSchedulers;
 import com.arialyy.aria.core.upload.UTaskWrapper;
 import com.arialyy.aria.util.ALog;
@@ -157,6 +158,25 @@ public abstract class AbsTarget<TARGET extends AbsTarget> implements ITargetHand
     return mEntity.getStr();
   }
 
+  /**
+   * 设置任务的优先级权重，多个任务同时执行时，按权重分配速度，权重越大分到的速度越多。
+   * 任务正在执行时立即生效，不需要重新启动任务；权重只在当前进程中有效，
+   * 任务停止、完成或失败后权重会保留，重新启动任务后继续生效，任务删除后权重会被移除
+   *
+   * @param weight 优先级权重，必须大于0，默认为{@link BandwidthScheduler#DEFAULT_WEIGHT}
+   */
+  public TARGET setPriorityWeight(int weight) {
+    BandwidthScheduler.getInstance().setWeight(mTaskWrapper.getKey(), weight);
+    return (TARGET) this;
+  }
+
+  /**
+   * 获取任务的优先级权重
+   */
+  public int getPriorityWeight() {
+    return BandwidthScheduler.getInstance().getWeight(mTaskWrapper.getKey());
+  }
+
   /**
    * 获取任务状态
    *
@@ -209,7 +229,7 @@ public abstract class AbsTarget<TARGET extends AbsTarget> implements ITargetHand
     ISchedulers schedulers = getScheduler();
     if (!b && schedulers != null) {
 
-      new Handler(Looper.getMainLooper(), schedulers).obtainMessage(ISchedulers.CHECK_FAIL,
+      new Handler(SchedulerThread.getLooper(), schedulers).obtainMessage(ISchedulers.CHECK_FAIL,
           checkTaskType(), -1, null).sendToTarget();
     }
 
@@ -66,6 +66,16 @@ public abstract class AbsTaskWrapper<ENTITY extends AbsEntity>
    */
   private int code;
 
+  /**
+   * 自适应线程数模式下，任务当前使用的线程数
+   */
+  private int threadNum;
+
+  /**
+   * 自适应线程数模式下，线程数调整的原因
+   */
+  private String threadNumReason;
+
   /**
    * {@link DownloadEntity} or {@link UploadEntity} or {@link DownloadGroupEntity}
    */
@@ -171,4 +181,20 @@ public abstract class AbsTaskWrapper<ENTITY extends AbsEntity>
   public void setCode(int code) {
     this.code = code;
   }
+
+  public int getThreadNum() {
+    return threadNum;
+  }
+
+  public void setThreadNum(int threadNum) {
+    this.threadNum = threadNum;
+  }
+
+  public String getThreadNumReason() {
+    return threadNumReason;
+  }
+
+  public void setThreadNumReason(String threadNumReason) {
+    this.threadNumReason = threadNumReason;
+  }
 }
@@ -192,14 +192,10 @@ public class TaskWrapperManager {
     }
   }
 
+  /**
+   * 缓存直接使用任务的key，不需要再转换为md5
+   */
   private String convertKey(String key) {
-    key = key.trim();
-    final Lock lock = this.lock;
-    lock.lock();
-    try {
-      return CommonUtil.keyToHashKey(key);
-    } finally {
-      lock.unlock();
-    }
+    return key.trim();
   }
 }
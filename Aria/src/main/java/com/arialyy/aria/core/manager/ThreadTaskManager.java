@@ -17,39 +17,166 @@
 package com.arialyy.aria.core.manager;
 
 import com.arialyy.aria.core.common.AbsThreadTask;
+import com.arialyy.aria.core.common.ExecutorMod;
+import com.arialyy.aria.core.common.TaskKey;
+import com.arialyy.aria.core.config.AppConfig;
+import com.arialyy.aria.core.config.Configuration;
 import com.arialyy.aria.core.inf.AbsTask;
 import com.arialyy.aria.core.inf.AbsTaskWrapper;
 import com.arialyy.aria.util.ALog;
-import com.arialyy.aria.util.CommonUtil;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 线程任务管理器
+ * 线程任务管理器。
+ * 线程任务都是阻塞的网络I/O，线程池不按cpu核数限制线程数，线程池类型由{@link AppConfig#getExecutorMod()}配置：
+ * 1、弹性线程池：线程数按需增长，最多{@link AppConfig#getMaxIOThreadNum()}个，线程数达到上限后，
+ * 启动线程会直接失败并回调任务失败，不会排队等待；
+ * 2、虚拟线程：每个线程任务使用一个虚拟线程，只在JVM 21及以上有效；
+ * 3、可以通过{@link #setExecutor(ExecutorService)}设置自定义的线程池。
+ * 线程任务按{@link TaskKey}登记，不同任务的启动和停止使用分段锁，不会互相阻塞。
  */
 public class ThreadTaskManager {
   private static volatile ThreadTaskManager INSTANCE = null;
   private final String TAG = "ThreadTaskManager";
-  private ExecutorService mExePool;
-  private Map<String, Set<FutureContainer>> mThreadTasks = new ConcurrentHashMap<>();
-  private static final ReentrantLock LOCK = new ReentrantLock();
 
-  public static synchronized ThreadTaskManager getInstance() {
+  /**
+   * 弹性线程池空闲线程的保留时间，单位为秒
+   */
+  private static final long KEEP_ALIVE_TIME = 60;
+
+  /**
+   * 分段锁的数量，必须是2的幂
+   */
+  private static final int LOCK_STRIPES = 32;
+
+  private volatile ExecutorService mExePool;
+  private final Map<TaskKey, Set<FutureContainer>> mThreadTasks = new ConcurrentHashMap<>();
+  private final Object[] mLocks = new Object[LOCK_STRIPES];
+  private final AtomicLong mRejectedCount = new AtomicLong();
+
+  public static ThreadTaskManager getInstance() {
     if (INSTANCE == null) {
-      INSTANCE = new ThreadTaskManager();
+      synchronized (ThreadTaskManager.class) {
+        if (INSTANCE == null) {
+          INSTANCE = new ThreadTaskManager();
+        }
+      }
     }
     return INSTANCE;
   }
 
   private ThreadTaskManager() {
-    mExePool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      mLocks[i] = new Object();
+    }
+    AppConfig config = Configuration.getInstance().appCfg;
+    if (ExecutorMod.getMod(config.getExecutorMod()) == ExecutorMod.VIRTUAL) {
+      mExePool = createVirtualExecutor();
+    }
+    if (mExePool == null) {
+      mExePool = createElasticExecutor(config.getMaxIOThreadNum());
+    }
+  }
+
+  /**
+   * 创建弹性线程池，没有空闲线程时创建新线程，线程数达到上限后拒绝新的线程任务
+   */
+  private ExecutorService createElasticExecutor(int maxThreadNum) {
+    final AtomicInteger index = new AtomicInteger();
+    return new ThreadPoolExecutor(0, Math.max(maxThreadNum, 1), KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(), new ThreadFactory() {
+      @Override public Thread newThread(Runnable r) {
+        return new Thread(r, "Aria-IO-" + index.incrementAndGet());
+      }
+    });
+  }
+
+  /**
+   * 通过反射创建虚拟线程线程池，JVM不支持虚拟线程时返回null
+   */
+  private ExecutorService createVirtualExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (Exception e) {
+      ALog.w(TAG, "当前虚拟机不支持虚拟线程，使用弹性线程池");
+      return null;
+    }
+  }
+
+  /**
+   * 设置自定义的线程池，需要在启动任务前调用，已经提交到旧线程池的线程任务不受影响
+   */
+  public void setExecutor(ExecutorService executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException("线程池为空");
+    }
+    mExePool = executor;
+  }
+
+  /**
+   * 线程池是否已满，线程池已满时启动线程会失败
+   */
+  public boolean isFull() {
+    if (mExePool instanceof ThreadPoolExecutor) {
+      ThreadPoolExecutor pool = (ThreadPoolExecutor) mExePool;
+      return pool.getQueue().remainingCapacity() == 0
+          && pool.getActiveCount() >= pool.getMaximumPoolSize();
+    }
+    return false;
+  }
+
+  /**
+   * 正在执行的线程数，线程池不是{@link ThreadPoolExecutor}时返回-1
+   */
+  public int getActiveCount() {
+    return mExePool instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) mExePool).getActiveCount()
+        : -1;
+  }
+
+  /**
+   * 等待执行的线程任务数，线程池不是{@link ThreadPoolExecutor}时返回-1
+   */
+  public int getQueueSize() {
+    return mExePool instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) mExePool).getQueue()
+        .size() : -1;
+  }
+
+  /**
+   * 线程池达到过的最大线程数，线程池不是{@link ThreadPoolExecutor}时返回-1
+   */
+  public int getLargestPoolSize() {
+    return mExePool instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) mExePool)
+        .getLargestPoolSize() : -1;
+  }
+
+  /**
+   * 因线程池已满而启动失败的线程任务数
+   */
+  public long getRejectedCount() {
+    return mRejectedCount.get();
+  }
+
+  /**
+   * 打印线程池状态
+   */
+  public void printStatus() {
+    ALog.d(TAG, String.format("执行中：%s，等待中：%s，最大线程数：%s，启动失败：%s", getActiveCount(),
+        getQueueSize(), getLargestPoolSize(), mRejectedCount.get()));
   }
 
   /**
@@ -59,22 +186,8 @@ public class ThreadTaskManager {
     if (mThreadTasks.isEmpty()) {
       return;
     }
-    try {
-      LOCK.tryLock(2, TimeUnit.SECONDS);
-      for (Set<FutureContainer> threads : mThreadTasks.values()) {
-        for (FutureContainer container : threads) {
-          if (container.future.isDone() || container.future.isCancelled()) {
-            continue;
-          }
-          container.threadTask.destroy();
-        }
-        threads.clear();
-      }
-      mThreadTasks.clear();
-    } catch (InterruptedException e) {
-      e.printStackTrace();
-    } finally {
-      LOCK.unlock();
+    for (TaskKey key : mThreadTasks.keySet()) {
+      removeTaskThread(key);
     }
   }
 
@@ -83,29 +196,55 @@ public class ThreadTaskManager {
    *
    * @param key 任务对应的key{@link AbsTaskWrapper#getKey()}
    * @param threadTask 线程任务{@link AbsThreadTask}
+   * @return {@code false} 线程池已满或已关闭，启动线程失败，线程池已满时会回调线程任务失败
    */
-  public void startThread(String key, AbsThreadTask threadTask) {
-    try {
-      LOCK.tryLock(2, TimeUnit.SECONDS);
-      if (mExePool.isShutdown()) {
+  public boolean startThread(String key, AbsThreadTask threadTask) {
+    return startThread(TaskKey.of(key), threadTask);
+  }
+
+  /**
+   * 启动线程任务
+   *
+   * @param key 任务标识
+   * @param threadTask 线程任务{@link AbsThreadTask}
+   * @return {@code false} 线程池已满或已关闭，启动线程失败，线程池已满时会回调线程任务失败
+   */
+  public boolean startThread(TaskKey key, AbsThreadTask threadTask) {
+    RejectedExecutionException rejected = null;
+    synchronized (getLock(key)) {
+      ExecutorService pool = mExePool;
+      if (pool.isShutdown()) {
         ALog.e(TAG, "线程池已经关闭");
-        return;
+        return false;
       }
-      key = getKey(key);
-      Set<FutureContainer> temp = mThreadTasks.get(key);
-      if (temp == null) {
-        temp = new HashSet<>();
-        mThreadTasks.put(key, temp);
+      try {
+        // 提交成功后才登记，线程池拒绝时不能留下空的登记，否则任务会被认为还在执行
+        FutureContainer container = new FutureContainer();
+        container.threadTask = threadTask;
+        container.future = pool.submit(threadTask);
+        Set<FutureContainer> temp = mThreadTasks.get(key);
+        if (temp == null) {
+          temp = new HashSet<>();
+          mThreadTasks.put(key, temp);
+        }
+        temp.add(container);
+        return true;
+      } catch (RejectedExecutionException e) {
+        rejected = e;
       }
-      FutureContainer container = new FutureContainer();
-      container.threadTask = threadTask;
-      container.future = mExePool.submit(threadTask);
-      temp.add(container);
-    } catch (Exception e) {
-      e.printStackTrace();
-    } finally {
-      LOCK.unlock();
     }
+    onRejected(threadTask, rejected);
+    return false;
+  }
+
+  /**
+   * 线程池已满，线程任务直接失败
+   */
+  private void onRejected(AbsThreadTask threadTask, RejectedExecutionException e) {
+    mRejectedCount.incrementAndGet();
+    ALog.e(TAG, String.format("线程池已满，启动线程失败，执行中：%s，最大线程数：%s", getActiveCount(),
+        getLargestPoolSize()));
+    threadTask.onRejected(e);
   }
 
   /**
@@ -115,7 +254,17 @@ public class ThreadTaskManager {
    * @return {@code true} 任务正在运行
    */
   public boolean taskIsRunning(String key) {
-    return mThreadTasks.get(getKey(key)) != null;
+    return taskIsRunning(TaskKey.of(key));
+  }
+
+  /**
+   * 任务是否在执行
+   *
+   * @param key 任务标识
+   * @return {@code true} 任务正在运行
+   */
+  public boolean taskIsRunning(TaskKey key) {
+    return mThreadTasks.containsKey(key);
   }
 
   /**
@@ -124,28 +273,27 @@ public class ThreadTaskManager {
    * @param key 任务对应的key{@link AbsTaskWrapper#getKey()}
    */
   public void removeTaskThread(String key) {
-    try {
-      LOCK.tryLock(2, TimeUnit.SECONDS);
-      if (mExePool.isShutdown()) {
-        ALog.e(TAG, "线程池已经关闭");
+    removeTaskThread(TaskKey.of(key));
+  }
+
+  /**
+   * 停止任务的所有线程
+   *
+   * @param key 任务标识
+   */
+  public void removeTaskThread(TaskKey key) {
+    synchronized (getLock(key)) {
+      Set<FutureContainer> temp = mThreadTasks.remove(key);
+      if (temp == null) {
         return;
       }
-      key = getKey(key);
-      Set<FutureContainer> temp = mThreadTasks.get(key);
-      if (temp != null && temp.size() > 0) {
-        for (FutureContainer container : temp) {
-          if (container.future.isDone() || container.future.isCancelled()) {
-            continue;
-          }
-          container.threadTask.destroy();
+      for (FutureContainer container : temp) {
+        if (container.future.isDone() || container.future.isCancelled()) {
+          continue;
         }
-        temp.clear();
-        mThreadTasks.remove(key);
+        container.threadTask.destroy();
       }
-    } catch (Exception e) {
-      e.printStackTrace();
-    } finally {
-      LOCK.unlock();
+      temp.clear();
     }
   }
 
@@ -156,77 +304,64 @@ public class ThreadTaskManager {
    * @param task 线程任务
    */
   public boolean removeSingleTaskThread(String key, AbsThreadTask task) {
-    try {
-      LOCK.tryLock(2, TimeUnit.SECONDS);
-      if (mExePool.isShutdown()) {
-        ALog.e(TAG, "线程池已经关闭");
-        return false;
-      }
-      if (task == null) {
-        ALog.e(TAG, "线程任务为空");
+    return removeSingleTaskThread(TaskKey.of(key), task);
+  }
+
+  /**
+   * 删除单个线程任务
+   *
+   * @param key 任务标识
+   * @param task 线程任务
+   */
+  public boolean removeSingleTaskThread(TaskKey key, AbsThreadTask task) {
+    if (task == null) {
+      ALog.e(TAG, "线程任务为空");
+      return false;
+    }
+    synchronized (getLock(key)) {
+      Set<FutureContainer> temp = mThreadTasks.get(key);
+      if (temp == null) {
         return false;
       }
-      key = getKey(key);
-      Set<FutureContainer> temp = mThreadTasks.get(key);
-      if (temp != null && temp.size() > 0) {
-        FutureContainer tempC = null;
-        for (FutureContainer container : temp) {
-          if (container.threadTask == task) {
-            tempC = container;
-            break;
-          }
-        }
-        if (tempC != null) {
+      Iterator<FutureContainer> iterator = temp.iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next().threadTask == task) {
           task.destroy();
-          temp.remove(tempC);
+          iterator.remove();
           return true;
         }
       }
-    } catch (Exception e) {
-      e.printStackTrace();
-    } finally {
-      LOCK.unlock();
     }
     return false;
   }
 
   /**
-   * 重试线程任务
+   * 重试线程任务，重试不会修改任务的线程记录，因此不需要加锁
    *
    * @param task 线程任务
    */
   public void retryThread(AbsThreadTask task) {
+    ExecutorService pool = mExePool;
+    if (pool.isShutdown()) {
+      ALog.e(TAG, "线程池已经关闭");
+      return;
+    }
+    if (task == null || task.isDestroy()) {
+      ALog.e(TAG, "线程为空或线程已经中断");
+      return;
+    }
     try {
-      LOCK.tryLock(2, TimeUnit.SECONDS);
-      if (mExePool.isShutdown()) {
-        ALog.e(TAG, "线程池已经关闭");
-        return;
-      }
-      try {
-        if (task == null || task.isDestroy()) {
-          ALog.e(TAG, "线程为空或线程已经中断");
-          return;
-        }
-      } catch (Exception e) {
-        ALog.e(TAG, e);
-        return;
-      }
-      mExePool.submit(task);
-    } catch (Exception e) {
-      e.printStackTrace();
-    } finally {
-      LOCK.unlock();
+      pool.submit(task);
+    } catch (RejectedExecutionException e) {
+      onRejected(task, e);
     }
   }
 
   /**
-   * map中的key
-   *
-   * @param key 任务的key{@link AbsTaskWrapper#getKey()}
-   * @return 转换后的map中的key
+   * 获取任务对应的分段锁，不同任务的启动和停止只在落到同一个分段时才会互相等待
    */
-  private String getKey(String key) {
-    return CommonUtil.getStrMd5(key);
+  private Object getLock(TaskKey key) {
+    return mLocks[key.getStripe(LOCK_STRIPES)];
   }
 
   private class FutureContainer {
@@ -19,7 +19,6 @@ package com.arialyy.aria.core.queue.pool;
 import android.text.TextUtils;
 import com.arialyy.aria.core.inf.AbsTask;
 import com.arialyy.aria.util.ALog;
-import com.arialyy.aria.util.CommonUtil;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
@@ -34,7 +33,10 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
   private static final String TAG = "BaseCachePool";
   private static final int MAX_NUM = Integer.MAX_VALUE;  //最大下载任务数
   private static final long TIME_OUT = 1000;
-  private static final Object LOCK = new Object();
+  /**
+   * 每个队列使用自己的锁，下载队列和上传队列互不影响
+   */
+  private final Object mLock = new Object();
   private Map<String, TASK> mCacheMap;
   private LinkedBlockingQueue<TASK> mCacheQueue;
 
@@ -82,7 +84,7 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
   }
 
   @Override public boolean putTask(TASK task) {
-    synchronized (LOCK) {
+    synchronized (mLock) {
       if (task == null) {
         ALog.e(TAG, "任务不能为空！！");
         return false;
@@ -95,7 +97,7 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
         boolean s = mCacheQueue.offer(task);
         ALog.d(TAG, "任务【" + task.getTaskName() + "】进入缓存队列" + (s ? "成功" : "失败"));
         if (s) {
-          mCacheMap.put(CommonUtil.keyToHashKey(key), task);
+          mCacheMap.put(key, task);
         }
         return s;
       }
@@ -103,13 +105,13 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
   }
 
   @Override public TASK pollTask() {
-    synchronized (LOCK) {
+    synchronized (mLock) {
       try {
         TASK task;
         task = mCacheQueue.poll(TIME_OUT, TimeUnit.MICROSECONDS);
         if (task != null) {
           String url = task.getKey();
-          mCacheMap.remove(CommonUtil.keyToHashKey(url));
+          mCacheMap.remove(url);
         }
         return task;
       } catch (InterruptedException e) {
@@ -120,26 +122,24 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
   }
 
   @Override public TASK getTask(String key) {
-    synchronized (LOCK) {
-      if (TextUtils.isEmpty(key)) {
-        ALog.e(TAG, "key 为null");
-        return null;
-      }
-      return mCacheMap.get(CommonUtil.keyToHashKey(key));
+    if (TextUtils.isEmpty(key)) {
+      ALog.e(TAG, "key 为null");
+      return null;
     }
+    return mCacheMap.get(key);
   }
 
   @Override public boolean taskExits(String key) {
-    return mCacheMap.containsKey(CommonUtil.keyToHashKey(key));
+    return mCacheMap.containsKey(key);
   }
 
   @Override public boolean removeTask(TASK task) {
-    synchronized (LOCK) {
+    synchronized (mLock) {
       if (task == null) {
         ALog.e(TAG, "任务不能为空");
         return false;
       } else {
-        String key = CommonUtil.keyToHashKey(task.getKey());
+        String key = task.getKey();
         mCacheMap.remove(key);
         return mCacheQueue.remove(task);
       }
@@ -147,14 +147,12 @@ public class BaseCachePool<TASK extends AbsTask> implements IPool<TASK> {
   }
 
   @Override public boolean removeTask(String key) {
-    synchronized (LOCK) {
+    synchronized (mLock) {
       if (TextUtils.isEmpty(key)) {
         ALog.e(TAG, "请传入有效的下载链接");
         return false;
       }
-      String temp = CommonUtil.keyToHashKey(key);
-      TASK task = mCacheMap.get(temp);
-      mCacheMap.remove(temp);
+      TASK task = mCacheMap.remove(key);
       return mCacheQueue.remove(task);
     }
   }
@@ -20,7 +20,6 @@ import android.text.TextUtils;
 import com.arialyy.aria.core.AriaManager;
 import com.arialyy.aria.core.inf.AbsTask;
 import com.arialyy.aria.util.ALog;
-import com.arialyy.aria.util.CommonUtil;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
@@ -31,7 +30,10 @@ import java.util.concurrent.TimeUnit;
  */
 public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
   private final String TAG = "BaseExecutePool";
-  private static final Object LOCK = new Object();
+  /**
+   * 每个队列使用自己的锁，下载队列和上传队列互不影响
+   */
+  private final Object mLock = new Object();
   final long TIME_OUT = 1000;
   ArrayBlockingQueue<TASK> mExecuteQueue;
   Map<String, TASK> mExecuteMap;
@@ -60,7 +62,7 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
   }
 
   @Override public boolean putTask(TASK task) {
-    synchronized (LOCK) {
+    synchronized (mLock) {
       if (task == null) {
         ALog.e(TAG, "任务不能为空！！");
         return false;
@@ -87,7 +89,7 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
    * @param maxNum 下载数
    */
   public void setMaxNum(int maxNum) {
-    synchronized (LOCK) {
+    synchronized (mLock) {
       try {
         ArrayBlockingQueue<TASK> temp = new ArrayBlockingQueue<>(maxNum);
         TASK task;
@@ -108,12 +110,12 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
    * @param newTask 新任务
    */
   boolean putNewTask(TASK newTask) {
-    synchronized (LOCK) {
+    synchronized (mLock) {
       String url = newTask.getKey();
       boolean s = mExecuteQueue.offer(newTask);
       ALog.d(TAG, "任务【" + newTask.getTaskName() + "】进入执行队列" + (s ? "成功" : "失败"));
       if (s) {
-        mExecuteMap.put(CommonUtil.keyToHashKey(url), newTask);
+        mExecuteMap.put(url, newTask);
       }
       return s;
     }
@@ -123,7 +125,7 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
    * 队列满时，将移除下载队列中的第一个任务
    */
   boolean pollFirstTask() {
-    synchronized (LOCK) {
+    synchronized (mLock) {
       try {
         TASK oldTask = mExecuteQueue.poll(TIME_OUT, TimeUnit.MICROSECONDS);
         if (oldTask == null) {
@@ -131,7 +133,7 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
           return false;
         }
         oldTask.stop();
-        String key = CommonUtil.keyToHashKey(oldTask.getKey());
+        String key = oldTask.getKey();
         mExecuteMap.remove(key);
       } catch (InterruptedException e) {
         e.printStackTrace();
@@ -142,13 +144,13 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
   }
 
   @Override public TASK pollTask() {
-    synchronized (LOCK) {
+    synchronized (mLock) {
       try {
         TASK task;
         task = mExecuteQueue.poll(TIME_OUT, TimeUnit.MICROSECONDS);
         if (task != null) {
           String url = task.getKey();
-          mExecuteMap.remove(CommonUtil.keyToHashKey(url));
+          mExecuteMap.remove(url);
         }
         return task;
       } catch (InterruptedException e) {
@@ -159,21 +161,19 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
   }
 
   @Override public TASK getTask(String key) {
-    synchronized (LOCK) {
-      if (TextUtils.isEmpty(key)) {
-        ALog.e(TAG, "key 为null");
-        return null;
-      }
-      return mExecuteMap.get(CommonUtil.keyToHashKey(key));
+    if (TextUtils.isEmpty(key)) {
+      ALog.e(TAG, "key 为null");
+      return null;
     }
+    return mExecuteMap.get(key);
   }
 
   @Override public boolean taskExits(String key) {
-    return mExecuteMap.containsKey(CommonUtil.keyToHashKey(key));
+    return mExecuteMap.containsKey(key);
   }
 
   @Override public boolean removeTask(TASK task) {
-    synchronized (LOCK) {
+    synchronized (mLock) {
       if (task == null) {
         ALog.e(TAG, "任务不能为空");
         return false;
@@ -184,18 +184,17 @@ public class BaseExecutePool<TASK extends AbsTask> implements IPool<TASK> {
   }
 
   @Override public boolean removeTask(String key) {
-    synchronized (LOCK) {
+    synchronized (mLock) {
       if (TextUtils.isEmpty(key)) {
         ALog.e(TAG, "key 为null");
         return false;
       }
-      String convertKey = CommonUtil.keyToHashKey(key);
-      TASK task = mExecuteMap.get(convertKey);
+      TASK task = mExecuteMap.get(key);
       final int oldQueueSize = mExecuteQueue.size();
       boolean isSuccess = mExecuteQueue.remove(task);
       final int newQueueSize = mExecuteQueue.size();
       if (isSuccess && newQueueSize != oldQueueSize) {
-        mExecuteMap.remove(convertKey);
+        mExecuteMap.remove(key);
         return true;
       }
       return false;
@@ -18,7 +18,6 @@ package com.arialyy.aria.core.queue.pool;
 import com.arialyy.aria.core.AriaManager;
 import com.arialyy.aria.core.inf.AbsTask;
 import com.arialyy.aria.util.ALog;
-import com.arialyy.aria.util.CommonUtil;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -71,7 +70,7 @@ class DLoadExecutePool<TASK extends AbsTask> extends BaseExecutePool<TASK> {
         return false;
       }
       oldTask.stop();
-      String key = CommonUtil.keyToHashKey(oldTask.getKey());
+      String key = oldTask.getKey();
       mExecuteMap.remove(key);
     } catch (InterruptedException e) {
       e.printStackTrace();
@@ -17,11 +17,15 @@ package com.arialyy.aria.core.scheduler;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.Message;
 import com.arialyy.annotations.TaskEnum;
 import com.arialyy.aria.core.AriaManager;
-import com.arialyy.aria.core.download.DownloadGroupTask;
-import com.arialyy.aria.core.download.DownloadTask;
+import com.arialyy.aria.core.common.BandwidthScheduler;
+import com.arialyy.aria.core.common.CallbackMod;
+import com.arialyy.aria.core.common.ProxyHelper;
+import com.arialyy.aria.core.common.RetryService;
+import com.arialyy.aria.core.config.AppConfig;
 import com.arialyy.aria.core.inf.AbsEntity;
 import com.arialyy.aria.core.inf.AbsNormalEntity;
 import com.arialyy.aria.core.inf.AbsTask;
@@ -32,15 +36,13 @@ import com.arialyy.aria.core.inf.ITask;
 import com.arialyy.aria.core.inf.TaskSchedulerType;
 import com.arialyy.aria.core.manager.TaskWrapperManager;
 import com.arialyy.aria.core.queue.ITaskQueue;
-import com.arialyy.aria.core.upload.UploadTask;
 import com.arialyy.aria.util.ALog;
 import com.arialyy.aria.util.NetUtils;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Created by lyy on 2017/6/4. 事件调度器，用于处理任务状态的调度
@@ -49,50 +51,66 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
     QUEUE extends ITaskQueue<TASK, TASK_ENTITY>> implements ISchedulers {
   private final String TAG = "AbsSchedulers";
 
+  /**
+   * 执行中状态的合并窗口，一帧内到达的执行中状态会合并成一批回调
+   */
+  private static final long RUNNING_BATCH_DELAY = 16;
+
   protected QUEUE mQueue;
 
-  private Map<String, Map<TaskEnum, ISchedulerListener>> mObservers = new ConcurrentHashMap<>();
+  private final ListenerIndex mObservers = new ListenerIndex();
   private AriaManager manager;
+  private final Handler mDispatchHandler;
+  private final BroadcastSender mBroadcastSender;
+
+  /**
+   * 等待回调的执行中状态，key为任务key，只在调度器线程读写
+   */
+  private final LinkedHashMap<String, TASK> mPendingRunning = new LinkedHashMap<>();
+  private boolean isRunningFlushPosted = false;
+
+  private final Runnable mFlushRunningTask = new Runnable() {
+    @Override public void run() {
+      isRunningFlushPosted = false;
+      flushRunning();
+    }
+  };
 
   AbsSchedulers() {
     manager = AriaManager.getInstance(AriaManager.APP);
+    mDispatchHandler = new Handler(SchedulerThread.getLooper());
+    mBroadcastSender = new BroadcastSender(SchedulerThread.getLooper());
   }
 
   /**
-   * 将当前类注册到Aria
+   * 将当前类注册到Aria，回调线程使用{@link AppConfig#getCallbackMod()}的配置
    *
    * @param obj 观察者类
    * @param taskEnum 任务类型 {@link TaskEnum}
    */
   public void register(Object obj, TaskEnum taskEnum) {
-    String targetName = obj.getClass().getName();
-    Map<TaskEnum, ISchedulerListener> listeners = mObservers.get(getKey(obj));
-
-    if (listeners == null) {
-      listeners = new ConcurrentHashMap<>();
-      mObservers.put(getKey(obj), listeners);
-    }
-    String proxyClassName = targetName + taskEnum.proxySuffix;
-
-    if (!hasProxyListener(listeners, taskEnum)) {
-      ISchedulerListener listener = createListener(proxyClassName);
-      if (listener != null) {
-        listener.setListener(obj);
-        listeners.put(taskEnum, listener);
-      } else {
-        ALog.e(TAG, "注册错误，没有【" + proxyClassName + "】观察者");
-      }
-    }
+    register(obj, taskEnum, CallbackMod.getMod(manager.getAppConfig().getCallbackMod()));
   }
 
   /**
-   * 检查当前类是否已经注册了对应的代理
+   * 将当前类注册到Aria
    *
-   * @param taskEnum 代理类类型
-   * @return true，已注册代理类，false，没有注册代理类
+   * @param obj 观察者类
+   * @param taskEnum 任务类型 {@link TaskEnum}
+   * @param callbackMod 回调线程 {@link CallbackMod}
    */
-  private boolean hasProxyListener(Map<TaskEnum, ISchedulerListener> listeners, TaskEnum taskEnum) {
-    return !listeners.isEmpty() && listeners.get(taskEnum) != null;
+  public void register(Object obj, TaskEnum taskEnum, CallbackMod callbackMod) {
+    String key = getKey(obj);
+    if (mObservers.contains(key, taskEnum)) {
+      return;
+    }
+    ISchedulerListener listener = ProxyHelper.getInstance().newProxy(obj.getClass(), taskEnum);
+    if (listener != null) {
+      listener.setListener(obj);
+      mObservers.add(key, taskEnum, listener, SchedulerThread.getCallbackExecutor(callbackMod));
+    } else {
+      ALog.e(TAG, "注册错误，没有【" + obj.getClass().getName() + taskEnum.proxySuffix + "】观察者");
+    }
   }
 
   /**
@@ -101,43 +119,13 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
    * @param obj 观察者类
    */
   public void unRegister(Object obj) {
-    if (!mObservers.containsKey(getKey(obj))) {
-      return;
-    }
-    for (Iterator<Map.Entry<String, Map<TaskEnum, ISchedulerListener>>> iter =
-        mObservers.entrySet().iterator(); iter.hasNext(); ) {
-      Map.Entry<String, Map<TaskEnum, ISchedulerListener>> entry = iter.next();
-
-      if (entry.getKey().equals(getKey(obj))) {
-        iter.remove();
-      }
-    }
+    mObservers.remove(getKey(obj));
   }
 
   private String getKey(Object obj) {
     return obj.getClass().getName() + obj.hashCode();
   }
 
-  /**
-   * 创建代理类
-   *
-   * @param proxyClassName 代理类类名
-   */
-  private ISchedulerListener createListener(String proxyClassName) {
-    ISchedulerListener listener = null;
-    try {
-      Class clazz = Class.forName(proxyClassName);
-      listener = (ISchedulerListener) clazz.newInstance();
-    } catch (ClassNotFoundException e) {
-      ALog.e(TAG, e.getMessage());
-    } catch (InstantiationException e) {
-      ALog.e(TAG, e.getMessage());
-    } catch (IllegalAccessException e) {
-      ALog.e(TAG, e.getMessage());
-    }
-    return listener;
-  }
-
   @Override public boolean handleMessage(Message msg) {
     if (msg.arg1 == IS_SUB_TASK) {
       return handleSubEvent(msg);
@@ -161,37 +149,29 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
    */
   private boolean handlePeerEvent(Message msg) {
     Bundle data = msg.getData();
-    if (mObservers.size() > 0) {
-      Set<String> keys = mObservers.keySet();
-      for (String key : keys) {
-        Map<TaskEnum, ISchedulerListener> listeners = mObservers.get(key);
-        if (listeners == null || listeners.isEmpty()) {
-          continue;
-        }
-        M3U8PeerTaskListener listener =
-            (M3U8PeerTaskListener) listeners.get(TaskEnum.M3U8_PEER);
-        if (listener == null) {
-          continue;
-        }
-
-        switch (msg.what) {
-          case M3U8_PEER_START:
-            listener.onPeerStart(data.getString(DATA_M3U8_URL),
-                data.getString(DATA_M3U8_PEER_PATH),
-                data.getInt(DATA_M3U8_PEER_INDEX));
-            break;
-          case M3U8_PEER_COMPLETE:
-            listener.onPeerComplete(data.getString(DATA_M3U8_URL),
-                data.getString(DATA_M3U8_PEER_PATH),
-                data.getInt(DATA_M3U8_PEER_INDEX));
-            break;
-          case M3U8_PEER_FAIL:
-            listener.onPeerFail(data.getString(DATA_M3U8_URL),
-                data.getString(DATA_M3U8_PEER_PATH),
-                data.getInt(DATA_M3U8_PEER_INDEX));
-            break;
+    final int what = msg.what;
+    final String m3u8Url = data.getString(DATA_M3U8_URL);
+    final String peerPath = data.getString(DATA_M3U8_PEER_PATH);
+    final int peerIndex = data.getInt(DATA_M3U8_PEER_INDEX);
+    // 切片事件按所属的m3u8任务选择代理，m3u8Url不一定是任务的key
+    for (ListenerIndex.Entry entry : mObservers.select(TaskEnum.M3U8_PEER,
+        data.getString(DATA_M3U8_TASK_KEY))) {
+      final M3U8PeerTaskListener listener = (M3U8PeerTaskListener) entry.listener;
+      execute(entry, new Runnable() {
+        @Override public void run() {
+          switch (what) {
+            case M3U8_PEER_START:
+              listener.onPeerStart(m3u8Url, peerPath, peerIndex);
+              break;
+            case M3U8_PEER_COMPLETE:
+              listener.onPeerComplete(m3u8Url, peerPath, peerIndex);
+              break;
+            case M3U8_PEER_FAIL:
+              listener.onPeerFail(m3u8Url, peerPath, peerIndex);
+              break;
+          }
         }
-      }
+      });
     }
 
     boolean canSend = manager.getAppConfig().isUseBroadcast();
@@ -209,49 +189,47 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
    */
   private boolean handleSubEvent(Message msg) {
     GroupSendParams params = (GroupSendParams) msg.obj;
-    if (mObservers.size() > 0) {
-      Set<String> keys = mObservers.keySet();
-      for (String key : keys) {
-        Map<TaskEnum, ISchedulerListener> listeners = mObservers.get(key);
-        if (listeners == null || listeners.isEmpty()) {
-          continue;
-        }
-        SubTaskListener<TASK, AbsNormalEntity> listener =
-            (SubTaskListener<TASK, AbsNormalEntity>) listeners.get(TaskEnum.DOWNLOAD_GROUP_SUB);
-        if (listener == null) {
-          continue;
-        }
-        switch (msg.what) {
-          case SUB_PRE:
-            listener.onSubTaskPre((TASK) params.groupTask, params.entity);
-            break;
-          case SUB_START:
-            listener.onSubTaskStart((TASK) params.groupTask, params.entity);
-            break;
-          case SUB_STOP:
-            listener.onSubTaskStop((TASK) params.groupTask, params.entity);
-            break;
-          case SUB_FAIL:
-            listener.onSubTaskFail((TASK) params.groupTask, params.entity,
-                (Exception) (params.groupTask).getExpand(AbsTask.ERROR_INFO_KEY));
-            break;
-          case SUB_RUNNING:
-            listener.onSubTaskRunning((TASK) params.groupTask, params.entity);
-            break;
-          case SUB_CANCEL:
-            listener.onSubTaskCancel((TASK) params.groupTask, params.entity);
-            break;
-          case SUB_COMPLETE:
-            listener.onSubTaskComplete((TASK) params.groupTask, params.entity);
-            break;
+    // params会被复用，切换线程前先取出任务和子任务实体
+    final int what = msg.what;
+    final TASK groupTask = (TASK) params.groupTask;
+    final AbsNormalEntity subEntity = params.entity;
+    for (ListenerIndex.Entry entry : mObservers.select(TaskEnum.DOWNLOAD_GROUP_SUB,
+        groupTask.getKey())) {
+      final SubTaskListener<TASK, AbsNormalEntity> listener =
+          (SubTaskListener<TASK, AbsNormalEntity>) entry.listener;
+      execute(entry, new Runnable() {
+        @Override public void run() {
+          switch (what) {
+            case SUB_PRE:
+              listener.onSubTaskPre(groupTask, subEntity);
+              break;
+            case SUB_START:
+              listener.onSubTaskStart(groupTask, subEntity);
+              break;
+            case SUB_STOP:
+              listener.onSubTaskStop(groupTask, subEntity);
+              break;
+            case SUB_FAIL:
+              listener.onSubTaskFail(groupTask, subEntity,
+                  (Exception) groupTask.getExpand(AbsTask.ERROR_INFO_KEY));
+              break;
+            case SUB_RUNNING:
+              listener.onSubTaskRunning(groupTask, subEntity);
+              break;
+            case SUB_CANCEL:
+              listener.onSubTaskCancel(groupTask, subEntity);
+              break;
+            case SUB_COMPLETE:
+              listener.onSubTaskComplete(groupTask, subEntity);
+              break;
+          }
         }
-      }
+      });
     }
 
     boolean canSend = manager.getAppConfig().isUseBroadcast();
     if (canSend) {
-      AriaManager.APP.sendBroadcast(
-          createData(msg.what, ITask.DOWNLOAD_GROUP_SUB, params.entity));
+      mBroadcastSender.send(what, ITask.DOWNLOAD_GROUP_SUB, subEntity);
     }
 
     return true;
@@ -261,6 +239,12 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
    * 处理普通任务和任务组的事件
    */
   private void handleNormalEvent(TASK task, int what, int arg1) {
+    if (what == RUNNING) {
+      postRunning(task);
+      return;
+    }
+    // 先把合并中的执行中状态回调出去，保证观察者收到的状态顺序不变
+    flushRunning();
     switch (what) {
       case STOP:
         if (task.getState() == IEntity.STATE_WAIT) {
@@ -276,6 +260,7 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
         break;
       case CANCEL:
         mQueue.removeTaskFormQueue(task.getKey());
+        BandwidthScheduler.getInstance().removeWeight(task.getKey());
         if (mQueue.getCurrentExePoolNum() < mQueue.getMaxTaskNum()) {
           ALog.d(TAG, String.format("删除任务【%s】成功，尝试开始下一任务", task.getTaskName()));
           startNextTask(task.getSchedulerType());
@@ -303,13 +288,65 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
     if (what == CANCEL || what == COMPLETE) {
       TaskWrapperManager.getInstance().removeTaskWrapper(task.getKey());
     } else {
-      if (what != RUNNING) {
-        TaskWrapperManager.getInstance().putTaskWrapper(task.getKey(), task.getTaskWrapper());
-      }
+      TaskWrapperManager.getInstance().putTaskWrapper(task.getKey(), task.getTaskWrapper());
     }
     normalTaskCallback(what, task);
   }
 
+  /**
+   * 暂存执行中状态，同一个任务在合并窗口内只保留最后一次，窗口结束时统一回调
+   */
+  private void postRunning(TASK task) {
+    if (manager.getAppConfig().isUseBroadcast()) {
+      sendNormalBroadcast(RUNNING, task);
+    }
+    if (!mObservers.hasListener(getTaskEnum(task.getTaskType()))) {
+      return;
+    }
+    mPendingRunning.put(task.getKey(), task);
+    if (!isRunningFlushPosted) {
+      isRunningFlushPosted = true;
+      mDispatchHandler.postDelayed(mFlushRunningTask, RUNNING_BATCH_DELAY);
+    }
+  }
+
+  /**
+   * 回调合并窗口内的执行中状态
+   */
+  private void flushRunning() {
+    if (mPendingRunning.isEmpty()) {
+      return;
+    }
+    // 按观察者分组，每个观察者一批只切换一次线程
+    Map<ListenerIndex.Entry, List<TASK>> batches = new IdentityHashMap<>();
+    for (TASK task : mPendingRunning.values()) {
+      TaskEnum taskEnum = getTaskEnum(task.getTaskType());
+      if (taskEnum == null) {
+        continue;
+      }
+      for (ListenerIndex.Entry entry : mObservers.select(taskEnum, task.getKey())) {
+        List<TASK> batch = batches.get(entry);
+        if (batch == null) {
+          batch = new ArrayList<>();
+          batches.put(entry, batch);
+        }
+        batch.add(task);
+      }
+    }
+    mPendingRunning.clear();
+    for (Map.Entry<ListenerIndex.Entry, List<TASK>> e : batches.entrySet()) {
+      final NormalTaskListener<TASK> listener = (NormalTaskListener<TASK>) e.getKey().listener;
+      final List<TASK> batch = e.getValue();
+      execute(e.getKey(), new Runnable() {
+        @Override public void run() {
+          for (TASK task : batch) {
+            listener.onTaskRunning(task);
+          }
+        }
+      });
+    }
+  }
+
   private void handlePreFailTask(int taskType) {
     startNextTask(TaskSchedulerType.TYPE_DEFAULT);
 
@@ -320,32 +357,12 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
       Bundle b = new Bundle();
       b.putInt(ISchedulers.TASK_TYPE, taskType);
       b.putInt(ISchedulers.TASK_STATE, ISchedulers.FAIL);
+      intent.putExtras(b);
       AriaManager.APP.sendBroadcast(intent);
     }
 
-    // 处理回调
-    if (mObservers.size() > 0) {
-      Set<String> keys = mObservers.keySet();
-      for (String key : keys) {
-        Map<TaskEnum, ISchedulerListener> listeners = mObservers.get(key);
-        if (listeners == null || listeners.isEmpty()) {
-          continue;
-        }
-        NormalTaskListener<TASK> listener = null;
-        if (mObservers.get(key) != null) {
-          if (taskType == ITask.DOWNLOAD) {
-            listener = (NormalTaskListener<TASK>) listeners.get(TaskEnum.DOWNLOAD);
-          } else if (taskType == ITask.DOWNLOAD_GROUP) {
-            listener = (NormalTaskListener<TASK>) listeners.get(TaskEnum.DOWNLOAD_GROUP);
-          } else if (taskType == ITask.DOWNLOAD_GROUP) {
-            listener = (NormalTaskListener<TASK>) listeners.get(TaskEnum.UPLOAD);
-          }
-        }
-        if (listener != null) {
-          normalTaskCallback(ISchedulers.CHECK_FAIL, null, listener);
-        }
-      }
-    }
+    // 处理回调，检查失败时没有任务key，指定了任务key的观察者也需要收到
+    dispatchNormal(ISchedulers.CHECK_FAIL, null, taskType, null);
   }
 
   /**
@@ -354,28 +371,72 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
    * @param state 状态
    */
   private void normalTaskCallback(int state, TASK task) {
-    sendNormalBroadcast(state, task);
-    if (mObservers.size() > 0) {
-      Set<String> keys = mObservers.keySet();
-      for (String key : keys) {
-        Map<TaskEnum, ISchedulerListener> listeners = mObservers.get(key);
-        if (listeners == null || listeners.isEmpty()) {
-          continue;
-        }
-        NormalTaskListener<TASK> listener = null;
-        if (mObservers.get(key) != null) {
-          if (task instanceof DownloadTask) {
-            listener = (NormalTaskListener<TASK>) listeners.get(TaskEnum.DOWNLOAD);
-          } else if (task instanceof DownloadGroupTask) {
-            listener = (NormalTaskListener<TASK>) listeners.get(TaskEnum.DOWNLOAD_GROUP);
-          } else if (task instanceof UploadTask) {
-            listener = (NormalTaskListener<TASK>) listeners.get(TaskEnum.UPLOAD);
-          }
-        }
-        if (listener != null) {
+    if (manager.getAppConfig().isUseBroadcast()) {
+      sendNormalBroadcast(state, task);
+    }
+    dispatchNormal(state, task, task.getTaskType(), task.getKey());
+  }
+
+  /**
+   * 将事件分发给关心该类型任务的观察者
+   *
+   * @param taskType 任务类型 {@link ITask}
+   * @param taskKey 任务key，为null时只分发给没有指定任务key的观察者；
+   * {@link ISchedulers#CHECK_FAIL}会分发给该类型的所有观察者
+   */
+  private void dispatchNormal(final int state, final TASK task, int taskType, String taskKey) {
+    TaskEnum taskEnum = getTaskEnum(taskType);
+    if (taskEnum == null) {
+      return;
+    }
+    List<ListenerIndex.Entry> entries = state == ISchedulers.CHECK_FAIL
+        ? mObservers.selectAll(taskEnum) : mObservers.select(taskEnum, taskKey);
+    for (ListenerIndex.Entry entry : entries) {
+      final NormalTaskListener<TASK> listener = (NormalTaskListener<TASK>) entry.listener;
+      execute(entry, new Runnable() {
+        @Override public void run() {
           normalTaskCallback(state, task, listener);
         }
+      });
+    }
+  }
+
+  /**
+   * 在观察者的回调线程中执行回调，没有指定回调线程时直接在调度线程中执行；
+   * 回调执行前观察者已经注销时，不再回调
+   */
+  private void execute(final ListenerIndex.Entry entry, final Runnable callback) {
+    if (entry.executor == null) {
+      if (!entry.removed) {
+        callback.run();
       }
+    } else {
+      entry.executor.execute(new Runnable() {
+        @Override public void run() {
+          if (entry.removed) {
+            return;
+          }
+          callback.run();
+        }
+      });
+    }
+  }
+
+  /**
+   * 任务类型对应的观察者类型
+   *
+   * @param taskType 任务类型 {@link ITask}
+   */
+  private TaskEnum getTaskEnum(int taskType) {
+    switch (taskType) {
+      case ITask.DOWNLOAD:
+        return TaskEnum.DOWNLOAD;
+      case ITask.DOWNLOAD_GROUP:
+        return TaskEnum.DOWNLOAD_GROUP;
+      case ITask.UPLOAD:
+        return TaskEnum.UPLOAD;
+      default:
+        return null;
     }
   }
 
@@ -431,41 +492,14 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
    * 发送普通任务的广播
    */
   private void sendNormalBroadcast(int state, TASK task) {
-    boolean canSend = manager.getAppConfig().isUseBroadcast();
-    if (!canSend) {
-      return;
-    }
     int type = task.getTaskType();
-    if (type == ITask.DOWNLOAD || type == ITask.DOWNLOAD_GROUP) {
-      AriaManager.APP.sendBroadcast(
-          createData(state, type, task.getTaskWrapper().getEntity()));
-    } else if (type == ITask.UPLOAD) {
-      AriaManager.APP.sendBroadcast(
-          createData(state, type, task.getTaskWrapper().getEntity()));
+    if (type == ITask.DOWNLOAD || type == ITask.DOWNLOAD_GROUP || type == ITask.UPLOAD) {
+      mBroadcastSender.send(state, type, task.getTaskWrapper().getEntity());
     } else {
       ALog.w(TAG, "发送广播失败，没有对应的任务");
     }
   }
 
-  /**
-   * 创建广播发送的数据
-   *
-   * @param taskState 任务状态 {@link ISchedulers}
-   * @param taskType 任务类型 {@link ITask}
-   * @param entity 任务实体
-   */
-  private Intent createData(int taskState, int taskType, AbsEntity entity) {
-    Intent intent = new Intent(ISchedulers.ARIA_TASK_INFO_ACTION);
-    Bundle b = new Bundle();
-    b.putInt(ISchedulers.TASK_TYPE, taskType);
-    b.putInt(ISchedulers.TASK_STATE, taskState);
-    b.putLong(ISchedulers.TASK_SPEED, entity.getSpeed());
-    b.putInt(ISchedulers.TASK_PERCENT, entity.getPercent());
-    b.putParcelable(ISchedulers.TASK_ENTITY, entity);
-    intent.putExtras(b);
-    return intent;
-  }
-
   /**
    * 处理下载任务下载失败的情形
    *
@@ -474,6 +508,9 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
   private void handleFailTask(final TASK task) {
     if (!task.isNeedRetry() || task.isStop() || task.isCancel()) {
       mQueue.removeTaskFormQueue(task.getKey());
+      if (task.isCancel()) {
+        BandwidthScheduler.getInstance().removeWeight(task.getKey());
+      }
       startNextTask(task.getSchedulerType());
       normalTaskCallback(FAIL, task);
       return;
@@ -492,10 +529,11 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
       return;
     }
 
-    final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
-
-    timer.schedule(new Runnable() {
+    final Runnable retryTask = new Runnable() {
       @Override public void run() {
+        if (task.isStop() || task.isCancel()) {
+          return;
+        }
         AbsEntity entity = task.getTaskWrapper().getEntity();
         if (entity.getFailNum() <= reTryNum) {
           ALog.d(TAG, String.format("任务【%s】开始重试", task.getTaskName()));
@@ -507,7 +545,16 @@ abstract class AbsSchedulers<TASK_ENTITY extends AbsTaskWrapper, TASK extends IT
           TaskWrapperManager.getInstance().removeTaskWrapper(task.getKey());
         }
       }
-    }, interval, TimeUnit.MILLISECONDS);
+    };
+    // 重试间隔按失败次数退避，主机熔断时挂起到主机恢复；
+    // 重试在时间轮的执行线程中到期，需要回到调度线程处理
+    AbsEntity entity = task.getTaskWrapper().getEntity();
+    RetryService.getInstance().retry(entity.getKey(), Math.max(entity.getFailNum() - 1, 0),
+        interval, new Runnable() {
+          @Override public void run() {
+            mDispatchHandler.post(retryTask);
+          }
+        });
   }
 
   /**
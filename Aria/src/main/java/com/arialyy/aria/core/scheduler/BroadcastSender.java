@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.scheduler;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+import com.arialyy.aria.core.AriaManager;
+import com.arialyy.aria.core.inf.AbsEntity;
+import com.arialyy.aria.core.inf.ITask;
+import java.util.LinkedHashMap;
+
+/**
+ * 任务状态广播的发送器。
+ *
+ * 除执行中以外的状态会立即发送；执行中的状态只保留每个任务最新的实体，
+ * 每隔{@link com.arialyy.aria.core.config.AppConfig#getBroadcastInterval()}为每个任务发送一条广播，
+ * 广播的字段和立即发送的广播一致。
+ *
+ * 只能在调度器所在的线程调用。
+ */
+final class BroadcastSender {
+  private final Handler mHandler;
+  /**
+   * 等待发送的执行中状态，key为任务类型，value为任务key和实体
+   */
+  private final SparseArray<LinkedHashMap<String, AbsEntity>> mPendingRunning =
+      new SparseArray<>();
+  private boolean isFlushPosted = false;
+
+  private final Runnable mFlushTask = new Runnable() {
+    @Override public void run() {
+      isFlushPosted = false;
+      flush();
+    }
+  };
+
+  BroadcastSender(Looper looper) {
+    mHandler = new Handler(looper);
+  }
+
+  /**
+   * 发送任务状态广播
+   *
+   * @param taskState 任务状态 {@link ISchedulers}
+   * @param taskType 任务类型 {@link ITask}
+   */
+  void send(int taskState, int taskType, AbsEntity entity) {
+    if (taskState == ISchedulers.RUNNING || taskState == ISchedulers.SUB_RUNNING) {
+      LinkedHashMap<String, AbsEntity> pending = mPendingRunning.get(taskType);
+      if (pending == null) {
+        pending = new LinkedHashMap<>();
+        mPendingRunning.put(taskType, pending);
+      }
+      pending.put(entity.getKey(), entity);
+      if (!isFlushPosted) {
+        isFlushPosted = true;
+        mHandler.postDelayed(mFlushTask, getInterval());
+      }
+      return;
+    }
+    // 任务已经离开执行中状态，丢弃还没发送的执行中状态，避免接收方先收到完成再收到执行中
+    LinkedHashMap<String, AbsEntity> pending = mPendingRunning.get(taskType);
+    if (pending != null) {
+      pending.remove(entity.getKey());
+    }
+    AriaManager.APP.sendBroadcast(createData(taskState, taskType, entity));
+  }
+
+  private void flush() {
+    for (int i = 0, size = mPendingRunning.size(); i < size; i++) {
+      int taskType = mPendingRunning.keyAt(i);
+      LinkedHashMap<String, AbsEntity> pending = mPendingRunning.valueAt(i);
+      if (pending.isEmpty()) {
+        continue;
+      }
+      int state = taskType == ITask.DOWNLOAD_GROUP_SUB
+          ? ISchedulers.SUB_RUNNING : ISchedulers.RUNNING;
+      for (AbsEntity entity : pending.values()) {
+        AriaManager.APP.sendBroadcast(createData(state, taskType, entity));
+      }
+      pending.clear();
+    }
+  }
+
+  private long getInterval() {
+    return AriaManager.getInstance(AriaManager.APP).getAppConfig().getBroadcastInterval();
+  }
+
+  /**
+   * 创建广播发送的数据
+   *
+   * @param taskState 任务状态 {@link ISchedulers}
+   * @param taskType 任务类型 {@link ITask}
+   * @param entity 任务实体
+   */
+  static Intent createData(int taskState, int taskType, AbsEntity entity) {
+    Intent intent = new Intent(ISchedulers.ARIA_TASK_INFO_ACTION);
+    Bundle b = new Bundle();
+    b.putInt(ISchedulers.TASK_TYPE, taskType);
+    b.putInt(ISchedulers.TASK_STATE, taskState);
+    b.putLong(ISchedulers.TASK_SPEED, entity.getSpeed());
+    b.putInt(ISchedulers.TASK_PERCENT, entity.getPercent());
+    b.putParcelable(ISchedulers.TASK_ENTITY, entity);
+    intent.putExtras(b);
+    return intent;
+  }
+}
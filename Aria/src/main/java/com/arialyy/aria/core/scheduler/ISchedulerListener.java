@@ -15,10 +15,19 @@
  */
 package com.arialyy.aria.core.scheduler;
 
+import java.util.Set;
+
 /**
  * Target处理任务监听
  */
 public interface ISchedulerListener {
 
   void setListener(Object obj);
+
+  /**
+   * 代理关注的任务key，由注解的value生成，调度器只会把这些任务的事件分发给该代理
+   *
+   * @return 为null时，接收所有任务的事件
+   */
+  Set<String> getTaskKeys();
 }
\ No newline at end of file
@@ -66,6 +66,10 @@ public interface ISchedulers extends Handler.Callback {
    * M3U8地址
    */
   String DATA_M3U8_URL = "DATA_M3U8_URL";
+  /**
+   * 切片所属的M3U8任务的key
+   */
+  String DATA_M3U8_TASK_KEY = "DATA_M3U8_TASK_KEY";
   /**
    * 当前下载完成的切片地址
    */
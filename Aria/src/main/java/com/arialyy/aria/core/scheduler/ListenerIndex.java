@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.scheduler;
+
+import com.arialyy.annotations.TaskEnum;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * 调度器的观察者索引，按任务类型{@link TaskEnum}和任务key索引代理，分发事件时只会取到关心该事件的代理。
+ *
+ * 注册和移除都会复制对应的列表，分发时不需要加锁，也不会因为注册、移除而抛出并发修改异常。
+ */
+final class ListenerIndex {
+
+  /**
+   * 注册表，key为观察者的标识，用于判断是否重复注册和移除注册
+   */
+  private final Map<String, Map<TaskEnum, Entry>> mRegistry =
+      new ConcurrentHashMap<>();
+
+  /**
+   * 每种任务类型一个桶，构造后不再修改，可以无锁读取
+   */
+  private final Map<TaskEnum, Bucket> mBuckets = new EnumMap<>(TaskEnum.class);
+
+  ListenerIndex() {
+    for (TaskEnum taskEnum : TaskEnum.values()) {
+      mBuckets.put(taskEnum, new Bucket());
+    }
+  }
+
+  /**
+   * 观察者是否已经注册了对应类型的代理
+   *
+   * @param objKey 观察者标识
+   */
+  boolean contains(String objKey, TaskEnum taskEnum) {
+    Map<TaskEnum, Entry> listeners = mRegistry.get(objKey);
+    return listeners != null && listeners.get(taskEnum) != null;
+  }
+
+  /**
+   * @param executor 回调线程的执行器，为null时直接在调度线程中回调
+   */
+  synchronized void add(String objKey, TaskEnum taskEnum, ISchedulerListener listener,
+      Executor executor) {
+    Map<TaskEnum, Entry> listeners = mRegistry.get(objKey);
+    if (listeners == null) {
+      listeners = new ConcurrentHashMap<>();
+      mRegistry.put(objKey, listeners);
+    }
+    if (listeners.get(taskEnum) != null) {
+      return;
+    }
+    Entry entry = new Entry(listener, executor);
+    listeners.put(taskEnum, entry);
+    mBuckets.get(taskEnum).add(entry);
+  }
+
+  synchronized void remove(String objKey) {
+    Map<TaskEnum, Entry> listeners = mRegistry.remove(objKey);
+    if (listeners == null) {
+      return;
+    }
+    for (Map.Entry<TaskEnum, Entry> entry : listeners.entrySet()) {
+      entry.getValue().removed = true;
+      mBuckets.get(entry.getKey()).remove(entry.getValue());
+    }
+  }
+
+  /**
+   * 该类型的任务是否有观察者
+   */
+  boolean hasListener(TaskEnum taskEnum) {
+    return mBuckets.get(taskEnum).size > 0;
+  }
+
+  /**
+   * 获取关心该任务的代理
+   *
+   * @param taskKey 任务key，为null时只返回没有指定任务key的代理
+   * @return 不会返回null，返回的列表不能修改
+   */
+  List<Entry> select(TaskEnum taskEnum, String taskKey) {
+    Bucket bucket = mBuckets.get(taskEnum);
+    if (bucket.size == 0) {
+      return Collections.emptyList();
+    }
+    List<Entry> keyed = taskKey == null ? null : bucket.byKey.get(taskKey);
+    if (keyed == null || keyed.isEmpty()) {
+      return bucket.any;
+    }
+    if (bucket.any.isEmpty()) {
+      return keyed;
+    }
+    List<Entry> all = new ArrayList<>(bucket.any.size() + keyed.size());
+    all.addAll(bucket.any);
+    all.addAll(keyed);
+    return all;
+  }
+
+  /**
+   * 获取该任务类型的所有代理，包括指定了任务key的代理，用于分发没有对应任务的事件
+   *
+   * @return 不会返回null，同一个代理只会出现一次
+   */
+  List<Entry> selectAll(TaskEnum taskEnum) {
+    Bucket bucket = mBuckets.get(taskEnum);
+    if (bucket.size == 0) {
+      return Collections.emptyList();
+    }
+    if (bucket.byKey.isEmpty()) {
+      return bucket.any;
+    }
+    Set<Entry> all = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+    all.addAll(bucket.any);
+    for (List<Entry> keyed : bucket.byKey.values()) {
+      all.addAll(keyed);
+    }
+    return new ArrayList<>(all);
+  }
+
+  /**
+   * 代理和它的回调线程
+   */
+  static final class Entry {
+    final ISchedulerListener listener;
+    /**
+     * 为null时直接在调度线程中回调
+     */
+    final Executor executor;
+    /**
+     * 代理已经注销，已经提交到回调线程但还没有执行的回调不再执行
+     */
+    volatile boolean removed = false;
+
+    Entry(ISchedulerListener listener, Executor executor) {
+      this.listener = listener;
+      this.executor = executor;
+    }
+  }
+
+  private static final class Bucket {
+    /**
+     * 没有指定任务key的代理
+     */
+    final CopyOnWriteArrayList<Entry> any = new CopyOnWriteArrayList<>();
+    /**
+     * 指定了任务key的代理，key为任务key
+     */
+    final Map<String, CopyOnWriteArrayList<Entry>> byKey =
+        new ConcurrentHashMap<>();
+    volatile int size;
+
+    void add(Entry entry) {
+      Set<String> keys = entry.listener.getTaskKeys();
+      if (keys == null || keys.isEmpty()) {
+        any.add(entry);
+      } else {
+        for (String key : keys) {
+          CopyOnWriteArrayList<Entry> list = byKey.get(key);
+          if (list == null) {
+            list = new CopyOnWriteArrayList<>();
+            byKey.put(key, list);
+          }
+          list.add(entry);
+        }
+      }
+      size++;
+    }
+
+    void remove(Entry entry) {
+      Set<String> keys = entry.listener.getTaskKeys();
+      if (keys == null || keys.isEmpty()) {
+        any.remove(entry);
+      } else {
+        for (String key : keys) {
+          CopyOnWriteArrayList<Entry> list = byKey.get(key);
+          if (list != null) {
+            list.remove(entry);
+            if (list.isEmpty()) {
+              byKey.remove(key);
+            }
+          }
+        }
+      }
+      size--;
+    }
+  }
+}
@@ -15,6 +15,8 @@
  */
 package com.arialyy.aria.core.scheduler;
 
+import java.util.Set;
+
 /**
  * Created by Aria.Lao on 2019/6/26.
  * m3u8切片事件回调类
@@ -33,4 +35,8 @@ public class M3U8PeerTaskListener implements ISchedulerListener {
   @Override public void setListener(Object obj) {
 
   }
+
+  @Override public Set<String> getTaskKeys() {
+    return null;
+  }
 }
\ No newline at end of file
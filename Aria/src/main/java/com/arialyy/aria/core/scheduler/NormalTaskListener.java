@@ -19,6 +19,7 @@ import com.arialyy.aria.core.download.DownloadGroupTask;
 import com.arialyy.aria.core.download.DownloadTask;
 import com.arialyy.aria.core.inf.ITask;
 import com.arialyy.aria.core.upload.UploadTask;
+import java.util.Set;
 
 /**
  * Created by Aria.Lao on 2017/6/7.
@@ -113,4 +114,8 @@ public class NormalTaskListener<TASK extends ITask> implements ISchedulerListene
   @Override public void setListener(Object obj) {
 
   }
+
+  @Override public Set<String> getTaskKeys() {
+    return null;
+  }
 }
\ No newline at end of file
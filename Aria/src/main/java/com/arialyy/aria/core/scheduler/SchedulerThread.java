@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.scheduler;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import com.arialyy.aria.core.common.CallbackMod;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 调度线程，任务状态的调度、队列维护、重试判断都在这个线程中执行，不再和界面绘制争抢主线程；
+ * 观察者的回调再按{@link CallbackMod}分发到对应的线程。
+ */
+public final class SchedulerThread {
+  private static volatile HandlerThread THREAD = null;
+  private static volatile Executor MAIN_EXECUTOR = null;
+  private static volatile ExecutorService BACKGROUND_EXECUTOR = null;
+
+  private SchedulerThread() {
+  }
+
+  /**
+   * 获取调度线程的Looper，调度器的Handler都需要绑定到这个Looper
+   */
+  public static Looper getLooper() {
+    if (THREAD == null) {
+      synchronized (SchedulerThread.class) {
+        if (THREAD == null) {
+          HandlerThread thread =
+              new HandlerThread("Aria-Scheduler", Process.THREAD_PRIORITY_BACKGROUND);
+          thread.start();
+          THREAD = thread;
+        }
+      }
+    }
+    return THREAD.getLooper();
+  }
+
+  /**
+   * 当前线程是否是调度线程
+   */
+  public static boolean isCurrentThread() {
+    return THREAD != null && Thread.currentThread() == THREAD;
+  }
+
+  /**
+   * 获取回调线程对应的执行器
+   *
+   * @return {@link CallbackMod#DIRECT}返回null，表示直接在调度线程中回调
+   */
+  static Executor getCallbackExecutor(CallbackMod mod) {
+    switch (mod) {
+      case BACKGROUND:
+        if (BACKGROUND_EXECUTOR == null) {
+          synchronized (SchedulerThread.class) {
+            if (BACKGROUND_EXECUTOR == null) {
+              // 单线程，保证同一观察者收到的回调顺序和任务事件的顺序一致
+              BACKGROUND_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override public Thread newThread(Runnable r) {
+                  Thread thread = new Thread(r, "Aria-Callback");
+                  thread.setDaemon(true);
+                  return thread;
+                }
+              });
+            }
+          }
+        }
+        return BACKGROUND_EXECUTOR;
+      case DIRECT:
+        return null;
+      case MAIN:
+      default:
+        if (MAIN_EXECUTOR == null) {
+          synchronized (SchedulerThread.class) {
+            if (MAIN_EXECUTOR == null) {
+              final Handler handler = new Handler(Looper.getMainLooper());
+              MAIN_EXECUTOR = new Executor() {
+                @Override public void execute(Runnable command) {
+                  handler.post(command);
+                }
+              };
+            }
+          }
+        }
+        return MAIN_EXECUTOR;
+    }
+  }
+}
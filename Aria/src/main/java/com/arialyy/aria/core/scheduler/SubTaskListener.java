@@ -17,6 +17,7 @@ package com.arialyy.aria.core.scheduler;
 
 import com.arialyy.aria.core.inf.AbsNormalEntity;
 import com.arialyy.aria.core.inf.ITask;
+import java.util.Set;
 
 /**
  * Created by Aria.Lao on 2019/6/26.
@@ -65,4 +66,8 @@ public class SubTaskListener<TASK extends ITask, SUB_ENTITY extends AbsNormalEnt
   @Override public void setListener(Object obj) {
 
   }
+
+  @Override public Set<String> getTaskKeys() {
+    return null;
+  }
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ import com.arialyy.annotations.TaskEnum;
 import com.arialyy.aria.core.AriaManager;
 import com.arialyy.aria.core.command.CancelAllCmd;
 import com.arialyy.aria.core.command.NormalCmdFactory;
+import com.arialyy.aria.core.common.CallbackMod;
 import com.arialyy.aria.core.common.ProxyHelper;
 import com.arialyy.aria.core.event.EventMsgUtil;
 import com.arialyy.aria.core.inf.AbsReceiver;
@@ -192,9 +193,19 @@ public class UploadReceiver extends AbsReceiver {
   }
 
   /**
-   * 将当前类注册到Aria
+   * 将当前类注册到Aria，注解方法的回调线程使用配置文件中的callbackMod
    */
   public void register() {
+    register(CallbackMod.getMod(
+        AriaManager.getInstance(AriaManager.APP).getAppConfig().getCallbackMod()));
+  }
+
+  /**
+   * 将当前类注册到Aria
+   *
+   * @param callbackMod 注解方法的回调线程，{@link CallbackMod#MAIN}可以直接操作界面
+   */
+  public void register(CallbackMod callbackMod) {
     if (TextUtils.isEmpty(targetName)) {
       ALog.e(TAG, "upload register target null");
       return;
@@ -208,7 +219,7 @@ public class UploadReceiver extends AbsReceiver {
     if (set != null && !set.isEmpty()) {
       for (Integer type : set) {
         if (type == ProxyHelper.PROXY_TYPE_UPLOAD) {
-          UploadSchedulers.getInstance().register(obj, TaskEnum.UPLOAD);
+          UploadSchedulers.getInstance().register(obj, TaskEnum.UPLOAD, callbackMod);
         }
       }
     } else {
@@ -18,6 +18,7 @@ package com.arialyy.aria.core.upload;
 import android.support.annotation.CheckResult;
 import android.support.annotation.NonNull;
 import com.arialyy.aria.core.common.http.HttpDelegate;
+import com.arialyy.aria.core.common.http.IHttpTransport;
 import com.arialyy.aria.core.common.http.PostDelegate;
 import com.arialyy.aria.core.inf.AbsTaskWrapper;
 import java.net.Proxy;
@@ -107,6 +108,14 @@ public class UploadTarget extends AbsUploadTarget<UploadTarget> {
     return mHttpDelegate.setUrlProxy(proxy);
   }
 
+  /**
+   * 设置任务使用的http传输层
+   */
+  @CheckResult
+  public UploadTarget setHttpTransport(IHttpTransport transport) {
+    return mHttpDelegate.setHttpTransport(transport);
+  }
+
   @Override protected boolean checkEntity() {
     return mConfigHandler.checkEntity();
   }
@@ -78,7 +78,7 @@ class FtpThreadTask extends AbsFtpThreadTask<UploadEntity, UTaskWrapper> {
       }
 
       file =
-          new BufferedRandomAccessFile(getConfig().tempFile, "rwd", getTaskConfig().getBuffSize());
+          new BufferedRandomAccessFile(getConfig().tempFile, "r", getTaskConfig().getBuffSize());
       if (mRecord.startLocation != 0) {
         //file.skipBytes((int) getConfig().START_LOCATION);
         file.seek(mRecord.startLocation);
@@ -17,17 +17,22 @@ package com.arialyy.aria.core.upload.uploader;
 
 import com.arialyy.aria.core.common.AbsThreadTask;
 import com.arialyy.aria.core.common.SubThreadConfig;
+import com.arialyy.aria.core.common.http.ConnectionManager;
 import com.arialyy.aria.core.common.http.HttpTaskConfig;
+import com.arialyy.aria.core.common.http.IHttpBody;
+import com.arialyy.aria.core.common.http.IHttpConnection;
 import com.arialyy.aria.core.config.UploadConfig;
 import com.arialyy.aria.core.upload.UTaskWrapper;
 import com.arialyy.aria.core.upload.UploadEntity;
 import com.arialyy.aria.exception.BaseException;
 import com.arialyy.aria.exception.TaskException;
 import com.arialyy.aria.util.ALog;
+import com.arialyy.aria.util.BufferPool;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -46,7 +51,7 @@ class HttpThreadTask extends AbsThreadTask<UploadEntity, UTaskWrapper> {
 
   private final String BOUNDARY = UUID.randomUUID().toString(); // 边界标识 随机生成
   private final String PREFIX = "--", LINE_END = "\r\n";
-  private HttpURLConnection mHttpConn;
+  private IHttpConnection mHttpConn;
   private OutputStream mOutputStream;
 
   HttpThreadTask(SubThreadConfig<UTaskWrapper> config) {
@@ -66,36 +71,23 @@ class HttpThreadTask extends AbsThreadTask<UploadEntity, UTaskWrapper> {
     try {
       url = new URL(getEntity().getUrl());
       HttpTaskConfig taskDelegate = getTaskWrapper().asHttp();
-      mHttpConn = (HttpURLConnection) url.openConnection();
+      mHttpConn = ConnectionManager.getTransport(taskDelegate).open(url, taskDelegate);
       mHttpConn.setRequestMethod(taskDelegate.getRequestEnum().name);
-      mHttpConn.setUseCaches(false);
-      mHttpConn.setDoOutput(true);
-      mHttpConn.setDoInput(true);
       mHttpConn.setRequestProperty("Connection", "Keep-Alive");
-      mHttpConn.setRequestProperty("Content-Type",
-          taskDelegate.getContentType() + "; boundary=" + BOUNDARY);
       mHttpConn.setRequestProperty("User-Agent", taskDelegate.getUserAgent());
       mHttpConn.setConnectTimeout(getTaskConfig().getConnectTimeOut());
       mHttpConn.setReadTimeout(getTaskConfig().getIOTimeOut());
       //mHttpConn.setRequestProperty("Range", "bytes=" + 0 + "-" + "100");
-      //内部缓冲区---分段上传防止oom
-      mHttpConn.setChunkedStreamingMode(getTaskConfig().getBuffSize());
 
       //添加Http请求头部
       Set<String> keys = taskDelegate.getHeaders().keySet();
       for (String key : keys) {
         mHttpConn.setRequestProperty(key, taskDelegate.getHeaders().get(key));
       }
-      mOutputStream = mHttpConn.getOutputStream();
-      PrintWriter writer =
-          new PrintWriter(new OutputStreamWriter(mOutputStream, taskDelegate.getCharSet()), true);
-      //添加文件上传表单字段
-      keys = taskDelegate.getFormFields().keySet();
-      for (String key : keys) {
-        addFormField(writer, key, taskDelegate.getFormFields().get(key));
-      }
-      uploadFile(writer, taskDelegate.getAttachment(), uploadFile);
-      getEntity().setResponseStr(finish(writer));
+      //请求体使用chunked方式发送，分段上传防止oom
+      mHttpConn.setBody(new UploadBody(uploadFile));
+      mHttpConn.connect();
+      getEntity().setResponseStr(finish());
       sendCompleteMsg();
     } catch (Exception e) {
       e.printStackTrace();
@@ -109,13 +101,9 @@ class HttpThreadTask extends AbsThreadTask<UploadEntity, UTaskWrapper> {
   }
 
   private void fail(BaseException e1) {
-    try {
-      sendFailMsg(e1);
-      if (mOutputStream != null) {
-        mOutputStream.close();
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
+    sendFailMsg(e1);
+    if (mHttpConn != null) {
+      mHttpConn.disconnect();
     }
   }
 
@@ -159,22 +147,25 @@ class HttpThreadTask extends AbsThreadTask<UploadEntity, UTaskWrapper> {
     writer.flush();
 
     FileInputStream inputStream = new FileInputStream(uploadFile);
-    byte[] buffer = new byte[4096];
-    int bytesRead;
-    while ((bytesRead = inputStream.read(buffer)) != -1) {
-      progress(bytesRead);
-      mOutputStream.write(buffer, 0, bytesRead);
-      if (isCancel) {
-        break;
-      }
-      if (mSpeedBandUtil != null) {
-        mSpeedBandUtil.limitNextBytes(bytesRead);
+    byte[] buffer = BufferPool.obtainBytes(getTaskConfig().getBuffSize());
+    try {
+      int bytesRead;
+      while ((bytesRead = inputStream.read(buffer)) != -1) {
+        progress(bytesRead);
+        mOutputStream.write(buffer, 0, bytesRead);
+        if (isCancel) {
+          break;
+        }
+        if (mSpeedBandUtil != null) {
+          mSpeedBandUtil.limitNextBytes(bytesRead);
+        }
       }
+      mOutputStream.flush();
+    } finally {
+      BufferPool.recycle(buffer);
+      //outputStream.close(); //不能调用，否则服务器端异常
+      inputStream.close();
     }
-
-    mOutputStream.flush();
-    //outputStream.close(); //不能调用，否则服务器端异常
-    inputStream.close();
     writer.append(LINE_END);
     writer.flush();
     //if (getState().isCancel) {
@@ -185,37 +176,66 @@ class HttpThreadTask extends AbsThreadTask<UploadEntity, UTaskWrapper> {
   }
 
   /**
-   * 任务结束操作
+   * 任务结束操作，读取服务器的响应
    *
    * @throws IOException
    */
-  private String finish(PrintWriter writer) throws IOException {
+  private String finish() throws IOException {
     StringBuilder response = new StringBuilder();
-
-    writer.append(LINE_END).flush();
-    writer.append(PREFIX).append(BOUNDARY).append(PREFIX).append(LINE_END);
-    writer.close();
-
     int status = mHttpConn.getResponseCode();
-
+    InputStream is = null;
     if (status == HttpURLConnection.HTTP_OK) {
-      BufferedReader reader = new BufferedReader(new InputStreamReader(mHttpConn.getInputStream()));
+      is = mHttpConn.getInputStream();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(is));
       String line;
       while (isLive() && (line = reader.readLine()) != null) {
         response.append(line);
       }
-      reader.close();
-      mHttpConn.disconnect();
     } else {
       ALog.e(TAG, "response msg: " + mHttpConn.getResponseMessage() + "，code: " + status);
       //  fail();
     }
-    writer.flush();
-    writer.close();
-    mOutputStream.close();
+    // 读取响应时任务被停止，连接中还有未读取的数据，直接断开
+    ConnectionManager.release(mHttpConn, is, isLive());
     return response.toString();
   }
 
+  /**
+   * 上传的请求体，包括表单字段和文件数据
+   */
+  private class UploadBody implements IHttpBody {
+    private File mUploadFile;
+
+    private UploadBody(File uploadFile) {
+      mUploadFile = uploadFile;
+    }
+
+    @Override public String getContentType() {
+      return getTaskWrapper().asHttp().getContentType() + "; boundary=" + BOUNDARY;
+    }
+
+    @Override public long getContentLength() {
+      return -1;
+    }
+
+    @Override public void writeTo(OutputStream os) throws IOException {
+      HttpTaskConfig taskDelegate = getTaskWrapper().asHttp();
+      mOutputStream = os;
+      PrintWriter writer =
+          new PrintWriter(new OutputStreamWriter(os, taskDelegate.getCharSet()), true);
+      //添加文件上传表单字段
+      Set<String> keys = taskDelegate.getFormFields().keySet();
+      for (String key : keys) {
+        addFormField(writer, key, taskDelegate.getFormFields().get(key));
+      }
+      uploadFile(writer, taskDelegate.getAttachment(), mUploadFile);
+      writer.append(LINE_END).flush();
+      writer.append(PREFIX).append(BOUNDARY).append(PREFIX).append(LINE_END);
+      //数据流由传输层关闭
+      writer.flush();
+    }
+  }
+
   @Override public int getMaxSpeed() {
     return getTaskConfig().getMaxSpeed();
   }
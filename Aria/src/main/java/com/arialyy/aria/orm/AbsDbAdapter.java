@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 数据库实体适配器，由AriaCompiler为每个{@link DbEntity}子类生成，类名为"实体类名$$DbAdapter"。
+ * 保存、更新和查询数据时直接读写实体字段，不需要反射；实体没有适配器时使用反射处理。
+ *
+ * 生成的适配器和反射的处理规则一致：忽略的字段、空字段和自增主键不会写入数据库，
+ * 保存的值会进行URL编码；基本类型的值编码后和原值相同，生成的适配器会直接保存。
+ */
+public abstract class AbsDbAdapter<T extends DbEntity> {
+
+  /**
+   * 创建实体对象
+   */
+  public abstract T newInstance();
+
+  /**
+   * 获取表中所有不被忽略的字段名，顺序和{@link #readCursor(DbEntity, Cursor, int[])}中的下标一致
+   */
+  public abstract String[] getColumns();
+
+  /**
+   * 获取主键字段名
+   *
+   * @return 没有主键返回null
+   */
+  public abstract String getPrimaryName();
+
+  /**
+   * 获取查询rowID使用的字段名，当主键的类型为int时，rowID等于主键
+   */
+  public abstract String getRowIdColumn();
+
+  /**
+   * 创建存储数据\更新数据时使用的ContentValues
+   *
+   * @return 如果没有字段属性，返回null
+   */
+  public abstract ContentValues createValues(T entity);
+
+  /**
+   * 获取插入数据的sql语句，参数顺序和{@link #bindValues(SQLiteStatement, DbEntity)}一致
+   *
+   * @return 没有可以插入的字段时返回null
+   */
+  public abstract String getInsertSql();
+
+  /**
+   * 获取通过rowid更新数据的sql语句，最后一个参数为rowid，为null的参数不会更新对应的字段
+   *
+   * @return 没有可以更新的字段时返回null
+   */
+  public abstract String getUpdateSql();
+
+  /**
+   * 绑定{@link #getInsertSql()}、{@link #getUpdateSql()}的参数，空字段和ContentValues一样不会保存
+   *
+   * @return 绑定的参数数量
+   */
+  public abstract int bindValues(SQLiteStatement statement, T entity);
+
+  /**
+   * 读取游标当前行的数据
+   *
+   * @param indexes 字段在游标中的下标，通过{@link #getColumnIndexes(Cursor, String)}获取
+   */
+  public abstract void readCursor(T entity, Cursor cursor, int[] indexes);
+
+  /**
+   * 获取所有字段在游标中的下标，同一个游标只需要获取一次
+   *
+   * @param prefix 字段别名的前缀，没有别名传""
+   * @return 字段不在游标中时，对应的下标为-1
+   */
+  public int[] getColumnIndexes(Cursor cursor, String prefix) {
+    String[] columns = getColumns();
+    int[] indexes = new int[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      indexes[i] = cursor.getColumnIndex(prefix.concat(columns[i]));
+    }
+    return indexes;
+  }
+
+  /**
+   * 保存数据，值为null时不保存
+   */
+  protected static void put(ContentValues values, String column, String value) {
+    if (value != null) {
+      values.put(column, value);
+    }
+  }
+
+  /**
+   * 绑定语句参数，值为null时绑定null，插入时使用字段默认值，更新时保留原来的值
+   */
+  protected static void bind(SQLiteStatement statement, int index, String value) {
+    if (value == null) {
+      statement.bindNull(index);
+    } else {
+      statement.bindString(index, value);
+    }
+  }
+
+  /**
+   * 转换为保存到数据库的值
+   *
+   * @return 值为空时返回null
+   */
+  protected static String encodeValue(Object value) {
+    if (value == null) {
+      return null;
+    }
+    if (value instanceof List && ((List) value).isEmpty()) {
+      return null;
+    }
+    if (value instanceof Map && ((Map) value).isEmpty()) {
+      return null;
+    }
+    if (value instanceof String) {
+      return encodeValue((String) value);
+    }
+    return encode(value.toString());
+  }
+
+  /**
+   * 转换为保存到数据库的值
+   *
+   * @return 值为空时返回null
+   */
+  protected static String encodeValue(String value) {
+    return TextUtils.isEmpty(value) ? null : encode(value);
+  }
+
+  /**
+   * 转换为保存到数据库的值
+   *
+   * @return 值为空时返回null
+   */
+  protected static String encodeMap(Map<String, String> map) {
+    return map == null || map.isEmpty() ? null : encode(SqlUtil.map2Str(map));
+  }
+
+  /**
+   * 转换为保存到数据库的值
+   *
+   * @return 值为空时返回null
+   */
+  protected static String encodeList(List list) {
+    return list == null || list.isEmpty() ? null : encode(SqlUtil.list2Str(list));
+  }
+
+  /**
+   * @return 值为空时返回null
+   */
+  protected static String readString(Cursor cursor, int index) {
+    String temp = cursor.getString(index);
+    return TextUtils.isEmpty(temp) ? null : URLDecoder.decode(temp);
+  }
+
+  protected static boolean readBoolean(Cursor cursor, int index) {
+    String temp = cursor.getString(index);
+    return !TextUtils.isEmpty(temp) && !temp.equalsIgnoreCase("false");
+  }
+
+  /**
+   * @return 值为空时返回null
+   */
+  protected static Date readDate(Cursor cursor, int index) {
+    String temp = readString(cursor, index);
+    return temp == null ? null : new Date(temp);
+  }
+
+  /**
+   * @return 值为空时返回null
+   */
+  protected static Map<String, String> readMap(Cursor cursor, int index) {
+    String temp = readString(cursor, index);
+    return temp == null ? null : SqlUtil.str2Map(temp);
+  }
+
+  /**
+   * @param paramType 列表的泛型类型
+   * @return 值为空时返回null
+   */
+  protected static List readList(Cursor cursor, int index, Class paramType) {
+    String temp = readString(cursor, index);
+    return temp == null ? null : SqlUtil.str2List(temp, paramType);
+  }
+
+  private static String encode(String str) {
+    str = str.replaceAll("\\\\+", "%2B");
+    return URLEncoder.encode(str);
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import com.arialyy.aria.orm.annotation.Many;
+import com.arialyy.aria.orm.annotation.One;
+import java.util.List;
+
+/**
+ * 关联查询实体的适配器，由AriaCompiler为每个被{@link com.arialyy.aria.orm.annotation.Wrapper}注解的类生成，
+ * 类名为"实体类名$$DbAdapter"，查询关联数据时不再需要反射获取{@link One}、{@link Many}字段。
+ */
+public abstract class AbsWrapperAdapter<T extends AbsDbWrapper> {
+
+  /**
+   * 获取{@link One}注解的实体类型
+   */
+  public abstract Class<? extends DbEntity> getParentClass();
+
+  /**
+   * 获取{@link Many}注解的列表的泛型类型
+   */
+  public abstract Class<? extends DbEntity> getChildClass();
+
+  /**
+   * {@link Many#parentColumn()}
+   */
+  public abstract String getParentColumn();
+
+  /**
+   * {@link Many#entityColumn()}
+   */
+  public abstract String getEntityColumn();
+
+  /**
+   * 创建关联实体
+   *
+   * @param parent 父表数据
+   * @param children 子表数据
+   */
+  public abstract T newWrapper(DbEntity parent, List<DbEntity> children);
+}
@@ -38,7 +38,7 @@ class DBConfig {
   static boolean DEBUG = false;
   static Map<String, Class> mapping = new LinkedHashMap<>();
   static String DB_NAME;
-  static int VERSION = 53;
+  static int VERSION = 54;
 
   /**
    * 是否将数据库保存在Sd卡，{@code true} 是
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import com.arialyy.aria.util.ALog;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 获取AriaCompiler生成的数据库适配器，每个类只查找一次
+ */
+final class DbAdapterHelper {
+  private static final String TAG = "DbAdapterHelper";
+  /**
+   * 生成的适配器的类名后缀
+   */
+  private static final String ADAPTER_SUFFIX = "$$DbAdapter";
+  /**
+   * 没有适配器的类
+   */
+  private static final Object NONE = new Object();
+  private static final Map<Class, Object> ADAPTERS = new ConcurrentHashMap<>();
+
+  /**
+   * 获取实体的适配器
+   *
+   * @return 实体没有适配器时返回null
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends DbEntity> AbsDbAdapter<T> getAdapter(Class<T> clazz) {
+    Object adapter = find(clazz);
+    return adapter instanceof AbsDbAdapter ? (AbsDbAdapter<T>) adapter : null;
+  }
+
+  /**
+   * 获取关联实体的适配器
+   *
+   * @return 关联实体没有适配器时返回null
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends AbsDbWrapper> AbsWrapperAdapter<T> getWrapperAdapter(Class<T> clazz) {
+    Object adapter = find(clazz);
+    return adapter instanceof AbsWrapperAdapter ? (AbsWrapperAdapter<T>) adapter : null;
+  }
+
+  private static Object find(Class clazz) {
+    Object adapter = ADAPTERS.get(clazz);
+    if (adapter == null) {
+      try {
+        adapter = Class.forName(clazz.getName().concat(ADAPTER_SUFFIX), true,
+            clazz.getClassLoader()).newInstance();
+      } catch (ClassNotFoundException e) {
+        adapter = NONE;
+      } catch (Exception e) {
+        ALog.e(TAG, ALog.getExceptionString(e));
+        adapter = NONE;
+      }
+      ADAPTERS.put(clazz, adapter);
+    }
+    return adapter == NONE ? null : adapter;
+  }
+}
@@ -16,12 +16,14 @@
 
 package com.arialyy.aria.orm;
 
+import com.arialyy.aria.orm.annotation.Entity;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Created by lyy on 2015/11/2. 所有数据库实体父类
  */
+@Entity
 public abstract class DbEntity {
   private static final Object LOCK = new Object();
   protected long rowID = -1;
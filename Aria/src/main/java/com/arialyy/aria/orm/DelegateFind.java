@@ -17,6 +17,7 @@ package com.arialyy.aria.orm;
 
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 import android.util.SparseArray;
 import com.arialyy.aria.orm.annotation.Many;
@@ -31,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by laoyuyu on 2018/3/22.
@@ -39,6 +41,14 @@ import java.util.Map;
 class DelegateFind extends AbsDelegate {
   private final String PARENT_COLUMN_ALIAS = "p";
   private final String CHILD_COLUMN_ALIAS = "c";
+  /**
+   * 关联查询的语句，key为关联实体的类型
+   */
+  private final Map<Class, String> mRelationSql = new ConcurrentHashMap<>();
+  /**
+   * 通过rowid判断数据是否存在的语句，key为表名
+   */
+  private final Map<String, String> mExistSql = new ConcurrentHashMap<>();
 
   private DelegateFind() {
   }
@@ -117,6 +127,74 @@ class DelegateFind extends AbsDelegate {
     return exeRelationSql(db, clazz, page, num, expression);
   }
 
+  /**
+   * 创建关联查询的语句，不包含查询条件
+   */
+  private String createRelationSql(Class parentClazz, Class childClazz, String parentColumn,
+      String entityColumn) {
+    StringBuilder sb = new StringBuilder();
+    final String pTableName = parentClazz.getSimpleName();
+    final String cTableName = childClazz.getSimpleName();
+    String[] pColumn = getColumns(parentClazz);
+    String[] cColumn = getColumns(childClazz);
+    StringBuilder pSb = new StringBuilder();
+    StringBuilder cSb = new StringBuilder();
+
+    if (pColumn != null) {
+      pSb.append(pTableName.concat(".rowid AS ").concat(PARENT_COLUMN_ALIAS).concat("rowid,"));
+      for (String column : pColumn) {
+        String temp = PARENT_COLUMN_ALIAS.concat(column);
+        pSb.append(pTableName.concat(".").concat(column))
+            .append(" AS ")
+            .append(temp)
+            .append(",");
+      }
+    }
+
+    if (cColumn != null) {
+      pSb.append(cTableName.concat(".rowid AS ").concat(CHILD_COLUMN_ALIAS).concat("rowid,"));
+      for (String column : cColumn) {
+        String temp = CHILD_COLUMN_ALIAS.concat(column);
+        cSb.append(cTableName.concat(".").concat(column))
+            .append(" AS ")
+            .append(temp)
+            .append(",");
+      }
+    }
+
+    String pColumnAlia = pSb.toString();
+    String cColumnAlia = cSb.toString();
+    if (!TextUtils.isEmpty(pColumnAlia)) {
+      pColumnAlia = pColumnAlia.substring(0, pColumnAlia.length() - 1);
+    }
+
+    if (!TextUtils.isEmpty(cColumnAlia)) {
+      cColumnAlia = cColumnAlia.substring(0, cColumnAlia.length() - 1);
+    }
+
+    sb.append("SELECT ");
+
+    if (!TextUtils.isEmpty(pColumnAlia)) {
+      sb.append(pColumnAlia).append(",");
+    }
+    if (!TextUtils.isEmpty(cColumnAlia)) {
+      sb.append(cColumnAlia);
+    }
+    if (TextUtils.isEmpty(pColumnAlia) && TextUtils.isEmpty(cColumnAlia)) {
+      sb.append(" * ");
+    }
+
+    sb.append(" FROM ")
+        .append(pTableName)
+        .append(" INNER JOIN ")
+        .append(cTableName)
+        .append(" ON ")
+        .append(pTableName.concat(".").concat(parentColumn))
+        .append(" = ")
+        .append(cTableName.concat(".").concat(entityColumn));
+    return sb.toString();
+  }
+
   /**
    * 执行关联查询，如果不需要分页，page和num传-1
    *
@@ -126,98 +204,50 @@ class DelegateFind extends AbsDelegate {
   private <T extends AbsDbWrapper> List<T> exeRelationSql(SQLiteDatabase db, Class<T> wrapperClazz,
       int page, int num, String... expression) {
     db = checkDb(db);
-    if (SqlUtil.isWrapper(wrapperClazz)) {
-      Field[] om = getOneAndManyField(wrapperClazz);
-      if (om == null) {
-        return null;
-      }
-      StringBuilder sb = new StringBuilder();
-      Field one = om[0], many = om[1];
+    AbsWrapperAdapter<T> wrapperAdapter = DbAdapterHelper.getWrapperAdapter(wrapperClazz);
+    if (wrapperAdapter != null || SqlUtil.isWrapper(wrapperClazz)) {
       try {
-        Many m = many.getAnnotation(Many.class);
-        Class parentClazz = Class.forName(one.getType().getName());
-        Class childClazz = Class.forName(CommonUtil.getListParamType(many).getName());
-        final String pTableName = parentClazz.getSimpleName();
-        final String cTableName = childClazz.getSimpleName();
-        List<Field> pColumn = SqlUtil.getAllNotIgnoreField(parentClazz);
-        List<Field> cColumn = SqlUtil.getAllNotIgnoreField(childClazz);
-        StringBuilder pSb = new StringBuilder();
-        StringBuilder cSb = new StringBuilder();
-
-        if (pColumn != null) {
-          pSb.append(pTableName.concat(".rowid AS ").concat(PARENT_COLUMN_ALIAS).concat("rowid,"));
-          for (Field f : pColumn) {
-            String temp = PARENT_COLUMN_ALIAS.concat(f.getName());
-            pSb.append(pTableName.concat(".").concat(f.getName()))
-                .append(" AS ")
-                .append(temp)
-                .append(",");
-          }
-        }
-
-        if (cColumn != null) {
-          pSb.append(cTableName.concat(".rowid AS ").concat(CHILD_COLUMN_ALIAS).concat("rowid,"));
-          for (Field f : cColumn) {
-            String temp = CHILD_COLUMN_ALIAS.concat(f.getName());
-            cSb.append(cTableName.concat(".").concat(f.getName()))
-                .append(" AS ")
-                .append(temp)
-                .append(",");
+        Class parentClazz, childClazz;
+        String parentColumn, entityColumn;
+        if (wrapperAdapter != null) {
+          parentClazz = wrapperAdapter.getParentClass();
+          childClazz = wrapperAdapter.getChildClass();
+          parentColumn = wrapperAdapter.getParentColumn();
+          entityColumn = wrapperAdapter.getEntityColumn();
+        } else {
+          Field[] om = getOneAndManyField(wrapperClazz);
+          if (om == null) {
+            return null;
           }
+          Field one = om[0], many = om[1];
+          Many m = many.getAnnotation(Many.class);
+          parentClazz = Class.forName(one.getType().getName());
+          childClazz = Class.forName(CommonUtil.getListParamType(many).getName());
+          parentColumn = m.parentColumn();
+          entityColumn = m.entityColumn();
         }
-
-        String pColumnAlia = pSb.toString();
-        String cColumnAlia = cSb.toString();
-        if (!TextUtils.isEmpty(pColumnAlia)) {
-          pColumnAlia = pColumnAlia.substring(0, pColumnAlia.length() - 1);
+        String sql = mRelationSql.get(wrapperClazz);
+        if (sql == null) {
+          sql = createRelationSql(parentClazz, childClazz, parentColumn, entityColumn);
+          mRelationSql.put(wrapperClazz, sql);
         }
-
-        if (!TextUtils.isEmpty(cColumnAlia)) {
-          cColumnAlia = cColumnAlia.substring(0, cColumnAlia.length() - 1);
-        }
-
-        sb.append("SELECT ");
-
-        if (!TextUtils.isEmpty(pColumnAlia)) {
-          sb.append(pColumnAlia).append(",");
-        }
-        if (!TextUtils.isEmpty(cColumnAlia)) {
-          sb.append(cColumnAlia);
-        }
-        if (TextUtils.isEmpty(pColumnAlia) && TextUtils.isEmpty(cColumnAlia)) {
-          sb.append(" * ");
-        }
-
-        sb.append(" FROM ")
-            .append(pTableName)
-            .append(" INNER JOIN ")
-            .append(cTableName)
-            .append(" ON ")
-            .append(pTableName.concat(".").concat(m.parentColumn()))
-            .append(" = ")
-            .append(cTableName.concat(".").concat(m.entityColumn()));
-        String sql;
+        String[] params = null;
         if (expression != null && expression.length > 0) {
           if (!CheckUtil.checkSqlExpression(expression)) {
             return null;
           }
-          sb.append(" WHERE ").append(expression[0]).append(" ");
-          sql = sb.toString();
-          sql = sql.replace("?", "%s");
-          Object[] params = new String[expression.length - 1];
+          sql = sql.concat(" WHERE ").concat(expression[0]);
+          params = new String[expression.length - 1];
           for (int i = 0, len = params.length; i < len; i++) {
-            params[i] = String.format("'%s'", encodeStr(expression[i + 1]));
+            params[i] = encodeStr(expression[i + 1]);
           }
-          sql = String.format(sql, params);
-        } else {
-          sql = sb.toString();
         }
         if (page != -1 && num != -1) {
           sql = sql.concat(String.format(" LIMIT %s,%s", (page - 1) * num, num));
         }
-        Cursor cursor = db.rawQuery(sql, null);
+        Cursor cursor = db.rawQuery(sql, params);
         List<T> data =
-            newInstanceEntity(wrapperClazz, parentClazz, childClazz, cursor, pColumn, cColumn);
+            newInstanceEntity(wrapperAdapter, wrapperClazz, parentClazz, childClazz, cursor);
         closeCursor(cursor);
         return data;
       } catch (ClassNotFoundException e) {
@@ -231,28 +261,84 @@ class DelegateFind extends AbsDelegate {
   }
 
   /**
-   * 创建关联查询的数据
+   * 获取表中所有不被忽略的字段名
    *
-   * @param pColumn 父表的所有字段
-   * @param cColumn 字表的所有字段
+   * @return 没有字段时返回null
+   */
+  private String[] getColumns(Class<? extends DbEntity> clazz) {
+    AbsDbAdapter adapter = DbAdapterHelper.getAdapter(clazz);
+    if (adapter != null) {
+      return adapter.getColumns();
+    }
+    List<Field> fields = SqlUtil.getAllNotIgnoreField(clazz);
+    if (fields == null) {
+      return null;
+    }
+    String[] columns = new String[fields.size()];
+    for (int i = 0, len = columns.length; i < len; i++) {
+      columns[i] = fields.get(i).getName();
+    }
+    return columns;
+  }
+
+  /**
+   * 创建关联查询的数据，实体有生成的适配器时使用适配器创建
+   *
+   * @param wrapperAdapter 关联实体的适配器，为null时使用反射创建关联实体
    */
   private synchronized <T extends AbsDbWrapper, P extends DbEntity, C extends DbEntity> List<T> newInstanceEntity(
-      Class<T> wrapperClazz, Class<P> parentClazz,
+      AbsWrapperAdapter<T> wrapperAdapter, Class<T> wrapperClazz, Class<P> parentClazz,
       Class<C> childClazz,
-      Cursor cursor,
-      List<Field> pColumn, List<Field> cColumn) {
+      Cursor cursor) {
     List<T> wrappers = new ArrayList<>();
     SparseArray<List<DbEntity>> childs = new SparseArray<>(); // 所有子表数据
     SparseArray<DbEntity> parents = new SparseArray<>(); // 所有父表数据
 
     try {
+      AbsDbAdapter<P> pAdapter = DbAdapterHelper.getAdapter(parentClazz);
+      AbsDbAdapter<C> cAdapter = DbAdapterHelper.getAdapter(childClazz);
+      int[] pIndexes =
+          pAdapter == null ? null : pAdapter.getColumnIndexes(cursor, PARENT_COLUMN_ALIAS);
+      int[] cIndexes =
+          cAdapter == null ? null : cAdapter.getColumnIndexes(cursor, CHILD_COLUMN_ALIAS);
+      List<Field> pColumn = pAdapter == null ? SqlUtil.getAllNotIgnoreField(parentClazz) : null;
+      List<Field> cColumn = cAdapter == null ? SqlUtil.getAllNotIgnoreField(childClazz) : null;
+      int pRowIdIndex = cursor.getColumnIndex(PARENT_COLUMN_ALIAS.concat("rowid"));
+      int cRowIdIndex = cursor.getColumnIndex(CHILD_COLUMN_ALIAS.concat("rowid"));
+
       while (cursor.moveToNext()) {
-        int pRowId = cursor.getInt(cursor.getColumnIndex(PARENT_COLUMN_ALIAS.concat("rowid")));
+        int pRowId = cursor.getInt(pRowIdIndex);
         if (childs.get(pRowId) == null) {
           childs.put(pRowId, new ArrayList<DbEntity>());
-          parents.put(pRowId, createParent(pRowId, parentClazz, pColumn, cursor));
+          P parent;
+          if (pAdapter != null) {
+            parent = pAdapter.newInstance();
+            pAdapter.readCursor(parent, cursor, pIndexes);
+          } else {
+            parent = createEntity(parentClazz, pColumn, PARENT_COLUMN_ALIAS, cursor);
+          }
+          parent.rowID = pRowId;
+          parents.put(pRowId, parent);
         }
-        childs.get(pRowId).add(createChild(childClazz, cColumn, cursor));
+        C child;
+        if (cAdapter != null) {
+          child = cAdapter.newInstance();
+          cAdapter.readCursor(child, cursor, cIndexes);
+        } else {
+          child = createEntity(childClazz, cColumn, CHILD_COLUMN_ALIAS, cursor);
+        }
+        child.rowID = cursor.getInt(cRowIdIndex);
+        childs.get(pRowId).add(child);
+      }
+
+      if (wrapperAdapter != null) {
+        for (int i = 0; i < parents.size(); i++) {
+          int pRowId = parents.keyAt(i);
+          T wrapper = wrapperAdapter.newWrapper(parents.get(pRowId), childs.get(pRowId));
+          wrapper.handleConvert();  //处理下转换
+          wrappers.add(wrapper);
+        }
+        return wrappers;
       }
 
       List<Field> wFields = SqlUtil.getAllNotIgnoreField(wrapperClazz);
@@ -284,35 +370,21 @@ class DelegateFind extends AbsDelegate {
   }
 
   /**
-   * 创建子对象
-   */
-  private <T extends DbEntity> T createChild(Class<T> childClazz, List<Field> cColumn,
-      Cursor cursor)
-      throws InstantiationException, IllegalAccessException {
-    T child = childClazz.newInstance();
-    child.rowID = cursor.getInt(cursor.getColumnIndex(CHILD_COLUMN_ALIAS.concat("rowid")));
-    for (Field field : cColumn) {
-      field.setAccessible(true);
-      int columnIndex = cursor.getColumnIndex(CHILD_COLUMN_ALIAS.concat(field.getName()));
-      setFieldValue(field.getType(), field, columnIndex, cursor, child);
-    }
-    return child;
-  }
-
-  /**
-   * 创建父对象
+   * 通过反射创建父对象或子对象
+   *
+   * @param columns 表的所有字段
+   * @param alias 字段别名的前缀
    */
-  private <T extends DbEntity> T createParent(int rowId, Class<T> parentClazz, List<Field> pColumn,
+  private <T extends DbEntity> T createEntity(Class<T> clazz, List<Field> columns, String alias,
       Cursor cursor)
       throws InstantiationException, IllegalAccessException {
-    T parent = parentClazz.newInstance();
-    parent.rowID = rowId;
-    for (Field field : pColumn) {
+    T entity = clazz.newInstance();
+    for (Field field : columns) {
       field.setAccessible(true);
-      int columnIndex = cursor.getColumnIndex(PARENT_COLUMN_ALIAS.concat(field.getName()));
-      setFieldValue(field.getType(), field, columnIndex, cursor, parent);
+      int columnIndex = cursor.getColumnIndex(alias.concat(field.getName()));
+      setFieldValue(field.getType(), field, columnIndex, cursor, entity);
     }
-    return parent;
+    return entity;
   }
 
   /**
@@ -420,10 +492,14 @@ class DelegateFind extends AbsDelegate {
   }
 
   /**
-   * 根据数据游标创建一个具体的对象
+   * 根据数据游标创建一个具体的对象，实体有生成的适配器时使用适配器创建
    */
   private synchronized <T extends DbEntity> List<T> newInstanceEntity(Class<T> clazz,
       Cursor cursor) {
+    AbsDbAdapter<T> adapter = DbAdapterHelper.getAdapter(clazz);
+    if (adapter != null) {
+      return newInstanceEntity(adapter, cursor);
+    }
     List<Field> fields = CommonUtil.getAllFields(clazz);
     List<T> entitys = new ArrayList<>();
     if (fields != null && fields.size() > 0) {
@@ -462,6 +538,24 @@ class DelegateFind extends AbsDelegate {
     return entitys;
   }
 
+  /**
+   * 使用生成的适配器创建对象
+   */
+  private <T extends DbEntity> List<T> newInstanceEntity(AbsDbAdapter<T> adapter, Cursor cursor) {
+    List<T> entitys = new ArrayList<>();
+    int[] indexes = adapter.getColumnIndexes(cursor, "");
+    //当设置了主键，而且主键的类型为integer时，查询RowID等于主键
+    int rowIdIndex = cursor.getColumnIndex(adapter.getRowIdColumn());
+    while (cursor.moveToNext()) {
+      T entity = adapter.newInstance();
+      adapter.readCursor(entity, cursor, indexes);
+      entity.rowID = cursor.getInt(rowIdIndex);
+      entitys.add(entity);
+    }
+    closeCursor(cursor);
+    return entitys;
+  }
+
   /**
    * 设置字段的值
    *
@@ -561,14 +655,25 @@ class DelegateFind extends AbsDelegate {
   }
 
   /**
-   * 通过rowId判断数据是否存在
+   * 通过rowId判断数据是否存在，使用编译好的语句查询
    */
   boolean itemExist(SQLiteDatabase db, String tableName, long rowId) {
     db = checkDb(db);
-    String sql = "SELECT rowid FROM " + tableName + " WHERE rowid=" + rowId;
-    Cursor cursor = db.rawQuery(sql, null);
-    boolean isExist = cursor.getCount() > 0;
-    cursor.close();
-    return isExist;
+    String sql = mExistSql.get(tableName);
+    if (sql == null) {
+      sql = "SELECT COUNT(*) FROM " + tableName + " WHERE rowid=?";
+      mExistSql.put(tableName, sql);
+    }
+    StatementCache cache = StatementCache.getInstance();
+    SQLiteStatement statement = cache.acquire(db, sql);
+    if (statement == null) {
+      return false;
+    }
+    try {
+      statement.bindLong(1, rowId);
+      return statement.simpleQueryForLong() > 0;
+    } finally {
+      cache.release(db, sql, statement);
+    }
   }
 }
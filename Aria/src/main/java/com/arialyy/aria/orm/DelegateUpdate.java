@@ -16,7 +16,9 @@
 package com.arialyy.aria.orm;
 
 import android.content.ContentValues;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 import com.arialyy.aria.orm.annotation.Primary;
 import com.arialyy.aria.util.ALog;
@@ -35,7 +37,7 @@ class DelegateUpdate extends AbsDelegate {
   }
 
   /**
-   * 删除某条数据
+   * 删除某条数据，条件参数通过编译好的语句绑定
    */
   synchronized <T extends DbEntity> void delData(SQLiteDatabase db, Class<T> clazz,
       String... expression) {
@@ -44,14 +46,20 @@ class DelegateUpdate extends AbsDelegate {
       return;
     }
 
-    String sql = "DELETE FROM " + CommonUtil.getClassName(clazz) + " WHERE " + expression[0] + " ";
-    sql = sql.replace("?", "%s");
-    Object[] params = new String[expression.length - 1];
-    for (int i = 0, len = params.length; i < len; i++) {
-      params[i] = String.format("'%s'", encodeStr(expression[i + 1]));
-    }
-    sql = String.format(sql, params);
-    db.execSQL(sql);
+    String sql = "DELETE FROM " + CommonUtil.getClassName(clazz) + " WHERE " + expression[0];
+    StatementCache cache = StatementCache.getInstance();
+    SQLiteStatement statement = cache.acquire(db, sql);
+    if (statement == null) {
+      return;
+    }
+    try {
+      for (int i = 1, len = expression.length; i < len; i++) {
+        statement.bindString(i, encodeStr(expression[i]));
+      }
+      statement.executeUpdateDelete();
+    } finally {
+      cache.release(db, sql, statement);
+    }
   }
 
   /**
@@ -59,6 +67,20 @@ class DelegateUpdate extends AbsDelegate {
    */
   synchronized void updateData(SQLiteDatabase db, DbEntity dbEntity) {
     db = checkDb(db);
+    AbsDbAdapter adapter = DbAdapterHelper.getAdapter(dbEntity.getClass());
+    String sql = adapter == null ? null : adapter.getUpdateSql();
+    StatementCache cache = StatementCache.getInstance();
+    SQLiteStatement statement = sql == null ? null : cache.acquire(db, sql);
+    if (statement != null) {
+      try {
+        executeUpdate(statement, adapter, dbEntity);
+      } catch (SQLException e) {
+        ALog.e(TAG, ALog.getExceptionString(e));
+      } finally {
+        cache.release(db, sql, statement);
+      }
+      return;
+    }
     ContentValues values = createValues(dbEntity);
     if (values != null) {
       db.update(CommonUtil.getClassName(dbEntity), values, "rowid=?",
@@ -69,60 +91,97 @@ class DelegateUpdate extends AbsDelegate {
   }
 
   /**
-   * 更新多条记录
+   * 更新多条记录，同一类型的实体使用同一个编译好的语句
    */
   synchronized <T extends DbEntity> void updateManyData(SQLiteDatabase db, List<T> dbEntities) {
     db = checkDb(db);
+    StatementCache cache = StatementCache.getInstance();
+    String sql = null;
+    SQLiteStatement statement = null;
     db.beginTransaction();
     try {
       Class oldClazz = null;
       String table = null;
+      AbsDbAdapter adapter = null;
       for (DbEntity entity : dbEntities) {
         if (oldClazz == null || oldClazz != entity.getClass() || table == null) {
           oldClazz = entity.getClass();
           table = CommonUtil.getClassName(oldClazz);
+          cache.release(db, sql, statement);
+          adapter = DbAdapterHelper.getAdapter(oldClazz);
+          sql = adapter == null ? null : adapter.getUpdateSql();
+          statement = sql == null ? null : cache.acquire(db, sql);
         }
-        ContentValues value = createValues(entity);
-        if (value == null) {
-          ALog.e(TAG, "更新记录失败，记录没有属性字段");
-        } else {
-          db.update(table, value, "rowid=?", new String[] { String.valueOf(entity.rowID) });
+        // 单条记录失败时只跳过该记录，不回滚整个事务
+        try {
+          if (statement != null) {
+            executeUpdate(statement, adapter, entity);
+            continue;
+          }
+          ContentValues value = createValues(entity);
+          if (value == null) {
+            ALog.e(TAG, "更新记录失败，记录没有属性字段");
+          } else {
+            db.update(table, value, "rowid=?", new String[] { String.valueOf(entity.rowID) });
+          }
+        } catch (SQLException e) {
+          ALog.e(TAG, String.format("更新记录失败，rowid: %s\n%s", entity.rowID,
+              ALog.getExceptionString(e)));
         }
       }
       db.setTransactionSuccessful();
     } catch (Exception e) {
       e.printStackTrace();
     } finally {
+      cache.release(db, sql, statement);
       db.endTransaction();
     }
   }
 
   /**
-   * 插入多条记录
+   * 插入多条记录，同一类型的实体使用同一个编译好的语句
    */
   synchronized <T extends DbEntity> void insertManyData(SQLiteDatabase db, List<T> dbEntities) {
     db = checkDb(db);
+    StatementCache cache = StatementCache.getInstance();
+    String sql = null;
+    SQLiteStatement statement = null;
     db.beginTransaction();
     try {
       Class oldClazz = null;
       String table = null;
+      AbsDbAdapter adapter = null;
       for (DbEntity entity : dbEntities) {
         if (oldClazz == null || oldClazz != entity.getClass() || table == null) {
           oldClazz = entity.getClass();
           table = CommonUtil.getClassName(oldClazz);
+          cache.release(db, sql, statement);
+          adapter = DbAdapterHelper.getAdapter(oldClazz);
+          sql = adapter == null ? null : adapter.getInsertSql();
+          statement = sql == null ? null : cache.acquire(db, sql);
         }
-
-        ContentValues value = createValues(entity);
-        if (value == null) {
-          ALog.e(TAG, "保存记录失败，记录没有属性字段");
-        } else {
-          entity.rowID = db.insert(table, null, value);
+        // 单条记录失败时只跳过该记录，不回滚整个事务
+        try {
+          if (statement != null) {
+            executeInsert(statement, adapter, entity);
+            continue;
+          }
+          ContentValues value = createValues(entity);
+          if (value == null) {
+            ALog.e(TAG, "保存记录失败，记录没有属性字段");
+          } else {
+            entity.rowID = db.insert(table, null, value);
+          }
+        } catch (SQLException e) {
+          ALog.e(TAG, ALog.getExceptionString(e));
+          entity.rowID = -1;
         }
       }
       db.setTransactionSuccessful();
     } catch (Exception e) {
       e.printStackTrace();
     } finally {
+      cache.release(db, sql, statement);
       db.endTransaction();
     }
   }
@@ -132,6 +191,21 @@ class DelegateUpdate extends AbsDelegate {
    */
   synchronized void insertData(SQLiteDatabase db, DbEntity dbEntity) {
     db = checkDb(db);
+    AbsDbAdapter adapter = DbAdapterHelper.getAdapter(dbEntity.getClass());
+    String sql = adapter == null ? null : adapter.getInsertSql();
+    StatementCache cache = StatementCache.getInstance();
+    SQLiteStatement statement = sql == null ? null : cache.acquire(db, sql);
+    if (statement != null) {
+      try {
+        executeInsert(statement, adapter, dbEntity);
+      } catch (SQLException e) {
+        ALog.e(TAG, ALog.getExceptionString(e));
+        dbEntity.rowID = -1;
+      } finally {
+        cache.release(db, sql, statement);
+      }
+      return;
+    }
     ContentValues values = createValues(dbEntity);
     if (values != null) {
       dbEntity.rowID = db.insert(CommonUtil.getClassName(dbEntity), null, values);
@@ -141,11 +215,35 @@ class DelegateUpdate extends AbsDelegate {
   }
 
   /**
-   * 创建存储数据\更新数据时使用的ContentValues
+   * 通过适配器的插入语句{@link AbsDbAdapter#getInsertSql()}保存数据
+   */
+  @SuppressWarnings("unchecked")
+  private void executeInsert(SQLiteStatement statement, AbsDbAdapter adapter, DbEntity entity) {
+    adapter.bindValues(statement, entity);
+    entity.rowID = statement.executeInsert();
+  }
+
+  /**
+   * 通过适配器的更新语句{@link AbsDbAdapter#getUpdateSql()}更新数据，最后一个参数为rowid
+   */
+  @SuppressWarnings("unchecked")
+  private void executeUpdate(SQLiteStatement statement, AbsDbAdapter adapter, DbEntity entity) {
+    int count = adapter.bindValues(statement, entity);
+    statement.bindLong(count + 1, entity.rowID);
+    statement.executeUpdateDelete();
+  }
+
+  /**
+   * 创建存储数据\更新数据时使用的ContentValues，实体有生成的适配器时使用适配器创建
    *
    * @return 如果没有字段属性，返回null
    */
+  @SuppressWarnings("unchecked")
   private ContentValues createValues(DbEntity dbEntity) {
+    AbsDbAdapter adapter = DbAdapterHelper.getAdapter(dbEntity.getClass());
+    if (adapter != null) {
+      return adapter.createValues(dbEntity);
+    }
     List<Field> fields = CommonUtil.getAllFields(dbEntity.getClass());
     if (fields != null && fields.size() > 0) {
       ContentValues values = new ContentValues();
@@ -84,7 +84,13 @@ final class SqlUtil {
    * @param field list反射字段
    */
   static String list2Str(DbEntity dbEntity, Field field) throws IllegalAccessException {
-    List list = (List) field.get(dbEntity);
+    return list2Str((List) field.get(dbEntity));
+  }
+
+  /**
+   * 列表数据转字符串
+   */
+  static String list2Str(List list) {
     if (list == null || list.isEmpty()) return "";
     StringBuilder sb = new StringBuilder();
     for (Object aList : list) {
@@ -100,10 +106,20 @@ final class SqlUtil {
    * @return 如果str为null，则返回null
    */
   static List str2List(String str, Field field) {
+    return str2List(str, CommonUtil.getListParamType(field));
+  }
+
+  /**
+   * 字符串转列表
+   *
+   * @param str 数据库中的字段
+   * @param clazz 列表的泛型类型
+   * @return 如果str为null，则返回null
+   */
+  static List str2List(String str, Class clazz) {
     if (TextUtils.isEmpty(str)) return null;
     String[] datas = str.split("\\$\\$");
     List list = new ArrayList();
-    Class clazz = CommonUtil.getListParamType(field);
     if (clazz != null) {
       String type = clazz.getName();
       for (String data : datas) {
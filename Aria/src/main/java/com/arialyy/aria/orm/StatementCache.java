@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import com.arialyy.aria.util.ALog;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 编译好的sql语句缓存，key为sql语句，同一条sql语句只需要编译一次。
+ *
+ * 使用时通过{@link #acquire(SQLiteDatabase, String)}取出语句，用完后通过
+ * {@link #release(SQLiteDatabase, String, SQLiteStatement)}放回；语句被取出期间不在缓存中，
+ * 执行语句时不需要持有缓存的锁，多个线程同时使用同一条sql语句时，会各自编译一个语句。
+ */
+final class StatementCache {
+  private static final String TAG = "StatementCache";
+  /**
+   * 最多缓存的语句数量，超过后关闭最久没有使用的语句
+   */
+  private static final int MAX_SIZE = 64;
+  private static volatile StatementCache INSTANCE = null;
+
+  private final Map<String, SQLiteStatement> mStatements =
+      new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+          if (size() > MAX_SIZE) {
+            eldest.getValue().close();
+            return true;
+          }
+          return false;
+        }
+      };
+  /**
+   * 缓存的语句所属的数据库，数据库重新打开后，之前的语句不能再使用
+   */
+  private SQLiteDatabase mDb;
+
+  private StatementCache() {
+
+  }
+
+  static StatementCache getInstance() {
+    if (INSTANCE == null) {
+      synchronized (StatementCache.class) {
+        if (INSTANCE == null) {
+          INSTANCE = new StatementCache();
+        }
+      }
+    }
+    return INSTANCE;
+  }
+
+  /**
+   * 取出编译好的语句，缓存中没有时编译一个新的语句
+   *
+   * @return 语句编译失败时返回null
+   */
+  synchronized SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+    if (db != mDb) {
+      clear();
+      mDb = db;
+    }
+    SQLiteStatement statement = mStatements.remove(sql);
+    if (statement == null) {
+      try {
+        statement = db.compileStatement(sql);
+      } catch (SQLException e) {
+        ALog.e(TAG, String.format("编译sql语句失败，sql：%s，%s", sql, ALog.getExceptionString(e)));
+      }
+    }
+    return statement;
+  }
+
+  /**
+   * 放回用完的语句，statement为null时不处理
+   */
+  synchronized void release(SQLiteDatabase db, String sql, SQLiteStatement statement) {
+    if (statement == null) {
+      return;
+    }
+    if (db != mDb || !db.isOpen() || mStatements.containsKey(sql)) {
+      statement.close();
+      return;
+    }
+    statement.clearBindings();
+    mStatements.put(sql, statement);
+  }
+
+  /**
+   * 关闭所有缓存的语句
+   */
+  synchronized void clear() {
+    for (SQLiteStatement statement : mStatements.values()) {
+      statement.close();
+    }
+    mStatements.clear();
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 数据库实体标记，{@link com.arialyy.aria.orm.DbEntity}已经使用该注解，子类会继承该注解，不需要再添加。
+ * 编译时只扫描带有该注解或{@link Wrapper}注解的类，为它们生成数据库适配器。
+ */
+@Target(ElementType.TYPE) @Retention(RetentionPolicy.RUNTIME) @Inherited
+public @interface Entity {
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.util;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程共享的缓冲池，所有传输线程的读写缓冲都从这里获取。
+ * 1、缓冲按2的幂划分大小等级（4k ~ 1m），获取的缓冲大小会向上取整到对应等级，超过1m的缓冲不缓存；
+ * 2、缓冲池中空闲缓冲的总大小不超过{@link #setMaxPoolSize(long)}设置的预算，超出预算的缓冲直接丢弃；
+ * 3、缓冲使用完后必须在finally中调用recycle归还，归还后不能再使用该缓冲；
+ * 4、借出的缓冲按对象记录，不是从缓冲池获取的缓冲和重复归还的缓冲会被忽略，不会放回缓冲池。
+ */
+public class BufferPool {
+  private static final String TAG = "BufferPool";
+
+  /**
+   * 最小的大小等级，4k
+   */
+  private static final int MIN_SHIFT = 12;
+
+  /**
+   * 最大的大小等级，1m
+   */
+  private static final int MAX_SHIFT = 20;
+
+  private static final SizeClass[] mClasses = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+
+  static {
+    for (int i = 0; i < mClasses.length; i++) {
+      mClasses[i] = new SizeClass(1 << (MIN_SHIFT + i));
+    }
+  }
+
+  private static volatile long mMaxPoolSize = 4 * 1024 * 1024;
+  private static final AtomicLong mPoolSize = new AtomicLong(); // 池中空闲缓冲的总大小
+  private static final AtomicLong mOutstandingSize = new AtomicLong(); // 已借出缓冲的总大小
+  private static final AtomicLong mHitCount = new AtomicLong();
+  private static final AtomicLong mMissCount = new AtomicLong();
+  private static final AtomicLong mInvalidRecycleCount = new AtomicLong();
+
+  /**
+   * 已借出的缓冲，ByteBuffer的equals和hashCode按内容计算，需要按对象记录
+   */
+  private static final Set<Object> mOutstanding =
+      Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+  private BufferPool() {
+  }
+
+  /**
+   * 设置缓冲池空闲缓冲的内存预算，默认4m
+   *
+   * @param maxPoolSize 单位为byte，为0时不缓存缓冲
+   */
+  public static void setMaxPoolSize(long maxPoolSize) {
+    mMaxPoolSize = maxPoolSize;
+  }
+
+  /**
+   * 获取一个已清空的直接内存缓冲，实际容量可能大于{@code size}
+   *
+   * @param size 缓冲大小
+   */
+  public static ByteBuffer obtain(int size) {
+    SizeClass sc = getSizeClass(size);
+    ByteBuffer buffer = sc == null ? null : sc.directQueue.poll();
+    if (buffer == null) {
+      mMissCount.incrementAndGet();
+      buffer = ByteBuffer.allocateDirect(sc == null ? size : sc.size);
+    } else {
+      mHitCount.incrementAndGet();
+      mPoolSize.addAndGet(-buffer.capacity());
+      buffer.clear();
+    }
+    track(buffer, buffer.capacity());
+    return buffer;
+  }
+
+  /**
+   * 获取一个字节数组缓冲，实际长度可能大于{@code size}
+   *
+   * @param size 缓冲大小
+   */
+  public static byte[] obtainBytes(int size) {
+    SizeClass sc = getSizeClass(size);
+    byte[] buffer = sc == null ? null : sc.heapQueue.poll();
+    if (buffer == null) {
+      mMissCount.incrementAndGet();
+      buffer = new byte[sc == null ? size : sc.size];
+    } else {
+      mHitCount.incrementAndGet();
+      mPoolSize.addAndGet(-buffer.length);
+    }
+    track(buffer, buffer.length);
+    return buffer;
+  }
+
+  /**
+   * 归还直接内存缓冲
+   */
+  public static void recycle(ByteBuffer buffer) {
+    if (buffer == null || !buffer.isDirect()) {
+      return;
+    }
+    int size = buffer.capacity();
+    if (!untrack(buffer, size)) {
+      return;
+    }
+    SizeClass sc = getSizeClass(size);
+    if (sc != null && sc.size == size && reserve(size)) {
+      sc.directQueue.offer(buffer);
+    }
+  }
+
+  /**
+   * 归还字节数组缓冲
+   */
+  public static void recycle(byte[] buffer) {
+    if (buffer == null) {
+      return;
+    }
+    int size = buffer.length;
+    if (!untrack(buffer, size)) {
+      return;
+    }
+    SizeClass sc = getSizeClass(size);
+    if (sc != null && sc.size == size && reserve(size)) {
+      sc.heapQueue.offer(buffer);
+    }
+  }
+
+  /**
+   * 缓冲池命中次数
+   */
+  public static long getHitCount() {
+    return mHitCount.get();
+  }
+
+  /**
+   * 缓冲池未命中次数
+   */
+  public static long getMissCount() {
+    return mMissCount.get();
+  }
+
+  /**
+   * 被忽略的归还次数，包括归还不是从缓冲池获取的缓冲和重复归还
+   */
+  public static long getInvalidRecycleCount() {
+    return mInvalidRecycleCount.get();
+  }
+
+  /**
+   * 已借出且未归还的缓冲总大小，单位为byte
+   */
+  public static long getOutstandingSize() {
+    return mOutstandingSize.get();
+  }
+
+  /**
+   * 缓冲池中空闲缓冲的总大小，单位为byte
+   */
+  public static long getPoolSize() {
+    return mPoolSize.get();
+  }
+
+  /**
+   * 打印缓冲池状态
+   */
+  public static void printStatus() {
+    ALog.d(TAG, String.format("命中：%s，未命中：%s，借出：%s byte，空闲：%s byte，无效归还：%s",
+        mHitCount.get(), mMissCount.get(), mOutstandingSize.get(), mPoolSize.get(),
+        mInvalidRecycleCount.get()));
+  }
+
+  /**
+   * 记录借出的缓冲
+   */
+  private static void track(Object buffer, int size) {
+    synchronized (mOutstanding) {
+      mOutstanding.add(buffer);
+    }
+    mOutstandingSize.addAndGet(size);
+  }
+
+  /**
+   * 移除借出记录
+   *
+   * @return {@code false} 缓冲不是从缓冲池获取的或已经归还，忽略本次归还
+   */
+  private static boolean untrack(Object buffer, int size) {
+    boolean removed;
+    synchronized (mOutstanding) {
+      removed = mOutstanding.remove(buffer);
+    }
+    if (!removed) {
+      mInvalidRecycleCount.incrementAndGet();
+      ALog.w(TAG, String.format("忽略无效的缓冲归还，缓冲不是从缓冲池获取的或已经归还，大小：%s", size));
+      return false;
+    }
+    mOutstandingSize.addAndGet(-size);
+    return true;
+  }
+
+  /**
+   * 在内存预算内占用空间
+   *
+   * @return {@code false} 超出预算，缓冲不放回缓冲池
+   */
+  private static boolean reserve(int size) {
+    if (mPoolSize.addAndGet(size) > mMaxPoolSize) {
+      mPoolSize.addAndGet(-size);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * 获取大小对应的等级，超过最大等级时返回null
+   */
+  private static SizeClass getSizeClass(int size) {
+    for (SizeClass sc : mClasses) {
+      if (size <= sc.size) {
+        return sc;
+      }
+    }
+    return null;
+  }
+
+  private static class SizeClass {
+    final int size;
+    final Queue<ByteBuffer> directQueue = new ConcurrentLinkedQueue<>();
+    final Queue<byte[]> heapQueue = new ConcurrentLinkedQueue<>();
+
+    SizeClass(int size) {
+      this.size = size;
+    }
+  }
+}
@@ -142,16 +142,23 @@ public final class BufferedRandomAccessFile extends RandomAccessFile {
   private void init(int size) {
     this.dirty_ = this.closed_ = false;
     this.lo_ = this.curr_ = this.hi_ = 0;
-    this.buff_ = (size > BuffSz_) ? new byte[size] : new byte[BuffSz_];
+    this.buff_ = BufferPool.obtainBytes(size > BuffSz_ ? size : BuffSz_);
     this.maxHi_ = (long) BuffSz_;
     this.hitEOF_ = false;
     this.diskPos_ = 0L;
   }
 
   public void close() throws IOException {
-    this.flush();
-    this.closed_ = true;
-    super.close();
+    if (this.closed_) {
+      return;
+    }
+    try {
+      this.flush();
+    } finally {
+      this.closed_ = true;
+      super.close();
+      BufferPool.recycle(this.buff_);
+    }
   }
 
   /**
@@ -575,16 +575,29 @@ public class CommonUtil {
    */
   public static String getStrMd5(String str) {
     if (TextUtils.isEmpty(str)) return "";
-    try {
-      MessageDigest md = MessageDigest.getInstance("MD5");
-      md.update(str.getBytes());
-      return new BigInteger(1, md.digest()).toString(16);
-    } catch (NoSuchAlgorithmException e) {
-      ALog.e(TAG, e.getMessage());
+    MessageDigest md = MD5_DIGEST.get();
+    if (md == null) {
+      return "";
     }
-    return "";
+    md.reset();
+    md.update(str.getBytes());
+    return new BigInteger(1, md.digest()).toString(16);
   }
 
+  /**
+   * 每个线程复用同一个md5摘要对象，避免每次计算md5都创建{@link MessageDigest}
+   */
+  private static final ThreadLocal<MessageDigest> MD5_DIGEST = new ThreadLocal<MessageDigest>() {
+    @Override protected MessageDigest initialValue() {
+      try {
+        return MessageDigest.getInstance("MD5");
+      } catch (NoSuchAlgorithmException e) {
+        ALog.e(TAG, e.getMessage());
+        return null;
+      }
+    }
+  };
+
   /**
    * 获取CPU核心数
    */
@@ -854,15 +867,13 @@ public class CommonUtil {
    * @return 转换后的key的值, 系统便是通过该key来读写缓存
    */
   public static String keyToHashKey(String key) {
-    String cacheKey;
-    try {
-      final MessageDigest mDigest = MessageDigest.getInstance("MD5");
-      mDigest.update(key.getBytes());
-      cacheKey = bytesToHexString(mDigest.digest());
-    } catch (NoSuchAlgorithmException e) {
-      cacheKey = String.valueOf(key.hashCode());
+    final MessageDigest mDigest = MD5_DIGEST.get();
+    if (mDigest == null) {
+      return String.valueOf(key.hashCode());
     }
-    return cacheKey;
+    mDigest.reset();
+    mDigest.update(key.getBytes());
+    return bytesToHexString(mDigest.digest());
   }
 
   /**
@@ -30,20 +30,28 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.SequenceInputStream;
+import java.io.RandomAccessFile;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 /**
@@ -52,6 +60,18 @@ import java.util.regex.Pattern;
 public class FileUtil {
   private static final String TAG = "FileUtil";
   private static final Pattern DIR_SEPORATOR = Pattern.compile("/");
+  /**
+   * 合并文件的最大线程数
+   */
+  private static final int MERGE_THREAD_NUM = 4;
+  /**
+   * 合并文件的线程池，所有合并任务共用，空闲的线程会自动回收
+   */
+  private static volatile ExecutorService mMergePool;
+  /**
+   * 合并进度文件的后缀
+   */
+  private static final String MERGE_RECORD_SUFFIX = ".merge";
   private static final String EXTERNAL_STORAGE_PATH =
       Environment.getExternalStorageDirectory().getPath();
 
@@ -63,50 +83,127 @@ public class FileUtil {
    * @return {@code true} 合并成功，{@code false}合并失败
    */
   public static boolean mergeFile(String targetPath, List<String> subPaths) {
-    File file = new File(targetPath);
-    FileOutputStream fos = null;
-    FileChannel foc = null;
+    return mergeFile(targetPath, subPaths, false);
+  }
+
+  /**
+   * 合并文件，目标文件会预先占用所有碎片文件的总长度，
+   * 碎片文件使用{@link FileChannel#transferFrom(ReadableByteChannel, long, long)}并发复制到各自的偏移位置
+   *
+   * @param targetPath 目标文件
+   * @param subPaths 碎片文件路径
+   * @param deleteSubFile {@code true} 每个碎片文件复制完成并同步到存储设备后立即删除，磁盘占用接近最终文件大小；
+   * 合并进度保存在"目标文件路径.merge"中，合并中断后再次合并时，跳过已经合并并删除的碎片，合并完成后删除进度文件
+   * @return {@code true} 合并成功，{@code false}合并失败
+   */
+  public static boolean mergeFile(String targetPath, List<String> subPaths,
+      final boolean deleteSubFile) {
+    final File recordFile = new File(targetPath + MERGE_RECORD_SUFFIX);
+    final List<File> subFiles = new ArrayList<>();
+    final long[] offsets = new long[subPaths.size()];
+    long[] lengths = null;
+    Set<Integer> merged = new HashSet<>();
+    if (deleteSubFile && recordFile.exists()) {
+      lengths = readMergeRecord(recordFile, subPaths.size(), merged);
+      if (lengths == null || !new File(targetPath).exists()) {
+        // 记录无效或目标文件已经被删除，重新合并，碎片不完整时下面的检查会让合并失败
+        ALog.w(TAG, String.format("合并记录【%s】无效，重新合并", recordFile.getPath()));
+        recordFile.delete();
+        lengths = null;
+        merged.clear();
+      }
+    }
+    long totalLen = 0;
+    for (int i = 0; i < subPaths.size(); i++) {
+      File f = new File(subPaths.get(i));
+      subFiles.add(f);
+      offsets[i] = totalLen;
+      if (merged.contains(i)) {
+        totalLen += lengths[i];
+        continue;
+      }
+      if (!f.exists()) {
+        ALog.d(TAG, String.format("合并文件失败，文件【%s】不存在", subPaths.get(i)));
+        return false;
+      }
+      if (lengths != null && lengths[i] != f.length()) {
+        ALog.e(TAG, String.format("合并文件失败，文件【%s】的长度和合并记录不一致", subPaths.get(i)));
+        return false;
+      }
+      totalLen += f.length();
+    }
+
+    RandomAccessFile target = null;
+    List<Future<Boolean>> futures = null;
     try {
-      if (!file.exists()) {
-        file.createNewFile();
-      }
-      fos = new FileOutputStream(targetPath);
-      foc = fos.getChannel();
-      List<FileInputStream> streams = new LinkedList<>();
-      for (String subPath : subPaths) {
-        File f = new File(subPath);
-        if (!f.exists()) {
-          ALog.d(TAG, String.format("合并文件失败，文件【%s】不存在", subPath));
-          for (FileInputStream fis : streams) {
-            fis.close();
+      if (deleteSubFile && lengths == null) {
+        // 删除第一个碎片前，先保存所有碎片的长度，中断后才能计算已删除碎片的偏移位置
+        writeMergeRecord(recordFile, subFiles);
+      }
+      target = new RandomAccessFile(targetPath, "rw");
+      target.setLength(totalLen);
+      final FileChannel foc = target.getChannel();
+      List<Integer> pending = new ArrayList<>();
+      for (int i = 0; i < subFiles.size(); i++) {
+        if (!merged.contains(i)) {
+          pending.add(i);
+        }
+      }
+      int threadNum = Math.min(pending.size(),
+          Math.min(Runtime.getRuntime().availableProcessors(), MERGE_THREAD_NUM));
+      boolean isSuccess = true;
+      if (threadNum <= 1) {
+        for (int i = 0; i < pending.size() && isSuccess; i++) {
+          int index = pending.get(i);
+          isSuccess = mergePart(foc, subFiles.get(index), offsets[index], index,
+              deleteSubFile ? recordFile : null);
+        }
+      } else {
+        futures = new ArrayList<>();
+        ExecutorService pool = getMergePool();
+        for (final int index : pending) {
+          final File subFile = subFiles.get(index);
+          final long offset = offsets[index];
+          futures.add(pool.submit(new Callable<Boolean>() {
+            @Override public Boolean call() throws Exception {
+              return mergePart(foc, subFile, offset, index, deleteSubFile ? recordFile : null);
+            }
+          }));
+        }
+        for (Future<Boolean> future : futures) {
+          try {
+            isSuccess &= future.get();
+          } catch (ExecutionException e) {
+            e.printStackTrace();
+            isSuccess = false;
           }
-          streams.clear();
-
-          return false;
         }
-        streams.add(new FileInputStream(subPath));
       }
-      Enumeration<FileInputStream> en = Collections.enumeration(streams);
-      SequenceInputStream sis = new SequenceInputStream(en);
-      ReadableByteChannel fic = Channels.newChannel(sis);
-      ByteBuffer bf = ByteBuffer.allocate(8196);
-      while (fic.read(bf) != -1) {
-        bf.flip();
-        foc.write(bf);
-        bf.compact();
+      if (!isSuccess) {
+        return false;
+      }
+      if (deleteSubFile) {
+        recordFile.delete();
+      } else {
+        // 不删除碎片文件时，所有碎片都复制完成后只同步一次
+        foc.force(false);
       }
-      fic.close();
-      sis.close();
       return true;
     } catch (IOException e) {
       e.printStackTrace();
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+      Thread.currentThread().interrupt();
     } finally {
-      try {
-        if (foc != null) {
-          foc.close();
+      if (futures != null) {
+        // 合并被中断时取消还没有执行的复制任务，避免关闭文件后继续写入
+        for (Future<Boolean> future : futures) {
+          future.cancel(true);
         }
-        if (fos != null) {
-          fos.close();
+      }
+      try {
+        if (target != null) {
+          target.close();
         }
       } catch (IOException e) {
         e.printStackTrace();
@@ -115,6 +212,171 @@ public class FileUtil {
     return false;
   }
 
+  /**
+   * 复制一个碎片文件，需要删除碎片文件时，碎片同步到存储设备并记录合并进度后才删除
+   *
+   * @param recordFile 合并进度文件，为null时不删除碎片文件
+   */
+  private static boolean mergePart(FileChannel foc, File subFile, long offset, int index,
+      File recordFile) throws IOException {
+    if (!transferPart(foc, subFile, offset)) {
+      return false;
+    }
+    if (recordFile == null) {
+      return true;
+    }
+    foc.force(false);
+    appendMergeRecord(recordFile, index);
+    subFile.delete();
+    return true;
+  }
+
+  /**
+   * 保存合并记录，第一行为所有碎片的长度，之后每行为一个已经合并的碎片序号
+   */
+  private static void writeMergeRecord(File recordFile, List<File> subFiles) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < subFiles.size(); i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(subFiles.get(i).length());
+    }
+    sb.append('\n');
+    FileOutputStream fos = new FileOutputStream(recordFile);
+    try {
+      fos.write(sb.toString().getBytes());
+      fos.getFD().sync();
+    } finally {
+      fos.close();
+    }
+  }
+
+  /**
+   * 记录已经合并的碎片序号，多个合并线程共用一个记录文件
+   */
+  private static synchronized void appendMergeRecord(File recordFile, int index)
+      throws IOException {
+    FileOutputStream fos = new FileOutputStream(recordFile, true);
+    try {
+      fos.write((index + "\n").getBytes());
+      fos.getFD().sync();
+    } finally {
+      fos.close();
+    }
+  }
+
+  /**
+   * 读取合并记录
+   *
+   * @param partNum 碎片数量，和记录中的碎片数量不一致时记录无效
+   * @param merged 保存已经合并的碎片序号
+   * @return 所有碎片的长度，记录无效时返回null
+   */
+  private static long[] readMergeRecord(File recordFile, int partNum, Set<Integer> merged) {
+    String content;
+    FileInputStream fis = null;
+    try {
+      fis = new FileInputStream(recordFile);
+      byte[] data = new byte[(int) recordFile.length()];
+      int len = 0, read;
+      while (len < data.length && (read = fis.read(data, len, data.length - len)) != -1) {
+        len += read;
+      }
+      content = new String(data, 0, len);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    } finally {
+      if (fis != null) {
+        try {
+          fis.close();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+    // 最后一行可能只写入了一部分，只读取换行符结尾的完整行
+    int end = content.lastIndexOf('\n');
+    if (end == -1) {
+      return null;
+    }
+    String[] lines = content.substring(0, end).split("\n");
+    String[] values = lines[0].split(",");
+    if (values.length != partNum) {
+      return null;
+    }
+    try {
+      long[] lengths = new long[partNum];
+      for (int i = 0; i < partNum; i++) {
+        lengths[i] = Long.parseLong(values[i]);
+      }
+      for (int i = 1; i < lines.length; i++) {
+        int index = Integer.parseInt(lines[i]);
+        if (index < 0 || index >= partNum) {
+          return null;
+        }
+        merged.add(index);
+      }
+      return lengths;
+    } catch (NumberFormatException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * 将碎片文件复制到目标文件的指定位置
+   *
+   * @param foc 目标文件通道，多个线程共用，只使用按位置写入的方法
+   * @param offset 碎片文件在目标文件中的位置
+   */
+  private static boolean transferPart(FileChannel foc, File subFile, long offset)
+      throws IOException {
+    FileInputStream fis = null;
+    try {
+      fis = new FileInputStream(subFile);
+      FileChannel fic = fis.getChannel();
+      long len = fic.size(), done = 0;
+      while (done < len) {
+        long count = foc.transferFrom(fic, offset + done, len - done);
+        if (count <= 0) {
+          ALog.e(TAG, String.format("合并文件失败，文件【%s】复制中断", subFile.getPath()));
+          return false;
+        }
+        done += count;
+      }
+    } finally {
+      if (fis != null) {
+        fis.close();
+      }
+    }
+    return true;
+  }
+
+  private static ExecutorService getMergePool() {
+    if (mMergePool == null) {
+      synchronized (FileUtil.class) {
+        if (mMergePool == null) {
+          final AtomicInteger index = new AtomicInteger();
+          int threadNum =
+              Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MERGE_THREAD_NUM));
+          ThreadPoolExecutor pool = new ThreadPoolExecutor(threadNum, threadNum,
+              30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "Aria-Merge-" + index.getAndIncrement());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+          pool.allowCoreThreadTimeOut(true);
+          mMergePool = pool;
+        }
+      }
+    }
+    return mMergePool;
+  }
+
   /**
    * 分割文件
    *
@@ -32,7 +32,8 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
@@ -47,7 +48,11 @@ import javax.net.ssl.X509TrustManager;
  */
 public class SSLContextUtil {
   private static final String TAG = "SSLContextUtil";
-  private static Map<String, SSLContext> SSL_CACHE = new WeakHashMap<>();
+  /**
+   * 多个下载线程会同时读写缓存
+   */
+  private static final ConcurrentMap<String, SSLContext> SSL_CACHE = new ConcurrentHashMap<>();
+  private static final Map<String, SSLContext> DEFAULT_CACHE = new ConcurrentHashMap<>();
 
   /**
    * 从assets目录下加载证书
@@ -125,8 +130,9 @@ public class SSLContextUtil {
       SSLContext context =
           SSLContext.getInstance(TextUtils.isEmpty(protocol) ? ProtocolType.Default : protocol);
       context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), new SecureRandom());
-      SSL_CACHE.put(cacheKey, context);
-      return context;
+      // 多个线程同时创建时使用先缓存的SSLContext，保证https连接使用同一个SSLSocketFactory
+      SSLContext old = SSL_CACHE.putIfAbsent(cacheKey, context);
+      return old == null ? context : old;
     } catch (CertificateException | NoSuchAlgorithmException | IOException | KeyStoreException | KeyManagementException | UnrecoverableKeyException e) {
       e.printStackTrace();
     }
@@ -154,12 +160,17 @@ public class SSLContextUtil {
   /**
    * 服务器证书不是由 CA 签署的，而是自签署时，获取默认的SSL
    */
-  public static SSLContext getDefaultSLLContext(@ProtocolType String protocol) {
-    SSLContext sslContext = null;
+  public static synchronized SSLContext getDefaultSLLContext(@ProtocolType String protocol) {
+    String type = TextUtils.isEmpty(protocol) ? ProtocolType.Default : protocol;
+    // 缓存默认的SSLContext，https长连接只有使用同一个SSLSocketFactory时才能复用
+    SSLContext sslContext = DEFAULT_CACHE.get(type);
+    if (sslContext != null) {
+      return sslContext;
+    }
     try {
-      sslContext =
-          SSLContext.getInstance(TextUtils.isEmpty(protocol) ? ProtocolType.Default : protocol);
+      sslContext = SSLContext.getInstance(type);
       sslContext.init(null, new TrustManager[] { trustManagers }, new SecureRandom());
+      DEFAULT_CACHE.put(type, sslContext);
     } catch (Exception e) {
       e.printStackTrace();
     }
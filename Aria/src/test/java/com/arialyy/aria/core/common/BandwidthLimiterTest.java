@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 使用模拟时钟验证全局限速：多个传输同时读取数据时，总速度不超过全局限速，误差在5%以内。
+ * 每个传输按"读取一段数据 -> 等待限速器返回的时间 -> 继续读取"的方式推进模拟时钟，结果不受机器负载影响。
+ */
+public class BandwidthLimiterTest {
+  private static final int TRANSFER_NUM = 30;
+  private static final int GLOBAL_RATE = 1024; // kb
+  private static final long DURATION = 20L * 1000 * 1000 * 1000;
+
+  @Test public void globalCapWithConcurrentTransfers() {
+    FakeClock clock = new FakeClock();
+    BandwidthLimiter global = new BandwidthLimiter(null, GLOBAL_RATE, clock);
+    PriorityQueue<Transfer> queue = new PriorityQueue<>();
+    Random random = new Random(1);
+    for (int i = 0; i < TRANSFER_NUM; i++) {
+      // 任务 -> 线程两级限速器，任务不单独限速
+      BandwidthLimiter task = new BandwidthLimiter(global, 0);
+      queue.add(new Transfer(new BandwidthLimiter(task, 0), random.nextInt(1000) * 1000L));
+    }
+    long total = 0;
+    while (true) {
+      Transfer transfer = queue.poll();
+      if (transfer.readyTime >= DURATION) {
+        break;
+      }
+      clock.now = transfer.readyTime;
+      int len = 4096 + random.nextInt(12 * 1024);
+      long wait = transfer.limiter.acquire(len);
+      transfer.transferred += len;
+      total += len;
+      transfer.readyTime = clock.now + Math.max(wait, 0);
+      queue.add(transfer);
+    }
+    double rate = total * 1000000000.0 / DURATION / 1024;
+    assertEquals(String.format("总速度：%.1f kb/s", rate), GLOBAL_RATE, rate, GLOBAL_RATE * 0.05);
+    for (Transfer transfer : queue) {
+      assertTrue("有传输没有分到速度", transfer.transferred > 0);
+    }
+  }
+
+  @Test public void raisedRateTakesEffectImmediately() {
+    FakeClock clock = new FakeClock();
+    BandwidthLimiter limiter = new BandwidthLimiter(null, 1, clock);
+    // 1kb/s时预约10秒的令牌
+    long wait = limiter.acquire(10 * 1024);
+    assertTrue(wait > 9L * 1000 * 1000 * 1000);
+    limiter.setMaxRate(1024);
+    // 调高速度后，按旧速度预约的令牌最多只保留100ms
+    assertTrue(limiter.acquire(1024) <= 200L * 1000 * 1000);
+  }
+
+  private static class FakeClock implements BandwidthLimiter.Clock {
+    long now;
+
+    @Override public long nanoTime() {
+      return now;
+    }
+  }
+
+  private static class Transfer implements Comparable<Transfer> {
+    final BandwidthLimiter limiter;
+    long readyTime;
+    long transferred;
+
+    Transfer(BandwidthLimiter limiter, long readyTime) {
+      this.limiter = limiter;
+      this.readyTime = readyTime;
+    }
+
+    @Override public int compareTo(Transfer o) {
+      return Long.compare(readyTime, o.readyTime);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common;
+
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 多个线程同时累加进度的耗时对比：
+ * 旧方式为所有线程竞争同一个锁的计数器；新方式为{@link ProgressCounter}，按线程分散到多个计数单元。
+ * 测试中同时有一个线程模拟定时器不断读取进度。
+ *
+ * 单核机器上两种方式都没有真正的竞争，因此只要求分散计数不明显慢于加锁计数，
+ * 多核机器上分散计数的优势才会体现出来。
+ */
+public class ProgressCounterBenchmark {
+  private static final int WRITER_NUM = 8;
+  private static final int ADD_NUM = 500000;
+  private static final int ROUND = 5;
+
+  /**
+   * 分散计数耗时 / 加锁计数耗时的上限
+   */
+  private static final double MAX_RATIO = 2.0;
+
+  @Test public void compareAdd() throws Exception {
+    // 预热一轮，不计入结果
+    run(new LockCounter());
+    run(new StripedCounter());
+    long lockTime = 0, stripedTime = 0;
+    for (int i = 0; i < ROUND; i++) {
+      lockTime += run(new LockCounter());
+      stripedTime += run(new StripedCounter());
+    }
+    double ratio = stripedTime / (double) lockTime;
+    assertTrue(String.format("%s个线程累加进度，加锁计数：%.1f ns/次，分散计数：%.1f ns/次", WRITER_NUM,
+        toNanosPerAdd(lockTime), toNanosPerAdd(stripedTime)), ratio <= MAX_RATIO);
+  }
+
+  /**
+   * 所有线程同时开始累加，累加结束后检查总进度
+   *
+   * @return 所有线程累加完成的耗时，单位纳秒
+   */
+  private long run(final Counter counter) throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(WRITER_NUM);
+    Thread[] writers = new Thread[WRITER_NUM];
+    for (int i = 0; i < WRITER_NUM; i++) {
+      writers[i] = new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int j = 0; j < ADD_NUM; j++) {
+            counter.add(1);
+          }
+          done.countDown();
+        }
+      });
+      writers[i].start();
+    }
+    Thread reader = new Thread(new Runnable() {
+      @Override public void run() {
+        while (done.getCount() > 0) {
+          counter.get();
+          Thread.yield();
+        }
+      }
+    });
+    long startTime = System.nanoTime();
+    start.countDown();
+    reader.start();
+    done.await();
+    long time = System.nanoTime() - startTime;
+    reader.join();
+    assertEquals((long) WRITER_NUM * ADD_NUM, counter.get());
+    return time;
+  }
+
+  private double toNanosPerAdd(long nanos) {
+    return nanos / (double) ROUND / WRITER_NUM / ADD_NUM;
+  }
+
+  private interface Counter {
+    void add(long len);
+
+    long get();
+  }
+
+  /**
+   * 旧的计数方式，所有线程竞争同一个锁
+   */
+  private static class LockCounter implements Counter {
+    private long mProgress;
+
+    @Override public synchronized void add(long len) {
+      mProgress += len;
+    }
+
+    @Override public synchronized long get() {
+      return mProgress;
+    }
+  }
+
+  private static class StripedCounter implements Counter {
+    private final ProgressCounter mCounter = new ProgressCounter();
+
+    @Override public void add(long len) {
+      mCounter.add(len);
+    }
+
+    @Override public long get() {
+      return mCounter.get();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common.http;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 传输层的选择：任务单独设置的传输层优先，其次是全局传输层，默认为{@link UrlConnectionTransport}；
+ * 没有正常读取完毕的连接直接断开，不读取剩余数据
+ */
+public class ConnectionManagerTest {
+
+  @After public void tearDown() {
+    ConnectionManager.setTransport(new UrlConnectionTransport());
+  }
+
+  @Test public void defaultTransport() {
+    assertTrue(ConnectionManager.getTransport(null) instanceof UrlConnectionTransport);
+    assertTrue(ConnectionManager.getTransport(new HttpTaskConfig()) instanceof UrlConnectionTransport);
+  }
+
+  @Test public void globalTransport() {
+    IHttpTransport global = new UrlConnectionTransport();
+    ConnectionManager.setTransport(global);
+    assertSame(global, ConnectionManager.getTransport(null));
+    assertSame(global, ConnectionManager.getTransport(new HttpTaskConfig()));
+  }
+
+  @Test public void taskTransportFirst() {
+    IHttpTransport global = new UrlConnectionTransport();
+    IHttpTransport task = new UrlConnectionTransport();
+    ConnectionManager.setTransport(global);
+    HttpTaskConfig config = new HttpTaskConfig();
+    config.setTransport(task);
+    assertSame(task, ConnectionManager.getTransport(config));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nullGlobalTransport() {
+    ConnectionManager.setTransport(null);
+  }
+
+  @Test public void abortedConnectionNotDrained() {
+    final int[] disconnect = new int[1];
+    IHttpConnection conn = (IHttpConnection) Proxy.newProxyInstance(
+        IHttpConnection.class.getClassLoader(), new Class[] { IHttpConnection.class },
+        new InvocationHandler() {
+          @Override public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("disconnect")) {
+              disconnect[0]++;
+            }
+            return null;
+          }
+        });
+    ByteArrayInputStream is = new ByteArrayInputStream(new byte[1024]);
+    long abort = ConnectionManager.getAbortCount();
+    ConnectionManager.release(conn, is, false);
+    assertEquals(1, disconnect[0]);
+    assertEquals(1024, is.available());
+    assertEquals(abort + 1, ConnectionManager.getAbortCount());
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.common.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 使用本地的h2c服务器测试{@link OkHttpTransport}的区间请求、请求体和多路复用
+ */
+public class OkHttpTransportTest {
+  private MockWebServer mServer;
+  private OkHttpTransport mTransport;
+
+  @Before public void setUp() throws IOException {
+    mServer = new MockWebServer();
+    mServer.setProtocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+    mServer.start();
+    mTransport = new OkHttpTransport(new OkHttpClient(), true);
+  }
+
+  @After public void tearDown() throws IOException {
+    mServer.shutdown();
+  }
+
+  @Test public void rangeRequest() throws Exception {
+    mServer.enqueue(new MockResponse().setResponseCode(206)
+        .setHeader("Content-Range", "bytes 10-19/100")
+        .setBody("0123456789"));
+    IHttpConnection conn = mTransport.open(mServer.url("/file").url(), null);
+    conn.setRange(10, 20);
+    conn.connect();
+
+    assertEquals(206, conn.getResponseCode());
+    assertEquals("h2_prior_knowledge", conn.getProtocol());
+    // 响应头不区分大小写
+    assertEquals("bytes 10-19/100", conn.getHeaderField("content-range"));
+    assertEquals("bytes 10-19/100", conn.getHeaderFields().get("Content-Range").get(0));
+    assertEquals("0123456789", read(conn.getInputStream()));
+    ConnectionManager.release(conn, null);
+
+    RecordedRequest request = mServer.takeRequest();
+    assertEquals("GET", request.getMethod());
+    assertEquals("bytes=10-19", request.getHeader("Range"));
+  }
+
+  @Test public void openEndedRange() throws Exception {
+    mServer.enqueue(new MockResponse().setResponseCode(206).setBody("abc"));
+    IHttpConnection conn = mTransport.open(mServer.url("/file").url(), null);
+    conn.setRange(5, -1);
+    assertEquals(206, conn.getResponseCode());
+    conn.disconnect();
+
+    assertEquals("bytes=5-", mServer.takeRequest().getHeader("Range"));
+  }
+
+  @Test public void postBody() throws Exception {
+    mServer.enqueue(new MockResponse().setBody("ok"));
+    mServer.enqueue(new MockResponse().setBody("ok"));
+
+    IHttpConnection conn = mTransport.open(mServer.url("/post").url(), null);
+    conn.setRequestMethod("POST");
+    conn.setBody(new StringBody("a=1&b=2", true));
+    assertEquals(200, conn.getResponseCode());
+    conn.disconnect();
+
+    // 长度未知的请求体
+    conn = mTransport.open(mServer.url("/post").url(), null);
+    conn.setRequestMethod("POST");
+    conn.setBody(new StringBody("c=3", false));
+    assertEquals(200, conn.getResponseCode());
+    conn.disconnect();
+
+    RecordedRequest request = mServer.takeRequest();
+    assertEquals("POST", request.getMethod());
+    assertEquals("application/x-www-form-urlencoded", request.getHeader("Content-Type"));
+    assertEquals("a=1&b=2", request.getBody().readUtf8());
+    request = mServer.takeRequest();
+    assertEquals("c=3", request.getBody().readUtf8());
+  }
+
+  @Test public void requestHeaders() throws Exception {
+    mServer.enqueue(new MockResponse());
+    IHttpConnection conn = mTransport.open(mServer.url("/").url(), null);
+    conn.setRequestProperty("User-Agent", "aria");
+    conn.setRequestProperty("X-Remove", "1");
+    conn.setRequestProperty("X-Remove", null);
+    assertEquals("aria", conn.getRequestProperty("user-agent"));
+    assertNull(conn.getRequestProperty("X-Remove"));
+    conn.connect();
+    conn.disconnect();
+
+    RecordedRequest request = mServer.takeRequest();
+    assertEquals("aria", request.getHeader("User-Agent"));
+    assertNull(request.getHeader("X-Remove"));
+  }
+
+  @Test(expected = IOException.class)
+  public void errorResponseHasNoStream() throws Exception {
+    mServer.enqueue(new MockResponse().setResponseCode(404).setBody("not found"));
+    IHttpConnection conn = mTransport.open(mServer.url("/missing").url(), null);
+    assertEquals(404, conn.getResponseCode());
+    try {
+      conn.getInputStream();
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  @Test public void multiplexRanges() throws Exception {
+    mServer.enqueue(new MockResponse().setResponseCode(206).setBody("01234"));
+    mServer.enqueue(new MockResponse().setResponseCode(206).setBody("56789"));
+
+    IHttpConnection first = mTransport.open(mServer.url("/file").url(), null);
+    first.setRange(0, 5);
+    IHttpConnection second = mTransport.open(mServer.url("/file").url(), null);
+    second.setRange(5, 10);
+    first.connect();
+    second.connect();
+    assertEquals("01234", read(first.getInputStream()));
+    assertEquals("56789", read(second.getInputStream()));
+    first.disconnect();
+    second.disconnect();
+
+    // 两个区间请求在同一个http/2连接上
+    assertEquals(0, mServer.takeRequest().getSequenceNumber());
+    assertEquals(1, mServer.takeRequest().getSequenceNumber());
+  }
+
+  private String read(InputStream is) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int len;
+    while ((len = is.read(buffer)) != -1) {
+      out.write(buffer, 0, len);
+    }
+    is.close();
+    return out.toString("UTF-8");
+  }
+
+  private static class StringBody implements IHttpBody {
+    private byte[] mData;
+    private boolean isFixedLength;
+
+    private StringBody(String data, boolean isFixedLength) throws IOException {
+      mData = data.getBytes("UTF-8");
+      this.isFixedLength = isFixedLength;
+    }
+
+    @Override public String getContentType() {
+      return "application/x-www-form-urlencoded";
+    }
+
+    @Override public long getContentLength() {
+      return isFixedLength ? mData.length : -1;
+    }
+
+    @Override public void writeTo(OutputStream os) throws IOException {
+      os.write(mData);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.core.scheduler;
+
+import com.arialyy.annotations.TaskEnum;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ListenerIndexTest {
+
+  /**
+   * 按任务key分发时，只有没有指定key的代理和指定了该key的代理能收到
+   */
+  @Test public void selectByKey() {
+    ListenerIndex index = new ListenerIndex();
+    FakeListener any = new FakeListener();
+    FakeListener keyed = new FakeListener("a", "b");
+    index.add("any", TaskEnum.DOWNLOAD, any, null);
+    index.add("keyed", TaskEnum.DOWNLOAD, keyed, null);
+
+    assertEquals(2, index.select(TaskEnum.DOWNLOAD, "a").size());
+    assertEquals(1, index.select(TaskEnum.DOWNLOAD, "c").size());
+    assertEquals(1, index.select(TaskEnum.DOWNLOAD, null).size());
+    assertEquals(0, index.select(TaskEnum.UPLOAD, "a").size());
+  }
+
+  /**
+   * 没有任务key的事件需要分发给所有代理，指定了多个key的代理只能收到一次
+   */
+  @Test public void selectAllIncludesKeyedOnce() {
+    ListenerIndex index = new ListenerIndex();
+    FakeListener any = new FakeListener();
+    FakeListener keyed = new FakeListener("a", "b");
+    index.add("any", TaskEnum.DOWNLOAD, any, null);
+    index.add("keyed", TaskEnum.DOWNLOAD, keyed, null);
+
+    List<ListenerIndex.Entry> all = index.selectAll(TaskEnum.DOWNLOAD);
+    assertEquals(2, all.size());
+    Set<ISchedulerListener> listeners = new HashSet<>();
+    for (ListenerIndex.Entry entry : all) {
+      listeners.add(entry.listener);
+    }
+    assertTrue(listeners.contains(any));
+    assertTrue(listeners.contains(keyed));
+
+    index.remove("any");
+    assertEquals(1, index.selectAll(TaskEnum.DOWNLOAD).size());
+    index.remove("keyed");
+    assertEquals(0, index.selectAll(TaskEnum.DOWNLOAD).size());
+  }
+
+  private static class FakeListener implements ISchedulerListener {
+    private final Set<String> mKeys;
+
+    FakeListener(String... keys) {
+      mKeys = keys.length == 0 ? null : new HashSet<>(Arrays.asList(keys));
+    }
+
+    @Override public void setListener(Object obj) {
+    }
+
+    @Override public Set<String> getTaskKeys() {
+      return mKeys;
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.orm;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import com.arialyy.aria.core.common.ThreadRecord;
+import com.arialyy.aria.util.CommonUtil;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 保存线程记录{@link DelegateUpdate#updateData}的耗时对比，两种方式都通过同一个入口更新记录：
+ * 旧方式为没有适配器的实体，通过反射读取字段创建ContentValues，每次都需要拼接和编译sql；
+ * 新方式为有适配器的{@link ThreadRecord}，从{@link StatementCache}中取出编译好的语句，绑定参数后执行。
+ * 测试代码不经过AriaCompiler处理，{@link ReflectRecord}和ThreadRecord的字段相同，但没有适配器。
+ *
+ * 使用内存数据库，排除存储设备同步的影响，只比较读取字段、创建和编译语句的开销。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27, manifest = Config.NONE)
+public class StatementCacheBenchmark {
+  private static final int RECORD_NUM = 100;
+  private static final int ROUND = 20;
+  private static final long RANGE_SIZE = 1024 * 1024;
+
+  /**
+   * 新方式相对旧方式的最小加速比，实际加速比通常更高，这里只防止缓存失效或退化为反射
+   */
+  private static final double MIN_SPEEDUP = 1.2;
+
+  private SQLiteDatabase mDb;
+  private DelegateUpdate mUpdate;
+  private List<ThreadRecord> mRecords = new ArrayList<>();
+  private List<ReflectRecord> mReflectRecords = new ArrayList<>();
+
+  @Before public void setUp() {
+    mDb = SQLiteDatabase.create(null);
+    DelegateManager manager = DelegateManager.getInstance();
+    DelegateCommon common = manager.getDelegate(DelegateCommon.class);
+    common.createTable(mDb, ThreadRecord.class);
+    common.createTable(mDb, ReflectRecord.class);
+    mUpdate = manager.getDelegate(DelegateUpdate.class);
+    assertNotNull("ThreadRecord没有生成适配器", DbAdapterHelper.getAdapter(ThreadRecord.class));
+    assertNull("ReflectRecord不能有适配器", DbAdapterHelper.getAdapter(ReflectRecord.class));
+    for (int i = 0; i < RECORD_NUM; i++) {
+      ThreadRecord record = new ThreadRecord();
+      ReflectRecord reflectRecord = new ReflectRecord();
+      record.taskKey = reflectRecord.taskKey = "/sdcard/Download/benchmark.apk";
+      record.threadId = reflectRecord.threadId = i;
+      record.startLocation = reflectRecord.startLocation = i * RANGE_SIZE;
+      record.endLocation = reflectRecord.endLocation = (i + 1) * RANGE_SIZE;
+      record.blockLen = reflectRecord.blockLen = RANGE_SIZE;
+      mUpdate.insertData(mDb, record);
+      mUpdate.insertData(mDb, reflectRecord);
+      mRecords.add(record);
+      mReflectRecords.add(reflectRecord);
+    }
+  }
+
+  @After public void tearDown() {
+    StatementCache.getInstance().clear();
+    mDb.close();
+  }
+
+  @Test public void compareUpdate() {
+    // 预热一轮，不计入结果
+    runReflectRound(0);
+    runRound(0);
+    long oldTime = 0, newTime = 0;
+    for (int i = 1; i <= ROUND; i++) {
+      oldTime += runReflectRound(i);
+      newTime += runRound(i);
+    }
+    for (ThreadRecord record : mRecords) {
+      assertEquals(record.startLocation, queryStart(ThreadRecord.class, record.rowID));
+    }
+    for (ReflectRecord record : mReflectRecords) {
+      assertEquals(record.startLocation, queryStart(ReflectRecord.class, record.rowID));
+    }
+    double speedup = oldTime / (double) newTime;
+    assertTrue(String.format("反射：%.1f us/次，StatementCache：%.1f us/次，加速比：%.1fx",
+        toMicros(oldTime), toMicros(newTime), speedup), speedup >= MIN_SPEEDUP);
+  }
+
+  /**
+   * 使用适配器和缓存的语句更新所有线程记录的位置
+   *
+   * @return 所有记录更新完的耗时，单位纳秒
+   */
+  private long runRound(int round) {
+    long start = System.nanoTime();
+    for (ThreadRecord record : mRecords) {
+      record.startLocation = record.endLocation - RANGE_SIZE + round * 1024;
+      mUpdate.updateData(mDb, record);
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * 通过反射更新所有记录的位置
+   *
+   * @return 所有记录更新完的耗时，单位纳秒
+   */
+  private long runReflectRound(int round) {
+    long start = System.nanoTime();
+    for (ReflectRecord record : mReflectRecords) {
+      record.startLocation = record.endLocation - RANGE_SIZE + round * 1024;
+      mUpdate.updateData(mDb, record);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private long queryStart(Class<? extends DbEntity> clazz, long rowId) {
+    return DatabaseUtils.longForQuery(mDb,
+        String.format("SELECT startLocation FROM %s WHERE rowid=?", CommonUtil.getClassName(clazz)),
+        new String[] { String.valueOf(rowId) });
+  }
+
+  private double toMicros(long nanos) {
+    return nanos / 1000.0 / (ROUND * RECORD_NUM);
+  }
+
+  /**
+   * 和{@link ThreadRecord}字段相同的实体，没有生成适配器，只能通过反射读写
+   */
+  public static class ReflectRecord extends DbEntity {
+    public String taskKey;
+    public long startLocation;
+    public long endLocation;
+    public boolean isComplete = false;
+    public int threadId = 0;
+    public long blockLen = 0;
+    public int threadType = 0;
+    public String tsUrl;
+  }
+}
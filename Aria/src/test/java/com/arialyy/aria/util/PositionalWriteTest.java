@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.aria.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 多个区间线程同时按位置写同一个文件的正确性测试，写入循环与AbsThreadTask.readByChannel一致：
+ * 每个线程各自打开"rw"模式的文件，读取到{@link BufferPool}的缓冲后通过
+ * {@link FileChannel#write(ByteBuffer, long)}写入自己的区间，读到区间结束位置时截断。
+ *
+ * 数据流每次只返回随机长度的数据，且会多给出区间之后的数据，用于覆盖短读和区间截断。
+ */
+public class PositionalWriteTest {
+  private static final int THREAD_NUM = 4;
+  private static final int RANGE_SIZE = 1024 * 1024 + 123;
+  private static final int BUFF_SIZE = 8192;
+
+  private byte[] mData;
+  private File mFile;
+  private ExecutorService mPool;
+
+  @Before public void setUp() throws IOException {
+    mData = new byte[THREAD_NUM * RANGE_SIZE];
+    new Random(1).nextBytes(mData);
+    mFile = File.createTempFile("aria_positional", ".tmp");
+    mFile.delete();
+    mPool = Executors.newFixedThreadPool(THREAD_NUM);
+  }
+
+  @After public void tearDown() {
+    mPool.shutdownNow();
+    mFile.delete();
+  }
+
+  /**
+   * 所有区间同时开始写，文件内容和长度需要与源数据完全一致
+   */
+  @Test public void concurrentRanges() throws Exception {
+    long invalid = BufferPool.getInvalidRecycleCount();
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    Future[] futures = new Future[THREAD_NUM];
+    // 倒序提交，让靠后的区间先写，文件会先被扩展到末尾
+    for (int i = THREAD_NUM - 1; i >= 0; i--) {
+      final long startLocation = (long) i * RANGE_SIZE;
+      final long endLocation = startLocation + RANGE_SIZE;
+      // 除最后一个区间外，数据流都会越过区间结束位置
+      int streamLen = (int) Math.min(mData.length - startLocation, RANGE_SIZE + BUFF_SIZE);
+      final InputStream is =
+          new ShortReadStream(mData, (int) startLocation, streamLen, new Random(i));
+      futures[i] = mPool.submit(new Callable<Long>() {
+        @Override public Long call() throws Exception {
+          startLatch.await();
+          return writeRange(is, startLocation, endLocation);
+        }
+      });
+    }
+    startLatch.countDown();
+    for (Future future : futures) {
+      assertEquals((long) RANGE_SIZE, future.get());
+    }
+    assertEquals(mData.length, mFile.length());
+    assertArrayEquals(mData, readAll(mFile));
+    assertEquals(invalid, BufferPool.getInvalidRecycleCount());
+  }
+
+  /**
+   * @return 该区间写入的字节数
+   */
+  private long writeRange(InputStream is, long startLocation, long endLocation)
+      throws IOException {
+    ReadableByteChannel channel = Channels.newChannel(is);
+    ByteBuffer buffer = BufferPool.obtain(BUFF_SIZE);
+    RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+    FileChannel file = raf.getChannel();
+    long currentLocation = startLocation;
+    try {
+      int len;
+      while ((len = channel.read(buffer)) != -1) {
+        boolean isRangeEnd = false;
+        if (currentLocation + len >= endLocation) {
+          len = (int) (endLocation - currentLocation);
+          isRangeEnd = true;
+        }
+        buffer.flip();
+        buffer.limit(len);
+        long position = currentLocation;
+        while (buffer.hasRemaining()) {
+          position += file.write(buffer, position);
+        }
+        buffer.clear();
+        currentLocation += len;
+        if (isRangeEnd) {
+          break;
+        }
+      }
+    } finally {
+      BufferPool.recycle(buffer);
+      file.close();
+      raf.close();
+    }
+    return currentLocation - startLocation;
+  }
+
+  private byte[] readAll(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      byte[] data = new byte[(int) raf.length()];
+      raf.readFully(data);
+      return data;
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * 每次最多返回随机长度数据的输入流，模拟网络的短读
+   */
+  private static class ShortReadStream extends ByteArrayInputStream {
+    private final Random mRandom;
+
+    ShortReadStream(byte[] buf, int offset, int length, Random random) {
+      super(buf, offset, length);
+      mRandom = random;
+    }
+
+    @Override public synchronized int read(byte[] b, int off, int len) {
+      return super.read(b, off, Math.min(len, 1 + mRandom.nextInt(BUFF_SIZE)));
+    }
+  }
+}
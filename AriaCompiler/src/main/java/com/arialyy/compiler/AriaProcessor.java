@@ -20,6 +20,7 @@ import com.arialyy.annotations.DownloadGroup;
 import com.arialyy.annotations.M3U8;
 import com.arialyy.annotations.Upload;
 import com.google.auto.service.AutoService;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import javax.annotation.processing.AbstractProcessor;
@@ -34,12 +35,24 @@ import javax.lang.model.element.TypeElement;
  * 事件注解扫描器
  */
 @AutoService(Processor.class) public class AriaProcessor extends AbstractProcessor {
+  /**
+   * 代理索引的全类名，如：{@code com.example.app.AppProxyIndex}，不配置时不生成索引。
+   * 每个模块需要使用不同的类名，生成的索引需要通过{@code Aria.addProxyIndex(new AppProxyIndex())}注册，
+   * 没有注册索引的观察者会通过类加载器查找代理
+   */
+  private static final String OPTION_PROXY_INDEX = "aria.proxyIndex";
+
   ElementHandler mHandler;
 
   @Override public synchronized void init(ProcessingEnvironment processingEnv) {
     super.init(processingEnv);
     PrintLog.init(processingEnv.getMessager());
-    mHandler = new ElementHandler(processingEnv.getFiler(), processingEnv.getElementUtils());
+    mHandler = new ElementHandler(processingEnv.getFiler(), processingEnv.getElementUtils(),
+        processingEnv.getOptions().get(OPTION_PROXY_INDEX));
+  }
+
+  @Override public Set<String> getSupportedOptions() {
+    return Collections.singleton(OPTION_PROXY_INDEX);
   }
 
   @Override public Set<String> getSupportedAnnotationTypes() {
@@ -105,7 +118,11 @@ import javax.lang.model.element.TypeElement;
     mHandler.handleDownloadGroupSub(roundEnv);
     mHandler.handleUpload(roundEnv);
     mHandler.handleM3U8(roundEnv);
-    mHandler.createProxyFile();
+    // 代理文件生成后还会有新的一轮扫描，本轮没有新的代理时，上一轮的代理就是最后的代理，
+    // 在这一轮生成索引，避免在最后一轮生成文件导致编译警告
+    if (!mHandler.createProxyFile()) {
+      mHandler.createIndexFile();
+    }
     return true;
   }
 }
@@ -0,0 +1,744 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.compiler;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * 数据库适配器文件，为每个DbEntity的子类和每个被@Wrapper注解的关联实体生成"类名$$DbAdapter"，
+ * 保存、更新和查询数据时直接读写字段，不需要反射。
+ *
+ * 字段的处理规则和DelegateUpdate、DelegateFind中的反射一致：
+ * 只处理实体类、父类和父类的父类的字段，私有字段通过get、set方法读写，
+ * 无法读写的实体不会生成适配器，运行时使用反射处理。
+ *
+ * <pre>
+ *   <code>
+ * public final class ThreadRecord$$DbAdapter extends AbsDbAdapter<ThreadRecord> {
+ *   private static final String[] COLUMNS = {"taskKey", "startLocation", ...};
+ *
+ *   public ContentValues createValues(ThreadRecord entity) {
+ *     ContentValues values = new ContentValues();
+ *     put(values, "taskKey", encodeValue(entity.taskKey));
+ *     values.put("startLocation", String.valueOf(entity.startLocation));
+ *     ...
+ *     return values;
+ *   }
+ *
+ *   public String getInsertSql() {
+ *     return "INSERT INTO ThreadRecord (taskKey, startLocation, ...) VALUES (?, ?, ...)";
+ *   }
+ *
+ *   public String getUpdateSql() {
+ *     return "UPDATE ThreadRecord SET taskKey = COALESCE(?, taskKey), ... WHERE rowid = ?";
+ *   }
+ *
+ *   public int bindValues(SQLiteStatement statement, ThreadRecord entity) {
+ *     bind(statement, 1, encodeValue(entity.taskKey));
+ *     statement.bindLong(2, entity.startLocation);
+ *     ...
+ *     return 10;
+ *   }
+ *
+ *   public void readCursor(ThreadRecord entity, Cursor cursor, int[] indexes) {
+ *     if (indexes[0] != -1) {
+ *       String value = readString(cursor, indexes[0]);
+ *       if (value != null) {
+ *         entity.taskKey = value;
+ *       }
+ *     }
+ *     if (indexes[1] != -1) {
+ *       entity.startLocation = cursor.getLong(indexes[1]);
+ *     }
+ *     ...
+ *   }
+ * }
+ *   </code>
+ * </pre>
+ */
+final class DbAdapterFiler {
+  private static final String ORM_PKG = "com.arialyy.aria.orm";
+  private static final String ANNOTATION_PKG = ORM_PKG + ".annotation.";
+  private static final String DB_ENTITY = ORM_PKG + ".DbEntity";
+  private static final String DB_WRAPPER = ORM_PKG + ".AbsDbWrapper";
+  private static final String IGNORE = ANNOTATION_PKG + "Ignore";
+  private static final String PRIMARY = ANNOTATION_PKG + "Primary";
+  static final String ENTITY = ANNOTATION_PKG + "Entity";
+  static final String WRAPPER = ANNOTATION_PKG + "Wrapper";
+  private static final String ONE = ANNOTATION_PKG + "One";
+  private static final String MANY = ANNOTATION_PKG + "Many";
+  private static final String DEFAULT = ANNOTATION_PKG + "Default";
+  private static final String ADAPTER_SUFFIX = "$$DbAdapter";
+
+  private static final ClassName CONTENT_VALUES = ClassName.get("android.content", "ContentValues");
+  private static final ClassName CURSOR = ClassName.get("android.database", "Cursor");
+  private static final ClassName STATEMENT =
+      ClassName.get("android.database.sqlite", "SQLiteStatement");
+  private static final ClassName DB_ENTITY_CLASS = ClassName.get(ORM_PKG, "DbEntity");
+  private static final AnnotationSpec UNCHECKED =
+      AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build();
+
+  private Filer mFiler;
+  private Elements mElementUtil;
+  private Types mTypeUtil;
+  /**
+   * 已经生成了适配器的类，避免多轮扫描时重复生成
+   */
+  private Set<String> mCreated = new HashSet<>();
+
+  DbAdapterFiler(Filer filer, Elements elements, Types types) {
+    mFiler = filer;
+    mElementUtil = elements;
+    mTypeUtil = types;
+  }
+
+  /**
+   * 为本轮扫描到的实体生成适配器
+   */
+  void createAdapterFiles(RoundEnvironment roundEnv) {
+    Set<Element> elements = new LinkedHashSet<>();
+    for (String annotation : new String[] { ENTITY, WRAPPER }) {
+      TypeElement annotationType = mElementUtil.getTypeElement(annotation);
+      if (annotationType != null) {
+        elements.addAll(roundEnv.getElementsAnnotatedWith(annotationType));
+      }
+    }
+    for (Element element : elements) {
+      // 适配器按"类名$$DbAdapter"查找，只处理顶层类
+      if (element.getKind() != ElementKind.CLASS
+          || element.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+        continue;
+      }
+      TypeElement type = (TypeElement) element;
+      String className = type.getQualifiedName().toString();
+      if (mCreated.contains(className) || !canCreate(type)) {
+        continue;
+      }
+      try {
+        if (isSubclass(type, DB_ENTITY)) {
+          createEntityAdapter(type);
+          mCreated.add(className);
+        } else if (isSubclass(type, DB_WRAPPER) && getAnnotation(type, WRAPPER) != null) {
+          createWrapperAdapter(type);
+          mCreated.add(className);
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * 创建实体的适配器
+   */
+  private void createEntityAdapter(TypeElement type) throws IOException {
+    String pkg = getPackage(type);
+    List<Column> columns = new ArrayList<>();
+    String primaryName = null;
+    String rowIdColumn = "rowid";
+    for (VariableElement field : getAllFields(type)) {
+      AnnotationMirror primary = getAnnotation(field, PRIMARY);
+      if (primary != null && primaryName == null) {
+        primaryName = field.getSimpleName().toString();
+      }
+      if (isIgnore(field)) {
+        continue;
+      }
+      Column column = new Column(field);
+      if (!resolveAccessor(type, pkg, column)) {
+        PrintLog.getInstance()
+            .warning(String.format("%s的字段%s没有可以访问的get、set方法，该实体将使用反射读写数据库",
+                type.getQualifiedName(), column.name));
+        return;
+      }
+      AnnotationMirror def = getAnnotation(field, DEFAULT);
+      if (def != null) {
+        Object value = getValue(def, "value");
+        column.defaultValue = value == null || value.toString().isEmpty() ? null : value.toString();
+      }
+      if (primary != null) {
+        column.isAutoincrement = Boolean.TRUE.equals(getValue(primary, "autoincrement"));
+        TypeKind kind = column.type.getKind();
+        if (kind == TypeKind.INT || isType(column.type, Integer.class.getName())) {
+          //当设置了主键，而且主键的类型为integer时，查询RowID等于主键
+          rowIdColumn = column.name;
+        }
+      }
+      columns.add(column);
+    }
+
+    ClassName entity = ClassName.get(type);
+    CodeBlock.Builder names = CodeBlock.builder().add("{");
+    MethodSpec.Builder createValues = MethodSpec.methodBuilder("createValues")
+        .addModifiers(Modifier.PUBLIC)
+        .addAnnotation(Override.class)
+        .returns(CONTENT_VALUES)
+        .addParameter(entity, "entity")
+        .addStatement("$T values = new $T()", CONTENT_VALUES, CONTENT_VALUES);
+    MethodSpec.Builder readCursor = MethodSpec.methodBuilder("readCursor")
+        .addModifiers(Modifier.PUBLIC)
+        .addAnnotation(Override.class)
+        .addParameter(entity, "entity")
+        .addParameter(CURSOR, "cursor")
+        .addParameter(int[].class, "indexes");
+    MethodSpec.Builder bindValues = MethodSpec.methodBuilder("bindValues")
+        .addModifiers(Modifier.PUBLIC)
+        .addAnnotation(Override.class)
+        .returns(int.class)
+        .addParameter(STATEMENT, "statement")
+        .addParameter(entity, "entity");
+    StringBuilder insertNames = new StringBuilder(), insertParams = new StringBuilder(),
+        updateParams = new StringBuilder();
+    int bindCount = 0;
+    boolean isUnchecked = false;
+    for (int i = 0, len = columns.size(); i < len; i++) {
+      Column column = columns.get(i);
+      names.add(i == 0 ? "$S" : ", $S", column.name);
+      if (!column.isAutoincrement) {
+        addWriteValue(createValues, bindValues, column, ++bindCount);
+        if (bindCount > 1) {
+          insertNames.append(", ");
+          insertParams.append(", ");
+          updateParams.append(", ");
+        }
+        insertNames.append(column.name);
+        //绑定null时，插入使用字段的默认值，更新保留原来的值，和ContentValues不保存空字段一致
+        insertParams.append(column.defaultValue == null ? "?"
+            : "COALESCE(?, '" + column.defaultValue.replace("'", "''") + "')");
+        updateParams.append(column.name)
+            .append(" = COALESCE(?, ")
+            .append(column.name)
+            .append(")");
+      }
+      isUnchecked |= addReadValue(readCursor, column, i);
+    }
+    createValues.addStatement("return values");
+    bindValues.addStatement("return $L", bindCount);
+    String table = type.getSimpleName().toString();
+    String insertSql = null, updateSql = null;
+    if (bindCount > 0) {
+      insertSql = String.format("INSERT INTO %s (%s) VALUES (%s)", table, insertNames,
+          insertParams);
+      updateSql = String.format("UPDATE %s SET %s WHERE rowid = ?", table, updateParams);
+    }
+    if (isUnchecked) {
+      readCursor.addAnnotation(UNCHECKED);
+    }
+
+    FieldSpec columnsField = FieldSpec.builder(String[].class, "COLUMNS")
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        .initializer(names.add("}").build())
+        .build();
+
+    TypeSpec adapter = TypeSpec.classBuilder(type.getSimpleName() + ADAPTER_SUFFIX)
+        .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .superclass(ParameterizedTypeName.get(ClassName.get(ORM_PKG, "AbsDbAdapter"), entity))
+        .addJavadoc("该文件为Aria自动生成的数据库适配器文件，请不要修改该文件的任何代码！\n")
+        .addField(columnsField)
+        .addMethod(MethodSpec.methodBuilder("newInstance")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(entity)
+            .addStatement("return new $T()", entity)
+            .build())
+        .addMethod(MethodSpec.methodBuilder("getColumns")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(String[].class)
+            .addStatement("return COLUMNS")
+            .build())
+        .addMethod(MethodSpec.methodBuilder("getPrimaryName")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(String.class)
+            .addStatement("return $S", primaryName)
+            .build())
+        .addMethod(MethodSpec.methodBuilder("getRowIdColumn")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(String.class)
+            .addStatement("return $S", rowIdColumn)
+            .build())
+        .addMethod(createValues.build())
+        .addMethod(MethodSpec.methodBuilder("getInsertSql")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(String.class)
+            .addStatement("return $S", insertSql)
+            .build())
+        .addMethod(MethodSpec.methodBuilder("getUpdateSql")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(String.class)
+            .addStatement("return $S", updateSql)
+            .build())
+        .addMethod(bindValues.build())
+        .addMethod(readCursor.build())
+        .build();
+    writeFile(pkg, adapter);
+  }
+
+  /**
+   * 保存数据和绑定语句参数，空字段不保存；基本类型的值URL编码后和原值相同，直接保存。
+   * float、boolean绑定为字符串，保证和ContentValues保存的值一致
+   */
+  private void addWriteValue(MethodSpec.Builder put, MethodSpec.Builder bind, Column column,
+      int bindIndex) {
+    String value = column.getValue("entity");
+    String typeName = getErasure(column.type);
+    switch (column.type.getKind()) {
+      case INT:
+      case LONG:
+        put.addStatement("values.put($S, $T.valueOf($L))", column.name, String.class, value);
+        bind.addStatement("statement.bindLong($L, $L)", bindIndex, value);
+        return;
+      case DOUBLE:
+        put.addStatement("values.put($S, $T.valueOf($L))", column.name, String.class, value);
+        bind.addStatement("statement.bindDouble($L, $L)", bindIndex, value);
+        return;
+      case FLOAT:
+      case BOOLEAN:
+        put.addStatement("values.put($S, $T.valueOf($L))", column.name, String.class, value);
+        bind.addStatement("statement.bindString($L, $T.valueOf($L))", bindIndex, String.class,
+            value);
+        return;
+      default:
+        break;
+    }
+    CodeBlock encoded;
+    if (column.type.getKind().isPrimitive()) {
+      encoded = CodeBlock.of("encodeValue(($T) $L)", Object.class, value);
+    } else if (typeName.equals(Map.class.getName()) && isStringMap(column.type)) {
+      encoded = CodeBlock.of("encodeMap($L)", value);
+    } else if (typeName.equals(List.class.getName()) && String.class.getName()
+        .equals(getListParamType(column.type))) {
+      encoded = CodeBlock.of("encodeList($L)", value);
+    } else {
+      encoded = CodeBlock.of("encodeValue($L)", value);
+    }
+    put.addStatement("put(values, $S, $L)", column.name, encoded);
+    bind.addStatement("bind(statement, $L, $L)", bindIndex, encoded);
+  }
+
+  /**
+   * 读取数据，只读取数据库支持的类型
+   *
+   * @return {@code true} 使用了未检查的类型转换
+   */
+  private boolean addReadValue(MethodSpec.Builder builder, Column column, int index) {
+    String cursorIndex = "indexes[" + index + "]";
+    String typeName = getErasure(column.type);
+    CodeBlock read;
+    boolean checkNull = false, isUnchecked = false;
+    if (typeName.equals(String.class.getName())) {
+      read = CodeBlock.of("$T value = readString(cursor, $L)", String.class, cursorIndex);
+      checkNull = true;
+    } else if (typeName.equals("int") || typeName.equals(Integer.class.getName())) {
+      read = CodeBlock.of("cursor.getInt($L)", cursorIndex);
+    } else if (typeName.equals("long") || typeName.equals(Long.class.getName())) {
+      read = CodeBlock.of("cursor.getLong($L)", cursorIndex);
+    } else if (typeName.equals("float") || typeName.equals(Float.class.getName())) {
+      read = CodeBlock.of("cursor.getFloat($L)", cursorIndex);
+    } else if (typeName.equals("double") || typeName.equals(Double.class.getName())) {
+      read = CodeBlock.of("cursor.getDouble($L)", cursorIndex);
+    } else if (typeName.equals("boolean") || typeName.equals(Boolean.class.getName())) {
+      read = CodeBlock.of("readBoolean(cursor, $L)", cursorIndex);
+    } else if (typeName.equals("java.util.Date")) {
+      read = CodeBlock.of("$T value = readDate(cursor, $L)", column.type, cursorIndex);
+      checkNull = true;
+    } else if (column.type.getKind() == TypeKind.ARRAY && typeName.equals("byte[]")) {
+      read = CodeBlock.of("cursor.getBlob($L)", cursorIndex);
+    } else if (typeName.equals(Map.class.getName())) {
+      read = CodeBlock.of("$T value = readMap(cursor, $L)", Map.class, cursorIndex);
+      checkNull = true;
+      isUnchecked = true;
+    } else if (typeName.equals(List.class.getName())) {
+      String paramType = getListParamType(column.type);
+      read = paramType == null
+          ? CodeBlock.of("$T value = readList(cursor, $L, null)", List.class, cursorIndex)
+          : CodeBlock.of("$T value = readList(cursor, $L, $T.class)", List.class, cursorIndex,
+              ClassName.bestGuess(paramType));
+      checkNull = true;
+      isUnchecked = true;
+    } else {
+      return false;
+    }
+    builder.beginControlFlow("if ($L != -1)", cursorIndex);
+    if (checkNull) {
+      builder.addStatement("$L", read)
+          .beginControlFlow("if (value != null)")
+          .addStatement("$L", column.setValue("entity", CodeBlock.of("value")))
+          .endControlFlow();
+    } else {
+      builder.addStatement("$L", column.setValue("entity", read));
+    }
+    builder.endControlFlow();
+    return isUnchecked;
+  }
+
+  /**
+   * 创建关联实体的适配器，关联实体中只能有一个{@code @One}和一个{@code @Many}字段
+   */
+  private void createWrapperAdapter(TypeElement type) throws IOException {
+    String pkg = getPackage(type);
+    Column one = null, many = null;
+    AnnotationMirror m = null;
+    for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+      if (getAnnotation(field, ONE) != null) {
+        if (one != null) {
+          return;
+        }
+        one = new Column(field);
+      }
+      AnnotationMirror temp = getAnnotation(field, MANY);
+      if (temp != null) {
+        if (many != null) {
+          return;
+        }
+        many = new Column(field);
+        m = temp;
+      }
+    }
+    // 注解依赖错误时不生成适配器，运行时由反射打印错误信息
+    if (one == null || many == null || !getErasure(many.type).equals(List.class.getName())) {
+      return;
+    }
+    String childType = getListParamType(many.type);
+    if (one.type.getKind() != TypeKind.DECLARED || childType == null
+        || !isSubclass((TypeElement) mTypeUtil.asElement(one.type), DB_ENTITY)
+        || !isSubclass(mElementUtil.getTypeElement(childType), DB_ENTITY)) {
+      return;
+    }
+    if (!resolveAccessor(type, pkg, one) || !resolveAccessor(type, pkg, many)) {
+      PrintLog.getInstance()
+          .warning(String.format("%s的@One或@Many字段没有可以访问的set方法，查询关联数据时将使用反射",
+              type.getQualifiedName()));
+      return;
+    }
+
+    ClassName wrapper = ClassName.get(type);
+    TypeName entityClass = ParameterizedTypeName.get(ClassName.get(Class.class),
+        WildcardTypeName.subtypeOf(DB_ENTITY_CLASS));
+    TypeName parentType = TypeName.get(mTypeUtil.erasure(one.type));
+    TypeName manyType = TypeName.get(mTypeUtil.erasure(many.type));
+
+    TypeSpec adapter = TypeSpec.classBuilder(type.getSimpleName() + ADAPTER_SUFFIX)
+        .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .superclass(
+            ParameterizedTypeName.get(ClassName.get(ORM_PKG, "AbsWrapperAdapter"), wrapper))
+        .addJavadoc("该文件为Aria自动生成的数据库适配器文件，请不要修改该文件的任何代码！\n")
+        .addMethod(MethodSpec.methodBuilder("getParentClass")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(entityClass)
+            .addStatement("return $T.class", parentType)
+            .build())
+        .addMethod(MethodSpec.methodBuilder("getChildClass")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(entityClass)
+            .addStatement("return $T.class", ClassName.bestGuess(childType))
+            .build())
+        .addMethod(MethodSpec.methodBuilder("getParentColumn")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(String.class)
+            .addStatement("return $S", getValue(m, "parentColumn"))
+            .build())
+        .addMethod(MethodSpec.methodBuilder("getEntityColumn")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(String.class)
+            .addStatement("return $S", getValue(m, "entityColumn"))
+            .build())
+        .addMethod(MethodSpec.methodBuilder("newWrapper")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .addAnnotation(UNCHECKED)
+            .returns(wrapper)
+            .addParameter(DB_ENTITY_CLASS, "parent")
+            .addParameter(ParameterizedTypeName.get(ClassName.get(List.class), DB_ENTITY_CLASS),
+                "children")
+            .addStatement("$T wrapper = new $T()", wrapper, wrapper)
+            .addStatement("$L", one.setValue("wrapper", CodeBlock.of("($T) parent", parentType)))
+            .addStatement("$L", many.setValue("wrapper", CodeBlock.of("($T) children", manyType)))
+            .addStatement("return wrapper")
+            .build())
+        .build();
+    writeFile(pkg, adapter);
+  }
+
+  private void writeFile(String pkg, TypeSpec type) throws IOException {
+    JavaFile jf = JavaFile.builder(pkg, type).build();
+    if (ProxyConstance.DEBUG) {
+      jf.writeTo(System.out);
+    } else {
+      jf.writeTo(mFiler);
+    }
+  }
+
+  /**
+   * 只为可以直接创建对象的类生成适配器：不是抽象类、没有泛型参数、有可以访问的无参构造函数
+   */
+  private boolean canCreate(TypeElement type) {
+    Set<Modifier> modifiers = type.getModifiers();
+    if (modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)
+        || !type.getTypeParameters().isEmpty()) {
+      return false;
+    }
+    List<ExecutableElement> constructors =
+        ElementFilter.constructorsIn(type.getEnclosedElements());
+    if (constructors.isEmpty()) {
+      return true;
+    }
+    for (ExecutableElement constructor : constructors) {
+      if (constructor.getParameters().isEmpty() && !constructor.getModifiers()
+          .contains(Modifier.PRIVATE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 和CommonUtil.getAllFields一致，获取实体类、父类和父类的父类的字段
+   */
+  private List<VariableElement> getAllFields(TypeElement type) {
+    List<VariableElement> fields = new ArrayList<>();
+    TypeElement parent = getSuperclass(type);
+    if (parent != null) {
+      TypeElement root = getSuperclass(parent);
+      if (root != null) {
+        fields.addAll(ElementFilter.fieldsIn(root.getEnclosedElements()));
+      }
+      fields.addAll(ElementFilter.fieldsIn(parent.getEnclosedElements()));
+    }
+    fields.addAll(ElementFilter.fieldsIn(type.getEnclosedElements()));
+    return fields;
+  }
+
+  /**
+   * 和SqlUtil.isIgnore一致
+   */
+  private boolean isIgnore(VariableElement field) {
+    AnnotationMirror ignore = getAnnotation(field, IGNORE);
+    if (ignore != null && !Boolean.FALSE.equals(getValue(ignore, "value"))) {
+      return true;
+    }
+    String name = field.getSimpleName().toString();
+    Set<Modifier> modifiers = field.getModifiers();
+    return name.equals("rowID") || name.startsWith("shadow$") || modifiers.contains(
+        Modifier.STATIC) || modifiers.contains(Modifier.FINAL);
+  }
+
+  /**
+   * 查找字段的读写方式，可以直接访问的字段直接读写，否则查找字段的get、set方法
+   *
+   * @return {@code false} 无法读写该字段
+   */
+  private boolean resolveAccessor(TypeElement type, String pkg, Column column) {
+    if (isAccessible(column.field, pkg)) {
+      return true;
+    }
+    String name = column.name;
+    String cap = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    boolean isBoolean = getErasure(column.type).equals("boolean") || getErasure(column.type)
+        .equals(Boolean.class.getName());
+    List<String> getters = new ArrayList<>();
+    List<String> setters = new ArrayList<>();
+    // isComplete字段的方法为isComplete()、setComplete()
+    if (isBoolean && name.length() > 2 && name.startsWith("is") && Character.isUpperCase(
+        name.charAt(2))) {
+      getters.add(name);
+      setters.add("set" + name.substring(2));
+    }
+    getters.add("get" + cap);
+    if (isBoolean) {
+      getters.add("is" + cap);
+    }
+    setters.add("set" + cap);
+
+    for (ExecutableElement method : ElementFilter.methodsIn(
+        mElementUtil.getAllMembers(type))) {
+      String methodName = method.getSimpleName().toString();
+      if (method.getModifiers().contains(Modifier.STATIC) || !isAccessible(method, pkg)) {
+        continue;
+      }
+      List<? extends VariableElement> params = method.getParameters();
+      if (column.getter == null && getters.contains(methodName) && params.isEmpty()
+          && mTypeUtil.isSameType(method.getReturnType(), column.type)) {
+        column.getter = methodName;
+      } else if (column.setter == null && setters.contains(methodName) && params.size() == 1
+          && mTypeUtil.isAssignable(column.type, params.get(0).asType())) {
+        column.setter = methodName;
+      }
+    }
+    return column.getter != null && column.setter != null;
+  }
+
+  /**
+   * 生成的适配器和实体在同一个包中，非私有的成员在同一个包中可以直接访问
+   */
+  private boolean isAccessible(Element member, String pkg) {
+    Set<Modifier> modifiers = member.getModifiers();
+    if (modifiers.contains(Modifier.PUBLIC)) {
+      return true;
+    }
+    return !modifiers.contains(Modifier.PRIVATE) && getPackage(
+        (TypeElement) member.getEnclosingElement()).equals(pkg);
+  }
+
+  private boolean isSubclass(TypeElement type, String superName) {
+    TypeElement parent = type == null ? null : getSuperclass(type);
+    while (parent != null) {
+      if (parent.getQualifiedName().contentEquals(superName)) {
+        return true;
+      }
+      parent = getSuperclass(parent);
+    }
+    return false;
+  }
+
+  private TypeElement getSuperclass(TypeElement type) {
+    TypeMirror superType = type.getSuperclass();
+    if (superType.getKind() != TypeKind.DECLARED) {
+      return null;
+    }
+    return (TypeElement) mTypeUtil.asElement(superType);
+  }
+
+  private String getPackage(TypeElement type) {
+    return mElementUtil.getPackageOf(type).getQualifiedName().toString();
+  }
+
+  private String getErasure(TypeMirror type) {
+    return mTypeUtil.erasure(type).toString();
+  }
+
+  private boolean isType(TypeMirror type, String className) {
+    return getErasure(type).equals(className);
+  }
+
+  /**
+   * 是否是{@code Map<String, String>}
+   */
+  private boolean isStringMap(TypeMirror type) {
+    if (type.getKind() != TypeKind.DECLARED) {
+      return false;
+    }
+    List<? extends TypeMirror> args = ((DeclaredType) type).getTypeArguments();
+    return args.size() == 2 && isType(args.get(0), String.class.getName()) && isType(args.get(1),
+        String.class.getName());
+  }
+
+  /**
+   * 获取列表的泛型类型
+   *
+   * @return 无法确定泛型类型时返回null
+   */
+  private String getListParamType(TypeMirror type) {
+    if (type.getKind() != TypeKind.DECLARED) {
+      return null;
+    }
+    List<? extends TypeMirror> args = ((DeclaredType) type).getTypeArguments();
+    if (args.size() != 1 || args.get(0).getKind() != TypeKind.DECLARED) {
+      return null;
+    }
+    return getErasure(args.get(0));
+  }
+
+  private AnnotationMirror getAnnotation(Element element, String annotation) {
+    for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+          .contentEquals(annotation)) {
+        return mirror;
+      }
+    }
+    return null;
+  }
+
+  private Object getValue(AnnotationMirror mirror, String name) {
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mElementUtil
+        .getElementValuesWithDefaults(mirror).entrySet()) {
+      if (entry.getKey().getSimpleName().contentEquals(name)) {
+        return entry.getValue().getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 表字段，getter、setter为null时直接读写字段
+   */
+  private static class Column {
+    VariableElement field;
+    String name;
+    TypeMirror type;
+    String getter, setter;
+    boolean isAutoincrement = false;
+    /**
+     * 字段的默认值，没有默认值为null
+     */
+    String defaultValue;
+
+    Column(VariableElement field) {
+      this.field = field;
+      name = field.getSimpleName().toString();
+      type = field.asType();
+    }
+
+    String getValue(String target) {
+      return getter == null ? target + "." + name : target + "." + getter + "()";
+    }
+
+    CodeBlock setValue(String target, CodeBlock value) {
+      return setter == null ? CodeBlock.of("$L.$L = $L", target, name, value)
+          : CodeBlock.of("$L.$L($L)", target, setter, value);
+    }
+  }
+}
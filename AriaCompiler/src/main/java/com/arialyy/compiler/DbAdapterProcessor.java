@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.compiler;
+
+import com.google.auto.service.AutoService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * 数据库实体扫描器，为DbEntity的子类和关联实体生成数据库适配器。
+ * DbEntity使用了可继承的@Entity注解，子类不需要添加注解；关联实体通过@Wrapper注解识别。
+ * 只声明这两个注解，没有使用它们的模块不会运行该扫描器，处理完成后不占用注解。
+ */
+@AutoService(Processor.class) public class DbAdapterProcessor extends AbstractProcessor {
+  private DbAdapterFiler mFiler;
+
+  @Override public synchronized void init(ProcessingEnvironment processingEnv) {
+    super.init(processingEnv);
+    PrintLog.init(processingEnv.getMessager());
+    mFiler = new DbAdapterFiler(processingEnv.getFiler(), processingEnv.getElementUtils(),
+        processingEnv.getTypeUtils());
+  }
+
+  @Override public Set<String> getSupportedAnnotationTypes() {
+    Set<String> types = new LinkedHashSet<>();
+    types.add(DbAdapterFiler.ENTITY);
+    types.add(DbAdapterFiler.WRAPPER);
+    return types;
+  }
+
+  @Override public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    mFiler.createAdapterFiles(roundEnv);
+    return false;
+  }
+}
@@ -33,10 +33,15 @@ class ElementHandler {
 
   private Filer mFiler;
   private ParamObtainUtil mPbUtil;
+  private ProxyIndexFiler mIndexFiler;
 
-  ElementHandler(Filer filer, Elements elements) {
+  /**
+   * @param indexName 代理索引的全类名，为null时不生成索引
+   */
+  ElementHandler(Filer filer, Elements elements, String indexName) {
     mFiler = filer;
     mPbUtil = new ParamObtainUtil(elements);
+    mIndexFiler = new ProxyIndexFiler(filer, indexName);
   }
 
   /**
@@ -152,11 +157,29 @@ class ElementHandler {
 
   /**
    * 在build文件夹中生成代理文件
+   *
+   * @return {@code true} 本轮扫描到了代理
    */
-  void createProxyFile() {
+  boolean createProxyFile() {
+    if (mPbUtil.getMethodParams().isEmpty()) {
+      return false;
+    }
     try {
       new EventProxyFiler(mFiler, mPbUtil).createEventProxyFile();
       //new CountFiler(mFiler, mPbUtil).createCountFile();
+      mIndexFiler.record(mPbUtil.getMethodParams());
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return true;
+  }
+
+  /**
+   * 在build文件夹中生成代理索引文件，在扫描到代理之后没有新代理的一轮中调用
+   */
+  void createIndexFile() {
+    try {
+      mIndexFiler.createIndexFile();
     } catch (IOException e) {
       e.printStackTrace();
     }
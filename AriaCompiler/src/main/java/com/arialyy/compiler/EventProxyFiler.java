@@ -21,6 +21,7 @@ import com.arialyy.annotations.M3U8;
 import com.arialyy.annotations.TaskEnum;
 import com.arialyy.annotations.Upload;
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
@@ -29,6 +30,10 @@ import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeSpec;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import javax.annotation.processing.Filer;
@@ -250,9 +255,60 @@ final class EventProxyFiler {
     }
 
     builder.addMethod(listener);
+
+    //所有注解方法都指定了任务key时，告诉调度器只分发这些任务的事件
+    Set<String> taskKeys = getTaskKeys(entity);
+    if (taskKeys != null) {
+      builder.addField(createTaskKeysField(taskKeys));
+      MethodSpec getTaskKeys = MethodSpec.methodBuilder(ProxyConstance.GET_TASK_KEYS)
+          .addModifiers(Modifier.PUBLIC)
+          .returns(ParameterizedTypeName.get(Set.class, String.class))
+          .addAnnotation(Override.class)
+          .addCode("return TASK_KEYS;\n")
+          .build();
+      builder.addMethod(getTaskKeys);
+    }
     return builder.build();
   }
 
+  /**
+   * 获取代理关心的任务key，只要有一个注解方法没有指定任务key，代理就需要接收所有任务的事件
+   *
+   * @return 为null时，代理接收所有任务的事件
+   */
+  private Set<String> getTaskKeys(ProxyClassParam entity) {
+    if (entity.keyMappings.isEmpty()) {
+      return null;
+    }
+    Set<String> taskKeys = new LinkedHashSet<>();
+    for (Set<String> keys : entity.keyMappings.values()) {
+      if (keys == null || keys.isEmpty()) {
+        return null;
+      }
+      taskKeys.addAll(keys);
+    }
+    return taskKeys;
+  }
+
+  /**
+   * 创建任务key集合字段
+   */
+  private FieldSpec createTaskKeysField(Set<String> taskKeys) {
+    CodeBlock.Builder init = CodeBlock.builder()
+        .add("$T.unmodifiableSet(new $T<>($T.asList(", Collections.class, HashSet.class,
+            Arrays.class);
+    boolean first = true;
+    for (String key : taskKeys) {
+      init.add(first ? "$S" : ", $S", key);
+      first = false;
+    }
+    init.add(")))");
+    return FieldSpec.builder(ParameterizedTypeName.get(Set.class, String.class), "TASK_KEYS")
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        .initializer(init.build())
+        .build();
+  }
+
   private void createFile(JavaFile jf) throws IOException {
     if (ProxyConstance.DEBUG) {
       // 如果需要在控制台打印生成的文件，则去掉下面的注释
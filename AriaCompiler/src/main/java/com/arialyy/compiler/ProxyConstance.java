@@ -25,6 +25,10 @@ interface ProxyConstance {
    * 设置观察者的方法
    */
   String SET_LISTENER = "setListener";
+  /**
+   * 获取代理关心的任务key
+   */
+  String GET_TASK_KEYS = "getTaskKeys";
 
   int WAIT = 0X10;
   int PRE = 0X11;
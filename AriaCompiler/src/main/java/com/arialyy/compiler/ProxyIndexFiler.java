@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 AriaLyy(https://github.com/AriaLyy/Aria)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arialyy.compiler;
+
+import com.arialyy.annotations.TaskEnum;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.Modifier;
+
+/**
+ * 代理索引文件，记录每个被注解的类有哪些代理，以及如何创建代理，
+ * 注册观察者时不再需要通过类加载器查找代理类，也不需要反射创建代理对象。
+ * 索引的类名由{@code aria.proxyIndex}参数指定，每个模块生成自己的索引，如：
+ *
+ * <pre>
+ *   <code>
+ * package com.arialyy.simple;
+ *
+ * public final class SimpleProxyIndex implements IProxyIndex {
+ *   private static final Map<String, Set<TaskEnum>> PROXY_TYPES = new HashMap<>();
+ *
+ *   static {
+ *     PROXY_TYPES.put("com.arialyy.simple.SingleTaskActivity",
+ *         Collections.unmodifiableSet(EnumSet.of(TaskEnum.DOWNLOAD)));
+ *   }
+ *
+ *   public Set<TaskEnum> getProxyTypes(String className) {
+ *     return PROXY_TYPES.get(className);
+ *   }
+ *
+ *   public ISchedulerListener newProxy(String className, TaskEnum taskEnum) {
+ *     switch (className) {
+ *       case "com.arialyy.simple.SingleTaskActivity":
+ *         switch (taskEnum) {
+ *           case DOWNLOAD:
+ *             return new SingleTaskActivity$$DownloadListenerProxy();
+ *         }
+ *         break;
+ *     }
+ *     return null;
+ *   }
+ * }
+ *   </code>
+ * </pre>
+ */
+final class ProxyIndexFiler {
+  private Filer mFiler;
+  private String mIndexPkg;
+  private String mIndexClass;
+  /**
+   * 所有轮次扫描到的代理，key为被代理类的全类名
+   */
+  private Map<String, Map<TaskEnum, ClassName>> mProxies = new TreeMap<>();
+  /**
+   * 是否有还没有写入索引的代理
+   */
+  private boolean isDirty = false;
+  private boolean isCreated = false;
+
+  /**
+   * @param indexName 索引的全类名，为空时不生成索引
+   */
+  ProxyIndexFiler(Filer filer, String indexName) {
+    mFiler = filer;
+    if (indexName != null && !indexName.trim().isEmpty()) {
+      indexName = indexName.trim();
+      int index = indexName.lastIndexOf('.');
+      mIndexPkg = index == -1 ? "" : indexName.substring(0, index);
+      mIndexClass = indexName.substring(index + 1);
+    }
+  }
+
+  /**
+   * 记录本轮扫描到的代理
+   */
+  void record(Map<String, ProxyClassParam> params) {
+    for (ProxyClassParam param : params.values()) {
+      String className = param.packageName + "." + param.className;
+      Map<TaskEnum, ClassName> proxies = mProxies.get(className);
+      if (proxies == null) {
+        proxies = new EnumMap<>(TaskEnum.class);
+        mProxies.put(className, proxies);
+      }
+      proxies.put(param.mainTaskEnum, ClassName.get(param.packageName, param.proxyClassName));
+      isDirty = true;
+    }
+  }
+
+  /**
+   * 创建代理索引文件，需要在扫描到代理之后、没有新代理的一轮中调用；
+   * 索引只能生成一次，生成之后才扫描到的代理不在索引中，这些观察者会通过类加载器查找代理
+   */
+  void createIndexFile() throws IOException {
+    if (mIndexClass == null || !isDirty) {
+      return;
+    }
+    isDirty = false;
+    if (isCreated) {
+      PrintLog.getInstance().warning(String.format("代理索引【%s】已经生成，后续扫描到的代理不会写入索引",
+          mIndexClass));
+      return;
+    }
+    isCreated = true;
+    ClassName taskEnum = ClassName.get(TaskEnum.class);
+    ClassName listener =
+        ClassName.get("com.arialyy.aria.core.scheduler", "ISchedulerListener");
+    ClassName index = ClassName.get("com.arialyy.aria.core.common", "IProxyIndex");
+    ParameterizedTypeName typeSet = ParameterizedTypeName.get(ClassName.get(Set.class), taskEnum);
+    ParameterizedTypeName typeMap =
+        ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(String.class), typeSet);
+
+    FieldSpec typesField = FieldSpec.builder(typeMap, "PROXY_TYPES")
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        .initializer("new $T<>()", HashMap.class)
+        .build();
+
+    CodeBlock.Builder init = CodeBlock.builder();
+    CodeBlock.Builder create = CodeBlock.builder().beginControlFlow("switch (className)");
+    for (Map.Entry<String, Map<TaskEnum, ClassName>> entry : mProxies.entrySet()) {
+      Set<TaskEnum> types = entry.getValue().keySet();
+      CodeBlock.Builder of = CodeBlock.builder();
+      boolean first = true;
+      for (TaskEnum te : types) {
+        of.add(first ? "$T.$L" : ", $T.$L", taskEnum, te.name());
+        first = false;
+      }
+      init.addStatement("PROXY_TYPES.put($S, $T.unmodifiableSet($T.of($L)))", entry.getKey(),
+          Collections.class, EnumSet.class, of.build());
+
+      create.add("case $S:\n", entry.getKey()).indent();
+      create.beginControlFlow("switch (taskEnum)");
+      for (Map.Entry<TaskEnum, ClassName> proxy : entry.getValue().entrySet()) {
+        create.add("case $L:\n", proxy.getKey().name()).indent();
+        create.addStatement("return new $T()", proxy.getValue()).unindent();
+      }
+      create.endControlFlow();
+      create.addStatement("break").unindent();
+    }
+    create.endControlFlow();
+    create.addStatement("return null");
+
+    MethodSpec getProxyTypes = MethodSpec.methodBuilder("getProxyTypes")
+        .addModifiers(Modifier.PUBLIC)
+        .addAnnotation(Override.class)
+        .returns(typeSet)
+        .addParameter(String.class, "className")
+        .addStatement("return PROXY_TYPES.get(className)")
+        .build();
+
+    MethodSpec newProxy = MethodSpec.methodBuilder("newProxy")
+        .addModifiers(Modifier.PUBLIC)
+        .addAnnotation(Override.class)
+        .returns(listener)
+        .addParameter(String.class, "className")
+        .addParameter(taskEnum, "taskEnum")
+        .addCode(create.build())
+        .build();
+
+    TypeSpec type = TypeSpec.classBuilder(mIndexClass)
+        .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+        .addSuperinterface(index)
+        .addJavadoc("该文件为Aria自动生成的代理索引文件，请不要修改该文件的任何代码！\n")
+        .addField(typesField)
+        .addStaticBlock(init.build())
+        .addMethod(getProxyTypes)
+        .addMethod(newProxy)
+        .build();
+
+    JavaFile jf = JavaFile.builder(mIndexPkg, type).build();
+    if (ProxyConstance.DEBUG) {
+      jf.writeTo(System.out);
+    } else {
+      jf.writeTo(mFiler);
+    }
+  }
+}